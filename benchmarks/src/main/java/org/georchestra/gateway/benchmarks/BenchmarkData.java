@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.benchmarks;
+
+import java.util.List;
+
+import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+/**
+ * Sample data shared by the benchmarks, resembling a regular authenticated
+ * request.
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {
+        // utility class
+    }
+
+    public static GeorchestraUser user() {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setId("b7f3dd13-f9cc-4573-8482-b4fccf8e1977");
+        user.setUsername("testuser");
+        user.setOrganization("PSC");
+        user.setEmail("testuser@example.com");
+        user.setFirstName("Test");
+        user.setLastName("User");
+        user.setTelephoneNumber("34144444");
+        user.setTitle("Advisor");
+        user.setPostalAddress("123 happy street");
+        user.setNotes(":)");
+        user.setLastUpdated("9f2a1c6e4d");
+        user.setRoles(List.of("ROLE_USER", "ROLE_GP.GDI.PLANER", "ROLE_GP.GDI.EDITOR", "ROLE_MAPSTORE_ADMIN"));
+        return user;
+    }
+
+    public static Organization organization() {
+        Organization org = new Organization();
+        org.setId("abc");
+        org.setShortName("PSC");
+        org.setName("Project Steering Committee");
+        org.setCategory("category");
+        org.setDescription("desc");
+        org.setLastUpdated("123");
+        org.setLinkage("http://test.com");
+        org.setMembers(List.of("homer", "marge", "lisa", "bart", "maggie"));
+        org.setNotes("notes");
+        org.setPostalAddress("123 springfield");
+        return org;
+    }
+
+    /**
+     * @return a new exchange for a {@literal GET} request with the usual browser
+     *         headers, and no {@literal sec-*} headers
+     */
+    public static MockServerWebExchange exchange() {
+        MockServerHttpRequest request = MockServerHttpRequest.get("/geoserver/wms?SERVICE=WMS&REQUEST=GetCapabilities")//
+                .header("Host", "georchestra.example.com")//
+                .header("User-Agent", "Mozilla/5.0 (X11; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/115.0")//
+                .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")//
+                .header("Accept-Language", "en-US,en;q=0.5")//
+                .header("Accept-Encoding", "gzip, deflate, br")//
+                .header("Cookie", "SESSION=NjJmYzQ2ZDItZjE2NS00ZjM2LWE3NzEtMzU4ZWQ3ZmVkOGM2")//
+                .header("Connection", "keep-alive")//
+                .build();
+        return MockServerWebExchange.from(request);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar.
+ * <p>
+ * With no arguments, runs all the gateway benchmarks with the
+ * {@link GCProfiler GC profiler} enabled, reporting throughput and
+ * {@literal gc.alloc.rate.norm} (bytes allocated per operation), and writes the
+ * results to {@literal benchmarks.json}. Otherwise the arguments are handed
+ * over to the JMH command line runner, for example:
+ * 
+ * <pre>
+ * <code>
+ * java -jar benchmarks/target/benchmarks.jar
+ * java -jar benchmarks/target/benchmarks.jar AddSecHeaders -prof gc -f 1
+ * </code>
+ * </pre>
+ */
+public class GatewayBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        runAll();
+    }
+
+    private static void runAll() throws RunnerException {
+        Options options = new OptionsBuilder()//
+                .include("org\\.georchestra\\.gateway\\..*Benchmark.*")//
+                .addProfiler(GCProfiler.class)//
+                .resultFormat(ResultFormatType.JSON)//
+                .result("benchmarks.json")//
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.filter.global;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.HeaderMappings;
+import org.georchestra.gateway.model.RoleBasedAccessRule;
+import org.georchestra.gateway.model.Service;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.route.Route;
+
+/**
+ * Benchmarks {@link ResolveTargetGlobalFilter#resolveTarget(Route)}, cycling
+ * over routes matching each configured service, plus one route to a
+ * non-configured service that resolves to the default target.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResolveTargetGlobalFilterBenchmark {
+
+    @Param({ "10", "100" })
+    int services;
+
+    private ResolveTargetGlobalFilter filter;
+
+    private Route[] routes;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        GatewayConfigProperties config = new GatewayConfigProperties();
+        config.setDefaultHeaders(new HeaderMappings().enableAll());
+        config.setGlobalAccessRules(List.of(rule("/**", "ROLE_USER")));
+
+        Map<String, Service> configured = new LinkedHashMap<>();
+        routes = new Route[services + 1];
+        for (int i = 0; i < services; i++) {
+            URI target = URI.create("http://service-" + i + ":8080");
+            Service service = new Service();
+            service.setTarget(target);
+            service.setHeaders(Optional.of(new HeaderMappings().enableAll()));
+            service.setAccessRules(List.of(rule("/service-" + i + "/admin/**", "ROLE_ADMINISTRATOR")));
+            configured.put("service-" + i, service);
+            routes[i] = route("service-" + i, target);
+        }
+        routes[services] = route("unconfigured", URI.create("http://unconfigured:8080"));
+        config.setServices(configured);
+
+        filter = new ResolveTargetGlobalFilter(config);
+    }
+
+    @Benchmark
+    public GeorchestraTargetConfig resolveTarget() {
+        Route route = routes[next];
+        next = (next + 1) % routes.length;
+        return filter.resolveTarget(route);
+    }
+
+    private static Route route(String id, URI uri) {
+        return Route.async().id(id).uri(uri).predicate(exchange -> true).build();
+    }
+
+    private static RoleBasedAccessRule rule(String interceptUrl, String... roles) {
+        RoleBasedAccessRule rule = new RoleBasedAccessRule();
+        rule.setInterceptUrl(List.of(interceptUrl));
+        rule.setAllowedRoles(List.of(roles));
+        return rule;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.filter.headers;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.gateway.benchmarks.BenchmarkData;
+import org.georchestra.gateway.filter.headers.providers.GeorchestraOrganizationHeadersContributor;
+import org.georchestra.gateway.filter.headers.providers.GeorchestraUserHeadersContributor;
+import org.georchestra.gateway.filter.headers.providers.JsonPayloadHeadersContributor;
+import org.georchestra.gateway.filter.headers.providers.SecProxyHeaderContributor;
+import org.georchestra.gateway.model.EncodedPayload;
+import org.georchestra.gateway.model.GeorchestraOrganizations;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.model.HeaderMappings;
+import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory.NameConfig;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Benchmarks the {@link AddSecHeadersGatewayFilterFactory} filter with all the
+ * {@link HeaderContributor}s and all {@link HeaderMappings} enabled, for an
+ * authenticated user belonging to an organization, which exercises the
+ * precomputed {@link HeaderPlan}s and the memoized JSON payloads.
+ * <p>
+ * {@link #exchangeOnly} measures the cost of creating the mock exchange, to be
+ * subtracted from {@link #addSecHeaders}'s allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddSecHeadersGatewayFilterFactoryBenchmark {
+
+    private GatewayFilter filter;
+
+    private GeorchestraTargetConfig target;
+
+    private GeorchestraUser user;
+
+    private Organization organization;
+
+    private EncodedPayload userPayload;
+
+    private EncodedPayload organizationPayload;
+
+    private GatewayFilterChain chain;
+
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        List<HeaderContributor> providers = List.of(//
+                new SecProxyHeaderContributor(() -> true), //
+                new GeorchestraUserHeadersContributor(), //
+                new GeorchestraOrganizationHeadersContributor(), //
+                new JsonPayloadHeadersContributor());
+        filter = new AddSecHeadersGatewayFilterFactory(providers).apply(new NameConfig());
+        target = new GeorchestraTargetConfig().headers(new HeaderMappings().enableAll()).accessRules(List.of());
+        user = BenchmarkData.user();
+        organization = BenchmarkData.organization();
+        userPayload = new EncodedPayload();
+        organizationPayload = new EncodedPayload();
+        chain = this::consume;
+    }
+
+    private Mono<Void> consume(ServerWebExchange exchange) {
+        blackhole.consume(exchange.getRequest().getHeaders());
+        return Mono.empty();
+    }
+
+    @Benchmark
+    public Mono<Void> addSecHeaders() {
+        return filter.filter(exchange(), chain);
+    }
+
+    @Benchmark
+    public MockServerWebExchange exchangeOnly() {
+        return exchange();
+    }
+
+    private MockServerWebExchange exchange() {
+        MockServerWebExchange exchange = BenchmarkData.exchange();
+        GeorchestraTargetConfig.setTarget(exchange, target);
+        GeorchestraUsers.store(exchange, user, userPayload);
+        GeorchestraOrganizations.store(exchange, organization, organizationPayload);
+        return exchange;
+    }
+}
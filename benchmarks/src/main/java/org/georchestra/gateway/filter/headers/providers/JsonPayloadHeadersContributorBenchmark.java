@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.filter.headers.providers;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.georchestra.gateway.benchmarks.BenchmarkData;
+import org.georchestra.gateway.model.EncodedPayload;
+import org.georchestra.gateway.model.GeorchestraOrganizations;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.model.HeaderMappings;
+import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+/**
+ * Benchmarks {@link JsonPayloadHeadersContributor} for the same resolved user
+ * and organization across requests ({@link #sameSession}, the memoized case),
+ * and for newly resolved ones on each request ({@link #newSession}, which
+ * encodes the JSON payloads every time).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonPayloadHeadersContributorBenchmark {
+
+    private JsonPayloadHeadersContributor contributor;
+
+    private GeorchestraTargetConfig target;
+
+    private GeorchestraUser user;
+
+    private Organization organization;
+
+    private EncodedPayload userPayload;
+
+    private EncodedPayload organizationPayload;
+
+    @Setup
+    public void setUp() {
+        contributor = new JsonPayloadHeadersContributor();
+        HeaderMappings mappings = new HeaderMappings().disableAll();
+        mappings.setJsonUser(Optional.of(true));
+        mappings.setJsonOrganization(Optional.of(true));
+        target = new GeorchestraTargetConfig().headers(mappings).accessRules(List.of());
+
+        // resolved once per session
+        user = BenchmarkData.user();
+        organization = BenchmarkData.organization();
+        userPayload = new EncodedPayload();
+        organizationPayload = new EncodedPayload();
+    }
+
+    @Benchmark
+    public HttpHeaders sameSession() {
+        MockServerWebExchange exchange = BenchmarkData.exchange();
+        GeorchestraTargetConfig.setTarget(exchange, target);
+        GeorchestraUsers.store(exchange, user, userPayload);
+        GeorchestraOrganizations.store(exchange, organization, organizationPayload);
+        return contribute(exchange);
+    }
+
+    @Benchmark
+    public HttpHeaders newSession() {
+        MockServerWebExchange newExchange = BenchmarkData.exchange();
+        GeorchestraTargetConfig.setTarget(newExchange, target);
+        GeorchestraUsers.store(newExchange, BenchmarkData.user());
+        GeorchestraOrganizations.store(newExchange, BenchmarkData.organization());
+        return contribute(newExchange);
+    }
+
+    private HttpHeaders contribute(MockServerWebExchange exchange) {
+        HttpHeaders headers = new HttpHeaders();
+        Consumer<HttpHeaders> contribution = contributor.prepare(exchange);
+        contribution.accept(headers);
+        return headers;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.security.model.GeorchestraUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link RolesMappingsUserCustomizer#apply} with a mix of literal
+ * and wildcard roles mappings, for a user whose roles match some of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RolesMappingsUserCustomizerBenchmark {
+
+    @Param({ "10", "200" })
+    int mappings;
+
+    private RolesMappingsUserCustomizer customizer;
+
+    private final List<String> roles = List.of("ROLE_USER", "ROLE_GP.GDI.PLANER", "ROLE_GP.GDI.ADMINISTRATOR",
+            "ROLE_MAPSTORE_ADMIN");
+
+    @Setup
+    public void setUp() {
+        Map<String, List<String>> config = new LinkedHashMap<>();
+        config.put("ROLE_GP.GDI.*", List.of("ROLE_USER"));
+        config.put("ROLE_GP.GDI.ADMINISTRATOR", List.of("ROLE_ADMINISTRATOR", "ROLE_GN_ADMIN"));
+        for (int i = config.size(); i < mappings; i++) {
+            String role = i % 2 == 0 ? "ROLE_GP.ORG" + i + ".*" : "ROLE_ORG" + i + "_EDITOR";
+            config.put(role, List.of("ROLE_ORG" + i + "_USER"));
+        }
+        customizer = new RolesMappingsUserCustomizer(config);
+    }
+
+    @Benchmark
+    public GeorchestraUser apply() {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setRoles(roles);
+        return customizer.apply(user);
+    }
+}
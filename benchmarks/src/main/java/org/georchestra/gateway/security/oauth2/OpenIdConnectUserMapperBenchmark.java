@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.oauth2;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.security.model.GeorchestraUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmarks {@link OpenIdConnectUserMapper} claims mapping, with JsonPath
+ * expressions configured for the user id, organization, and roles (the
+ * precompiled {@link OpenIdConnectCustomClaimsConfigProperties.JsonPathExtractor}
+ * paths), separately and through the whole authentication token mapping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenIdConnectUserMapperBenchmark {
+
+    private OpenIdConnectUserMapper mapper;
+
+    private Map<String, Object> claims;
+
+    private OidcUserInfo userInfo;
+
+    private OAuth2AuthenticationToken token;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        OpenIdConnectCustomClaimsConfigProperties config = new OpenIdConnectCustomClaimsConfigProperties();
+        config.getId().getPath().add("$.icuid");
+        config.getOrganization().getPath().add("$.PartyOrganisationID");
+        config.getRoles().getJson().getPath().add("$.concat(\"ORG_\", $.PartyOrganisationID)");
+        config.getRoles().getJson().getPath().add("$.groups_json..['name']");
+        mapper = new OpenIdConnectUserMapper(config);
+
+        claims = new ObjectMapper().readValue(SAMPLE_CLAIMS.replace('\'', '"'),
+                new TypeReference<Map<String, Object>>() {
+                });
+        userInfo = new OidcUserInfo(claims);
+
+        Instant issuedAt = Instant.now();
+        OidcIdToken idToken = new OidcIdToken("id-token", issuedAt, issuedAt.plusSeconds(3600),
+                Map.of("sub", claims.get("sub"), "iss", "https://test.login/auth/realms/external"));
+        Set<SimpleGrantedAuthority> authorities = Set.of(new SimpleGrantedAuthority("ROLE_USER"));
+        DefaultOidcUser principal = new DefaultOidcUser(authorities, idToken, userInfo);
+        token = new OAuth2AuthenticationToken(principal, authorities, "oidc");
+    }
+
+    @Benchmark
+    public GeorchestraUser applyStandardClaims() {
+        GeorchestraUser target = new GeorchestraUser();
+        mapper.applyStandardClaims(userInfo, target);
+        return target;
+    }
+
+    @Benchmark
+    public GeorchestraUser applyNonStandardClaims() {
+        GeorchestraUser target = new GeorchestraUser();
+        mapper.applyNonStandardClaims(claims, target);
+        return target;
+    }
+
+    @Benchmark
+    public GeorchestraUser map() {
+        return mapper.map(token).orElseThrow();
+    }
+
+    private static final String SAMPLE_CLAIMS = String.join("\n", List.of(//
+            "{", //
+            "  'at_hash': 'YuZBluv2Ehrn_nEqNi0NzA',", //
+            "  'icuid': '50334123',", //
+            "  'sub': 'b7f3dd13-f9cc-4573-8482-b4fccf8e1977',", //
+            "  'groups_json': [ [", //
+            "    { 'parameter': [], 'name': 'GDI Planer (extern)', 'targetSystem': 'gdi' },", //
+            "    { 'parameter': [], 'name': 'GDI Editor (extern)', 'targetSystem': 'gdi' }", //
+            "  ] ],", //
+            "  'email_verified': false,", //
+            "  'typ': 'ID',", //
+            "  'preferred_username': 'testuser@example.com',", //
+            "  'given_name': 'Test',", //
+            "  'family_name': 'User',", //
+            "  'name': 'Test User',", //
+            "  'nonce': 'p1239kUkQjqBNA7YHBjAiiYy7ULhGq-K01NiF-fm_CEI',", //
+            "  'sid': 'f123a5b6-a326-4cbe-8af0-75e6f633f0b9',", //
+            "  'PartyOrganisationID': '6007280321',", //
+            "  'azp': 'gdi',", //
+            "  'auth_time': 1681387195,", //
+            "  'session_state': 'f123a5b6-a326-4cbe-8af0-75e6f633f0b9',", //
+            "  'jti': 'dc886b41-9d9c-4652-b9c7-8f160c037ccc',", //
+            "  'email': 'testuser@example.com'", //
+            "}"));
+}
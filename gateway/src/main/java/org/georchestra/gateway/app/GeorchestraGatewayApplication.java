@@ -27,6 +27,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientProperties;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.gateway.route.RouteLocator;
@@ -63,8 +64,16 @@ public class GeorchestraGatewayApplication {
     private @Value("${georchestra.gateway.headerHeight:90}") String georchestraHeaderHeight;
     private @Value("${georchestra.gateway.footerUrl:#{null}}") String georchestraFooterUrl;
 
+    /**
+     * Number of startup steps recorded, available at the {@literal startup}
+     * actuator endpoint
+     */
+    private static final int STARTUP_STEPS_CAPACITY = 4096;
+
     public static void main(String[] args) {
-        SpringApplication.run(GeorchestraGatewayApplication.class, args);
+        SpringApplication application = new SpringApplication(GeorchestraGatewayApplication.class);
+        application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS_CAPACITY));
+        application.run(args);
     }
 
     @PostConstruct
@@ -133,9 +142,12 @@ public class GeorchestraGatewayApplication {
             }
             maxMem = String.format("%.2f %s", value, unit);
         }
-        Long routeCount = routeLocator.getRoutes().count().block();
-        log.info("{} ready. Data dir: {}. Routes: {}. Instance-id: {}, cpus: {}, max memory: {}", app, datadir,
-                routeCount, instanceId, cpus, maxMem);
+        final String datadirPath = datadir;
+        // don't block the startup thread resolving the routes
+        routeLocator.getRoutes().count()
+                .subscribe(routeCount -> log.info(
+                        "{} ready. Data dir: {}. Routes: {}. Instance-id: {}, cpus: {}, max memory: {}", app,
+                        datadirPath, routeCount, instanceId, cpus, maxMem));
     }
 
 }
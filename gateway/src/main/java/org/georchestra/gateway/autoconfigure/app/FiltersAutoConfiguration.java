@@ -20,6 +20,7 @@ package org.georchestra.gateway.autoconfigure.app;
 
 import org.georchestra.gateway.filter.global.ResolveTargetGlobalFilter;
 import org.georchestra.gateway.filter.headers.HeaderFiltersConfiguration;
+import org.georchestra.gateway.filter.metrics.FilterMetricsConfiguration;
 import org.georchestra.gateway.model.GatewayConfigProperties;
 import org.georchestra.gateway.model.GeorchestraTargetConfig;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
@@ -32,7 +33,7 @@ import org.springframework.context.annotation.Import;
 
 @Configuration(proxyBeanMethods = false)
 @AutoConfigureBefore(GatewayAutoConfiguration.class)
-@Import(HeaderFiltersConfiguration.class)
+@Import({ HeaderFiltersConfiguration.class, FilterMetricsConfiguration.class })
 @EnableConfigurationProperties(GatewayConfigProperties.class)
 public class FiltersAutoConfiguration {
 
@@ -35,14 +35,14 @@ public class OAuth2SecurityAutoConfiguration {
 
     @Import(OAuth2Configuration.class)
     @ConditionalOnProperty(name = ENABLED_PROP, havingValue = "true", matchIfMissing = false)
-    static @Configuration class Enabled {
+    static @Configuration(proxyBeanMethods = false) class Enabled {
         public @PostConstruct void log() {
             log.info("georchestra OAuth2 security enabled");
         }
     }
 
     @ConditionalOnProperty(name = ENABLED_PROP, havingValue = "false", matchIfMissing = true)
-    static @Configuration class Disabled {
+    static @Configuration(proxyBeanMethods = false) class Disabled {
         public @PostConstruct void log() {
             log.info("georchestra OAuth2 security disabled");
         }
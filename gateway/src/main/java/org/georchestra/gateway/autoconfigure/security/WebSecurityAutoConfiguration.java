@@ -20,12 +20,13 @@ package org.georchestra.gateway.autoconfigure.security;
 
 import org.georchestra.gateway.security.GatewaySecurityConfiguration;
 import org.georchestra.gateway.security.accessrules.AccessRulesConfiguration;
+import org.georchestra.gateway.security.admission.LoginAdmissionConfiguration;
 import org.springframework.boot.autoconfigure.security.ConditionalOnDefaultWebSecurity;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
 @Configuration(proxyBeanMethods = false)
 @ConditionalOnDefaultWebSecurity
-@Import({ GatewaySecurityConfiguration.class, AccessRulesConfiguration.class })
+@Import({ GatewaySecurityConfiguration.class, AccessRulesConfiguration.class, LoginAdmissionConfiguration.class })
 public class WebSecurityAutoConfiguration {
 }
@@ -20,17 +20,18 @@ package org.georchestra.gateway.filter.global;
 
 import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
 
-import java.net.URI;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.georchestra.gateway.model.GatewayConfigProperties;
 import org.georchestra.gateway.model.GeorchestraTargetConfig;
-import org.georchestra.gateway.model.Service;
 import org.georchestra.gateway.security.ResolveGeorchestraUserGlobalFilter;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
 import org.springframework.cloud.gateway.route.Route;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.Ordered;
 import org.springframework.web.server.ServerWebExchange;
 
@@ -47,15 +48,27 @@ import reactor.core.publisher.Mono;
  * {@link GeorchestraTargetConfig#setTarget stores} it to be
  * {@link GeorchestraTargetConfig#getTarget acquired} by non-global filters as
  * needed.
+ * <p>
+ * Target configs are looked up in a {@link RouteTargetConfigIndex} built out of
+ * {@link GatewayConfigProperties} the first time it's needed, and discarded
+ * whenever a {@link RefreshRoutesEvent} is published (which is also the case
+ * after a configuration refresh), so each request costs a single hash lookup
+ * and the resolved {@link GeorchestraTargetConfig} instances are shared.
  */
 @RequiredArgsConstructor
 @Slf4j
 public class ResolveTargetGlobalFilter implements GlobalFilter, Ordered {
 
-    public static final int ORDER = ResolveGeorchestraUserGlobalFilter.ORDER + 1;
+    /**
+     * Leaves {@code ResolveGeorchestraUserGlobalFilter.ORDER + 1} to the filter
+     * resolving the user's organization
+     */
+    public static final int ORDER = ResolveGeorchestraUserGlobalFilter.ORDER + 2;
 
     private final @NonNull GatewayConfigProperties config;
 
+    private final AtomicReference<RouteTargetConfigIndex> index = new AtomicReference<>();
+
     /**
      * @return a lower precedence than {@link RouteToRequestUrlFilter}'s, in order
      *         to make sure the matched {@link Route} has been set as a
@@ -81,26 +94,28 @@ public class ResolveTargetGlobalFilter implements GlobalFilter, Ordered {
         return chain.filter(exchange);
     }
 
+    /**
+     * Discards the current {@link RouteTargetConfigIndex}, forcing it to be
+     * rebuilt out of the (possibly re-bound) {@link GatewayConfigProperties} on
+     * the next request.
+     */
+    @EventListener(RefreshRoutesEvent.class)
+    public void invalidateIndex() {
+        log.debug("Routes refreshed, discarding geOrchestra target configs index");
+        index.set(null);
+    }
+
     @VisibleForTesting
     @NonNull
     GeorchestraTargetConfig resolveTarget(@NonNull Route route) {
+        return index().resolve(route);
+    }
 
-        GeorchestraTargetConfig target = new GeorchestraTargetConfig().headers(config.getDefaultHeaders())
-                .accessRules(config.getGlobalAccessRules());
-
-        final URI routeURI = route.getUri();
-
-        for (Service service : config.getServices().values()) {
-            var serviceURI = service.getTarget();
-            if (Objects.equals(routeURI, serviceURI)) {
-                if (!service.getAccessRules().isEmpty())
-                    target.accessRules(service.getAccessRules());
-                if (service.getHeaders().isPresent())
-                    target.headers(service.getHeaders().get());
-                break;
-            }
+    private RouteTargetConfigIndex index() {
+        RouteTargetConfigIndex current = index.get();
+        if (current == null) {
+            current = index.updateAndGet(idx -> idx == null ? new RouteTargetConfigIndex(config) : idx);
         }
-        return target;
+        return current;
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.global;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.Service;
+import org.springframework.cloud.gateway.route.Route;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Immutable snapshot of the {@link GeorchestraTargetConfig} that applies to
+ * each configured {@link Service#getTarget() service URI}, built once out of
+ * {@link GatewayConfigProperties} so that resolving the target config for a
+ * matched {@link Route} is a hash lookup instead of a linear scan over all
+ * services.
+ * <p>
+ * The {@link GeorchestraTargetConfig} instances held by this index are shared
+ * across requests and must be treated as read-only.
+ * <p>
+ * Lookups are keyed by {@link Route#getId() route id} first, lazily associating
+ * each route id with the target resolved for its {@link Route#getUri() URI}.
+ * Since a route's URI can only change when the routes are refreshed, a new
+ * index shall be created whenever that happens.
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.global")
+class RouteTargetConfigIndex {
+
+    private final GeorchestraTargetConfig defaultTarget;
+
+    private final Map<URI, GeorchestraTargetConfig> byServiceURI;
+
+    private final ConcurrentMap<String, GeorchestraTargetConfig> byRouteId = new ConcurrentHashMap<>();
+
+    RouteTargetConfigIndex(@NonNull GatewayConfigProperties config) {
+        this.defaultTarget = new GeorchestraTargetConfig().headers(config.getDefaultHeaders())
+                .accessRules(config.getGlobalAccessRules());
+
+        Map<URI, GeorchestraTargetConfig> index = new HashMap<>();
+        for (Service service : config.getServices().values()) {
+            // first service wins, as the former linear scan did
+            index.computeIfAbsent(service.getTarget(), uri -> serviceTarget(service));
+        }
+        this.byServiceURI = Collections.unmodifiableMap(index);
+        log.debug("Indexed geOrchestra target configs for {} service URIs", byServiceURI.size());
+    }
+
+    private GeorchestraTargetConfig serviceTarget(Service service) {
+        GeorchestraTargetConfig target = new GeorchestraTargetConfig()//
+                .headers(defaultTarget.headers())//
+                .accessRules(defaultTarget.accessRules());
+
+        if (!service.getAccessRules().isEmpty())
+            target.accessRules(service.getAccessRules());
+        if (service.getHeaders().isPresent())
+            target.headers(service.getHeaders().get());
+        return target;
+    }
+
+    /**
+     * @return the shared target config for the route's URI, or the global one if
+     *         no service is configured for it
+     */
+    public @NonNull GeorchestraTargetConfig resolve(@NonNull Route route) {
+        final String routeId = route.getId();
+        if (routeId == null) {
+            return resolve(route.getUri());
+        }
+        GeorchestraTargetConfig target = byRouteId.get(routeId);
+        if (target == null) {
+            target = resolve(route.getUri());
+            byRouteId.putIfAbsent(routeId, target);
+        }
+        return target;
+    }
+
+    public @NonNull GeorchestraTargetConfig resolve(URI routeURI) {
+        GeorchestraTargetConfig target = routeURI == null ? null : byServiceURI.get(routeURI);
+        return target == null ? defaultTarget : target;
+    }
+}
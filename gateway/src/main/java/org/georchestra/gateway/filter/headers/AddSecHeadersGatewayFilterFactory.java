@@ -30,7 +30,6 @@ import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.server.ServerWebExchange;
 
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import reactor.core.publisher.Mono;
 
 public class AddSecHeadersGatewayFilterFactory
@@ -51,19 +50,21 @@ public class AddSecHeadersGatewayFilterFactory
         return new AddSecHeadersGatewayFilter(providers);
     }
 
-    @RequiredArgsConstructor
     private static class AddSecHeadersGatewayFilter implements GatewayFilter, Ordered {
 
-        private final @NonNull List<HeaderContributor> providers;
+        private final HeaderContributor[] providers;
 
-        public @Override Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-            ServerHttpRequest.Builder requestBuilder = exchange.getRequest().mutate();
-
-            providers.stream()//
-                    .map(provider -> provider.prepare(exchange))//
-                    .forEach(requestBuilder::headers);
+        AddSecHeadersGatewayFilter(@NonNull List<HeaderContributor> providers) {
+            this.providers = providers.toArray(new HeaderContributor[providers.size()]);
+        }
 
-            ServerHttpRequest request = requestBuilder.build();
+        public @Override Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            // a single consumer for all the contributors
+            ServerHttpRequest request = exchange.getRequest().mutate().headers(headers -> {
+                for (int i = 0; i < providers.length; i++) {
+                    providers[i].contribute(exchange, headers);
+                }
+            }).build();
             ServerWebExchange updatedExchange = exchange.mutate().request(request).build();
             return chain.filter(updatedExchange);
         }
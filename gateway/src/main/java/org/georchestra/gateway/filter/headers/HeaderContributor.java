@@ -57,6 +57,18 @@ public abstract class HeaderContributor implements Ordered {
      */
     public abstract Consumer<HttpHeaders> prepare(ServerWebExchange exchange);
 
+    /**
+     * Sets or adds the request headers appropriate for the backend service to
+     * {@code target}, as the consumer returned by {@link #prepare} does.
+     * <p>
+     * This is what {@link AddSecHeadersGatewayFilterFactory} calls for each
+     * request. The default implementation delegates to {@link #prepare},
+     * implementations may override it to avoid allocating a consumer per request.
+     */
+    public void contribute(ServerWebExchange exchange, HttpHeaders target) {
+        prepare(exchange).accept(target);
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.headers;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Matches HTTP header names against a Java regular expression.
+ * <p>
+ * Expressions that are a plain alternation of literal names and name prefixes,
+ * like {@code (?i)(sec-.*|Authorization)}, are compiled to a prefix trie that
+ * matches a header name in a single pass over its characters. Any other
+ * expression is matched with a regular {@link Pattern}.
+ * <p>
+ * The case insensitive flag is only recognized as a leading {@code (?i)}, and
+ * as for {@link Pattern#CASE_INSENSITIVE}, only folds US-ASCII characters.
+ */
+abstract class HeaderNameMatcher {
+
+    private static final String CASE_INSENSITIVE_FLAG = "(?i)";
+
+    private static final String ANY_SUFFIX = ".*";
+
+    public abstract boolean matches(@NonNull String headerName);
+
+    public static HeaderNameMatcher compile(@NonNull String regEx) {
+        // fail early on invalid expressions, regardless of how they'll be matched
+        Pattern pattern = Pattern.compile(regEx);
+        HeaderNameMatcher trie = Trie.compile(regEx);
+        return trie == null ? new RegEx(pattern) : trie;
+    }
+
+    @RequiredArgsConstructor
+    static class RegEx extends HeaderNameMatcher {
+        private final @NonNull Pattern pattern;
+
+        public @Override boolean matches(@NonNull String headerName) {
+            return pattern.matcher(headerName).matches();
+        }
+
+        public @Override String toString() {
+            return "RegEx[" + pattern + "]";
+        }
+    }
+
+    static class Trie extends HeaderNameMatcher {
+
+        private final boolean caseInsensitive;
+
+        private final Node root = new Node();
+
+        private Trie(boolean caseInsensitive) {
+            this.caseInsensitive = caseInsensitive;
+        }
+
+        /**
+         * @return the compiled trie, or {@code null} if the expression is not an
+         *         alternation of literals and literal prefixes
+         */
+        static Trie compile(String regEx) {
+            String expression = regEx;
+            boolean caseInsensitive = expression.startsWith(CASE_INSENSITIVE_FLAG);
+            if (caseInsensitive) {
+                expression = expression.substring(CASE_INSENSITIVE_FLAG.length());
+            }
+            if (expression.startsWith("(?:") && expression.endsWith(")")) {
+                expression = expression.substring(3, expression.length() - 1);
+            } else if (expression.startsWith("(") && expression.endsWith(")")) {
+                expression = expression.substring(1, expression.length() - 1);
+            }
+            // nested groups, or the outer parenthesis didn't enclose the whole expression
+            if (expression.indexOf('(') > -1 || expression.indexOf(')') > -1) {
+                return null;
+            }
+            Trie trie = new Trie(caseInsensitive);
+            for (String alternative : expression.split("\\|", -1)) {
+                boolean prefix = alternative.endsWith(ANY_SUFFIX);
+                String literal = prefix ? alternative.substring(0, alternative.length() - ANY_SUFFIX.length())
+                        : alternative;
+                if (literal.isEmpty() && !prefix || !isLiteral(literal)) {
+                    return null;
+                }
+                trie.add(literal, prefix);
+            }
+            return trie;
+        }
+
+        private static boolean isLiteral(String literal) {
+            for (int i = 0; i < literal.length(); i++) {
+                char c = literal.charAt(i);
+                boolean literalChar = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                        || c == '-' || c == '_';
+                if (!literalChar) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private char fold(char c) {
+            return caseInsensitive && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+
+        private void add(String literal, boolean prefix) {
+            Node node = root;
+            for (int i = 0; i < literal.length(); i++) {
+                node = node.childOrCreate(fold(literal.charAt(i)));
+            }
+            if (prefix) {
+                node.prefix = true;
+            } else {
+                node.terminal = true;
+            }
+        }
+
+        public @Override boolean matches(@NonNull String headerName) {
+            Node node = root;
+            final int length = headerName.length();
+            for (int i = 0; i < length; i++) {
+                if (node.prefix) {
+                    return true;
+                }
+                node = node.child(fold(headerName.charAt(i)));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return node.terminal || node.prefix;
+        }
+
+        public @Override String toString() {
+            return "Trie[caseInsensitive=" + caseInsensitive + "]";
+        }
+    }
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        boolean terminal;
+        boolean prefix;
+
+        Node child(char c) {
+            final char[] k = keys;
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.headers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.georchestra.gateway.model.HeaderMappings;
+import org.springframework.http.HttpHeaders;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The {@link Header headers} enabled by a given {@link HeaderMappings}, compiled
+ * once to a flat array so that appending them to a request is a single pass
+ * over the enabled headers, without re-evaluating each header's
+ * {@code Optional<Boolean>} flag. {@link #apply} allocates no streams, lambdas,
+ * nor {@code Optional}s, and neither do the contributors'
+ * {@link HeaderContributor#contribute contribute} methods using it.
+ *
+ * @param <T> the type of object the header values are extracted from (e.g.
+ *            {@code GeorchestraUser})
+ * @see Compiler
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.headers")
+public final class HeaderPlan<T> {
+
+    /**
+     * A header that may be enabled by a {@link HeaderMappings}
+     */
+    @RequiredArgsConstructor
+    public static final class Header<T> {
+        private final @NonNull String name;
+        private final @NonNull Function<HeaderMappings, Optional<Boolean>> enabled;
+        private final @NonNull Function<T, String> value;
+
+        public static <T> Header<T> of(@NonNull String name,
+                @NonNull Function<HeaderMappings, Optional<Boolean>> enabled, @NonNull Function<T, String> value) {
+            return new Header<>(name, enabled, value);
+        }
+
+        boolean isEnabled(HeaderMappings mappings) {
+            return enabled.apply(mappings).orElse(Boolean.FALSE).booleanValue();
+        }
+    }
+
+    private final Header<T>[] headers;
+
+    private HeaderPlan(Header<T>[] headers) {
+        this.headers = headers;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> HeaderPlan<T> compile(@NonNull HeaderMappings mappings, @NonNull List<Header<T>> candidates) {
+        List<Header<T>> enabled = new ArrayList<>(candidates.size());
+        for (Header<T> header : candidates) {
+            if (header.isEnabled(mappings)) {
+                enabled.add(header);
+            } else {
+                log.trace("Header {} is not enabled", header.name);
+            }
+        }
+        return new HeaderPlan<>(enabled.toArray(new Header[enabled.size()]));
+    }
+
+    public boolean isEmpty() {
+        return headers.length == 0;
+    }
+
+    /**
+     * Adds the enabled headers whose value, as extracted from {@code source}, is
+     * not {@code null}
+     */
+    public void apply(T source, @NonNull HttpHeaders target) {
+        if (source == null) {
+            return;
+        }
+        for (int i = 0; i < headers.length; i++) {
+            final Header<T> header = headers[i];
+            final String value = header.value.apply(source);
+            if (null == value) {
+                log.trace("Value for header {} is not present", header.name);
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("Appending header {}: {}", header.name, value);
+                }
+                target.add(header.name, value);
+            }
+        }
+    }
+
+    /**
+     * Compiles and holds on to the {@link HeaderPlan} for each
+     * {@link HeaderMappings} instance.
+     * <p>
+     * Plans are keyed by {@link HeaderMappings} identity and weakly referenced, so
+     * they're discarded along with the target configs they were compiled for.
+     * Since {@link HeaderMappings} are mutable and may be re-bound in place upon a
+     * configuration refresh, {@link #invalidateAll()} shall be called when that
+     * happens.
+     */
+    public static final class Compiler<T> {
+
+        private final LoadingCache<HeaderMappings, HeaderPlan<T>> plans;
+
+        public Compiler(@NonNull List<Header<T>> candidates) {
+            final List<Header<T>> headers = List.copyOf(candidates);
+            this.plans = CacheBuilder.newBuilder().weakKeys().build(new CacheLoader<HeaderMappings, HeaderPlan<T>>() {
+                public @Override HeaderPlan<T> load(HeaderMappings mappings) {
+                    return HeaderPlan.compile(mappings, headers);
+                }
+            });
+        }
+
+        public HeaderPlan<T> plan(@NonNull HeaderMappings mappings) {
+            return plans.getUnchecked(mappings);
+        }
+
+        public void invalidateAll() {
+            plans.invalidateAll();
+        }
+    }
+}
@@ -19,10 +19,9 @@
 package org.georchestra.gateway.filter.headers;
 
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
-import java.util.regex.Pattern;
 
 import org.georchestra.gateway.filter.headers.RemoveHeadersGatewayFilterFactory.RegExConfig;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
@@ -40,6 +39,11 @@ import lombok.extern.slf4j.Slf4j;
  * {@link GatewayFilterFactory} to remove incoming HTTP request headers whose
  * names match a Java regular expression.
  * <p>
+ * Expressions made of literal header names and name prefixes, like the one
+ * below, are matched with a prefix trie instead of a regular expression
+ * matcher, see {@link HeaderNameMatcher}. The request is only mutated if it has
+ * any header to remove.
+ * <p>
  * Use a {@code RemoveHeaders=<regular expression>} filter in a
  * {@code spring.cloud.gateway.routes.filters} route config to remove all
  * incoming request headers matching the regex.
@@ -91,7 +95,7 @@ public class RemoveHeadersGatewayFilterFactory extends AbstractGatewayFilterFact
 
         private @Getter String regEx;
 
-        private transient Pattern compiled;
+        private transient HeaderNameMatcher compiled;
 
         public RegExConfig(String regEx) {
             setRegEx(regEx);
@@ -100,27 +104,37 @@ public class RemoveHeadersGatewayFilterFactory extends AbstractGatewayFilterFact
         public void setRegEx(String regEx) {
             Objects.requireNonNull(regEx, "regular expression can't be null");
             this.regEx = regEx;
-            this.compiled = Pattern.compile(regEx);
+            this.compiled = HeaderNameMatcher.compile(regEx);
         }
 
-        private Pattern pattern() {
+        private HeaderNameMatcher matcher() {
             Objects.requireNonNull(compiled, "regular expression can't be null");
             return compiled;
         }
 
         boolean matches(@NonNull String headerName) {
-            return pattern().matcher(headerName).matches();
+            return matcher().matches(headerName);
         }
 
         boolean anyMatches(@NonNull HttpHeaders headers) {
-            return headers.keySet().stream().anyMatch(this::matches);
+            final HeaderNameMatcher matcher = matcher();
+            for (String name : headers.keySet()) {
+                if (matcher.matches(name)) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         void removeMatching(@NonNull HttpHeaders headers) {
-            new HashSet<>(headers.keySet()).stream()//
-                    .filter(this::matches)//
-                    .peek(name -> log.trace("Removing header {}", name))//
-                    .forEach(headers::remove);
+            final HeaderNameMatcher matcher = matcher();
+            for (Iterator<String> names = headers.keySet().iterator(); names.hasNext();) {
+                String name = names.next();
+                if (matcher.matches(name)) {
+                    log.trace("Removing header {}", name);
+                    names.remove();
+                }
+            }
         }
     }
 
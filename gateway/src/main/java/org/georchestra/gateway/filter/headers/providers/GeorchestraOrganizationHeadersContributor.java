@@ -18,28 +18,47 @@
  */
 package org.georchestra.gateway.filter.headers.providers;
 
-import java.util.Optional;
+import java.util.List;
 import java.util.function.Consumer;
 
 import org.georchestra.gateway.filter.headers.HeaderContributor;
+import org.georchestra.gateway.filter.headers.HeaderPlan;
+import org.georchestra.gateway.filter.headers.HeaderPlan.Header;
 import org.georchestra.gateway.model.GeorchestraOrganizations;
 import org.georchestra.gateway.model.GeorchestraTargetConfig;
+import org.georchestra.gateway.model.HeaderMappings;
 import org.georchestra.security.model.Organization;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.server.ServerWebExchange;
 
 public class GeorchestraOrganizationHeadersContributor extends HeaderContributor {
 
+    private static final List<Header<Organization>> HEADERS = List.of(//
+            Header.of("sec-orgname", HeaderMappings::getOrgname, Organization::getName), //
+            Header.of("sec-orgid", HeaderMappings::getOrgid, Organization::getId), //
+            Header.of("sec-org-lastupdated", HeaderMappings::getOrgid, Organization::getLastUpdated)//
+    );
+
+    private final HeaderPlan.Compiler<Organization> plans = new HeaderPlan.Compiler<>(HEADERS);
+
     public @Override Consumer<HttpHeaders> prepare(ServerWebExchange exchange) {
-        return headers -> {
-            GeorchestraTargetConfig.getTarget(exchange)//
-                    .map(GeorchestraTargetConfig::headers)//
-                    .ifPresent(mappings -> {
-                        Optional<Organization> org = GeorchestraOrganizations.resolve(exchange);
-                        add(headers, "sec-orgname", mappings.getOrgname(), org.map(Organization::getName));
-                        add(headers, "sec-orgid", mappings.getOrgid(), org.map(Organization::getId));
-                        add(headers, "sec-org-lastupdated", mappings.getOrgid(), org.map(Organization::getLastUpdated));
-                    });
-        };
+        return headers -> contribute(exchange, headers);
+    }
+
+    public @Override void contribute(ServerWebExchange exchange, HttpHeaders headers) {
+        GeorchestraTargetConfig target = GeorchestraTargetConfig.getTargetOrNull(exchange);
+        if (target != null && target.headers() != null) {
+            HeaderPlan<Organization> plan = plans.plan(target.headers());
+            if (!plan.isEmpty()) {
+                plan.apply(GeorchestraOrganizations.resolveOrNull(exchange), headers);
+            }
+        }
+    }
+
+    @EventListener(RefreshRoutesEvent.class)
+    public void invalidatePlans() {
+        plans.invalidateAll();
     }
 }
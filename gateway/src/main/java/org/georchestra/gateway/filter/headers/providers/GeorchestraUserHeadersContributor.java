@@ -19,49 +19,69 @@
 package org.georchestra.gateway.filter.headers.providers;
 
 import java.util.List;
-import java.util.Optional;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 import org.georchestra.gateway.filter.headers.HeaderContributor;
+import org.georchestra.gateway.filter.headers.HeaderPlan;
+import org.georchestra.gateway.filter.headers.HeaderPlan.Header;
 import org.georchestra.gateway.model.GeorchestraTargetConfig;
 import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.model.HeaderMappings;
 import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.server.ServerWebExchange;
 
 /**
  * Contributes user-related {@literal sec-*} request headers.
+ * <p>
+ * The headers enabled by each target's {@link HeaderMappings} are compiled
+ * once to a {@link HeaderPlan}, and re-compiled when the routes are refreshed.
  * 
  * @see GeorchestraUsers#resolve
  * @see GeorchestraTargetConfig
  */
 public class GeorchestraUserHeadersContributor extends HeaderContributor {
 
+    private static final List<Header<GeorchestraUser>> HEADERS = List.of(//
+            Header.of("sec-userid", HeaderMappings::getUserid, GeorchestraUser::getId), //
+            Header.of("sec-username", HeaderMappings::getUsername, GeorchestraUser::getUsername), //
+            Header.of("sec-org", HeaderMappings::getOrg, GeorchestraUser::getOrganization), //
+            Header.of("sec-email", HeaderMappings::getEmail, GeorchestraUser::getEmail), //
+            Header.of("sec-firstname", HeaderMappings::getFirstname, GeorchestraUser::getFirstName), //
+            Header.of("sec-lastname", HeaderMappings::getLastname, GeorchestraUser::getLastName), //
+            Header.of("sec-tel", HeaderMappings::getTel, GeorchestraUser::getTelephoneNumber), //
+            Header.of("sec-roles", HeaderMappings::getRoles, GeorchestraUserHeadersContributor::roles), //
+            Header.of("sec-lastupdated", HeaderMappings::getLastUpdated, GeorchestraUser::getLastUpdated), //
+            Header.of("sec-address", HeaderMappings::getAddress, GeorchestraUser::getPostalAddress), //
+            Header.of("sec-title", HeaderMappings::getTitle, GeorchestraUser::getTitle), //
+            Header.of("sec-notes", HeaderMappings::getNotes, GeorchestraUser::getNotes)//
+    );
+
+    private final HeaderPlan.Compiler<GeorchestraUser> plans = new HeaderPlan.Compiler<>(HEADERS);
+
     public @Override Consumer<HttpHeaders> prepare(ServerWebExchange exchange) {
-        return headers -> {
-            GeorchestraTargetConfig.getTarget(exchange)//
-                    .map(GeorchestraTargetConfig::headers)//
-                    .ifPresent(mappings -> {
-                        Optional<GeorchestraUser> user = GeorchestraUsers.resolve(exchange);
-                        add(headers, "sec-userid", mappings.getUserid(), user.map(GeorchestraUser::getId));
-                        add(headers, "sec-username", mappings.getUsername(), user.map(GeorchestraUser::getUsername));
-                        add(headers, "sec-org", mappings.getOrg(), user.map(GeorchestraUser::getOrganization));
-                        add(headers, "sec-email", mappings.getEmail(), user.map(GeorchestraUser::getEmail));
-                        add(headers, "sec-firstname", mappings.getFirstname(), user.map(GeorchestraUser::getFirstName));
-                        add(headers, "sec-lastname", mappings.getLastname(), user.map(GeorchestraUser::getLastName));
-                        add(headers, "sec-tel", mappings.getTel(), user.map(GeorchestraUser::getTelephoneNumber));
+        return headers -> contribute(exchange, headers);
+    }
 
-                        List<String> roles = user.map(GeorchestraUser::getRoles).orElse(List.of());
+    public @Override void contribute(ServerWebExchange exchange, HttpHeaders headers) {
+        GeorchestraTargetConfig target = GeorchestraTargetConfig.getTargetOrNull(exchange);
+        if (target != null && target.headers() != null) {
+            HeaderPlan<GeorchestraUser> plan = plans.plan(target.headers());
+            if (!plan.isEmpty()) {
+                plan.apply(GeorchestraUsers.resolveOrNull(exchange), headers);
+            }
+        }
+    }
 
-                        add(headers, "sec-roles", mappings.getRoles(), roles);
+    @EventListener(RefreshRoutesEvent.class)
+    public void invalidatePlans() {
+        plans.invalidateAll();
+    }
 
-                        add(headers, "sec-lastupdated", mappings.getLastUpdated(),
-                                user.map(GeorchestraUser::getLastUpdated));
-                        add(headers, "sec-address", mappings.getAddress(), user.map(GeorchestraUser::getPostalAddress));
-                        add(headers, "sec-title", mappings.getTitle(), user.map(GeorchestraUser::getTitle));
-                        add(headers, "sec-notes", mappings.getNotes(), user.map(GeorchestraUser::getNotes));
-                    });
-        };
+    private static String roles(GeorchestraUser user) {
+        List<String> roles = user.getRoles();
+        return roles == null || roles.isEmpty() ? null : String.join(";", roles);
     }
 }
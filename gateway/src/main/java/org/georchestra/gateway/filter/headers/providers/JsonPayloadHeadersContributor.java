@@ -24,6 +24,7 @@ import java.util.function.Consumer;
 import org.georchestra.commons.security.SecurityHeaders;
 import org.georchestra.ds.security.OrganizationsApiImpl;
 import org.georchestra.gateway.filter.headers.HeaderContributor;
+import org.georchestra.gateway.model.EncodedPayload;
 import org.georchestra.gateway.model.GeorchestraOrganizations;
 import org.georchestra.gateway.model.GeorchestraTargetConfig;
 import org.georchestra.gateway.model.GeorchestraUsers;
@@ -36,6 +37,7 @@ import org.springframework.web.server.ServerWebExchange;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
 /**
@@ -44,6 +46,13 @@ import com.fasterxml.jackson.databind.SerializationFeature;
  * and {@link HeaderMappings#getJsonOrganization()} matched-route headers
  * configuration.
  * 
+ * <p>
+ * The encoded values are memoized in the {@link EncodedPayload} stored along
+ * with the resolved {@link GeorchestraUser} and {@link Organization}, which are
+ * resolved once and reused across the requests of a session. A re-resolved user
+ * or organization comes with a new {@link EncodedPayload}, and hence gets
+ * encoded again.
+ * 
  * @see GeorchestraUsers#resolve
  * @see GeorchestraOrganizations#resolve
  * @see GeorchestraTargetConfig
@@ -54,13 +63,14 @@ public class JsonPayloadHeadersContributor extends HeaderContributor {
      * Encoder to create the JSON String value for a {@link GeorchestraUser}
      * obtained from {@link OrganizationsApiImpl}
      */
-    private ObjectMapper encoder;
+    private final ObjectWriter encoder;
 
     public JsonPayloadHeadersContributor() {
-        this.encoder = new ObjectMapper();
-        this.encoder.configure(SerializationFeature.INDENT_OUTPUT, Boolean.FALSE);
-        this.encoder.configure(SerializationFeature.WRITE_SINGLE_ELEM_ARRAYS_UNWRAPPED, Boolean.FALSE);
-        this.encoder.setSerializationInclusion(Include.NON_NULL);
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(SerializationFeature.INDENT_OUTPUT, Boolean.FALSE);
+        mapper.configure(SerializationFeature.WRITE_SINGLE_ELEM_ARRAYS_UNWRAPPED, Boolean.FALSE);
+        mapper.setSerializationInclusion(Include.NON_NULL);
+        this.encoder = mapper.writer();
     }
 
     public @Override Consumer<HttpHeaders> prepare(ServerWebExchange exchange) {
@@ -71,23 +81,31 @@ public class JsonPayloadHeadersContributor extends HeaderContributor {
                         Optional<GeorchestraUser> user = GeorchestraUsers.resolve(exchange);
                         Optional<Organization> org = GeorchestraOrganizations.resolve(exchange);
 
-                        addJson(headers, "sec-user", mappings.getJsonUser(), user);
-                        addJson(headers, "sec-organization", mappings.getJsonOrganization(), org);
+                        addJson(headers, "sec-user", mappings.getJsonUser(), user,
+                                GeorchestraUsers.payload(exchange));
+                        addJson(headers, "sec-organization", mappings.getJsonOrganization(), org,
+                                GeorchestraOrganizations.payload(exchange));
                     });
         };
     }
 
-    private void addJson(HttpHeaders target, String headerName, Optional<Boolean> enabled, Optional<?> toEncode) {
-        if (enabled.orElse(false)) {
-            toEncode.map(this::encodeJson)//
-                    .map(this::encodeBase64)//
-                    .ifPresent(encoded -> target.add(headerName, encoded));
+    private void addJson(HttpHeaders target, String headerName, Optional<Boolean> enabled, Optional<?> toEncode,
+            Optional<EncodedPayload> payload) {
+        if (enabled.orElse(false) && toEncode.isPresent()) {
+            final Object payloadObject = toEncode.get();
+            String value = payload.map(p -> p.get(() -> encode(payloadObject)))//
+                    .orElseGet(() -> encode(payloadObject));
+            target.add(headerName, value);
         }
     }
 
+    private String encode(Object payloadObject) {
+        return encodeBase64(encodeJson(payloadObject));
+    }
+
     private String encodeJson(Object payloadObject) {
         try {
-            return this.encoder.writer().writeValueAsString(payloadObject);
+            return this.encoder.writeValueAsString(payloadObject);
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
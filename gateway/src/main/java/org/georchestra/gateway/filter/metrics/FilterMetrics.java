@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.filter.metrics;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Records how long each instrumented filter takes before proceeding with the
+ * filter chain, as {@value #TIMER_NAME} timers tagged by {@literal filter},
+ * {@literal route}, and {@literal outcome}:
+ * <ul>
+ * <li>{@literal proceed}: the filter called the next one in the chain, the
+ * timer measures the filter's own work, excluding the downstream filters and
+ * the proxied service;
+ * <li>{@literal complete}: the filter completed without calling the chain
+ * (e.g. it wrote the response itself);
+ * <li>{@literal error}: the filter failed before calling the chain;
+ * <li>{@literal cancel}: the request was cancelled before the filter called the
+ * chain.
+ * </ul>
+ * <p>
+ * If enabled, a sample of the requests also records the bytes allocated by
+ * each filter on the calling thread, as {@value #ALLOCATED_NAME} distribution
+ * summaries tagged by {@literal filter} and {@literal route}.
+ * 
+ * @see FilterMetricsBeanPostProcessor
+ */
+@Slf4j(topic = "org.georchestra.gateway.filter.metrics")
+public class FilterMetrics {
+
+    public static final String TIMER_NAME = "georchestra.gateway.filter";
+
+    public static final String ALLOCATED_NAME = "georchestra.gateway.filter.allocated";
+
+    static final String UNKNOWN_ROUTE = "unknown";
+
+    enum Outcome {
+        PROCEED, COMPLETE, ERROR, CANCEL;
+
+        final String tag = name().toLowerCase();
+    }
+
+    private final @NonNull MeterRegistry registry;
+
+    private final @NonNull FilterMetricsConfigProperties config;
+
+    /**
+     * {@code null} if allocation sampling is disabled or not supported by the JVM
+     */
+    private final com.sun.management.ThreadMXBean threads;
+
+    private final ConcurrentMap<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<MeterKey, DistributionSummary> allocations = new ConcurrentHashMap<>();
+
+    public FilterMetrics(@NonNull MeterRegistry registry, @NonNull FilterMetricsConfigProperties config) {
+        this.registry = registry;
+        this.config = config;
+        this.threads = config.getAllocation().isEnabled() ? allocationCounter() : null;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        log.warn("Thread allocated memory is not supported by this JVM, filters allocation won't be sampled");
+        return null;
+    }
+
+    /**
+     * Calls {@code filter} with a {@link GatewayFilterChain} that stops the
+     * {@literal filter}'s timer when called.
+     */
+    public Mono<Void> filter(@NonNull String filterName, @NonNull ServerWebExchange exchange,
+            @NonNull GatewayFilterChain chain,
+            @NonNull BiFunction<ServerWebExchange, GatewayFilterChain, Mono<Void>> filter) {
+
+        return Mono.defer(() -> {
+            final Invocation invocation = new Invocation(filterName, routeId(exchange), chain, sampleAllocation());
+            final Mono<Void> result;
+            try {
+                result = filter.apply(exchange, invocation);
+            } catch (RuntimeException e) {
+                invocation.stop(Outcome.ERROR);
+                throw e;
+            }
+            return result//
+                    .doOnError(e -> invocation.stop(Outcome.ERROR))//
+                    .doFinally(signal -> invocation
+                            .stop(signal == SignalType.CANCEL ? Outcome.CANCEL : Outcome.COMPLETE));
+        });
+    }
+
+    private String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        return route == null || route.getId() == null ? UNKNOWN_ROUTE : route.getId();
+    }
+
+    private boolean sampleAllocation() {
+        return threads != null && ThreadLocalRandom.current().nextDouble() < config.getAllocation().getSampleRate();
+    }
+
+    @VisibleForTesting
+    Timer timer(String filter, String route, Outcome outcome) {
+        return timers.computeIfAbsent(new MeterKey(filter, route, outcome.tag), key -> Timer.builder(TIMER_NAME)//
+                .description("Time spent in a geOrchestra gateway filter before proceeding with the filter chain")//
+                .tag("filter", key.getFilter())//
+                .tag("route", key.getRoute())//
+                .tag("outcome", key.getOutcome())//
+                .publishPercentiles(config.percentilesArray())//
+                .publishPercentileHistogram(config.isPercentilesHistogram())//
+                .serviceLevelObjectives(config.sloArray())//
+                .register(registry));
+    }
+
+    @VisibleForTesting
+    DistributionSummary allocated(String filter, String route) {
+        return allocations.computeIfAbsent(new MeterKey(filter, route, ""), key -> DistributionSummary
+                .builder(ALLOCATED_NAME)//
+                .description("Bytes allocated by a geOrchestra gateway filter on the calling thread")//
+                .baseUnit(BaseUnits.BYTES)//
+                .tag("filter", key.getFilter())//
+                .tag("route", key.getRoute())//
+                .publishPercentiles(config.percentilesArray())//
+                .register(registry));
+    }
+
+    private static @Value class MeterKey {
+        private String filter;
+        private String route;
+        private String outcome;
+    }
+
+    /**
+     * A single filter invocation, stopped at the first of the chain being called
+     * or the filter's result terminating
+     */
+    private class Invocation implements GatewayFilterChain {
+
+        private final String filter;
+
+        private final String route;
+
+        private final GatewayFilterChain chain;
+
+        private final long start;
+
+        private final Thread thread;
+
+        private final long allocatedStart;
+
+        private volatile boolean stopped;
+
+        Invocation(String filter, String route, GatewayFilterChain chain, boolean sampleAllocation) {
+            this.filter = filter;
+            this.route = route;
+            this.chain = chain;
+            this.thread = Thread.currentThread();
+            this.allocatedStart = sampleAllocation ? threads.getThreadAllocatedBytes(thread.getId()) : -1;
+            this.start = System.nanoTime();
+        }
+
+        public @Override Mono<Void> filter(ServerWebExchange exchange) {
+            stop(Outcome.PROCEED);
+            return chain.filter(exchange);
+        }
+
+        void stop(Outcome outcome) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            final long elapsed = System.nanoTime() - start;
+            // allocations on other threads (e.g. after a blocking call) can't be accounted for
+            if (allocatedStart >= 0 && Thread.currentThread() == thread) {
+                long allocated = threads.getThreadAllocatedBytes(thread.getId()) - allocatedStart;
+                allocated(filter, route).record(allocated);
+            }
+            timer(filter, route, outcome).record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.filter.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.server.ServerWebExchange;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Instruments the geOrchestra {@link GlobalFilter}s and the
+ * {@link GatewayFilter}s created by the geOrchestra
+ * {@link GatewayFilterFactory}s with {@link FilterMetrics}.
+ * <p>
+ * The beans are replaced by class-based proxies, hence they keep their type
+ * and can still be looked up by it. Global filters are tagged by their simple
+ * class name, and gateway filters by their factory's {@link
+ * GatewayFilterFactory#name() name}.
+ */
+@RequiredArgsConstructor
+@Slf4j(topic = "org.georchestra.gateway.filter.metrics")
+class FilterMetricsBeanPostProcessor implements BeanPostProcessor {
+
+    private static final String GEORCHESTRA_PACKAGE = "org.georchestra.gateway.";
+
+    private final @NonNull ObjectProvider<FilterMetrics> metrics;
+
+    public @Override Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof GlobalFilter || bean instanceof GatewayFilterFactory)
+                || !ClassUtils.getUserClass(bean).getName().startsWith(GEORCHESTRA_PACKAGE)) {
+            return bean;
+        }
+        if (AopUtils.isAopProxy(bean)) {
+            log.warn("Not instrumenting filter bean {}, it's already a proxy", beanName);
+            return bean;
+        }
+        FilterMetrics filterMetrics = metrics.getIfAvailable();
+        if (filterMetrics == null) {
+            return bean;
+        }
+        final MethodInterceptor interceptor;
+        final String filterName;
+        if (bean instanceof GlobalFilter) {
+            filterName = ClassUtils.getUserClass(bean).getSimpleName();
+            interceptor = new GlobalFilterInterceptor(filterName, filterMetrics);
+        } else {
+            filterName = ((GatewayFilterFactory<?>) bean).name();
+            interceptor = new GatewayFilterFactoryInterceptor(filterName, filterMetrics);
+        }
+        log.info("Instrumenting filter {} (bean {})", filterName, beanName);
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        return proxyFactory.getProxy(ClassUtils.getDefaultClassLoader());
+    }
+
+    /**
+     * Times {@link GlobalFilter#filter}
+     */
+    @RequiredArgsConstructor
+    private static class GlobalFilterInterceptor implements MethodInterceptor {
+
+        private final @NonNull String name;
+
+        private final @NonNull FilterMetrics metrics;
+
+        public @Override Object invoke(MethodInvocation invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            if ("filter".equals(invocation.getMethod().getName()) && args.length == 2
+                    && args[0] instanceof ServerWebExchange && args[1] instanceof GatewayFilterChain) {
+                GlobalFilter target = (GlobalFilter) invocation.getThis();
+                return metrics.filter(name, (ServerWebExchange) args[0], (GatewayFilterChain) args[1],
+                        target::filter);
+            }
+            return invocation.proceed();
+        }
+    }
+
+    /**
+     * Decorates the {@link GatewayFilter}s created by the factory with an
+     * {@link InstrumentedGatewayFilter}
+     */
+    @RequiredArgsConstructor
+    private static class GatewayFilterFactoryInterceptor implements MethodInterceptor {
+
+        private final @NonNull String name;
+
+        private final @NonNull FilterMetrics metrics;
+
+        public @Override Object invoke(MethodInvocation invocation) throws Throwable {
+            Object result = invocation.proceed();
+            if (result instanceof GatewayFilter) {
+                return InstrumentedGatewayFilter.of(name, (GatewayFilter) result, metrics);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.filter.metrics;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Configuration properties for the opt-in {@link FilterMetrics
+ * instrumentation} of the geOrchestra global and gateway filters.
+ */
+@ConfigurationProperties(prefix = "georchestra.gateway.filter-metrics")
+public @Data class FilterMetricsConfigProperties {
+
+    /**
+     * Whether to time the geOrchestra filters, tagged by filter and route
+     */
+    private boolean enabled = false;
+
+    /**
+     * Client-side percentiles to publish for each filter timer
+     */
+    private List<Double> percentiles = List.of(0.5, 0.95, 0.99, 0.999);
+
+    /**
+     * Whether to publish histogram buckets suitable to compute aggregable
+     * percentiles on the monitoring system
+     */
+    private boolean percentilesHistogram = false;
+
+    /**
+     * Service level objectives, published as cumulative histogram buckets for each
+     * filter timer
+     */
+    private List<Duration> slo = List.of(Duration.ofMillis(1), Duration.ofMillis(5), Duration.ofMillis(10),
+            Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(500));
+
+    /**
+     * Per-request allocated bytes sampling
+     */
+    private Allocation allocation = new Allocation();
+
+    @Generated
+    public static @Data @Accessors(chain = true) class Allocation {
+
+        /**
+         * Whether to sample the bytes each filter allocates, as reported by the JVM's
+         * ThreadMXBean. Only the work a filter does on the calling thread is
+         * accounted for.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Ratio of the requests to sample, between 0 and 1
+         */
+        private double sampleRate = 0.01;
+    }
+
+    double[] percentilesArray() {
+        return percentiles.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    Duration[] sloArray() {
+        return slo.toArray(new Duration[slo.size()]);
+    }
+}
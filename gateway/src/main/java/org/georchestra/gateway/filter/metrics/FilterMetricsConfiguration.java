@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.filter.metrics;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Contributes the opt-in geOrchestra filters instrumentation, enabled through
+ * {@literal georchestra.gateway.filter-metrics.enabled=true}. The meters are
+ * published like any other, e.g. through the actuator's {@literal metrics}
+ * endpoint on the management port.
+ * 
+ * @see FilterMetricsConfigProperties
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = FilterMetricsConfiguration.ENABLED_PROP, havingValue = "true", matchIfMissing = false)
+@EnableConfigurationProperties(FilterMetricsConfigProperties.class)
+public class FilterMetricsConfiguration {
+
+    static final String ENABLED_PROP = "georchestra.gateway.filter-metrics.enabled";
+
+    /**
+     * @return the filters instrumentation, or {@code null} if there's no
+     *         {@link MeterRegistry}
+     */
+    public @Bean FilterMetrics filterMetrics(FilterMetricsConfigProperties config,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        return registry == null ? null : new FilterMetrics(registry, config);
+    }
+
+    /**
+     * Static, as {@link BeanPostProcessor}s are instantiated before the other
+     * beans, {@link FilterMetrics} is looked up lazily
+     */
+    public static @Bean BeanPostProcessor filterMetricsBeanPostProcessor(ObjectProvider<FilterMetrics> metrics) {
+        return new FilterMetricsBeanPostProcessor(metrics);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.filter.metrics;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.Ordered;
+import org.springframework.web.server.ServerWebExchange;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link GatewayFilter} decorator timing the decorated filter through
+ * {@link FilterMetrics}. Implements {@link Ordered} only if the decorated
+ * filter does, so the route's filters order is preserved.
+ */
+@RequiredArgsConstructor
+class InstrumentedGatewayFilter implements GatewayFilter {
+
+    private final @NonNull String name;
+
+    private final @NonNull GatewayFilter delegate;
+
+    private final @NonNull FilterMetrics metrics;
+
+    static GatewayFilter of(@NonNull String name, @NonNull GatewayFilter delegate, @NonNull FilterMetrics metrics) {
+        if (delegate instanceof InstrumentedGatewayFilter) {
+            return delegate;
+        }
+        if (delegate instanceof Ordered) {
+            return new OrderedInstrumentedGatewayFilter(name, delegate, metrics);
+        }
+        return new InstrumentedGatewayFilter(name, delegate, metrics);
+    }
+
+    public @Override Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        return metrics.filter(name, exchange, chain, delegate::filter);
+    }
+
+    public @Override String toString() {
+        return String.format("Instrumented[%s]", delegate);
+    }
+
+    private static class OrderedInstrumentedGatewayFilter extends InstrumentedGatewayFilter implements Ordered {
+
+        private final int order;
+
+        OrderedInstrumentedGatewayFilter(String name, GatewayFilter delegate, FilterMetrics metrics) {
+            super(name, delegate, metrics);
+            this.order = ((Ordered) delegate).getOrder();
+        }
+
+        public @Override int getOrder() {
+            return order;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2021 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.model;
+
+import java.util.function.Supplier;
+
+import lombok.NonNull;
+
+/**
+ * Encoded {@literal sec-user} or {@literal sec-organization} payload of a
+ * resolved user or organization, stored along with it so that it's encoded
+ * once for all the requests the resolved instance is reused for, and again once
+ * it's re-resolved.
+ *
+ * @see GeorchestraUsers#payload
+ * @see GeorchestraOrganizations#payload
+ */
+public class EncodedPayload {
+
+    private volatile String value;
+
+    /**
+     * @return the encoded value, computed by {@code encoder} on first use
+     */
+    public String get(@NonNull Supplier<String> encoder) {
+        String encoded = value;
+        if (encoded == null) {
+            // concurrent callers may encode it more than once, to the same value
+            encoded = encoder.get();
+            value = encoded;
+        }
+        return encoded;
+    }
+}
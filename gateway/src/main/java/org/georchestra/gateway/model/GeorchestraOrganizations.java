@@ -23,16 +23,47 @@ import java.util.Optional;
 import org.georchestra.security.model.Organization;
 import org.springframework.web.server.ServerWebExchange;
 
+import lombok.NonNull;
+
 public class GeorchestraOrganizations {
 
     static final String GEORCHESTRA_ORGANIZATION_KEY = GeorchestraOrganizations.class.getCanonicalName();
 
+    static final String GEORCHESTRA_ORGANIZATION_PAYLOAD_KEY = GEORCHESTRA_ORGANIZATION_KEY + ".payload";
+
     public static Optional<Organization> resolve(ServerWebExchange exchange) {
-        return Optional.ofNullable(exchange.getAttributes().get(GEORCHESTRA_ORGANIZATION_KEY))
-                .map(Organization.class::cast);
+        return Optional.ofNullable(resolveOrNull(exchange));
+    }
+
+    /**
+     * Same as {@link #resolve}, without allocating an {@link Optional}, for the
+     * per-request code paths
+     *
+     * @return the resolved organization, or {@code null}
+     */
+    public static Organization resolveOrNull(ServerWebExchange exchange) {
+        return (Organization) exchange.getAttributes().get(GEORCHESTRA_ORGANIZATION_KEY);
+    }
+
+    /**
+     * @return the encoded payload of the {@link #resolve resolved} organization
+     */
+    public static Optional<EncodedPayload> payload(ServerWebExchange exchange) {
+        return Optional.ofNullable(exchange.getAttributes().get(GEORCHESTRA_ORGANIZATION_PAYLOAD_KEY))
+                .map(EncodedPayload.class::cast);
     }
 
     public static void store(ServerWebExchange exchange, Organization org) {
+        store(exchange, org, new EncodedPayload());
+    }
+
+    /**
+     * Stores the resolved organization along with its encoded payload, which shall
+     * be the same for all the requests the same resolved organization instance is
+     * reused for
+     */
+    public static void store(ServerWebExchange exchange, Organization org, @NonNull EncodedPayload payload) {
         exchange.getAttributes().put(GEORCHESTRA_ORGANIZATION_KEY, org);
+        exchange.getAttributes().put(GEORCHESTRA_ORGANIZATION_PAYLOAD_KEY, payload);
     }
 }
\ No newline at end of file
@@ -43,8 +43,17 @@ public class GeorchestraTargetConfig {
     private List<RoleBasedAccessRule> accessRules;
 
     public static Optional<GeorchestraTargetConfig> getTarget(ServerWebExchange exchange) {
-        return Optional.ofNullable(exchange.getAttributes().get(TARGET_CONFIG_KEY))
-                .map(GeorchestraTargetConfig.class::cast);
+        return Optional.ofNullable(getTargetOrNull(exchange));
+    }
+
+    /**
+     * Same as {@link #getTarget}, without allocating an {@link Optional}, for the
+     * per-request code paths
+     *
+     * @return the matched route's target config, or {@code null}
+     */
+    public static GeorchestraTargetConfig getTargetOrNull(ServerWebExchange exchange) {
+        return (GeorchestraTargetConfig) exchange.getAttributes().get(TARGET_CONFIG_KEY);
     }
 
     public static void setTarget(ServerWebExchange exchange, GeorchestraTargetConfig config) {
@@ -30,16 +30,47 @@ public class GeorchestraUsers {
 
     static final String GEORCHESTRA_USER_KEY = GeorchestraUsers.class.getCanonicalName();
 
+    static final String GEORCHESTRA_USER_PAYLOAD_KEY = GEORCHESTRA_USER_KEY + ".payload";
+
     public static Optional<GeorchestraUser> resolve(ServerWebExchange exchange) {
-        return Optional.ofNullable(exchange.getAttributes().get(GEORCHESTRA_USER_KEY)).map(GeorchestraUser.class::cast);
+        return Optional.ofNullable(resolveOrNull(exchange));
+    }
+
+    /**
+     * Same as {@link #resolve}, without allocating an {@link Optional}, for the
+     * per-request code paths
+     *
+     * @return the resolved user, or {@code null}
+     */
+    public static GeorchestraUser resolveOrNull(ServerWebExchange exchange) {
+        return (GeorchestraUser) exchange.getAttributes().get(GEORCHESTRA_USER_KEY);
+    }
+
+    /**
+     * @return the encoded payload of the {@link #resolve resolved} user
+     */
+    public static Optional<EncodedPayload> payload(ServerWebExchange exchange) {
+        return Optional.ofNullable(exchange.getAttributes().get(GEORCHESTRA_USER_PAYLOAD_KEY))
+                .map(EncodedPayload.class::cast);
     }
 
     public static ServerWebExchange store(@NonNull ServerWebExchange exchange, GeorchestraUser user) {
+        return store(exchange, user, new EncodedPayload());
+    }
+
+    /**
+     * Stores the resolved user along with its encoded payload, which shall be the
+     * same for all the requests the same resolved user instance is reused for
+     */
+    public static ServerWebExchange store(@NonNull ServerWebExchange exchange, GeorchestraUser user,
+            @NonNull EncodedPayload payload) {
         Map<String, Object> attributes = exchange.getAttributes();
         if (user == null) {
             attributes.remove(GEORCHESTRA_USER_KEY);
+            attributes.remove(GEORCHESTRA_USER_PAYLOAD_KEY);
         } else {
             attributes.put(GEORCHESTRA_USER_KEY, user);
+            attributes.put(GEORCHESTRA_USER_PAYLOAD_KEY, payload);
         }
         return exchange;
     }
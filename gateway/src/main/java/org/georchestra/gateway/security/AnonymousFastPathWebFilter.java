@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.georchestra.gateway.security.accessrules.CompiledAccessRulesAuthorizationManager;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionIdResolver;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link WebFilter} running before the {@link SecurityWebFilterChain} that
+ * spares anonymous requests to public paths the web session handling.
+ * <p>
+ * A {@code GET} or {@code HEAD} request qualifies when it carries no session
+ * id and no {@code Authorization} header, and the access rule matching its
+ * path is {@literal anonymous}. Such a request can only be anonymous, so it's
+ * given a {@link WebSession} that's never stored instead of creating a new one,
+ * the security context is not looked up, and
+ * {@link ResolveGeorchestraUserGlobalFilter} doesn't try to resolve a user.
+ * <p>
+ * The login and logout endpoints are excluded, since they store state in the
+ * web session before the user is authenticated.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security")
+public class AnonymousFastPathWebFilter implements WebFilter, Ordered {
+
+    /**
+     * Right before Spring Security's {@code WebFilterChainProxy}
+     */
+    public static final int ORDER = -101;
+
+    static final String SESSIONLESS_ATTRIBUTE = AnonymousFastPathWebFilter.class.getName() + ".sessionless";
+
+    private final @NonNull CompiledAccessRulesAuthorizationManager accessRules;
+
+    private final @NonNull WebSessionIdResolver sessionIdResolver;
+
+    private final @NonNull List<PathPattern> excludedPaths;
+
+    public AnonymousFastPathWebFilter(@NonNull CompiledAccessRulesAuthorizationManager accessRules,
+            @NonNull WebSessionIdResolver sessionIdResolver, @NonNull List<String> excludedPaths) {
+        this.accessRules = accessRules;
+        this.sessionIdResolver = sessionIdResolver;
+        this.excludedPaths = excludedPaths.stream()//
+                .map(PathPatternParser.defaultInstance::parse)//
+                .collect(Collectors.toList());
+    }
+
+    public @Override int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * @return whether {@code exchange} is served by the fast path, with no web
+     *         session nor user
+     */
+    public static boolean isSessionless(@NonNull ServerWebExchange exchange) {
+        return Boolean.TRUE.equals(exchange.getAttribute(SESSIONLESS_ATTRIBUTE));
+    }
+
+    public @Override Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!qualifies(exchange)) {
+            return chain.filter(exchange);
+        }
+        log.trace("Serving {} without web session", exchange.getRequest().getPath());
+        exchange.getAttributes().put(SESSIONLESS_ATTRIBUTE, Boolean.TRUE);
+        return chain.filter(new SessionlessExchange(exchange));
+    }
+
+    boolean qualifies(ServerWebExchange exchange) {
+        final ServerHttpRequest request = exchange.getRequest();
+        final HttpMethod method = request.getMethod();
+        if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+            return false;
+        }
+        if (request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)) {
+            return false;
+        }
+        if (!sessionIdResolver.resolveSessionIds(exchange).isEmpty()) {
+            return false;
+        }
+        final PathContainer path = request.getPath().pathWithinApplication();
+        for (PathPattern excluded : excludedPaths) {
+            if (excluded.matches(path)) {
+                return false;
+            }
+        }
+        return accessRules.isPermitAll(path);
+    }
+
+    private static class SessionlessExchange extends ServerWebExchangeDecorator {
+
+        private final Mono<WebSession> session = Mono.fromSupplier(TransientWebSession::new).cache();
+
+        SessionlessExchange(ServerWebExchange delegate) {
+            super(delegate);
+        }
+
+        public @Override Mono<WebSession> getSession() {
+            return session;
+        }
+    }
+
+    /**
+     * Session that's never started nor stored, changes are discarded with the
+     * exchange
+     */
+    private static class TransientWebSession implements WebSession {
+
+        private final Instant creationTime = Instant.now();
+
+        private final Map<String, Object> attributes = new HashMap<>(2);
+
+        public @Override String getId() {
+            return "";
+        }
+
+        public @Override Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        public @Override void start() {
+            log.debug("Ignoring the start of a transient web session");
+        }
+
+        public @Override boolean isStarted() {
+            return false;
+        }
+
+        public @Override Mono<Void> changeSessionId() {
+            return Mono.empty();
+        }
+
+        public @Override Mono<Void> invalidate() {
+            attributes.clear();
+            return Mono.empty();
+        }
+
+        public @Override Mono<Void> save() {
+            return Mono.empty();
+        }
+
+        public @Override boolean isExpired() {
+            return false;
+        }
+
+        public @Override Instant getCreationTime() {
+            return creationTime;
+        }
+
+        public @Override Instant getLastAccessTime() {
+            return creationTime;
+        }
+
+        public @Override void setMaxIdleTime(Duration maxIdleTime) {
+            // not stored
+        }
+
+        public @Override Duration getMaxIdleTime() {
+            return Duration.ZERO;
+        }
+    }
+}
@@ -20,6 +20,8 @@ package org.georchestra.gateway.security;
 
 import lombok.extern.slf4j.Slf4j;
 import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -27,6 +29,8 @@ import org.springframework.context.annotation.Description;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.logout.DelegatingServerLogoutHandler;
+import org.springframework.security.web.server.authentication.logout.SecurityContextServerLogoutHandler;
 import org.springframework.web.reactive.result.view.UrlBasedViewResolver;
 import org.springframework.web.reactive.result.view.ViewResolver;
 import org.springframework.web.reactive.result.view.freemarker.FreeMarkerView;
@@ -36,6 +40,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 /**
  * {@link Configuration} to initialize the Gateway's
  * {@link SecurityWebFilterChain} during application start up, such as
@@ -51,7 +57,8 @@ import java.util.stream.Stream;
  */
 @Configuration(proxyBeanMethods = false)
 @EnableWebFluxSecurity
-@EnableConfigurationProperties(GatewayConfigProperties.class)
+@EnableConfigurationProperties({ GatewayConfigProperties.class, UsersCacheConfigProperties.class,
+        RolesMappingsCacheConfigProperties.class })
 @Slf4j(topic = "org.georchestra.gateway.security")
 public class GatewaySecurityConfiguration {
 
@@ -91,18 +98,53 @@ public class GatewaySecurityConfiguration {
         return new GeorchestraUserMapper(resolvers, customizers);
     }
 
-    public @Bean ResolveGeorchestraUserGlobalFilter resolveGeorchestraUserGlobalFilter(GeorchestraUserMapper resolver) {
-        return new ResolveGeorchestraUserGlobalFilter(resolver);
+    public @Bean ResolveGeorchestraUserGlobalFilter resolveGeorchestraUserGlobalFilter(GeorchestraUserMapper resolver,
+            ObjectProvider<GeorchestraUserCache> cache) {
+        return new ResolveGeorchestraUserGlobalFilter(resolver, cache.getIfAvailable());
+    }
+
+    /**
+     * Per-session cache of resolved {@link GeorchestraUser}s, unless disabled
+     * through {@literal georchestra.gateway.security.users-cache.enabled=false}
+     */
+    public @Bean GeorchestraUserCache georchestraUserCache(UsersCacheConfigProperties config,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        if (!config.isEnabled()) {
+            log.info("Resolved users cache disabled");
+            return null;
+        }
+        log.info("Caching resolved users per session, maximum size: {}, expire after write: {}",
+                config.getMaximumSize(), config.getExpireAfterWrite());
+        GeorchestraUserCache cache = new GeorchestraUserCache(config.getMaximumSize(), config.getExpireAfterWrite());
+        meterRegistry.ifAvailable(cache::bindTo);
+        return cache;
+    }
+
+    /**
+     * Evicts the session's cached {@link GeorchestraUser} upon logout, in addition
+     * to clearing up the security context.
+     */
+    public @Bean ServerHttpSecurityCustomizer georchestraUserCacheLogoutCustomizer(
+            ObjectProvider<GeorchestraUserCache> cache) {
+        GeorchestraUserCache usersCache = cache.getIfAvailable();
+        if (usersCache == null) {
+            return null;
+        }
+        return http -> http.logout().logoutHandler(new DelegatingServerLogoutHandler(
+                new SecurityContextServerLogoutHandler(), usersCache.logoutHandler()));
     }
 
     /**
      * Extension to make {@link GeorchestraUserMapper} append user roles based on
      * {@link GatewayConfigProperties#getRolesMappings()}
      */
-    public @Bean RolesMappingsUserCustomizer rolesMappingsUserCustomizer(GatewayConfigProperties config) {
+    public @Bean RolesMappingsUserCustomizer rolesMappingsUserCustomizer(GatewayConfigProperties config,
+            RolesMappingsCacheConfigProperties cacheConfig, ObjectProvider<MeterRegistry> meterRegistry) {
         Map<String, List<String>> rolesMappings = config.getRolesMappings();
         log.info("Creating {}", RolesMappingsUserCustomizer.class.getSimpleName());
-        return new RolesMappingsUserCustomizer(rolesMappings);
+        RolesMappingsUserCustomizer customizer = new RolesMappingsUserCustomizer(rolesMappings, cacheConfig);
+        meterRegistry.ifAvailable(customizer::bindTo);
+        return customizer;
     }
 
 }
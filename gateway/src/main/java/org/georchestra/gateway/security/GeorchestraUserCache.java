@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.georchestra.gateway.model.EncodedPayload;
+import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.authentication.logout.ServerLogoutHandler;
+import org.springframework.web.server.WebSession;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded, time-based cache of the {@link GeorchestraUser} resolved for a given
+ * {@link WebSession} and {@link Authentication}.
+ * <p>
+ * Entries are keyed by {@link WebSession#getId() session id}, and only reused
+ * if the session's current {@link Authentication} has the same type and
+ * {@link Authentication#getName() name} as the one the user was resolved from,
+ * so re-authenticating with a different identity within the same session never
+ * returns a stale user. Sessions that have not been {@link WebSession#isStarted()
+ * started} (e.g. HTTP Basic requests) are not cached, as their id changes on
+ * every request.
+ * <p>
+ * Each resolved user comes with its own {@link EncodedPayload}, so the
+ * {@literal sec-user} header payload is encoded once per resolved user.
+ * <p>
+ * {@link #logoutHandler()} evicts the session's entry upon logout.
+ *
+ * @see UsersCacheConfigProperties
+ * @see ResolveGeorchestraUserGlobalFilter
+ */
+@Slf4j(topic = "org.georchestra.gateway.security")
+public class GeorchestraUserCache {
+
+    public static final String CACHE_NAME = "georchestra.users";
+
+    /**
+     * A resolved user, if any, and its encoded payload
+     */
+    @Value
+    public static class Resolved {
+        private final @NonNull Optional<GeorchestraUser> user;
+        private final @NonNull EncodedPayload payload = new EncodedPayload();
+    }
+
+    @Value
+    private static class Entry {
+        private final @NonNull Class<?> authenticationType;
+        private final @NonNull String principalName;
+        private final @NonNull Resolved resolved;
+
+        boolean matches(Authentication auth) {
+            return authenticationType.equals(auth.getClass()) && principalName.equals(auth.getName());
+        }
+    }
+
+    private final Cache<String, Entry> bySessionId;
+
+    public GeorchestraUserCache(long maximumSize, @NonNull Duration expireAfterWrite) {
+        this.bySessionId = CacheBuilder.newBuilder()//
+                .maximumSize(maximumSize)//
+                .expireAfterWrite(expireAfterWrite.toMillis(), TimeUnit.MILLISECONDS)//
+                .recordStats()//
+                .build();
+    }
+
+    /**
+     * Publishes the cache size, hit, miss, and eviction metrics to the given
+     * registry under the {@link #CACHE_NAME} cache name
+     */
+    public GeorchestraUserCache bindTo(@NonNull MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, bySessionId, CACHE_NAME);
+        return this;
+    }
+
+    /**
+     * @return the cached user for the session and authentication, or the one
+     *         returned by {@code resolver}, caching it if the session is started
+     */
+    public Optional<GeorchestraUser> get(@NonNull WebSession session, @NonNull Authentication auth,
+            @NonNull Function<Authentication, Optional<GeorchestraUser>> resolver) {
+        return resolve(session, auth, resolver).getUser();
+    }
+
+    /**
+     * Same as {@link #get}, also returning the resolved user's encoded payload,
+     * which is reused as long as the cached user is
+     */
+    public Resolved resolve(@NonNull WebSession session, @NonNull Authentication auth,
+            @NonNull Function<Authentication, Optional<GeorchestraUser>> resolver) {
+
+        if (!session.isStarted() || null == auth.getName()) {
+            return new Resolved(resolver.apply(auth));
+        }
+        final String sessionId = session.getId();
+        Entry entry = bySessionId.getIfPresent(sessionId);
+        if (entry == null || !entry.matches(auth)) {
+            Optional<GeorchestraUser> user = resolver.apply(auth);
+            entry = new Entry(auth.getClass(), auth.getName(), new Resolved(user));
+            bySessionId.put(sessionId, entry);
+            log.trace("Cached resolved user {} for session {}", auth.getName(), sessionId);
+        }
+        return entry.getResolved();
+    }
+
+    public void invalidate(@NonNull String sessionId) {
+        bySessionId.invalidate(sessionId);
+    }
+
+    /**
+     * @return a {@link ServerLogoutHandler} that evicts the cached user for the
+     *         session being logged out
+     */
+    public ServerLogoutHandler logoutHandler() {
+        return (webFilterExchange, authentication) -> webFilterExchange.getExchange().getSession()//
+                .map(WebSession::getId)//
+                .doOnNext(sessionId -> log.debug("Evicting cached user for session {}", sessionId))//
+                .doOnNext(this::invalidate)//
+                .then();
+    }
+
+    @VisibleForTesting
+    long size() {
+        bySessionId.cleanUp();
+        return bySessionId.size();
+    }
+
+    @VisibleForTesting
+    Optional<GeorchestraUser> getIfPresent(@NonNull String sessionId) {
+        Entry entry = bySessionId.getIfPresent(sessionId);
+        return entry == null ? Optional.empty() : entry.getResolved().getUser();
+    }
+}
@@ -20,6 +20,10 @@ package org.georchestra.gateway.security;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 import org.georchestra.gateway.model.GeorchestraUsers;
 import org.georchestra.security.model.GeorchestraUser;
@@ -27,7 +31,6 @@ import org.springframework.core.Ordered;
 import org.springframework.security.core.Authentication;
 
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 
 /**
  * Aids {@link ResolveGeorchestraUserGlobalFilter} in resolving the
@@ -48,11 +51,16 @@ import lombok.RequiredArgsConstructor;
  * any additional customization to the {@link GeorchestraUser} object after it
  * has been extracted from the {@link Authentication} created by the actual
  * authentication provider.
+ * <p>
+ * The mapper extensions able to handle each concrete authentication token
+ * class, as declared by
+ * {@link GeorchestraUserMapperExtension#getAuthenticationTypes()}, are looked
+ * up once per token class, and the customizers are composed into a single
+ * function up front.
  * 
  * @see GeorchestraUserMapperExtension
  * @see GeorchestraUserCustomizerExtension
  */
-@RequiredArgsConstructor
 public class GeorchestraUserMapper {
 
     /**
@@ -60,7 +68,16 @@ public class GeorchestraUserMapper {
      */
     private final @NonNull List<GeorchestraUserMapperExtension> resolvers;
 
-    private final @NonNull List<GeorchestraUserCustomizerExtension> customizers;
+    /**
+     * All {@link GeorchestraUserCustomizerExtension}s composed in order
+     */
+    private final @NonNull Function<GeorchestraUser, GeorchestraUser> customizer;
+
+    /**
+     * The {@link #resolvers} that can handle each concrete auth token class, in
+     * order, filled on demand
+     */
+    private final ConcurrentMap<Class<?>, GeorchestraUserMapperExtension[]> resolversByType = new ConcurrentHashMap<>();
 
     GeorchestraUserMapper() {
         this(List.of(), List.of());
@@ -70,26 +87,49 @@ public class GeorchestraUserMapper {
         this(resolvers, List.of());
     }
 
+    public GeorchestraUserMapper(@NonNull List<GeorchestraUserMapperExtension> resolvers,
+            @NonNull List<GeorchestraUserCustomizerExtension> customizers) {
+        this.resolvers = List.copyOf(resolvers);
+        Function<GeorchestraUser, GeorchestraUser> composed = Function.identity();
+        for (GeorchestraUserCustomizerExtension c : customizers) {
+            composed = composed.andThen(c);
+        }
+        this.customizer = composed;
+    }
+
     /**
      * @return the first non-empty user from
      *         {@link GeorchestraUserMapperExtension#resolve asking} the extension
-     *         point implementations to resolve the user from the token, or
-     *         {@link Optional#empty()} if no extension point implementation can
-     *         handle the auth token.
+     *         point implementations that handle the token type to resolve the user
+     *         from the token, or {@link Optional#empty()} if no extension point
+     *         implementation can handle the auth token.
      */
     public Optional<GeorchestraUser> resolve(@NonNull Authentication authToken) {
-        return resolvers.stream()//
-                .map(resolver -> resolver.resolve(authToken))//
-                .filter(Optional::isPresent)//
-                .map(Optional::orElseThrow)//
-                .map(this::customize).findFirst();
+        for (GeorchestraUserMapperExtension resolver : resolversFor(authToken.getClass())) {
+            Optional<GeorchestraUser> user = resolver.resolve(authToken);
+            if (user.isPresent()) {
+                return Optional.of(customizer.apply(user.get()));
+            }
+        }
+        return Optional.empty();
     }
 
-    private GeorchestraUser customize(GeorchestraUser user) {
-        GeorchestraUser customized = user;
-        for (GeorchestraUserCustomizerExtension customizer : customizers) {
-            customized = customizer.apply(customized);
+    private GeorchestraUserMapperExtension[] resolversFor(Class<?> tokenType) {
+        GeorchestraUserMapperExtension[] candidates = resolversByType.get(tokenType);
+        if (candidates == null) {
+            candidates = resolversByType.computeIfAbsent(tokenType, this::findResolvers);
         }
-        return customized;
+        return candidates;
+    }
+
+    private GeorchestraUserMapperExtension[] findResolvers(Class<?> tokenType) {
+        return resolvers.stream()//
+                .filter(resolver -> handles(resolver, tokenType))//
+                .toArray(GeorchestraUserMapperExtension[]::new);
+    }
+
+    private static boolean handles(GeorchestraUserMapperExtension resolver, Class<?> tokenType) {
+        Set<Class<? extends Authentication>> types = resolver.getAuthenticationTypes();
+        return types == null || types.isEmpty() || types.stream().anyMatch(type -> type.isAssignableFrom(tokenType));
     }
-}
\ No newline at end of file
+}
@@ -20,6 +20,7 @@
 package org.georchestra.gateway.security;
 
 import java.util.Optional;
+import java.util.Set;
 
 import org.georchestra.security.model.GeorchestraUser;
 import org.springframework.core.Ordered;
@@ -34,6 +35,10 @@ import org.springframework.security.core.Authentication;
  * {@link GeorchestraUser} from the current request authentication token. An
  * instance that knows how to perform such mapping based on the kind of
  * authentication represented by the token shall return a non-empty user.
+ * <p>
+ * Implementations should declare the kinds of tokens they handle through
+ * {@link #getAuthenticationTypes()}, so that {@link GeorchestraUserMapper}
+ * doesn't ask them to resolve tokens of other types.
  */
 public interface GeorchestraUserMapperExtension extends Ordered {
 
@@ -44,6 +49,15 @@ public interface GeorchestraUserMapperExtension extends Ordered {
      */
     Optional<GeorchestraUser> resolve(Authentication authToken);
 
+    /**
+     * @return the {@link Authentication} types, including their subtypes, this
+     *         extension can map; an empty set (the default) means the extension
+     *         shall be asked to resolve any kind of token.
+     */
+    default Set<Class<? extends Authentication>> getAuthenticationTypes() {
+        return Set.of();
+    }
+
     default int getOrder() {
         return 0;
     }
@@ -30,7 +30,6 @@ import org.springframework.security.core.Authentication;
 import org.springframework.web.server.ServerWebExchange;
 
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
 
@@ -43,9 +42,18 @@ import reactor.core.publisher.Mono;
  * example, be used to append the necessary {@literal sec-*} headers that relate
  * to user information to proxied http requests.
  * 
+ * <p>
+ * If a {@link GeorchestraUserCache} is provided, the user resolved for a given
+ * web session and authentication is reused for subsequent requests in the same
+ * session, sparing the round trips to the user directory, as well as its
+ * encoded {@literal sec-user} payload.
+ * <p>
+ * Requests served by the {@link AnonymousFastPathWebFilter anonymous fast path}
+ * are known to have no user, and are passed through as is.
+ * 
  * @see GeorchestraUserMapper
+ * @see GeorchestraUserCache
  */
-@RequiredArgsConstructor
 @Slf4j(topic = "org.georchestra.gateway.security")
 public class ResolveGeorchestraUserGlobalFilter implements GlobalFilter, Ordered {
 
@@ -53,6 +61,22 @@ public class ResolveGeorchestraUserGlobalFilter implements GlobalFilter, Ordered
 
     private final @NonNull GeorchestraUserMapper resolver;
 
+    private final GeorchestraUserCache cache;
+
+    public ResolveGeorchestraUserGlobalFilter(@NonNull GeorchestraUserMapper resolver) {
+        this(resolver, null);
+    }
+
+    /**
+     * @param resolver the user mapper
+     * @param cache    the per-session resolved users cache, or {@code null} to
+     *                 resolve the user on each request
+     */
+    public ResolveGeorchestraUserGlobalFilter(@NonNull GeorchestraUserMapper resolver, GeorchestraUserCache cache) {
+        this.resolver = resolver;
+        this.cache = cache;
+    }
+
     /**
      * @return a lower precedence than {@link RouteToRequestUrlFilter}'s, in order
      *         to make sure the matched {@link Route} has been set as a
@@ -69,15 +93,25 @@ public class ResolveGeorchestraUserGlobalFilter implements GlobalFilter, Ordered
      * chain.
      */
     public @Override Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-
+        if (AnonymousFastPathWebFilter.isSessionless(exchange)) {
+            return chain.filter(exchange);
+        }
         return exchange.getPrincipal()//
                 .doOnNext(p -> log.debug("resolving user from {}", p.getClass().getName()))//
                 .filter(Authentication.class::isInstance)//
                 .map(Authentication.class::cast)//
-                .map(resolver::resolve)//
-                .map(user -> GeorchestraUsers.store(exchange, user.orElse(null)))//
+                .flatMap(auth -> resolve(exchange, auth))//
+                .map(resolved -> GeorchestraUsers.store(exchange, resolved.getUser().orElse(null),
+                        resolved.getPayload()))//
                 .defaultIfEmpty(exchange)//
                 .flatMap(chain::filter);
     }
 
+    private Mono<GeorchestraUserCache.Resolved> resolve(ServerWebExchange exchange, Authentication auth) {
+        if (cache == null) {
+            return Mono.fromSupplier(() -> new GeorchestraUserCache.Resolved(resolver.resolve(auth)));
+        }
+        return exchange.getSession().map(session -> cache.resolve(session, auth, resolver::resolve));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Configuration properties for the caches used by
+ * {@link RolesMappingsUserCustomizer} to memoize the additional roles computed
+ * for each role name, and for each distinct list of authenticated roles.
+ */
+@ConfigurationProperties(prefix = "georchestra.gateway.security.roles-mappings-cache")
+public @Data class RolesMappingsCacheConfigProperties {
+
+    /**
+     * Maximum number of role names, and of distinct role lists, to keep the
+     * computed additional roles for
+     */
+    private long maximumSize = 10_000;
+
+    /**
+     * Time after which an entry not accessed is evicted, no expiration if unset
+     */
+    private Duration expireAfterAccess;
+
+    /**
+     * Whether to record hit and miss statistics, published to Micrometer as the
+     * {@literal cache.*} meters tagged {@literal cache=georchestra.roles-mappings.*}
+     */
+    private boolean recordStats = true;
+}
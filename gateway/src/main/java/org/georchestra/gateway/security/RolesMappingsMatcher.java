@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * All the {@link RolesMappingsUserCustomizer roles mappings} keys compiled to a
+ * single matcher.
+ * <p>
+ * Keys are role names where {@code *} matches any sequence of characters, and
+ * {@code .} is a literal dot. Literal keys, and keys with a single leading or
+ * trailing wildcard (e.g. {@code GN_*}, {@code *_ADMIN}), are indexed by name,
+ * prefix, or suffix, so matching a role costs one hash lookup per distinct
+ * prefix or suffix length rather than one regular expression per mapping. Any
+ * other key is matched as a regular expression.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security")
+class RolesMappingsMatcher {
+
+    private static final String REGEX_METACHARS = "\\[](){}+?^$|";
+
+    private final Map<String, List<String>> literals = new HashMap<>();
+
+    private final Map<String, List<String>> prefixes = new HashMap<>();
+
+    private final Map<String, List<String>> suffixes = new HashMap<>();
+
+    private final Map<Pattern, List<String>> patterns = new LinkedHashMap<>();
+
+    private final int[] prefixLengths;
+
+    private final int[] suffixLengths;
+
+    RolesMappingsMatcher(@NonNull Map<String, List<String>> mappings) {
+        mappings.forEach(this::add);
+        this.prefixLengths = lengths(prefixes);
+        this.suffixLengths = lengths(suffixes);
+        log.info("Compiled {} roles mappings: {} literal, {} prefix, {} suffix, {} regular expressions",
+                mappings.size(), literals.size(), prefixes.size(), suffixes.size(), patterns.size());
+    }
+
+    private void add(String key, List<String> extraRoles) {
+        log.info("Loaded role mapping {} -> {}", key, extraRoles);
+        final int wildcards = key.length() - key.replace("*", "").length();
+        if (hasRegexMetachars(key) || wildcards > 1) {
+            append(patterns, RolesMappingsUserCustomizer.toPattern(key), extraRoles);
+        } else if (wildcards == 0) {
+            append(literals, key, extraRoles);
+        } else if (key.endsWith("*")) {
+            append(prefixes, key.substring(0, key.length() - 1), extraRoles);
+        } else if (key.startsWith("*")) {
+            append(suffixes, key.substring(1), extraRoles);
+        } else {
+            append(patterns, RolesMappingsUserCustomizer.toPattern(key), extraRoles);
+        }
+    }
+
+    private static boolean hasRegexMetachars(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (REGEX_METACHARS.indexOf(key.charAt(i)) > -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <K> void append(Map<K, List<String>> target, K key, List<String> extraRoles) {
+        target.computeIfAbsent(key, k -> new ArrayList<>()).addAll(extraRoles);
+    }
+
+    private static int[] lengths(Map<String, ?> keys) {
+        return keys.keySet().stream().mapToInt(String::length).distinct().sorted().toArray();
+    }
+
+    public boolean isEmpty() {
+        return literals.isEmpty() && prefixes.isEmpty() && suffixes.isEmpty() && patterns.isEmpty();
+    }
+
+    /**
+     * @return the additional roles for all the mappings matching {@code role}, in
+     *         no particular order
+     */
+    public Set<String> additionalRoles(@NonNull String role) {
+        Set<String> roles = new LinkedHashSet<>();
+        addAll(roles, literals.get(role));
+        final int length = role.length();
+        for (int prefixLength : prefixLengths) {
+            if (prefixLength > length) {
+                break;
+            }
+            addAll(roles, prefixes.get(role.substring(0, prefixLength)));
+        }
+        for (int suffixLength : suffixLengths) {
+            if (suffixLength > length) {
+                break;
+            }
+            addAll(roles, suffixes.get(role.substring(length - suffixLength)));
+        }
+        if (!patterns.isEmpty()) {
+            patterns.forEach((pattern, extraRoles) -> {
+                if (pattern.matcher(role).matches()) {
+                    roles.addAll(extraRoles);
+                }
+            });
+        }
+        return roles;
+    }
+
+    private static void addAll(Set<String> target, List<String> roles) {
+        if (roles != null) {
+            target.addAll(roles);
+        }
+    }
+}
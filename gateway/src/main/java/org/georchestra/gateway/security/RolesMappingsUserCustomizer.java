@@ -16,64 +16,82 @@
  * You should have received a copy of the GNU General Public License along with
  * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package org.georchestra.gateway.security;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import org.georchestra.security.model.GeorchestraUser;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 
-import lombok.Getter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Authenticated user customizer extension to expand the set of role names
  * assigned to a user by the actual authentication provider
+ * <p>
+ * The mapping keys are compiled to a single {@link RolesMappingsMatcher}, and
+ * both the additional roles for each role name, and the expanded roles for each
+ * distinct list of authenticated roles, are cached as configured by
+ * {@link RolesMappingsCacheConfigProperties}.
  */
 @Slf4j
 public class RolesMappingsUserCustomizer implements GeorchestraUserCustomizerExtension {
 
-    @RequiredArgsConstructor
-    private static class Matcher {
-        private final @NonNull Pattern pattern;
-        private final @NonNull @Getter List<String> extraRoles;
-
-        public boolean matches(String role) {
-            return pattern.matcher(role).matches();
-        }
+    public static final String BY_ROLE_CACHE_NAME = "georchestra.roles-mappings.role";
 
-        public @Override String toString() {
-            return String.format("%s -> %s", pattern.pattern(), extraRoles);
-        }
-    }
+    public static final String BY_ROLES_CACHE_NAME = "georchestra.roles-mappings.roles";
 
     @VisibleForTesting
-    final List<Matcher> rolesMappings;
+    final RolesMappingsMatcher rolesMappings;
 
-    private final Cache<String, List<String>> byRoleNameCache = CacheBuilder.newBuilder().maximumSize(1_000).build();
+    private final LoadingCache<String, Set<String>> byRoleNameCache;
+
+    private final LoadingCache<List<String>, List<String>> byRolesCache;
 
     public RolesMappingsUserCustomizer(@NonNull Map<String, List<String>> rolesMappings) {
-        this.rolesMappings = keysToRegularExpressions(rolesMappings);
+        this(rolesMappings, new RolesMappingsCacheConfigProperties());
+    }
+
+    public RolesMappingsUserCustomizer(@NonNull Map<String, List<String>> rolesMappings,
+            @NonNull RolesMappingsCacheConfigProperties cacheConfig) {
+        this.rolesMappings = new RolesMappingsMatcher(rolesMappings);
+        this.byRoleNameCache = newCache(cacheConfig, CacheLoader.from(this::computeAdditionalRoles));
+        this.byRolesCache = newCache(cacheConfig, CacheLoader.from(this::expand));
     }
 
-    private @NonNull List<Matcher> keysToRegularExpressions(Map<String, List<String>> mappings) {
-        return mappings.entrySet()//
-                .stream()//
-                .map(e -> new Matcher(toPattern(e.getKey()), e.getValue()))//
-                .peek(m -> log.info("Loaded role mapping {}", m))//
-                .collect(Collectors.toList());
+    private static <K, V> LoadingCache<K, V> newCache(RolesMappingsCacheConfigProperties config,
+            CacheLoader<K, V> loader) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(config.getMaximumSize());
+        if (config.getExpireAfterAccess() != null) {
+            builder.expireAfterAccess(config.getExpireAfterAccess().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (config.isRecordStats()) {
+            builder.recordStats();
+        }
+        return builder.build(loader);
+    }
+
+    /**
+     * Publishes the {@literal cache.*} meters for the role name and role list
+     * caches
+     */
+    public RolesMappingsUserCustomizer bindTo(@NonNull MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, byRoleNameCache, BY_ROLE_CACHE_NAME);
+        GuavaCacheMetrics.monitor(registry, byRolesCache, BY_ROLES_CACHE_NAME);
+        return this;
     }
 
     static Pattern toPattern(String role) {
@@ -83,11 +101,13 @@ public class RolesMappingsUserCustomizer implements GeorchestraUserCustomizerExt
 
     @Override
     public GeorchestraUser apply(GeorchestraUser user) {
-
-        Set<String> additionalRoles = computeAdditionalRoles(user.getRoles());
-        if (!additionalRoles.isEmpty()) {
-            additionalRoles.addAll(user.getRoles());
-            user.setRoles(new ArrayList<>(additionalRoles));
+        final List<String> roles = user.getRoles();
+        if (rolesMappings.isEmpty() || roles == null || roles.isEmpty()) {
+            return user;
+        }
+        List<String> expanded = byRolesCache.getUnchecked(List.copyOf(roles));
+        if (!expanded.isEmpty()) {
+            user.setRoles(new ArrayList<>(expanded));
         }
         return user;
     }
@@ -95,20 +115,21 @@ public class RolesMappingsUserCustomizer implements GeorchestraUserCustomizerExt
     /**
      * @param authenticatedRoles the role names extracted from the authentication
      *                           provider
-     * @return the additional role names for the user
+     * @return the authenticated role names followed by the additional ones, or an
+     *         empty list if there are no additional roles
      */
-    private Set<String> computeAdditionalRoles(List<String> authenticatedRoles) {
-        final ConcurrentMap<String, List<String>> cache = byRoleNameCache.asMap();
-        return authenticatedRoles.stream().map(role -> cache.computeIfAbsent(role, this::computeAdditionalRoles))
-                .flatMap(List::stream).collect(Collectors.toSet());
+    private List<String> expand(List<String> authenticatedRoles) {
+        Set<String> roles = new LinkedHashSet<>(authenticatedRoles);
+        final int authenticatedCount = roles.size();
+        for (String role : authenticatedRoles) {
+            roles.addAll(byRoleNameCache.getUnchecked(role));
+        }
+        return roles.size() == authenticatedCount ? List.of() : List.copyOf(roles);
     }
 
-    private List<String> computeAdditionalRoles(@NonNull String authenticatedRole) {
-
-        List<String> roles = rolesMappings.stream().filter(m -> m.matches(authenticatedRole))
-                .map(Matcher::getExtraRoles).flatMap(List::stream).collect(Collectors.toList());
-
-        log.info("Computed additional roles for {}: {}", authenticatedRole, roles);
+    private Set<String> computeAdditionalRoles(@NonNull String authenticatedRole) {
+        Set<String> roles = Set.copyOf(rolesMappings.additionalRoles(authenticatedRole));
+        log.debug("Computed additional roles for {}: {}", authenticatedRole, roles);
         return roles;
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security;
+
+import java.time.Duration;
+
+import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.security.core.Authentication;
+
+import lombok.Data;
+
+/**
+ * Configuration properties for the cache of {@link GeorchestraUserCache
+ * resolved users}, used by {@link ResolveGeorchestraUserGlobalFilter} to avoid
+ * mapping the same session's {@link Authentication} to a
+ * {@link GeorchestraUser} (and hence hitting the user directory) on every
+ * request.
+ */
+@ConfigurationProperties(prefix = "georchestra.gateway.security.users-cache")
+public @Data class UsersCacheConfigProperties {
+
+    /**
+     * Whether to cache resolved users per web session
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum number of web sessions to keep a resolved user for
+     */
+    private long maximumSize = 10_000;
+
+    /**
+     * Time to live of a cached user, after which it's resolved again from the
+     * authentication provider
+     */
+    private Duration expireAfterWrite = Duration.ofMinutes(5);
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.accessrules;
+
+import java.util.List;
+
+import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.security.AnonymousFastPathWebFilter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Configuration properties for how the {@link GatewayConfigProperties access
+ * rules} are evaluated
+ *
+ * @see CompiledAccessRulesAuthorizationManager
+ */
+@ConfigurationProperties(prefix = "georchestra.gateway.security.access-rules")
+public @Data class AccessRulesConfigProperties {
+
+    /**
+     * Whether to evaluate the access rules with a single authorization manager that
+     * indexes all the rules' paths, instead of registering one Spring Security
+     * path matcher per rule, evaluated in order on each request
+     */
+    private boolean compiled = true;
+
+    /**
+     * Maximum number of request paths to cache the matched access rule for
+     */
+    private long cacheSize = 10_000;
+
+    /**
+     * Requests with no session and no credentials to paths everyone can access
+     */
+    private AnonymousFastPath anonymousFastPath = new AnonymousFastPath();
+
+    /**
+     * @see AnonymousFastPathWebFilter
+     */
+    @Generated
+    public static @Data @Accessors(chain = true) class AnonymousFastPath {
+
+        /**
+         * Whether to skip the web session and user resolution for GET and HEAD
+         * requests with no session id nor Authorization header, to paths whose
+         * access rule is {@literal anonymous}
+         */
+        private boolean enabled = true;
+
+        /**
+         * Path patterns never served by the fast path, such as the login and logout
+         * endpoints, which use the web session even for anonymous users
+         */
+        private List<String> excludedPaths = List.of("/login/**", "/logout", "/oauth2/**", "/auth/**");
+    }
+}
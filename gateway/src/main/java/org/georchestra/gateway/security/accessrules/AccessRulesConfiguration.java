@@ -19,16 +19,52 @@
 package org.georchestra.gateway.security.accessrules;
 
 import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.security.AnonymousFastPathWebFilter;
+import org.georchestra.gateway.security.accessrules.AccessRulesConfigProperties.AnonymousFastPath;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.server.session.CookieWebSessionIdResolver;
+import org.springframework.web.server.session.WebSessionIdResolver;
 
-@Configuration
-@EnableConfigurationProperties(GatewayConfigProperties.class)
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties({ GatewayConfigProperties.class, AccessRulesConfigProperties.class })
 public class AccessRulesConfiguration {
 
     @Bean
-    AccessRulesCustomizer georchestraAccessRulesCustomizer(GatewayConfigProperties config) {
-        return new AccessRulesCustomizer(config);
+    CompiledAccessRulesAuthorizationManager compiledAccessRulesAuthorizationManager(GatewayConfigProperties config,
+            AccessRulesConfigProperties accessRulesConfig, ObjectProvider<MeterRegistry> meterRegistry) {
+        CompiledAccessRulesAuthorizationManager compiled = CompiledAccessRulesAuthorizationManager.compile(config,
+                accessRulesConfig.getCacheSize());
+        meterRegistry.ifAvailable(compiled::bindTo);
+        return compiled;
+    }
+
+    @Bean
+    AccessRulesCustomizer georchestraAccessRulesCustomizer(GatewayConfigProperties config,
+            AccessRulesConfigProperties accessRulesConfig, CompiledAccessRulesAuthorizationManager compiled) {
+        if (!accessRulesConfig.isCompiled()) {
+            return new AccessRulesCustomizer(config);
+        }
+        return new AccessRulesCustomizer(config, compiled);
+    }
+
+    /**
+     * Session-free handling of anonymous requests to public paths, unless disabled
+     * through
+     * {@literal georchestra.gateway.security.access-rules.anonymous-fast-path.enabled=false}
+     */
+    @Bean
+    AnonymousFastPathWebFilter anonymousFastPathWebFilter(AccessRulesConfigProperties accessRulesConfig,
+            CompiledAccessRulesAuthorizationManager compiled, ObjectProvider<WebSessionIdResolver> sessionIdResolver) {
+        AnonymousFastPath fastPath = accessRulesConfig.getAnonymousFastPath();
+        if (!fastPath.isEnabled()) {
+            return null;
+        }
+        WebSessionIdResolver resolver = sessionIdResolver.getIfAvailable(CookieWebSessionIdResolver::new);
+        return new AnonymousFastPathWebFilter(compiled, resolver, fastPath.getExcludedPaths());
     }
 }
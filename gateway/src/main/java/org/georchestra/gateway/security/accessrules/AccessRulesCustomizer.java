@@ -33,7 +33,6 @@ import org.springframework.security.config.web.server.ServerHttpSecurity.Authori
 import com.google.common.annotations.VisibleForTesting;
 
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -44,23 +43,50 @@ import lombok.extern.slf4j.Slf4j;
  * {@link GatewayConfigProperties#getGlobalAccessRules() global rules}, and
  * overridden if needed on a per-service basis from
  * {@link GatewayConfigProperties#getServices()}.
+ * <p>
+ * If given a {@link CompiledAccessRulesAuthorizationManager}, all the rules are
+ * evaluated by it for any exchange, instead of registering one path matcher per
+ * rule.
  *
  * @see RoleBasedAccessRule
  * @see GatewayConfigProperties#getGlobalAccessRules()
  * @see Service#getAccessRules()
  */
-@RequiredArgsConstructor
 @Slf4j(topic = "org.georchestra.gateway.config.security.accessrules")
 public class AccessRulesCustomizer implements ServerHttpSecurityCustomizer {
 
     private final @NonNull GatewayConfigProperties config;
 
+    private final CompiledAccessRulesAuthorizationManager compiledRules;
+
+    public AccessRulesCustomizer(@NonNull GatewayConfigProperties config) {
+        this(config, null);
+    }
+
+    /**
+     * @param config        the access rules configuration
+     * @param compiledRules the authorization manager to evaluate all the rules
+     *                      with, or {@code null} to register one path matcher per
+     *                      rule
+     */
+    public AccessRulesCustomizer(@NonNull GatewayConfigProperties config,
+            CompiledAccessRulesAuthorizationManager compiledRules) {
+        this.config = config;
+        this.compiledRules = compiledRules;
+    }
+
     @Override
     public void customize(ServerHttpSecurity http) {
         log.info("Configuring proxied applications access rules...");
 
         AuthorizeExchangeSpec authorizeExchange = http.authorizeExchange();
 
+        if (compiledRules != null) {
+            log.info("Applying compiled access rules");
+            authorizeExchange.anyExchange().access(compiledRules);
+            return;
+        }
+
         // apply service-specific rules before global rules, order matters, and
         // otherwise global path matches would be applied before service ones.
 
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.accessrules;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.model.RoleBasedAccessRule;
+import org.georchestra.gateway.model.Service;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.PathContainer.PathSegment;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link ReactiveAuthorizationManager} evaluating all the
+ * {@link RoleBasedAccessRule access rules} at once, making the same decisions
+ * as registering one {@code pathMatchers(...)} entry per rule, services' rules
+ * first and then the global ones, as {@link AccessRulesCustomizer} does when
+ * not {@link AccessRulesConfigProperties#isCompiled() compiled}.
+ * <p>
+ * The rules' path patterns are indexed in a trie by their leading literal
+ * segments, so that only the patterns sharing a prefix with the request path are
+ * matched, in rule order, the first matching rule deciding. Patterns with no
+ * leading literal segment (e.g. {@literal /**}) are candidates for all paths.
+ * <p>
+ * The rule matched by each request path is cached. Role based rules are then
+ * evaluated directly, checking the authentication's authorities against the
+ * rule's set of authorities.
+ */
+@Slf4j(topic = "org.georchestra.gateway.config.security.accessrules")
+public class CompiledAccessRulesAuthorizationManager implements ReactiveAuthorizationManager<AuthorizationContext> {
+
+    public static final String PATHS_CACHE_NAME = "georchestra.access-rules.paths";
+
+    private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+    private static final int NO_MATCH = -1;
+
+    private enum Access {
+        DENY_ALL, PERMIT_ALL, AUTHENTICATED, ANY_AUTHORITY
+    }
+
+    @Value
+    private static class Rule {
+        private final int index;
+        private final @NonNull Access access;
+        private final @NonNull Set<String> authorities;
+    }
+
+    @Value
+    private static class Candidate {
+        private final int ruleIndex;
+        private final @NonNull PathPattern pattern;
+    }
+
+    private static class Node {
+        final Map<String, Node> children = new HashMap<>();
+        final List<Candidate> building = new ArrayList<>();
+        Candidate[] candidates;
+
+        Node child(String segment) {
+            return children.computeIfAbsent(segment, s -> new Node());
+        }
+
+        void freeze() {
+            building.sort(Comparator.comparingInt(Candidate::getRuleIndex));
+            candidates = building.toArray(Candidate[]::new);
+            building.clear();
+            children.values().forEach(Node::freeze);
+        }
+    }
+
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    private final List<Rule> rules;
+
+    private final Node root;
+
+    private final Cache<String, Integer> ruleByPath;
+
+    private CompiledAccessRulesAuthorizationManager(List<Rule> rules, Node root, long cacheSize) {
+        this.rules = rules;
+        this.root = root;
+        this.ruleByPath = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build();
+    }
+
+    /**
+     * Compiles the services' access rules, in service order, followed by the
+     * global access rules
+     */
+    public static CompiledAccessRulesAuthorizationManager compile(@NonNull GatewayConfigProperties config,
+            long cacheSize) {
+        List<RoleBasedAccessRule> all = new ArrayList<>();
+        config.getServices().values().stream()//
+                .map(Service::getAccessRules)//
+                .filter(Objects::nonNull)//
+                .forEach(all::addAll);
+        if (config.getGlobalAccessRules() != null) {
+            all.addAll(config.getGlobalAccessRules());
+        }
+        return compile(all, cacheSize);
+    }
+
+    @VisibleForTesting
+    static CompiledAccessRulesAuthorizationManager compile(@NonNull List<RoleBasedAccessRule> accessRules,
+            long cacheSize) {
+        final PathPatternParser parser = PathPatternParser.defaultInstance;
+        final List<Rule> rules = new ArrayList<>();
+        final Node root = new Node();
+        for (RoleBasedAccessRule accessRule : accessRules) {
+            final int index = rules.size();
+            rules.add(toRule(index, accessRule));
+            for (String antPattern : resolveAntPatterns(accessRule)) {
+                String fullPattern = parser.initFullPathPattern(antPattern);
+                Candidate candidate = new Candidate(index, parser.parse(fullPattern));
+                Node node = root;
+                for (String segment : literalPrefix(fullPattern)) {
+                    node = node.child(segment);
+                }
+                node.building.add(candidate);
+            }
+        }
+        root.freeze();
+        log.info("Compiled {} access rules", rules.size());
+        return new CompiledAccessRulesAuthorizationManager(List.copyOf(rules), root, cacheSize);
+    }
+
+    /**
+     * Publishes the paths cache metrics to the given registry
+     */
+    public CompiledAccessRulesAuthorizationManager bindTo(@NonNull MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, ruleByPath, PATHS_CACHE_NAME);
+        return this;
+    }
+
+    public @Override Mono<AuthorizationDecision> check(Mono<Authentication> authentication,
+            AuthorizationContext context) {
+        final PathContainer path = context.getExchange().getRequest().getPath().pathWithinApplication();
+        final int ruleIndex = ruleIndex(path);
+        if (ruleIndex == NO_MATCH) {
+            log.trace("No access rule matches {}", path);
+            return Mono.just(DENIED);
+        }
+        final Rule rule = rules.get(ruleIndex);
+        switch (rule.getAccess()) {
+        case PERMIT_ALL:
+            return Mono.just(GRANTED);
+        case AUTHENTICATED:
+            return authentication.filter(auth -> !trustResolver.isAnonymous(auth))//
+                    .map(auth -> new AuthorizationDecision(auth.isAuthenticated()))//
+                    .defaultIfEmpty(DENIED);
+        case ANY_AUTHORITY:
+            return authentication.filter(Authentication::isAuthenticated)//
+                    .map(auth -> decide(rule, auth) ? GRANTED : DENIED)//
+                    .defaultIfEmpty(DENIED);
+        case DENY_ALL:
+        default:
+            return Mono.just(DENIED);
+        }
+    }
+
+    /**
+     * @return whether the rule deciding access to {@code path} grants it to
+     *         everyone, including unauthenticated requests
+     */
+    public boolean isPermitAll(@NonNull PathContainer path) {
+        final int ruleIndex = ruleIndex(path);
+        return ruleIndex != NO_MATCH && rules.get(ruleIndex).getAccess() == Access.PERMIT_ALL;
+    }
+
+    /**
+     * @return the index of the first rule with a pattern matching {@code path}, or
+     *         {@link #NO_MATCH}
+     */
+    @VisibleForTesting
+    int ruleIndex(PathContainer path) {
+        try {
+            return ruleByPath.get(path.value(), () -> match(path));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private int match(PathContainer path) {
+        int best = firstMatch(root, path, Integer.MAX_VALUE);
+        Node node = root;
+        for (PathContainer.Element element : path.elements()) {
+            if (!(element instanceof PathSegment)) {
+                continue;
+            }
+            node = node.children.get(((PathSegment) element).valueToMatch());
+            if (node == null) {
+                break;
+            }
+            best = firstMatch(node, path, best);
+        }
+        return best == Integer.MAX_VALUE ? NO_MATCH : best;
+    }
+
+    private int firstMatch(Node node, PathContainer path, int best) {
+        for (Candidate candidate : node.candidates) {
+            if (candidate.getRuleIndex() >= best) {
+                break;
+            }
+            if (candidate.getPattern().matches(path)) {
+                return candidate.getRuleIndex();
+            }
+        }
+        return best;
+    }
+
+    private boolean decide(Rule rule, Authentication auth) {
+        final Set<String> allowed = rule.getAuthorities();
+        for (GrantedAuthority granted : auth.getAuthorities()) {
+            String authority = granted.getAuthority();
+            if (authority != null && allowed.contains(authority)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same precedence as {@link AccessRulesCustomizer}: forbidden, anonymous, any
+     * authenticated user, and then roles
+     */
+    private static Rule toRule(int index, RoleBasedAccessRule rule) {
+        final List<String> allowedRoles = rule.getAllowedRoles() == null ? List.of() : rule.getAllowedRoles();
+        if (rule.isForbidden()) {
+            return new Rule(index, Access.DENY_ALL, Set.of());
+        }
+        if (rule.isAnonymous()) {
+            return new Rule(index, Access.PERMIT_ALL, Set.of());
+        }
+        if (allowedRoles.isEmpty()) {
+            return new Rule(index, Access.AUTHENTICATED, Set.of());
+        }
+        Set<String> authorities = allowedRoles.stream()//
+                .map(role -> role.startsWith("ROLE_") ? role : ("ROLE_" + role))//
+                .collect(Collectors.toSet());
+        return new Rule(index, Access.ANY_AUTHORITY, authorities);
+    }
+
+    private static List<String> resolveAntPatterns(RoleBasedAccessRule rule) {
+        List<String> antPatterns = rule.getInterceptUrl();
+        Objects.requireNonNull(antPatterns, "intercept-urls is null");
+        antPatterns.forEach(Objects::requireNonNull);
+        if (antPatterns.isEmpty())
+            throw new IllegalArgumentException("No ant-pattern(s) defined for rule " + rule);
+        return antPatterns;
+    }
+
+    /**
+     * @return the leading pattern segments that can only match themselves, up to
+     *         the first one with wildcards, captures, or characters subject to
+     *         decoding
+     */
+    private static List<String> literalPrefix(String fullPattern) {
+        List<String> literals = new ArrayList<>();
+        String[] segments = fullPattern.split("/", -1);
+        // segments[0] is the empty string before the leading slash
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            if (!isLiteral(segment)) {
+                break;
+            }
+            literals.add(segment);
+        }
+        return literals;
+    }
+
+    private static boolean isLiteral(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            switch (segment.charAt(i)) {
+            case '*':
+            case '?':
+            case '{':
+            case '}':
+            case '%':
+            case ';':
+            case '\\':
+                return false;
+            default:
+                break;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.admission;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+
+/**
+ * Per client token bucket rate limiter.
+ * <p>
+ * Each client gets a bucket of {@code burst} tokens refilled at
+ * {@code permitsPerSecond}. Buckets idle for longer than it takes to refill
+ * them completely are evicted, since a new bucket would be the same, which
+ * keeps the number of buckets proportional to the number of active clients.
+ */
+public class ClientRateLimiter implements MeterBinder {
+
+    static final String REJECTED_RATE_LIMITED = "rate-limited";
+
+    private final int burst;
+
+    private final double tokensPerNano;
+
+    private final LongSupplier nanoClock;
+
+    private final Cache<String, TokenBucket> buckets;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ClientRateLimiter(int burst, double permitsPerSecond, long maxClients) {
+        this(burst, permitsPerSecond, maxClients, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    ClientRateLimiter(int burst, double permitsPerSecond, long maxClients, @NonNull LongSupplier nanoClock) {
+        if (burst < 1 || permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("burst and permitsPerSecond must be positive");
+        }
+        this.burst = burst;
+        this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.nanoClock = nanoClock;
+        long refillNanos = (long) Math.ceil(burst / tokensPerNano);
+        this.buckets = CacheBuilder.newBuilder()//
+                .maximumSize(maxClients)//
+                .expireAfterAccess(refillNanos, TimeUnit.NANOSECONDS)//
+                .build();
+    }
+
+    /**
+     * Takes a token from the client's bucket
+     *
+     * @return {@link Duration#ZERO} if the request is allowed, or how long until
+     *         the client's bucket has a token otherwise
+     */
+    public Duration tryAcquire(@NonNull String client) {
+        TokenBucket bucket;
+        try {
+            bucket = buckets.get(client, () -> new TokenBucket(nanoClock.getAsLong()));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        long waitNanos = bucket.tryConsume(nanoClock.getAsLong());
+        if (waitNanos > 0) {
+            rejected.incrementAndGet();
+            return Duration.ofNanos(waitNanos);
+        }
+        return Duration.ZERO;
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public @Override void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("georchestra.login.admission.rejected", rejected, AtomicLong::get)//
+                .tag("reason", REJECTED_RATE_LIMITED)//
+                .description("Number of authentication requests rejected")//
+                .register(registry);
+    }
+
+    private class TokenBucket {
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(long now) {
+            this.tokens = burst;
+            this.lastRefill = now;
+        }
+
+        /**
+         * @return {@code 0} if a token was taken, or the nanoseconds until one is
+         *         available
+         */
+        synchronized long tryConsume(long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+                lastRefill = now;
+            }
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+    }
+}
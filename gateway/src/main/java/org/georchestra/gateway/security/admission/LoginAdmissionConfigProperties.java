@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.admission;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Configuration properties for the admission control of authentication
+ * requests, see {@link LoginAdmissionWebFilter}.
+ */
+@ConfigurationProperties(prefix = "georchestra.gateway.security.login-admission")
+public @Data class LoginAdmissionConfigProperties {
+
+    /**
+     * Whether to limit the authentication requests processed concurrently
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum number of authentication requests processed at the same time
+     */
+    private int maxConcurrent = 64;
+
+    /**
+     * Maximum number of authentication requests waiting for a slot, any other is
+     * rejected right away
+     */
+    private int maxQueued = 256;
+
+    /**
+     * Maximum time an authentication request waits for a slot before being
+     * rejected
+     */
+    private Duration maxWait = Duration.ofSeconds(5);
+
+    /**
+     * Value of the Retry-After header of the 503 responses to rejected requests
+     */
+    private Duration retryAfter = Duration.ofSeconds(5);
+
+    /**
+     * Per client IP address rate limiting
+     */
+    private PerClient perClient = new PerClient();
+
+    @Generated
+    public static @Data @Accessors(chain = true) class PerClient {
+
+        /**
+         * Whether to rate limit the authentication requests of each client IP
+         * address. When running behind a reverse proxy, make sure
+         * {@literal server.forward-headers-strategy} is set so the client's address
+         * is resolved from the forwarded headers.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of authentication requests a client can send in a burst
+         */
+        private int burst = 20;
+
+        /**
+         * Sustained rate of authentication requests allowed for a client
+         */
+        private double permitsPerSecond = 1;
+
+        /**
+         * Maximum number of clients to keep track of
+         */
+        private long maxClients = 100_000;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.admission;
+
+import org.georchestra.gateway.security.ServerHttpSecurityCustomizer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Installs the {@link LoginAdmissionWebFilter} in the security filter chain,
+ * unless disabled through
+ * {@literal georchestra.gateway.security.login-admission.enabled=false}
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(LoginAdmissionConfigProperties.class)
+@Slf4j(topic = "org.georchestra.gateway.security.admission")
+public class LoginAdmissionConfiguration {
+
+    public @Bean LoginAdmissionController loginAdmissionController(LoginAdmissionConfigProperties config,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        if (!config.isEnabled()) {
+            log.info("Authentication requests admission control disabled");
+            return null;
+        }
+        log.info("Authentication requests admission control enabled, max concurrent: {}, max queued: {}, max wait: {}",
+                config.getMaxConcurrent(), config.getMaxQueued(), config.getMaxWait());
+        LoginAdmissionController controller = new LoginAdmissionController(config.getMaxConcurrent(),
+                config.getMaxQueued(), config.getMaxWait());
+        meterRegistry.ifAvailable(controller::bindTo);
+        return controller;
+    }
+
+    public @Bean ClientRateLimiter loginClientRateLimiter(LoginAdmissionConfigProperties config,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        LoginAdmissionConfigProperties.PerClient perClient = config.getPerClient();
+        if (!config.isEnabled() || !perClient.isEnabled()) {
+            return null;
+        }
+        log.info("Authentication requests rate limited per client, burst: {}, permits per second: {}",
+                perClient.getBurst(), perClient.getPermitsPerSecond());
+        ClientRateLimiter rateLimiter = new ClientRateLimiter(perClient.getBurst(), perClient.getPermitsPerSecond(),
+                perClient.getMaxClients());
+        meterRegistry.ifAvailable(rateLimiter::bindTo);
+        return rateLimiter;
+    }
+
+    /**
+     * Adds the {@link LoginAdmissionWebFilter} first in the security filter chain,
+     * and the filter releasing its permits right before authorization. HTTP Basic
+     * requests with {@link VerifiedCredentials} are let through.
+     * <p>
+     * Note the filter is purposely not a bean, or it'd be also applied out of the
+     * security filter chain.
+     */
+    public @Bean ServerHttpSecurityCustomizer loginAdmissionCustomizer(LoginAdmissionConfigProperties config,
+            ObjectProvider<LoginAdmissionController> controller, ObjectProvider<ClientRateLimiter> rateLimiter,
+            ObjectProvider<VerifiedCredentials> verifiedCredentials) {
+        LoginAdmissionController admissionController = controller.getIfAvailable();
+        if (admissionController == null) {
+            return null;
+        }
+        LoginAdmissionWebFilter filter = new LoginAdmissionWebFilter(admissionController,
+                rateLimiter.getIfAvailable(), config.getRetryAfter(), verifiedCredentials.getIfAvailable());
+        return http -> http//
+                .addFilterAt(filter, SecurityWebFiltersOrder.FIRST)//
+                .addFilterBefore(LoginAdmissionWebFilter.releasePermitFilter(), SecurityWebFiltersOrder.AUTHORIZATION);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.admission;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking concurrency limiter with a bounded wait queue.
+ * <p>
+ * Up to {@code maxConcurrent} {@link Permit}s are handed out at the same time,
+ * up to {@code maxQueued} more requests wait at most {@code maxWait} for one,
+ * in arrival order, and any other request is rejected with an
+ * {@link AdmissionRejectedException}.
+ * <p>
+ * As a {@link MeterBinder}, publishes the
+ * {@literal georchestra.login.admission.active} and
+ * {@literal georchestra.login.admission.queued} gauges, the
+ * {@literal georchestra.login.admission.rejected} counter, tagged by
+ * {@literal reason}, and the {@literal georchestra.login.admission.wait} timer.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.admission")
+public class LoginAdmissionController implements MeterBinder {
+
+    static final String REJECTED_QUEUE_FULL = "queue-full";
+
+    static final String REJECTED_TIMEOUT = "timeout";
+
+    private final @Getter int maxConcurrent;
+
+    private final @Getter int maxQueued;
+
+    private final @NonNull Duration maxWait;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+
+    private final AtomicLong rejectedTimeout = new AtomicLong();
+
+    private Timer waitTimer;
+
+    public LoginAdmissionController(int maxConcurrent, int maxQueued, @NonNull Duration maxWait) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * @return a {@link Permit} that must be {@link Permit#release() released} once
+     *         done, as soon as one is available, or an
+     *         {@link AdmissionRejectedException} error if the wait queue is full
+     *         or no permit is available after {@code maxWait}
+     */
+    public Mono<Permit> acquire() {
+        return Mono.defer(() -> tryAcquire() ? Mono.just(new Permit()) : enqueue());
+    }
+
+    private Mono<Permit> enqueue() {
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejectedQueueFull.incrementAndGet();
+            return Mono.error(new AdmissionRejectedException(REJECTED_QUEUE_FULL));
+        }
+        final Waiter waiter = new Waiter();
+        waiters.offer(waiter);
+        // a permit may have been released since tryAcquire() failed
+        drain();
+
+        final long start = System.nanoTime();
+        return waiter.granted.asMono()//
+                // don't run the admitted request on the thread releasing the permit
+                .publishOn(Schedulers.parallel())//
+                .timeout(maxWait, Mono.defer(() -> timedOut(waiter)))//
+                .doOnCancel(() -> {
+                    if (!cancel(waiter)) {
+                        waiter.permit.release();
+                    }
+                })//
+                .doOnNext(permit -> {
+                    Timer timer = waitTimer;
+                    if (timer != null) {
+                        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                });
+    }
+
+    private Mono<Permit> timedOut(Waiter waiter) {
+        if (cancel(waiter)) {
+            rejectedTimeout.incrementAndGet();
+            return Mono.error(new AdmissionRejectedException(REJECTED_TIMEOUT));
+        }
+        // granted right at the deadline
+        return Mono.just(waiter.permit);
+    }
+
+    private boolean cancel(Waiter waiter) {
+        if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) {
+            queued.decrementAndGet();
+            waiters.remove(waiter);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = active.get();
+            if (current >= maxConcurrent) {
+                return false;
+            }
+            if (active.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void release() {
+        active.decrementAndGet();
+        drain();
+    }
+
+    /**
+     * Hands out available permits to waiting requests
+     */
+    private void drain() {
+        while (!waiters.isEmpty() && tryAcquire()) {
+            Waiter next = waiters.poll();
+            if (next != null && next.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+                queued.decrementAndGet();
+                next.granted.tryEmitValue(next.permit);
+            } else {
+                // no waiter left or cancelled, give the permit back
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return number of permits currently handed out
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * @return number of requests waiting for a permit
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getRejected(String reason) {
+        return REJECTED_TIMEOUT.equals(reason) ? rejectedTimeout.get() : rejectedQueueFull.get();
+    }
+
+    public @Override void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("georchestra.login.admission.active", this, LoginAdmissionController::getActive)//
+                .description("Number of authentication requests being processed")//
+                .register(registry);
+        Gauge.builder("georchestra.login.admission.queued", this, LoginAdmissionController::getQueued)//
+                .description("Number of authentication requests waiting to be processed")//
+                .register(registry);
+        FunctionCounter.builder("georchestra.login.admission.rejected", rejectedQueueFull, AtomicLong::get)//
+                .tag("reason", REJECTED_QUEUE_FULL)//
+                .description("Number of authentication requests rejected")//
+                .register(registry);
+        FunctionCounter.builder("georchestra.login.admission.rejected", rejectedTimeout, AtomicLong::get)//
+                .tag("reason", REJECTED_TIMEOUT)//
+                .description("Number of authentication requests rejected")//
+                .register(registry);
+        this.waitTimer = Timer.builder("georchestra.login.admission.wait")//
+                .description("Time authentication requests waited to be processed")//
+                .publishPercentileHistogram()//
+                .register(registry);
+    }
+
+    /**
+     * Right to process an authentication request, released only once no matter how
+     * many times {@link #release()} is called
+     */
+    public final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                LoginAdmissionController.this.release();
+            }
+        }
+    }
+
+    private final class Waiter {
+        static final int WAITING = 0;
+        static final int GRANTED = 1;
+        static final int CANCELLED = 2;
+
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        final Sinks.One<Permit> granted = Sinks.one();
+
+        final Permit permit = new Permit();
+    }
+
+    @SuppressWarnings("serial")
+    public static class AdmissionRejectedException extends RuntimeException {
+
+        private final @Getter String reason;
+
+        AdmissionRejectedException(String reason) {
+            super("Authentication request rejected: " + reason, null, false, false);
+            this.reason = reason;
+        }
+    }
+}
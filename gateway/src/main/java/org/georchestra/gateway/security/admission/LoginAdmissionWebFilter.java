@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.admission;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+
+import org.georchestra.gateway.security.admission.LoginAdmissionController.AdmissionRejectedException;
+import org.georchestra.gateway.security.admission.LoginAdmissionController.Permit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link WebFilter} applying admission control to authentication requests, so
+ * that a burst of logins can't exhaust the authentication backends (LDAP
+ * binds, OpenID Connect token requests) and take the regular proxied traffic
+ * down with it.
+ * <p>
+ * Authentication requests are form logins ({@literal POST /login}),
+ * {@literal /auth/login}, OAuth2 authorization code callbacks
+ * ({@literal /login/oauth2/code/**}), and requests carrying HTTP Basic
+ * credentials, unless they're {@link VerifiedCredentials known valid} and
+ * won't reach the authentication backend. Each one:
+ * <ul>
+ * <li>is rejected with {@literal 429 Too Many Requests} if its client IP
+ * address exceeded its rate limit, when per client rate limiting is enabled;
+ * <li>waits for a {@link LoginAdmissionController} permit, or is rejected with
+ * {@literal 503 Service Unavailable} if there are too many waiting already or
+ * none becomes available in time.
+ * </ul>
+ * Both rejections carry a {@literal Retry-After} header.
+ * <p>
+ * The permit is held while the request goes through the authentication
+ * filters only, {@link #releasePermitFilter()} must be installed right before
+ * the authorization filter to release it, so that requests authenticated with
+ * HTTP Basic don't hold it while being proxied.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.admission")
+@RequiredArgsConstructor
+public class LoginAdmissionWebFilter implements WebFilter {
+
+    static final String PERMIT_ATTRIBUTE = LoginAdmissionWebFilter.class.getName() + ".permit";
+
+    private final @NonNull LoginAdmissionController controller;
+
+    private final @Nullable ClientRateLimiter rateLimiter;
+
+    private final @NonNull Duration retryAfter;
+
+    private final @Nullable VerifiedCredentials verifiedCredentials;
+
+    public LoginAdmissionWebFilter(@NonNull LoginAdmissionController controller,
+            @Nullable ClientRateLimiter rateLimiter, @NonNull Duration retryAfter) {
+        this(controller, rateLimiter, retryAfter, null);
+    }
+
+    public @Override Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!isAuthenticationRequest(exchange.getRequest())) {
+            return chain.filter(exchange);
+        }
+        if (rateLimiter != null) {
+            Duration wait = rateLimiter.tryAcquire(clientAddress(exchange.getRequest()));
+            if (!wait.isZero()) {
+                log.debug("Rate limited authentication request from {}", exchange.getRequest().getRemoteAddress());
+                return reject(exchange, HttpStatus.TOO_MANY_REQUESTS, wait);
+            }
+        }
+        return controller.acquire()//
+                .flatMap(permit -> {
+                    exchange.getAttributes().put(PERMIT_ATTRIBUTE, permit);
+                    return chain.filter(exchange).doFinally(signal -> permit.release());
+                })//
+                .onErrorResume(AdmissionRejectedException.class, e -> {
+                    log.debug("Authentication request rejected: {}", e.getReason());
+                    return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, retryAfter);
+                });
+    }
+
+    /**
+     * @return a {@link WebFilter} releasing the request's permit, if any, once it
+     *         went through the authentication filters
+     */
+    public static WebFilter releasePermitFilter() {
+        return (exchange, chain) -> {
+            Permit permit = exchange.getAttribute(PERMIT_ATTRIBUTE);
+            if (permit != null) {
+                permit.release();
+            }
+            return chain.filter(exchange);
+        };
+    }
+
+    boolean isAuthenticationRequest(ServerHttpRequest request) {
+        String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.regionMatches(true, 0, "Basic ", 0, 6)) {
+            return !isVerified(authorization.substring(6).trim());
+        }
+        String path = request.getPath().pathWithinApplication().value();
+        if (path.startsWith("/login/oauth2/code/") || "/auth/login".equals(path)) {
+            return true;
+        }
+        return HttpMethod.POST.equals(request.getMethod()) && "/login".equals(path);
+    }
+
+    private boolean isVerified(String basicCredentials) {
+        if (verifiedCredentials == null) {
+            return false;
+        }
+        final String credentials;
+        try {
+            credentials = new String(Base64.getDecoder().decode(basicCredentials), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        final int separator = credentials.indexOf(':');
+        return separator > 0 && verifiedCredentials.isVerified(credentials.substring(0, separator),
+                credentials.substring(separator + 1));
+    }
+
+    private static String clientAddress(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null) {
+            return "unknown";
+        }
+        return remoteAddress.getAddress() == null ? remoteAddress.getHostString()
+                : remoteAddress.getAddress().getHostAddress();
+    }
+
+    private static Mono<Void> reject(ServerWebExchange exchange, HttpStatus status, Duration retryAfter) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        return response.setComplete();
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.admission;
+
+/**
+ * Lookup of credentials known to be valid without querying an authentication
+ * backend, so that {@link LoginAdmissionWebFilter} doesn't apply admission
+ * control to HTTP Basic requests that won't reach it.
+ */
+@FunctionalInterface
+public interface VerifiedCredentials {
+
+    /**
+     * @return whether the username and password pair was recently verified and
+     *         will be authenticated without querying the authentication backend
+     */
+    boolean isVerified(String username, String password);
+}
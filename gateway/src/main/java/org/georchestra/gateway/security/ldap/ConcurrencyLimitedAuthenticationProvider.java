@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.AuthenticationLimits;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link AuthenticationProvider} decorator that limits the number of concurrent
+ * authentication requests performed against a single LDAP service, as
+ * configured by its {@link AuthenticationLimits}.
+ * <p>
+ * Up to {@link AuthenticationLimits#getMaxConcurrent() maxConcurrent} requests
+ * run at the same time, up to {@link AuthenticationLimits#getMaxQueued()
+ * maxQueued} more wait at most {@link AuthenticationLimits#getMaxWait()
+ * maxWait} for a slot, and any other request is rejected with an
+ * {@link AuthenticationServiceException}, letting the next provider, if any,
+ * try to authenticate it.
+ * <p>
+ * As a {@link MeterBinder}, publishes the
+ * {@literal georchestra.ldap.authentication.active} and
+ * {@literal georchestra.ldap.authentication.queued} gauges, and the
+ * {@literal georchestra.ldap.authentication.rejected} counter, tagged by LDAP
+ * config name, as well as the
+ * {@literal georchestra.ldap.authentication.duration} latency histogram, also
+ * tagged by {@literal success} or {@literal failure} outcome.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap")
+public class ConcurrencyLimitedAuthenticationProvider extends AuthenticationProviderDecorator implements MeterBinder {
+
+    private final @NonNull @Getter String configName;
+
+    private final @Getter int maxConcurrent;
+
+    private final @Getter int maxQueued;
+
+    private final Duration maxWait;
+
+    private final Semaphore permits;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ConcurrencyLimitedAuthenticationProvider(@NonNull String configName,
+            @NonNull AuthenticationProvider delegate, @NonNull AuthenticationLimits limits) {
+        super(delegate);
+        this.configName = configName;
+        this.maxConcurrent = Math.max(1, limits.getMaxConcurrent());
+        this.maxQueued = Math.max(0, limits.getMaxQueued());
+        this.maxWait = limits.getMaxWait() == null ? Duration.ZERO : limits.getMaxWait();
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    private Timer successTimer;
+
+    private Timer failureTimer;
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        acquire(authentication);
+        final long start = System.nanoTime();
+        Timer timer = failureTimer;
+        try {
+            Authentication result = super.authenticate(authentication);
+            if (result != null) {
+                timer = successTimer;
+            }
+            return result;
+        } finally {
+            permits.release();
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void acquire(Authentication authentication) {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            throw reject(authentication, "too many pending authentication requests");
+        }
+        try {
+            if (!permits.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw reject(authentication, "timed out waiting after " + maxWait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject(authentication, "interrupted");
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private AuthenticationServiceException reject(Authentication authentication, String reason) {
+        rejected.incrementAndGet();
+        log.warn("Rejected authentication of {} against {} LDAP: {}", authentication.getName(), configName, reason);
+        return new AuthenticationServiceException(
+                String.format("LDAP %s is too busy to authenticate, %s", configName, reason));
+    }
+
+    /**
+     * @return number of authentication requests currently running
+     */
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * @return number of authentication requests waiting for a slot
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * @return number of authentication requests rejected so far
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public @Override void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("georchestra.ldap.authentication.active", this,
+                ConcurrencyLimitedAuthenticationProvider::getActive)//
+                .tag("ldap", configName)//
+                .description("Number of authentication requests running against the LDAP service")//
+                .register(registry);
+        Gauge.builder("georchestra.ldap.authentication.queued", this,
+                ConcurrencyLimitedAuthenticationProvider::getQueued)//
+                .tag("ldap", configName)//
+                .description("Number of authentication requests waiting to run against the LDAP service")//
+                .register(registry);
+        FunctionCounter.builder("georchestra.ldap.authentication.rejected", this,
+                ConcurrencyLimitedAuthenticationProvider::getRejected)//
+                .tag("ldap", configName)//
+                .description("Number of authentication requests rejected due to the LDAP service being busy")//
+                .register(registry);
+        this.successTimer = latencyTimer(registry, "success");
+        this.failureTimer = latencyTimer(registry, "failure");
+    }
+
+    private Timer latencyTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("georchestra.ldap.authentication.duration")//
+                .tag("ldap", configName)//
+                .tag("outcome", outcome)//
+                .description("Time taken by the LDAP service to authenticate a user, not counting queueing time")//
+                .publishPercentileHistogram()//
+                .register(registry);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.ldap;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.georchestra.gateway.security.admission.VerifiedCredentials;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link ReactiveAuthenticationManager} decorator that remembers successfully
+ * verified username and password pairs for a short time, so that clients
+ * sending HTTP Basic credentials on every request (e.g. QGIS, harvesters) don't
+ * cause an LDAP bind and roles search per request.
+ * <p>
+ * Passwords are never kept, entries are keyed by username and hold an
+ * HMAC-SHA256 digest of the password computed with a random key generated at
+ * startup, alongside the resulting {@link Authentication}. A request is only
+ * authenticated from the cache if its password digest matches, otherwise it's
+ * delegated, and a failed authentication evicts the username's entry.
+ * <p>
+ * Note a password changed in the LDAP database is still accepted for up to
+ * {@code expireAfterWrite}.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap")
+public class CredentialsCachingAuthenticationManager
+        implements ReactiveAuthenticationManager, VerifiedCredentials, MeterBinder {
+
+    public static final String CACHE_NAME = "georchestra.ldap.credentials";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    @Value
+    private static class Entry {
+        private final @NonNull byte[] passwordDigest;
+        private final @NonNull Authentication authentication;
+    }
+
+    private final @NonNull @Getter ReactiveAuthenticationManager delegate;
+
+    private final Cache<String, Entry> byUsername;
+
+    private final ThreadLocal<Mac> hmac;
+
+    public CredentialsCachingAuthenticationManager(@NonNull ReactiveAuthenticationManager delegate,
+            long maximumSize, @NonNull Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.byUsername = CacheBuilder.newBuilder()//
+                .maximumSize(maximumSize)//
+                .expireAfterWrite(expireAfterWrite.toMillis(), TimeUnit.MILLISECONDS)//
+                .recordStats()//
+                .build();
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        final SecretKeySpec secretKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.hmac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(secretKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    public @Override Mono<Authentication> authenticate(Authentication authentication) {
+        if (!(authentication instanceof UsernamePasswordAuthenticationToken)
+                || !(authentication.getCredentials() instanceof String) || authentication.getName() == null) {
+            return delegate.authenticate(authentication);
+        }
+        final String username = authentication.getName();
+        final byte[] digest = digest((String) authentication.getCredentials());
+
+        Entry entry = byUsername.getIfPresent(username);
+        if (entry != null && MessageDigest.isEqual(entry.getPasswordDigest(), digest)) {
+            log.trace("Authenticated {} from cached credentials", username);
+            return Mono.just(entry.getAuthentication());
+        }
+        return delegate.authenticate(authentication)//
+                .doOnNext(authenticated -> byUsername.put(username, new Entry(digest, authenticated)))//
+                .doOnError(BadCredentialsException.class, e -> evict(username));
+    }
+
+    public @Override boolean isVerified(@NonNull String username, @NonNull String password) {
+        Entry entry = byUsername.getIfPresent(username);
+        return entry != null && MessageDigest.isEqual(entry.getPasswordDigest(), digest(password));
+    }
+
+    private void evict(String username) {
+        log.debug("Evicting cached credentials of {} after failed authentication", username);
+        byUsername.invalidate(username);
+    }
+
+    private byte[] digest(String password) {
+        return hmac.get().doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Publishes the cache size, hit, miss, and eviction metrics to the given
+     * registry under the {@link #CACHE_NAME} cache name
+     */
+    public @Override void bindTo(@NonNull MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, byUsername, CACHE_NAME);
+    }
+
+    @VisibleForTesting
+    long size() {
+        byUsername.cleanUp();
+        return byUsername.size();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import java.util.List;
+
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.AuthenticationMode;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.ReactiveAuthenticationManagerAdapter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Runs the blocking LDAP {@link AuthenticationProvider}s on a dedicated bounded
+ * elastic {@link Scheduler}, so that JNDI binds and searches never run on, nor
+ * compete for threads with, the reactor-netty event loops or the shared
+ * {@link Schedulers#boundedElastic()} scheduler.
+ * <p>
+ * The scheduler's thread cap is the sum of the providers'
+ * {@link ConcurrencyLimitedAuthenticationProvider#getMaxConcurrent()
+ * maxConcurrent} and {@link ConcurrencyLimitedAuthenticationProvider#getMaxQueued()
+ * maxQueued} limits, hence a slow LDAP service can't use up more threads than
+ * its own limits allow. In {@literal sequential} mode it still delays the
+ * authentication requests of the LDAP services configured after it, since the
+ * {@link ProviderManager} calls the providers one after the other, for up to the
+ * {@literal authentication.timeout} of each LDAP service tried first. The
+ * {@literal race} mode doesn't have that issue.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap")
+public class LdapAuthenticationExecutor implements MeterBinder, DisposableBean {
+
+    public static final String SCHEDULER_NAME = "ldap-authentication";
+
+    private final @Getter List<ConcurrencyLimitedAuthenticationProvider> providers;
+
+    private final @Getter Scheduler scheduler;
+
+    public LdapAuthenticationExecutor(@NonNull List<ConcurrencyLimitedAuthenticationProvider> providers) {
+        this.providers = List.copyOf(providers);
+        int threadCap = Math.max(1,
+                providers.stream().mapToInt(p -> p.getMaxConcurrent() + p.getMaxQueued()).sum());
+        log.info("Running LDAP authentication on up to {} {} threads", threadCap, SCHEDULER_NAME);
+        this.scheduler = Schedulers.newBoundedElastic(threadCap, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+                SCHEDULER_NAME);
+    }
+
+    /**
+     * @return a {@link ReactiveAuthenticationManager} trying the providers on this
+     *         executor's scheduler, either in order or all at once depending on the
+     *         {@code mode}, or {@code null} if there are no providers
+     */
+    public ReactiveAuthenticationManager authenticationManager(@NonNull AuthenticationMode mode) {
+        if (providers.isEmpty()) {
+            return null;
+        }
+        if (mode == AuthenticationMode.RACE && providers.size() > 1) {
+            log.info("Authenticating against {} LDAP configs at once", providers.size());
+            return new RaceAuthenticationManager(providers, scheduler);
+        }
+        ProviderManager providerManager = new ProviderManager(List.<AuthenticationProvider>copyOf(providers));
+        ReactiveAuthenticationManagerAdapter manager = new ReactiveAuthenticationManagerAdapter(providerManager);
+        manager.setScheduler(scheduler);
+        return manager;
+    }
+
+    public @Override void bindTo(@NonNull MeterRegistry registry) {
+        providers.forEach(p -> p.bindTo(registry));
+    }
+
+    public @Override void destroy() {
+        scheduler.dispose();
+    }
+}
@@ -48,7 +48,10 @@ class LdapConfigBuilder {
                 .rolesRdn(config.getRoles().getRdn())//
                 .rolesSearchFilter(config.getRoles().getSearchFilter())//
                 .adminDn(toOptional(config.getAdminDn()))//
-                .adminPassword(toOptional(config.getAdminPassword())).build();
+                .adminPassword(toOptional(config.getAdminPassword()))//
+                .pool(config.getPool())//
+                .authentication(config.getAuthentication())//
+                .build();
     }
 
     public ExtendedLdapConfig asExtendedLdapConfig(String name, Server config) {
@@ -66,6 +69,11 @@ class LdapConfigBuilder {
                 .orgsRdn(config.getOrgs().getRdn())//
                 .adminDn(toOptional(config.getAdminDn()))//
                 .adminPassword(toOptional(config.getAdminPassword()))//
+                .pool(config.getPool())//
+                .authentication(config.getAuthentication())//
+                .snapshot(config.getSnapshot())//
+                .userLookup(config.getUserLookup())//
+                .singleSearch(config.getSingleSearch())//
                 .build();
     }
 
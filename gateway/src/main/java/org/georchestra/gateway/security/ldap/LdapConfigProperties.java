@@ -18,6 +18,7 @@
  */
 package org.georchestra.gateway.security.ldap;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -66,6 +67,38 @@ public class LdapConfigProperties implements Validator {
     @Valid
     private Map<String, Server> ldap = Map.of();
 
+    /**
+     * How to authenticate users when several LDAP configs are enabled. Either
+     * {@code sequential}, trying each LDAP in the order of the
+     * {@code georchestra.gateway.security.ldap} entries until one succeeds, or
+     * {@code race}, trying all of them at once
+     */
+    private AuthenticationMode ldapAuthenticationMode = AuthenticationMode.SEQUENTIAL;
+
+    /**
+     * Cache of the verified LDAP credentials, avoiding an LDAP bind per request
+     * for clients sending HTTP Basic credentials on every request
+     */
+    private CredentialsCache ldapCredentialsCache = new CredentialsCache();
+
+    /**
+     * How to initialize the users api of the extended LDAP configs
+     */
+    private Initialization ldapInitialization = new Initialization();
+
+    public static enum AuthenticationMode {
+        /**
+         * Try each LDAP config one after another, in configuration order, until one
+         * authenticates the user
+         */
+        SEQUENTIAL,
+        /**
+         * Try all LDAP configs at once, the first one in configuration order that
+         * authenticates the user wins, and the lower priority ones are cancelled
+         */
+        RACE
+    }
+
     @Generated
     public static @Data class Server {
 
@@ -123,6 +156,214 @@ public class LdapConfigProperties implements Validator {
          * (optional).
          */
         private String adminPassword;
+
+        /**
+         * Connection pooling settings for the user and role searches performed
+         * against this LDAP service. User binds (i.e. password checks) are never
+         * pooled.
+         */
+        private ConnectionPool pool = new ConnectionPool();
+
+        /**
+         * Limits to the authentication requests performed against this LDAP service.
+         * Only apply to logins, the users api and organizations lookups are not
+         * subject to them
+         */
+        private AuthenticationLimits authentication = new AuthenticationLimits();
+
+        /**
+         * In-memory snapshot of the users directory, only used if extended = true
+         */
+        private DirectorySnapshot snapshot = new DirectorySnapshot();
+
+        /**
+         * How to resolve the authenticated users, only used if extended = true
+         */
+        private UserLookup userLookup = UserLookup.USERS_API;
+
+        /**
+         * Cache of the users resolved with {@code userLookup = single-search}
+         */
+        private SingleSearch singleSearch = new SingleSearch();
+    }
+
+    public static enum UserLookup {
+        /**
+         * Use geOrchestra's users api, which queries the user entry, its roles, and
+         * its organization separately
+         */
+        USERS_API,
+        /**
+         * Use a single search of the user entry's {@literal modifyTimestamp} and
+         * {@literal memberOf} only, reusing the user last fetched from the users api
+         * until the entry changes, and the roles found at authentication time
+         */
+        SINGLE_SEARCH
+    }
+
+    @Generated
+    public static @Data @Accessors(chain = true) class SingleSearch {
+
+        /**
+         * How long a user fetched from the users api is reused while its LDAP entry
+         * doesn't change, bounds the staleness of changes that don't modify the user
+         * entry, such as moving the user to another organization without a
+         * {@literal memberof} overlay
+         */
+        private Duration maxAge = Duration.ofMinutes(5);
+
+        /**
+         * Maximum number of users to keep the last fetched user details of
+         */
+        private long maximumSize = 10_000;
+    }
+
+    @Generated
+    public static @Data @Accessors(chain = true) class DirectorySnapshot {
+
+        /**
+         * Whether to keep an in-memory snapshot of all the users of this LDAP service,
+         * resolving authenticated users from memory instead of querying the directory
+         * on each resolution
+         */
+        private boolean enabled = false;
+
+        /**
+         * Time between incremental synchronizations, which fetch the users, roles,
+         * and organizations modified since the last one
+         */
+        private Duration syncInterval = Duration.ofMinutes(1);
+
+        /**
+         * Time between full reloads of the snapshot, which also catch up with deleted
+         * users
+         */
+        private Duration fullSyncInterval = Duration.ofHours(1);
+
+        /**
+         * Page size of the LDAP searches performed to synchronize the snapshot
+         */
+        private int pageSize = 500;
+    }
+
+    @Generated
+    public static @Data @Accessors(chain = true) class Initialization {
+
+        /**
+         * Whether to initialize the users api of the extended LDAP configs in the
+         * background instead of during startup, reporting the progress through the
+         * {@literal ldapInitialization} health indicator
+         */
+        private boolean lazy = false;
+
+        /**
+         * How long after a failed users api initialization to start it over, on the
+         * next user lookup. Lookups don't wait for a users api still being
+         * initialized, they fail right away
+         */
+        private Duration retryInterval = Duration.ofSeconds(30);
+    }
+
+    @Generated
+    public static @Data @Accessors(chain = true) class CredentialsCache {
+
+        /**
+         * Whether to remember successfully verified username and password pairs.
+         * Disabled by default, since a changed password is still accepted until the
+         * cached credentials expire
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of users to remember the credentials of
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * How long verified credentials are trusted without checking them against
+         * the LDAP service again, bounds how long a changed password is still
+         * accepted
+         */
+        private Duration expireAfterWrite = Duration.ofMinutes(1);
+    }
+
+    @Generated
+    public static @Data @Accessors(chain = true) class AuthenticationLimits {
+
+        /**
+         * Maximum number of authentication requests (user search and bind) run
+         * concurrently against this LDAP service
+         */
+        private int maxConcurrent = 8;
+
+        /**
+         * Maximum number of authentication requests waiting for one of the
+         * {@code maxConcurrent} slots, further requests are rejected right away
+         */
+        private int maxQueued = 32;
+
+        /**
+         * Maximum time an authentication request waits for a slot before being
+         * rejected
+         */
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        /**
+         * Connect and read timeout for the user search, bind, and roles search
+         * performed to authenticate against this LDAP service, a zero or negative
+         * value means no timeout
+         */
+        private Duration timeout = Duration.ofSeconds(10);
+    }
+
+    @Generated
+    public static @Data @Accessors(chain = true) class ConnectionPool {
+
+        /**
+         * Whether to reuse pooled connections for user and role searches instead of
+         * opening a new connection for each LDAP operation
+         */
+        private boolean enabled = false;
+
+        /**
+         * Minimum number of idle connections to keep in the pool
+         */
+        private int minIdle = 0;
+
+        /**
+         * Maximum number of idle connections to keep in the pool
+         */
+        private int maxIdle = 8;
+
+        /**
+         * Maximum number of connections (active and idle) the pool can hold, a
+         * negative value means no limit
+         */
+        private int maxTotal = 8;
+
+        /**
+         * Maximum time to wait for a connection to be available when the pool is
+         * exhausted, a negative value means wait forever
+         */
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        /**
+         * LDAP search filter used to validate pooled connections on borrow and while
+         * idle, performed as an object-scoped search on the directory root DSE
+         */
+        private String validationQuery = "objectclass=*";
+
+        /**
+         * Time between runs of the idle connections evictor, a non-positive value
+         * disables it
+         */
+        private Duration evictionInterval = Duration.ofMinutes(5);
+
+        /**
+         * Minimum time a connection may sit idle in the pool before being eligible
+         * for eviction
+         */
+        private Duration minEvictableIdleTime = Duration.ofMinutes(10);
     }
 
     @Generated
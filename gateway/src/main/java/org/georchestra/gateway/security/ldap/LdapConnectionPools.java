@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.directory.SearchControls;
+
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.ConnectionPool;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.ldap.pool2.factory.PoolConfig;
+import org.springframework.ldap.pool2.factory.PooledContextSource;
+import org.springframework.ldap.pool2.validation.DefaultDirContextValidator;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates the {@link BaseLdapPathContextSource context sources} used by the
+ * basic and extended LDAP authentication providers and users APIs, using a
+ * {@link PooledLdapContextSource connection pool} if
+ * {@link ConnectionPool#isEnabled() enabled} for the LDAP config.
+ * <p>
+ * As a {@link MeterBinder}, publishes the {@literal georchestra.ldap.pool.active}
+ * and {@literal georchestra.ldap.pool.idle} gauges for each pool, tagged by LDAP
+ * config name and pool usage.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap")
+public class LdapConnectionPools implements MeterBinder, DisposableBean {
+
+    private final Map<Tags, PooledLdapContextSource> pools = new ConcurrentHashMap<>();
+
+    private MeterRegistry registry;
+
+    /**
+     * @param name          the LDAP config name
+     * @param usage         what the context source is used for (e.g.
+     *                      {@literal authentication}, {@literal users}), to tell
+     *                      apart multiple pools for the same LDAP config
+     * @param adminDn       optional principal to get authenticated contexts
+     * @param adminPassword optional password to get authenticated contexts
+     * @param timeout       connect and read timeout for LDAP operations,
+     *                      {@code null}, zero or negative for no timeout
+     * @param poolConfig    pool settings, {@code null} or disabled to get a
+     *                      non-pooled context source
+     */
+    public BaseLdapPathContextSource contextSource(@NonNull String name, @NonNull String usage, @NonNull String url,
+            @NonNull String baseDn, @NonNull Optional<String> adminDn, @NonNull Optional<String> adminPassword,
+            Duration timeout, ConnectionPool poolConfig) {
+
+        LdapContextSource target = new LdapContextSource();
+        target.setUrl(url);
+        target.setBase(baseDn);
+        adminDn.ifPresent(dn -> {
+            target.setUserDn(dn);
+            target.setPassword(adminPassword.orElse(null));
+        });
+        if (timeout != null && !timeout.isZero() && !timeout.isNegative()) {
+            String millis = String.valueOf(timeout.toMillis());
+            Map<String, Object> env = new HashMap<>();
+            env.put("com.sun.jndi.ldap.connect.timeout", millis);
+            env.put("com.sun.jndi.ldap.read.timeout", millis);
+            target.setBaseEnvironmentProperties(env);
+        }
+        target.afterPropertiesSet();
+
+        if (poolConfig == null || !poolConfig.isEnabled()) {
+            return target;
+        }
+        log.info("Using pooled connections for {} LDAP {} operations, max total: {}", name, usage,
+                poolConfig.getMaxTotal());
+
+        PooledContextSource pool = new PooledContextSource(toPoolConfig(poolConfig));
+        pool.setContextSource(target);
+        pool.setDirContextValidator(validator(poolConfig));
+
+        PooledLdapContextSource pooled = new PooledLdapContextSource(target, pool);
+        Tags tags = Tags.of("ldap", name, "usage", usage);
+        PooledLdapContextSource previous = pools.put(tags, pooled);
+        if (previous != null) {
+            destroy(previous);
+        }
+        if (registry != null) {
+            bindTo(registry, tags, pooled);
+        }
+        return pooled;
+    }
+
+    private PoolConfig toPoolConfig(ConnectionPool config) {
+        PoolConfig poolConfig = new PoolConfig();
+        poolConfig.setMinIdlePerKey(config.getMinIdle());
+        poolConfig.setMaxIdlePerKey(config.getMaxIdle());
+        poolConfig.setMaxTotalPerKey(config.getMaxTotal());
+        poolConfig.setMaxTotal(config.getMaxTotal());
+        poolConfig.setMaxWaitMillis(config.getMaxWait().toMillis());
+        poolConfig.setTestOnBorrow(true);
+        poolConfig.setTestWhileIdle(true);
+        poolConfig.setTimeBetweenEvictionRunsMillis(config.getEvictionInterval().toMillis());
+        poolConfig.setMinEvictableIdleTimeMillis(config.getMinEvictableIdleTime().toMillis());
+        return poolConfig;
+    }
+
+    private DefaultDirContextValidator validator(ConnectionPool config) {
+        DefaultDirContextValidator validator = new DefaultDirContextValidator(SearchControls.OBJECT_SCOPE);
+        validator.setBase("");
+        validator.setFilter(config.getValidationQuery());
+        return validator;
+    }
+
+    public @Override void bindTo(@NonNull MeterRegistry registry) {
+        this.registry = registry;
+        pools.forEach((tags, pool) -> bindTo(registry, tags, pool));
+    }
+
+    private void bindTo(MeterRegistry registry, Tags tags, PooledLdapContextSource pool) {
+        Gauge.builder("georchestra.ldap.pool.active", pool, PooledLdapContextSource::getNumActive)//
+                .tags(tags)//
+                .description("Number of LDAP connections currently borrowed from the pool")//
+                .register(registry);
+        Gauge.builder("georchestra.ldap.pool.idle", pool, PooledLdapContextSource::getNumIdle)//
+                .tags(tags)//
+                .description("Number of idle LDAP connections in the pool")//
+                .register(registry);
+    }
+
+    public @Override void destroy() {
+        pools.values().forEach(this::destroy);
+        pools.clear();
+    }
+
+    private void destroy(PooledLdapContextSource pool) {
+        try {
+            pool.destroy();
+        } catch (Exception e) {
+            log.warn("Error closing LDAP connection pool", e);
+        }
+    }
+}
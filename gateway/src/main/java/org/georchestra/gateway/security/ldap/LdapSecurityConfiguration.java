@@ -18,23 +18,29 @@
  */
 package org.georchestra.gateway.security.ldap;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.georchestra.gateway.security.ServerHttpSecurityCustomizer;
+import org.georchestra.gateway.security.admission.VerifiedCredentials;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.AuthenticationLimits;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.CredentialsCache;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.Server;
 import org.georchestra.gateway.security.ldap.basic.BasicLdapAuthenticationConfiguration;
 import org.georchestra.gateway.security.ldap.basic.BasicLdapAuthenticationProvider;
 import org.georchestra.gateway.security.ldap.extended.ExtendedLdapAuthenticationConfiguration;
 import org.georchestra.gateway.security.ldap.extended.GeorchestraLdapAuthenticationProvider;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.security.authentication.AuthenticationProvider;
-import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
-import org.springframework.security.authentication.ReactiveAuthenticationManagerAdapter;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
@@ -42,6 +48,7 @@ import org.springframework.security.ldap.userdetails.LdapUserDetails;
 import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
 import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -73,7 +80,7 @@ import lombok.extern.slf4j.Slf4j;
  * @see ExtendedLdapAuthenticationConfiguration
  * @see ActiveDirectoryAuthenticationConfiguration
  */
-@Configuration(proxyBeanMethods = true)
+@Configuration(proxyBeanMethods = false)
 @EnableConfigurationProperties(LdapConfigProperties.class)
 @Import({ //
         BasicLdapAuthenticationConfiguration.class, //
@@ -103,16 +110,68 @@ public class LdapSecurityConfiguration {
         return ldapAuthFilter;
     }
 
+    /**
+     * Authenticates against the enabled LDAP configs, remembering the verified
+     * credentials if enabled through
+     * {@literal georchestra.gateway.security.ldap-credentials-cache.enabled=true}
+     */
     @Bean
-    public ReactiveAuthenticationManager ldapAuthenticationManager(List<BasicLdapAuthenticationProvider> basic,
-            List<GeorchestraLdapAuthenticationProvider> extended) {
+    public ReactiveAuthenticationManager ldapAuthenticationManager(LdapConfigProperties config,
+            LdapAuthenticationExecutor executor, ObjectProvider<MeterRegistry> meterRegistry) {
+        ReactiveAuthenticationManager manager = executor.authenticationManager(config.getLdapAuthenticationMode());
+        CredentialsCache cacheConfig = config.getLdapCredentialsCache();
+        if (manager == null || !cacheConfig.isEnabled()) {
+            return manager;
+        }
+        log.info("Caching verified LDAP credentials, maximum size: {}, expire after write: {}",
+                cacheConfig.getMaximumSize(), cacheConfig.getExpireAfterWrite());
+        CredentialsCachingAuthenticationManager caching = new CredentialsCachingAuthenticationManager(manager,
+                cacheConfig.getMaximumSize(), cacheConfig.getExpireAfterWrite());
+        meterRegistry.ifAvailable(caching::bindTo);
+        return caching;
+    }
+
+    /**
+     * Credentials verified by the {@link #ldapAuthenticationManager}'s cache, for
+     * the login admission control to let them through
+     */
+    @Bean
+    public VerifiedCredentials ldapVerifiedCredentials(ReactiveAuthenticationManager ldapAuthenticationManager) {
+        return ldapAuthenticationManager instanceof VerifiedCredentials
+                ? (VerifiedCredentials) ldapAuthenticationManager
+                : null;
+    }
 
-        List<AuthenticationProvider> flattened = Stream.concat(basic.stream(), extended.stream())
-                .map(AuthenticationProvider.class::cast).collect(Collectors.toList());
+    /**
+     * Decorates the basic and extended LDAP authentication providers with their
+     * configured {@link AuthenticationLimits} and runs them off the event loop,
+     * in the order the LDAP configs are declared in.
+     */
+    @Bean
+    public LdapAuthenticationExecutor ldapAuthenticationExecutor(LdapConfigProperties config,
+            List<BasicLdapAuthenticationProvider> basic, List<GeorchestraLdapAuthenticationProvider> extended) {
+
+        Stream<ConcurrencyLimitedAuthenticationProvider> basicProviders = basic.stream()
+                .map(p -> limit(config, p.getConfigName(), p));
+        Stream<ConcurrencyLimitedAuthenticationProvider> extendedProviders = extended.stream()
+                .map(p -> limit(config, p.getConfigName(), p));
+
+        List<String> declared = new ArrayList<>(config.getLdap().keySet());
+        Comparator<ConcurrencyLimitedAuthenticationProvider> declarationOrder = Comparator.comparingInt(p -> {
+            int index = declared.indexOf(p.getConfigName());
+            return index < 0 ? Integer.MAX_VALUE : index;
+        });
+        List<ConcurrencyLimitedAuthenticationProvider> flattened = Stream.concat(basicProviders, extendedProviders)
+                .sorted(declarationOrder)//
+                .collect(Collectors.toList());
+        return new LdapAuthenticationExecutor(flattened);
+    }
 
-        if (flattened.isEmpty())
-            return null;
-        ProviderManager providerManager = new ProviderManager(flattened);
-        return new ReactiveAuthenticationManagerAdapter(providerManager);
+    private ConcurrencyLimitedAuthenticationProvider limit(LdapConfigProperties config, String name,
+            AuthenticationProvider provider) {
+        AuthenticationLimits limits = Optional.ofNullable(config.getLdap().get(name))//
+                .map(Server::getAuthentication)//
+                .orElseGet(AuthenticationLimits::new);
+        return new ConcurrencyLimitedAuthenticationProvider(name, provider, limits);
     }
 }
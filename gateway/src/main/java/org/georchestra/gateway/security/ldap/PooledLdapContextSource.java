@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.LdapName;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.ldap.NamingException;
+import org.springframework.ldap.core.DistinguishedName;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.ldap.pool2.factory.PooledContextSource;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * {@link BaseLdapPathContextSource} that serves {@link #getReadOnlyContext()
+ * read-only} and {@link #getReadWriteContext() read-write} contexts from a
+ * connection pool, while {@link #getContext(String, String) user-bound}
+ * contexts, as used to check a user's password, are obtained directly from the
+ * target {@link LdapContextSource}, since such connections can't be shared.
+ * <p>
+ * This allows to use a single context source for Spring Security's
+ * {@literal BindAuthenticator} and the user and role searches.
+ */
+@RequiredArgsConstructor
+public class PooledLdapContextSource implements BaseLdapPathContextSource, DisposableBean {
+
+    private final @NonNull LdapContextSource target;
+    private final @NonNull PooledContextSource pool;
+
+    public @Override DirContext getReadOnlyContext() throws NamingException {
+        return pool.getReadOnlyContext();
+    }
+
+    public @Override DirContext getReadWriteContext() throws NamingException {
+        return pool.getReadWriteContext();
+    }
+
+    public @Override DirContext getContext(String principal, String credentials) throws NamingException {
+        return target.getContext(principal, credentials);
+    }
+
+    @SuppressWarnings("deprecation")
+    public @Override DistinguishedName getBaseLdapPath() {
+        return target.getBaseLdapPath();
+    }
+
+    public @Override LdapName getBaseLdapName() {
+        return target.getBaseLdapName();
+    }
+
+    public @Override String getBaseLdapPathAsString() {
+        return target.getBaseLdapPathAsString();
+    }
+
+    public int getNumActive() {
+        return pool.getNumActive();
+    }
+
+    public int getNumIdle() {
+        return pool.getNumIdle();
+    }
+
+    public @Override void destroy() throws Exception {
+        pool.destroy();
+    }
+}
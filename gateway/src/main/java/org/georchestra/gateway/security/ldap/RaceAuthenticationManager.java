@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.security.authentication.AccountStatusException;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.ProviderNotFoundException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.CredentialsContainer;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * {@link ReactiveAuthenticationManager} that tries all the
+ * {@link AuthenticationProvider}s supporting the authentication request at
+ * once, each on its own {@link Scheduler} worker.
+ * <p>
+ * The result is the same as {@link ProviderManager}'s, trying the providers in
+ * order: the first provider in list order that authenticates the user wins,
+ * which may mean waiting for higher priority providers to fail. As soon as the
+ * winner is known, the requests to lower priority providers are cancelled.
+ * Likewise, an {@link AccountStatusException} or
+ * {@link InternalAuthenticationServiceException} from a provider aborts the
+ * authentication if no higher priority provider succeeded. Other errors, e.g.
+ * an unreachable LDAP server, only rule out the provider that raised them.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap")
+@RequiredArgsConstructor
+class RaceAuthenticationManager implements ReactiveAuthenticationManager {
+
+    private final @NonNull List<? extends AuthenticationProvider> providers;
+
+    private final @NonNull Scheduler scheduler;
+
+    @RequiredArgsConstructor
+    private static class Attempt {
+        final Authentication authentication;
+        final AuthenticationException error;
+
+        boolean isConclusive() {
+            return authentication != null || error instanceof AccountStatusException
+                    || error instanceof InternalAuthenticationServiceException;
+        }
+    }
+
+    public @Override Mono<Authentication> authenticate(Authentication authentication) {
+        List<Mono<Attempt>> attempts = providers.stream()//
+                .filter(provider -> provider.supports(authentication.getClass()))//
+                .map(provider -> attempt(provider, authentication))//
+                .collect(Collectors.toList());
+
+        if (attempts.isEmpty()) {
+            return Mono.error(new ProviderNotFoundException(
+                    "No AuthenticationProvider found for " + authentication.getClass().getName()));
+        }
+
+        // mergeSequential subscribes to all attempts at once but emits them in
+        // provider order, and takeUntil() cancels the ones still running once the
+        // outcome is known
+        return Flux.mergeSequential(attempts)//
+                .takeUntil(Attempt::isConclusive)//
+                .collectList()//
+                .flatMap(this::result);
+    }
+
+    private Mono<Attempt> attempt(AuthenticationProvider provider, Authentication authentication) {
+        return Mono.fromCallable(() -> {
+            try {
+                return new Attempt(provider.authenticate(authentication), null);
+            } catch (AuthenticationException e) {
+                return new Attempt(null, e);
+            } catch (RuntimeException e) {
+                // not conclusive, so that it neither errors the merged attempts nor
+                // overrides the outcome of higher priority providers
+                log.warn("Error authenticating with {}", provider, e);
+                return new Attempt(null, new AuthenticationServiceException(e.getMessage(), e));
+            }
+        }).subscribeOn(scheduler);
+    }
+
+    private Mono<Authentication> result(List<Attempt> attempts) {
+        Attempt last = attempts.get(attempts.size() - 1);
+        if (last.authentication != null) {
+            Authentication result = last.authentication;
+            if (result instanceof CredentialsContainer) {
+                ((CredentialsContainer) result).eraseCredentials();
+            }
+            return Mono.just(result);
+        }
+        // in the absence of a conclusive result, the last provider's error, as
+        // ProviderManager does
+        AuthenticationException error = attempts.stream().map(a -> a.error).filter(Objects::nonNull)
+                .reduce((first, second) -> second).orElse(null);
+        if (error == null) {
+            log.debug("No LDAP provider could authenticate the request");
+            error = new ProviderNotFoundException("No AuthenticationProvider could authenticate the request");
+        }
+        return Mono.error(error);
+    }
+}
@@ -22,6 +22,7 @@ package org.georchestra.gateway.security.ldap.basic;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.georchestra.gateway.security.GeorchestraUserMapperExtension;
@@ -44,6 +45,11 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class BasicLdapAuthenticatedUserMapper implements GeorchestraUserMapperExtension {
 
+    @Override
+    public Set<Class<? extends Authentication>> getAuthenticationTypes() {
+        return Set.of(UsernamePasswordAuthenticationToken.class);
+    }
+
     @Override
     public Optional<GeorchestraUser> resolve(Authentication authToken) {
         return Optional.ofNullable(authToken)//
@@ -18,16 +18,22 @@
  */
 package org.georchestra.gateway.security.ldap.basic;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import org.georchestra.gateway.security.ServerHttpSecurityCustomizer;
 import org.georchestra.gateway.security.ldap.LdapConfigProperties;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.AuthenticationLimits;
+import org.georchestra.gateway.security.ldap.LdapConnectionPools;
+import org.georchestra.gateway.security.ldap.LdapConnectionPoolsConfiguration;
 import org.georchestra.gateway.security.ldap.extended.ExtendedLdapAuthenticationConfiguration;
 import org.springframework.beans.factory.BeanCreationException;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
@@ -65,6 +71,7 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Configuration(proxyBeanMethods = false)
 @EnableConfigurationProperties(LdapConfigProperties.class)
+@Import(LdapConnectionPoolsConfiguration.class)
 @Slf4j(topic = "org.georchestra.gateway.security.ldap.basic")
 public class BasicLdapAuthenticationConfiguration {
 
@@ -79,15 +86,25 @@ public class BasicLdapAuthenticationConfiguration {
     }
 
     @Bean
-    List<BasicLdapAuthenticationProvider> ldapAuthenticationProviders(List<LdapServerConfig> configs) {
-        return configs.stream().map(this::createLdapProvider).collect(Collectors.toList());
+    List<BasicLdapAuthenticationProvider> ldapAuthenticationProviders(List<LdapServerConfig> configs,
+            LdapConnectionPools pools) {
+        return configs.stream().map(config -> createLdapProvider(config, pools)).collect(Collectors.toList());
     }
 
-    private BasicLdapAuthenticationProvider createLdapProvider(LdapServerConfig config) {
+    private Duration timeout(AuthenticationLimits limits) {
+        return limits == null ? null : limits.getTimeout();
+    }
+
+    private BasicLdapAuthenticationProvider createLdapProvider(LdapServerConfig config, LdapConnectionPools pools) {
         log.info("Creating LDAP AuthenticationProvider {} with URL {}", config.getName(), config.getUrl());
 
         try {
+            BaseLdapPathContextSource contextSource = pools.contextSource(config.getName(), "authentication",
+                    config.getUrl(), config.getBaseDn(), config.getAdminDn(), config.getAdminPassword(),
+                    timeout(config.getAuthentication()), config.getPool());
+
             LdapAuthenticationProvider provider = new LdapAuthenticatorProviderBuilder()//
+                    .contextSource(contextSource)//
                     .url(config.getUrl())//
                     .baseDn(config.getBaseDn())//
                     .userSearchBase(config.getUsersRdn())//
@@ -24,13 +24,14 @@ import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j(topic = "org.georchestra.gateway.security.ldap")
 public class BasicLdapAuthenticationProvider extends AuthenticationProviderDecorator {
 
-    private final @NonNull String configName;
+    private final @NonNull @Getter String configName;
 
     public BasicLdapAuthenticationProvider(@NonNull String configName, @NonNull AuthenticationProvider delegate) {
         super(delegate);
@@ -52,6 +52,9 @@ public class LdapAuthenticatorProviderBuilder {
     // null = all atts, empty == none
     private @Setter String[] returningAttributes = null;
 
+    // null = create a non-pooled one out of url, baseDn, adminDn, and adminPassword
+    private @Setter BaseLdapPathContextSource contextSource;
+
     public LdapAuthenticationProvider build() {
         requireNonNull(url, "url is not set");
         requireNonNull(baseDn, "baseDn is not set");
@@ -84,6 +87,9 @@ public class LdapAuthenticatorProviderBuilder {
     }
 
     private BaseLdapPathContextSource contextSource() {
+        if (contextSource != null) {
+            return contextSource;
+        }
         LdapContextSource context = new LdapContextSource();
         context.setUrl(url);
         context.setBase(baseDn);
@@ -21,6 +21,9 @@ package org.georchestra.gateway.security.ldap.basic;
 
 import java.util.Optional;
 
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.AuthenticationLimits;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.ConnectionPool;
+
 import lombok.Builder;
 import lombok.Generated;
 import lombok.NonNull;
@@ -48,4 +51,10 @@ public class LdapServerConfig {
 
     private @NonNull Optional<String> adminDn;
     private @NonNull Optional<String> adminPassword;
+
+    // null = no connection pooling
+    private ConnectionPool pool;
+
+    // null = no limits nor timeouts
+    private AuthenticationLimits authentication;
 }
\ No newline at end of file
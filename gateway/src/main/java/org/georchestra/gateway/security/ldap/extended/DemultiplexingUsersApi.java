@@ -19,11 +19,18 @@
 
 package org.georchestra.gateway.security.ldap.extended;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.georchestra.security.api.UsersApi;
 import org.georchestra.security.model.GeorchestraUser;
@@ -31,7 +38,6 @@ import org.georchestra.security.model.GeorchestraUser;
 import com.google.common.annotations.VisibleForTesting;
 
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 
 /**
  * Demultiplexer to call the appropriate {@link UsersApi} based on the
@@ -44,11 +50,113 @@ import lombok.RequiredArgsConstructor;
  * database the authentication object was created from, avoiding the need to
  * disambiguate if two configured LDAP databases have accounts with the same
  * {@literal username}.
+ * <p>
+ * If the LDAP database has an {@link LdapDirectorySnapshot in-memory snapshot},
+ * users are looked up in it first, falling back to the {@link UsersApi} if the
+ * snapshot is not loaded yet or doesn't have the user.
+ * <p>
+ * If the LDAP database is configured with a {@link SingleSearchUserLookup},
+ * users are then resolved with it instead of the {@link UsersApi}, as long as
+ * the roles granted at authentication time are provided.
+ * <p>
+ * The {@link UsersApi}s may still be being initialized in the background, see
+ * {@link #lazy}, in which case lookups that need them fail right away instead
+ * of blocking the calling thread. A failed initialization is started over by
+ * the first lookup made at least {@code retryInterval} after it failed.
  */
-@RequiredArgsConstructor
 class DemultiplexingUsersApi {
 
-    private final @NonNull Map<String, UsersApi> targets;
+    private final @NonNull Map<String, CompletableFuture<UsersApi>> targets;
+
+    private final @NonNull Map<String, LdapDirectorySnapshot> snapshots;
+
+    private final @NonNull Map<String, SingleSearchUserLookup> lookups;
+
+    private final @NonNull Map<String, Supplier<CompletableFuture<UsersApi>>> initializers;
+
+    /**
+     * {@link System#nanoTime()} at which each failed initialization failed
+     */
+    private final Map<String, Long> failures = new ConcurrentHashMap<>();
+
+    private final @NonNull Duration retryInterval;
+
+    public DemultiplexingUsersApi(@NonNull Map<String, UsersApi> targets) {
+        this(targets, Map.of());
+    }
+
+    public DemultiplexingUsersApi(@NonNull Map<String, UsersApi> targets,
+            @NonNull Map<String, LdapDirectorySnapshot> snapshots) {
+        this(targets, snapshots, Map.of());
+    }
+
+    public DemultiplexingUsersApi(@NonNull Map<String, UsersApi> targets,
+            @NonNull Map<String, LdapDirectorySnapshot> snapshots,
+            @NonNull Map<String, SingleSearchUserLookup> lookups) {
+        this(targets.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> CompletableFuture.completedFuture(e.getValue()))),
+                snapshots, lookups, Map.of(), Duration.ZERO);
+    }
+
+    private DemultiplexingUsersApi(@NonNull Map<String, CompletableFuture<UsersApi>> targets,
+            @NonNull Map<String, LdapDirectorySnapshot> snapshots,
+            @NonNull Map<String, SingleSearchUserLookup> lookups,
+            @NonNull Map<String, Supplier<CompletableFuture<UsersApi>>> initializers,
+            @NonNull Duration retryInterval) {
+        this.targets = new ConcurrentHashMap<>(targets);
+        this.snapshots = snapshots;
+        this.lookups = lookups;
+        this.initializers = initializers;
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * @param initializers  start the initialization of each {@link UsersApi} in
+     *                      the background, by LDAP config name, called again to
+     *                      retry a failed one
+     * @param snapshots     the users snapshots by LDAP config name, may be
+     *                      populated as the {@link UsersApi}s get initialized
+     * @param lookups       the single search user lookups by LDAP config name,
+     *                      may be populated as the {@link UsersApi}s get
+     *                      initialized
+     * @param retryInterval how long after a failed initialization to start it
+     *                      over
+     */
+    static DemultiplexingUsersApi lazy(@NonNull Map<String, Supplier<CompletableFuture<UsersApi>>> initializers,
+            @NonNull Map<String, LdapDirectorySnapshot> snapshots,
+            @NonNull Map<String, SingleSearchUserLookup> lookups, @NonNull Duration retryInterval) {
+        DemultiplexingUsersApi users = new DemultiplexingUsersApi(Map.of(), snapshots, lookups, initializers,
+                retryInterval);
+        initializers.keySet().forEach(name -> users.targets.put(name, users.initialize(name)));
+        return users;
+    }
+
+    private CompletableFuture<UsersApi> initialize(String serviceName) {
+        failures.remove(serviceName);
+        CompletableFuture<UsersApi> target = initializers.get(serviceName).get();
+        target.whenComplete((api, error) -> {
+            if (error != null) {
+                failures.put(serviceName, System.nanoTime());
+            }
+        });
+        return target;
+    }
+
+    /**
+     * @return {@code true} if all the {@link UsersApi}s are initialized
+     */
+    public boolean isInitialized() {
+        return targets.values().stream().allMatch(f -> f.isDone() && !f.isCompletedExceptionally());
+    }
+
+    /**
+     * @return the names of the LDAP configs whose {@link UsersApi} failed to
+     *         initialize
+     */
+    public Set<String> getFailedTargetNames() {
+        return targets.entrySet().stream().filter(e -> e.getValue().isCompletedExceptionally())
+                .map(Map.Entry::getKey).collect(Collectors.toSet());
+    }
 
     public @VisibleForTesting Set<String> getTargetNames() {
         return new HashSet<>(targets.keySet());
@@ -65,8 +173,61 @@ class DemultiplexingUsersApi {
      *         {@link UsersApi}, or {@link Optional#empty() empty} if not found
      */
     public Optional<GeorchestraUser> findByUsername(@NonNull String serviceName, @NonNull String username) {
-        UsersApi target = targets.get(serviceName);
+        return findByUsername(serviceName, username, null);
+    }
+
+    /**
+     * @param serviceName the configured LDAP service name
+     * @param username    the user name to look up
+     * @param roles       the role names granted to the user at authentication
+     *                    time, or {@code null} if unknown, in which case the
+     *                    {@link UsersApi} resolves them
+     * @return the user from the service's snapshot, single search lookup, or
+     *         {@link UsersApi}, in that order of preference, or
+     *         {@link Optional#empty() empty} if not found
+     */
+    public Optional<GeorchestraUser> findByUsername(@NonNull String serviceName, @NonNull String username,
+            Collection<String> roles) {
+        LdapDirectorySnapshot snapshot = snapshots.get(serviceName);
+        if (snapshot != null) {
+            Optional<GeorchestraUser> user = snapshot.findByUsername(username);
+            if (user.isPresent()) {
+                return user;
+            }
+        }
+        SingleSearchUserLookup lookup = lookups.get(serviceName);
+        if (lookup != null && roles != null) {
+            return lookup.findByUsername(username, roles);
+        }
+        return target(serviceName).findByUsername(username);
+    }
+
+    /**
+     * @throws IllegalStateException right away if the {@link UsersApi} is still
+     *                               being initialized, or failed to, in which
+     *                               case its initialization may be retried
+     */
+    private UsersApi target(String serviceName) {
+        CompletableFuture<UsersApi> target = targets.get(serviceName);
         Objects.requireNonNull(target, () -> "No UsersApi found for config named " + serviceName);
-        return target.findByUsername(username);
+        if (!target.isDone()) {
+            throw new IllegalStateException("UsersApi " + serviceName + " is still being initialized");
+        }
+        try {
+            return target.join();
+        } catch (CompletionException e) {
+            retry(serviceName, target);
+            throw new IllegalStateException("Error initializing UsersApi " + serviceName, e.getCause());
+        }
+    }
+
+    private void retry(String serviceName, CompletableFuture<UsersApi> failed) {
+        Long failedAt = failures.get(serviceName);
+        if (!initializers.containsKey(serviceName) || failedAt == null
+                || System.nanoTime() - failedAt < retryInterval.toNanos()) {
+            return;
+        }
+        // atomically, so that concurrent lookups start a single retry
+        targets.computeIfPresent(serviceName, (name, current) -> current == failed ? initialize(name) : current);
     }
 }
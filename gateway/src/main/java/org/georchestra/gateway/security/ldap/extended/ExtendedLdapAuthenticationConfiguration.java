@@ -21,10 +21,19 @@ package org.georchestra.gateway.security.ldap.extended;
 
 import static java.util.Objects.requireNonNull;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.georchestra.ds.orgs.OrgsDao;
@@ -32,6 +41,7 @@ import org.georchestra.ds.orgs.OrgsDaoImpl;
 import org.georchestra.ds.roles.RoleDao;
 import org.georchestra.ds.roles.RoleDaoImpl;
 import org.georchestra.ds.roles.RoleProtected;
+import org.georchestra.ds.security.OrganizationsApiImpl;
 import org.georchestra.ds.security.UserMapper;
 import org.georchestra.ds.security.UserMapperImpl;
 import org.georchestra.ds.security.UsersApiImpl;
@@ -40,20 +50,35 @@ import org.georchestra.ds.users.AccountDaoImpl;
 import org.georchestra.ds.users.UserRule;
 import org.georchestra.gateway.security.GeorchestraUserMapperExtension;
 import org.georchestra.gateway.security.ldap.LdapConfigProperties;
-import org.georchestra.gateway.security.ldap.LdapConfigProperties.Server;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.AuthenticationLimits;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.Initialization;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.UserLookup;
+import org.georchestra.gateway.security.ldap.LdapConnectionPools;
+import org.georchestra.gateway.security.ldap.LdapConnectionPoolsConfiguration;
 import org.georchestra.gateway.security.ldap.basic.LdapAuthenticatorProviderBuilder;
+import org.georchestra.security.api.OrganizationsApi;
 import org.georchestra.security.api.UsersApi;
 import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
 import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
 import org.springframework.ldap.core.LdapTemplate;
-import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.security.ldap.authentication.LdapAuthenticationProvider;
 import org.springframework.security.ldap.userdetails.LdapUserDetails;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * Sets up a {@link GeorchestraUserMapperExtension} that knows how to map an
@@ -62,9 +87,13 @@ import lombok.extern.slf4j.Slf4j;
  * {@link LdapUserDetails} (i.e., if the user authenticated with LDAP), to a
  * {@link GeorchestraUser}, making use of geOrchestra's
  * {@literal georchestra-ldap-account-management} module's {@link UsersApi}.
+ * <p>
+ * Also sets up a {@link ResolveGeorchestraOrganizationGlobalFilter} to resolve
+ * the user's {@link Organization} through a shared {@link OrganizationsCache}.
  */
 @Configuration(proxyBeanMethods = false)
-@EnableConfigurationProperties(LdapConfigProperties.class)
+@EnableConfigurationProperties({ LdapConfigProperties.class, OrganizationsCacheConfigProperties.class })
+@Import(LdapConnectionPoolsConfiguration.class)
 @Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
 public class ExtendedLdapAuthenticationConfiguration {
 
@@ -73,20 +102,40 @@ public class ExtendedLdapAuthenticationConfiguration {
         return users.getTargetNames().isEmpty() ? null : new GeorchestraLdapAuthenticatedUserMapper(users);
     }
 
+    /**
+     * Compact storage of the LDAP authentication tokens by the persistent web
+     * session stores
+     */
+    @Bean
+    LdapAuthenticationTokenCodec ldapAuthenticationTokenCodec() {
+        return new LdapAuthenticationTokenCodec();
+    }
+
     @Bean
     List<ExtendedLdapConfig> enabledExtendedLdapConfigs(LdapConfigProperties config) {
         return config.extendedEnabled();
     }
 
     @Bean
-    List<GeorchestraLdapAuthenticationProvider> extendedLdapAuthenticationProviders(List<ExtendedLdapConfig> configs) {
-        return configs.stream().map(this::createLdapProvider).collect(Collectors.toList());
+    List<GeorchestraLdapAuthenticationProvider> extendedLdapAuthenticationProviders(List<ExtendedLdapConfig> configs,
+            LdapConnectionPools pools) {
+        return configs.stream().map(config -> createLdapProvider(config, pools)).collect(Collectors.toList());
     }
 
-    private GeorchestraLdapAuthenticationProvider createLdapProvider(ExtendedLdapConfig config) {
+    private Duration timeout(AuthenticationLimits limits) {
+        return limits == null ? null : limits.getTimeout();
+    }
+
+    private GeorchestraLdapAuthenticationProvider createLdapProvider(ExtendedLdapConfig config,
+            LdapConnectionPools pools) {
         log.info("Creating extended LDAP AuthenticationProvider {} at {}", config.getName(), config.getUrl());
 
+        BaseLdapPathContextSource contextSource = pools.contextSource(config.getName(), "authentication",
+                config.getUrl(), config.getBaseDn(), config.getAdminDn(), config.getAdminPassword(),
+                timeout(config.getAuthentication()), config.getPool());
+
         LdapAuthenticationProvider delegate = new LdapAuthenticatorProviderBuilder()//
+                .contextSource(contextSource)//
                 .url(config.getUrl())//
                 .baseDn(config.getBaseDn())//
                 .userSearchBase(config.getUsersRdn())//
@@ -101,25 +150,169 @@ public class ExtendedLdapAuthenticationConfiguration {
     }
 
     @Bean
-    DemultiplexingUsersApi demultiplexingUsersApi(List<ExtendedLdapConfig> configs) {
+    LdapDirectorySnapshots ldapDirectorySnapshots() {
+        return new LdapDirectorySnapshots();
+    }
+
+    /**
+     * Users api of each extended LDAP config, initialized during startup, or in the
+     * background if enabled through
+     * {@literal georchestra.gateway.security.ldap-initialization.lazy=true}
+     */
+    @Bean
+    DemultiplexingUsersApi demultiplexingUsersApi(LdapConfigProperties ldapConfig, List<ExtendedLdapConfig> configs,
+            LdapConnectionPools pools, LdapDirectorySnapshots snapshots, ApplicationStartup applicationStartup) {
+        Initialization initialization = ldapConfig.getLdapInitialization();
+        if (initialization.isLazy() && !configs.isEmpty()) {
+            return lazyDemultiplexingUsersApi(configs, pools, snapshots, applicationStartup,
+                    initialization.getRetryInterval());
+        }
         Map<String, UsersApi> targets = new HashMap<>();
+        Map<String, LdapDirectorySnapshot> usersSnapshots = new HashMap<>();
+        Map<String, SingleSearchUserLookup> lookups = new HashMap<>();
         for (ExtendedLdapConfig config : configs) {
             try {
-                targets.put(config.getName(), createUsersApi(config));
+                targets.put(config.getName(),
+                        initUsersApi(config, pools, snapshots, usersSnapshots, lookups, applicationStartup));
             } catch (Exception ex) {
                 throw new BeanInitializationException(
                         "Error creating georchestra users api for ldap config " + config.getName(), ex);
             }
         }
-        return new DemultiplexingUsersApi(targets);
+        return new DemultiplexingUsersApi(targets, usersSnapshots, lookups);
+    }
+
+    private DemultiplexingUsersApi lazyDemultiplexingUsersApi(List<ExtendedLdapConfig> configs,
+            LdapConnectionPools pools, LdapDirectorySnapshots snapshots, ApplicationStartup applicationStartup,
+            Duration retryInterval) {
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ldap-init-");
+        threadFactory.setDaemon(true);
+        // kept around to retry failed initializations, its threads end when idle
+        final int threads = Math.min(configs.size(), 4);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+
+        Map<String, Supplier<CompletableFuture<UsersApi>>> initializers = new HashMap<>();
+        Map<String, LdapDirectorySnapshot> usersSnapshots = new ConcurrentHashMap<>();
+        Map<String, SingleSearchUserLookup> lookups = new ConcurrentHashMap<>();
+        for (ExtendedLdapConfig config : configs) {
+            initializers.put(config.getName(), () -> {
+                log.info("Initializing georchestra users api for ldap config {} in the background",
+                        config.getName());
+                CompletableFuture<UsersApi> usersApi = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return initUsersApi(config, pools, snapshots, usersSnapshots, lookups, applicationStartup);
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(
+                                "Error creating georchestra users api for ldap config " + config.getName(), ex);
+                    }
+                }, executor);
+                usersApi.whenComplete((api, error) -> {
+                    if (error == null) {
+                        log.info("Initialized georchestra users api for ldap config {}", config.getName());
+                    } else {
+                        log.error("Error initializing georchestra users api for ldap config {}, will retry after {}",
+                                config.getName(), retryInterval, error);
+                    }
+                });
+                return usersApi;
+            });
+        }
+        return DemultiplexingUsersApi.lazy(initializers, usersSnapshots, lookups, retryInterval);
+    }
+
+    private UsersApi initUsersApi(ExtendedLdapConfig config, LdapConnectionPools pools,
+            LdapDirectorySnapshots snapshots, Map<String, LdapDirectorySnapshot> usersSnapshots,
+            Map<String, SingleSearchUserLookup> lookups, ApplicationStartup applicationStartup) throws Exception {
+        StartupStep step = applicationStartup.start("georchestra.ldap.users-api.init")//
+                .tag("ldap", config.getName());
+        try {
+            final LdapTemplate ldapTemplate = ldapTemplate(config, pools);
+            final UsersApi usersApi = createUsersApi(config, ldapTemplate);
+            if (config.getSnapshot() != null && config.getSnapshot().isEnabled()) {
+                usersSnapshots.put(config.getName(),
+                        snapshots.snapshot(config, usersApi, ldapTemplate.getContextSource()));
+            }
+            if (config.getUserLookup() == UserLookup.SINGLE_SEARCH) {
+                log.info("Resolving users of LDAP {} with a single search", config.getName());
+                lookups.put(config.getName(), new SingleSearchUserLookup(config, ldapTemplate, usersApi));
+            }
+            return usersApi;
+        } finally {
+            step.end();
+        }
+    }
+
+    /**
+     * Reports whether the users apis initialized in the background are ready, to
+     * be included in the readiness health group
+     */
+    @Bean
+    LdapInitializationHealthIndicator ldapInitializationHealthIndicator(LdapConfigProperties ldapConfig,
+            DemultiplexingUsersApi users) {
+        return ldapConfig.getLdapInitialization().isLazy() ? new LdapInitializationHealthIndicator(users) : null;
+    }
+
+    /**
+     * Resolves the authenticated user's {@link Organization} for each request, so
+     * that the {@literal sec-org*} headers can be populated
+     */
+    @Bean
+    ResolveGeorchestraOrganizationGlobalFilter resolveGeorchestraOrganizationGlobalFilter(
+            ObjectProvider<OrganizationsCache> organizations) {
+        OrganizationsCache cache = organizations.getIfAvailable();
+        return cache == null ? null : new ResolveGeorchestraOrganizationGlobalFilter(cache);
+    }
+
+    /**
+     * Organizations cache shared by all users, backed by the {@link OrgsDao} of
+     * each enabled extended LDAP config
+     */
+    @Bean
+    OrganizationsCache organizationsCache(List<ExtendedLdapConfig> configs, LdapConnectionPools pools,
+            OrganizationsCacheConfigProperties cacheConfig, ObjectProvider<MeterRegistry> meterRegistry) {
+        if (configs.isEmpty()) {
+            return null;
+        }
+        Map<String, OrganizationsApi> targets = new LinkedHashMap<>();
+        for (ExtendedLdapConfig config : configs) {
+            try {
+                targets.put(config.getName(), createOrgsApi(config, pools));
+            } catch (Exception ex) {
+                throw new BeanInitializationException(
+                        "Error creating georchestra organizations api for ldap config " + config.getName(), ex);
+            }
+        }
+        final long maximumSize = cacheConfig.isEnabled() ? cacheConfig.getMaximumSize() : 0L;
+        log.info("Caching organizations, maximum size: {}, expire after write: {}", maximumSize,
+                cacheConfig.getExpireAfterWrite());
+        OrganizationsCache cache = new OrganizationsCache(targets, maximumSize, cacheConfig.getExpireAfterWrite());
+        meterRegistry.ifAvailable(cache::bindTo);
+        return cache;
+    }
+
+    /**
+     * Loads all organizations in bulk in the background once the application is
+     * ready, unless disabled through
+     * {@literal georchestra.gateway.security.organizations-cache.warm-up=false}
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    void warmUpOrganizationsCache(ApplicationReadyEvent event) {
+        OrganizationsCacheConfigProperties cacheConfig = event.getApplicationContext()
+                .getBean(OrganizationsCacheConfigProperties.class);
+        if (cacheConfig.isEnabled() && cacheConfig.isWarmUp()) {
+            event.getApplicationContext().getBeanProvider(OrganizationsCache.class)
+                    .ifAvailable(cache -> Schedulers.boundedElastic().schedule(cache::warmUp));
+        }
     }
 
     //////////////////////////////////////////////
     /// Low level LDAP account management beans
     //////////////////////////////////////////////
 
-    private UsersApi createUsersApi(ExtendedLdapConfig ldapConfig) throws Exception {
-        final LdapTemplate ldapTemplate = ldapTemplate(ldapConfig);
+    private UsersApi createUsersApi(ExtendedLdapConfig ldapConfig, LdapTemplate ldapTemplate) throws Exception {
         final AccountDao accountsDao = accountsDao(ldapTemplate, ldapConfig);
         final RoleDao roleDao = roleDao(ldapTemplate, ldapConfig, accountsDao);
 
@@ -139,11 +332,11 @@ public class ExtendedLdapAuthenticationConfiguration {
         return impl;
     }
 
-    private LdapTemplate ldapTemplate(ExtendedLdapConfig server) throws Exception {
-        LdapContextSource contextSource = new LdapContextSource();
-        contextSource.setUrl(server.getUrl());
-        contextSource.setBase(server.getBaseDn());
-        contextSource.afterPropertiesSet();
+    private LdapTemplate ldapTemplate(ExtendedLdapConfig server, LdapConnectionPools pools) throws Exception {
+        // no admin credentials, the users api only performs anonymous searches. No
+        // timeout either, the authentication timeout only applies to logins
+        BaseLdapPathContextSource contextSource = pools.contextSource(server.getName(), "users", server.getUrl(),
+                server.getBaseDn(), Optional.empty(), Optional.empty(), null, server.getPool());
 
         LdapTemplate ldapTemplate = new LdapTemplate(contextSource);
         ldapTemplate.afterPropertiesSet();
@@ -191,12 +384,26 @@ public class ExtendedLdapAuthenticationConfiguration {
         return impl;
     }
 
-    @SuppressWarnings("unused")
-    private OrgsDao orgsDao(LdapTemplate ldapTemplate, Server ldapConfig) {
+    private OrganizationsApi createOrgsApi(ExtendedLdapConfig ldapConfig, LdapConnectionPools pools)
+            throws Exception {
+        BaseLdapPathContextSource contextSource = pools.contextSource(ldapConfig.getName(), "organizations",
+                ldapConfig.getUrl(), ldapConfig.getBaseDn(), Optional.empty(), Optional.empty(), null,
+                ldapConfig.getPool());
+        LdapTemplate ldapTemplate = new LdapTemplate(contextSource);
+        ldapTemplate.afterPropertiesSet();
+
+        OrganizationsApiImpl impl = new OrganizationsApiImpl();
+        impl.setOrgsDao(orgsDao(ldapTemplate, ldapConfig));
+        return impl;
+    }
+
+    private OrgsDao orgsDao(LdapTemplate ldapTemplate, ExtendedLdapConfig ldapConfig) {
+        String orgSearchBaseDN = ldapConfig.getOrgsRdn();
+        requireNonNull(orgSearchBaseDN);
         OrgsDaoImpl impl = new OrgsDaoImpl();
         impl.setLdapTemplate(ldapTemplate);
         impl.setBasePath(ldapConfig.getBaseDn());
-        impl.setOrgSearchBaseDN(ldapConfig.getOrgs().getRdn());
+        impl.setOrgSearchBaseDN(orgSearchBaseDN);
 
         final String pendingOrgSearchBaseDN = "ou=pendingorgs";
 
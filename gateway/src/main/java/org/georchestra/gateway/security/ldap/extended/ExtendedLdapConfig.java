@@ -21,6 +21,12 @@ package org.georchestra.gateway.security.ldap.extended;
 
 import java.util.Optional;
 
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.AuthenticationLimits;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.ConnectionPool;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.DirectorySnapshot;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.SingleSearch;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.UserLookup;
+
 import lombok.Builder;
 import lombok.Generated;
 import lombok.NonNull;
@@ -45,5 +51,20 @@ public class ExtendedLdapConfig {
     private @NonNull Optional<String> adminDn;
     private @NonNull Optional<String> adminPassword;
 
+    // null = no connection pooling
+    private ConnectionPool pool;
+
+    // null = no limits nor timeouts
+    private AuthenticationLimits authentication;
+
+    // null = no in-memory users snapshot
+    private DirectorySnapshot snapshot;
+
+    // null = users api
+    private UserLookup userLookup;
+
+    // null = single search defaults
+    private SingleSearch singleSearch;
+
     private @NonNull String orgsRdn;
 }
\ No newline at end of file
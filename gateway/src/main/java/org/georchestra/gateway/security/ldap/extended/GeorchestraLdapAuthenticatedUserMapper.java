@@ -43,6 +43,8 @@ import lombok.RequiredArgsConstructor;
  * Resolves only {@link GeorchestraUserNamePasswordAuthenticationToken}, using
  * its {@link GeorchestraUserNamePasswordAuthenticationToken#getConfigName()
  * configName} to disambiguate amongst different configured LDAP databases.
+ * The roles granted at authentication time are passed along, so that a
+ * {@link SingleSearchUserLookup} doesn't need to search them again.
  * 
  * @see DemultiplexingUsersApi
  */
@@ -51,6 +53,11 @@ class GeorchestraLdapAuthenticatedUserMapper implements GeorchestraUserMapperExt
 
     private final @NonNull DemultiplexingUsersApi users;
 
+    @Override
+    public Set<Class<? extends Authentication>> getAuthenticationTypes() {
+        return Set.of(GeorchestraUserNamePasswordAuthenticationToken.class);
+    }
+
     @Override
     public Optional<GeorchestraUser> resolve(Authentication authToken) {
         return Optional.ofNullable(authToken)//
@@ -65,7 +72,10 @@ class GeorchestraLdapAuthenticatedUserMapper implements GeorchestraUserMapperExt
         final String ldapConfigName = token.getConfigName();
         final String username = principal.getUsername();
 
-        Optional<GeorchestraUser> user = users.findByUsername(ldapConfigName, username);
+        final List<String> grantedRoles = token.getAuthorities().stream().map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
+
+        Optional<GeorchestraUser> user = users.findByUsername(ldapConfigName, username, grantedRoles);
         return user.map(u -> fixPrefixedRoleNames(u, token));
     }
 
@@ -40,7 +40,7 @@ class GeorchestraUserNamePasswordAuthenticationToken implements Authentication {
     private static final long serialVersionUID = 1L;
 
     private final @NonNull @Getter String configName;
-    private final @NonNull Authentication orig;
+    private final @NonNull @Getter Authentication orig;
 
     @Override
     public String getName() {
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import org.georchestra.gateway.session.AuthenticationCodec;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.ldap.userdetails.LdapUserDetails;
+import org.springframework.security.ldap.userdetails.LdapUserDetailsImpl;
+
+/**
+ * {@link AuthenticationCodec} for the LDAP authentication tokens, either
+ * {@link GeorchestraUserNamePasswordAuthenticationToken} or plain
+ * {@link UsernamePasswordAuthenticationToken} with an
+ * {@link LdapUserDetailsImpl} principal.
+ * <p>
+ * The user's password is not written, the decoded tokens have no credentials.
+ */
+class LdapAuthenticationTokenCodec implements AuthenticationCodec {
+
+    public @Override String getName() {
+        return "ldap";
+    }
+
+    public @Override boolean canEncode(Authentication authentication) {
+        Authentication token = authentication;
+        if (token instanceof GeorchestraUserNamePasswordAuthenticationToken) {
+            token = ((GeorchestraUserNamePasswordAuthenticationToken) token).getOrig();
+        }
+        return token.getClass() == UsernamePasswordAuthenticationToken.class//
+                && token.isAuthenticated()//
+                && token.getDetails() == null//
+                && token.getPrincipal() != null//
+                && token.getPrincipal().getClass() == LdapUserDetailsImpl.class//
+                && AuthenticationCodec.isSimple(token.getAuthorities())//
+                && AuthenticationCodec.isSimple(((LdapUserDetailsImpl) token.getPrincipal()).getAuthorities());
+    }
+
+    public @Override void encode(Authentication authentication, DataOutput out) throws IOException {
+        Authentication token = authentication;
+        if (token instanceof GeorchestraUserNamePasswordAuthenticationToken) {
+            out.writeBoolean(true);
+            out.writeUTF(((GeorchestraUserNamePasswordAuthenticationToken) token).getConfigName());
+            token = ((GeorchestraUserNamePasswordAuthenticationToken) token).getOrig();
+        } else {
+            out.writeBoolean(false);
+        }
+        LdapUserDetailsImpl principal = (LdapUserDetailsImpl) token.getPrincipal();
+        out.writeUTF(principal.getDn());
+        out.writeUTF(principal.getUsername());
+        out.writeBoolean(principal.isAccountNonExpired());
+        out.writeBoolean(principal.isAccountNonLocked());
+        out.writeBoolean(principal.isCredentialsNonExpired());
+        out.writeBoolean(principal.isEnabled());
+        out.writeInt(principal.getTimeBeforeExpiration());
+        out.writeInt(principal.getGraceLoginsRemaining());
+        AuthenticationCodec.writeAuthorities(principal.getAuthorities(), out);
+        AuthenticationCodec.writeAuthorities(token.getAuthorities(), out);
+    }
+
+    public @Override Authentication decode(DataInput in) throws IOException {
+        final String configName = in.readBoolean() ? in.readUTF() : null;
+
+        LdapUserDetailsImpl.Essence essence = new LdapUserDetailsImpl.Essence();
+        essence.setDn(in.readUTF());
+        essence.setUsername(in.readUTF());
+        essence.setAccountNonExpired(in.readBoolean());
+        essence.setAccountNonLocked(in.readBoolean());
+        essence.setCredentialsNonExpired(in.readBoolean());
+        essence.setEnabled(in.readBoolean());
+        essence.setTimeBeforeExpiration(in.readInt());
+        essence.setGraceLoginsRemaining(in.readInt());
+        essence.setAuthorities(AuthenticationCodec.readAuthorities(in));
+        LdapUserDetails principal = essence.createUserDetails();
+
+        List<GrantedAuthority> authorities = AuthenticationCodec.readAuthorities(in);
+        Authentication token = new UsernamePasswordAuthenticationToken(principal, null, authorities);
+        return configName == null ? token : new GeorchestraUserNamePasswordAuthenticationToken(configName, token);
+    }
+}
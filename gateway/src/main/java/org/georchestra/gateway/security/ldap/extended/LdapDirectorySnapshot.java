@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.DirectorySnapshot;
+import org.georchestra.security.api.UsersApi;
+import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.ldap.NameNotFoundException;
+import org.springframework.ldap.control.PagedResultsDirContextProcessor;
+import org.springframework.ldap.core.AttributesMapper;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.core.support.SingleContextSource;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.annotations.VisibleForTesting;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory snapshot of the users of an extended LDAP database, as returned by
+ * its {@link UsersApi}, so that resolving an authenticated user is a local map
+ * lookup and keeps working for already known users while the LDAP service is
+ * unreachable.
+ * <p>
+ * {@link #sync()} performs a full load the first time and every
+ * {@link DirectorySnapshot#getFullSyncInterval() fullSyncInterval}, and an
+ * incremental synchronization otherwise. Both use paged searches, so that the
+ * server's size limit doesn't silently truncate the results: the full load
+ * searches all the user, role, and organization entries, and incremental
+ * synchronizations the ones whose {@literal modifyTimestamp} is newer than the
+ * latest one seen. The {@literal member} attributes of the role and
+ * organization entries are indexed in memory, so that the current and former
+ * members of a modified role or organization are known without a search per
+ * user.
+ * <p>
+ * The users themselves are fetched through the {@link UsersApi}, so that they
+ * are exactly the same as without a snapshot, but only when needed: the first
+ * full load fetches all of them, and later synchronizations only the users
+ * whose entry, roles, or organization changed. Users the {@link UsersApi} no
+ * longer finds are dropped, deleted users whose memberships didn't change are
+ * dropped by the next full load.
+ * <p>
+ * Users are kept serialized and a new {@link GeorchestraUser} is returned on
+ * each lookup, since callers are free to modify it.
+ *
+ * @see LdapDirectorySnapshots
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
+class LdapDirectorySnapshot {
+
+    static final String MODIFY_TIMESTAMP = "modifyTimestamp";
+
+    private static final String ALL_ENTRIES = "(objectClass=*)";
+
+    private static final String[] USER_ATTRIBUTES = { "uid", MODIFY_TIMESTAMP };
+    private static final String[] GROUP_ATTRIBUTES = { "cn", "member", MODIFY_TIMESTAMP };
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private static final ObjectWriter WRITER = MAPPER.writerFor(GeorchestraUser.class);
+    private static final ObjectReader READER = MAPPER.readerFor(GeorchestraUser.class);
+
+    @Value
+    private static class Entry {
+        /**
+         * The user entry's {@literal modifyTimestamp} when it was fetched
+         */
+        private final String modified;
+        private final byte[] user;
+    }
+
+    private final @Getter @NonNull String name;
+    private final @NonNull UsersApi users;
+    private final ContextSource contextSource;
+    private final @NonNull String usersRdn;
+    private final @NonNull String usersFilter;
+    private final @NonNull String rolesRdn;
+    private final @NonNull String orgsRdn;
+    private final @Getter @NonNull Duration syncInterval;
+    private final @NonNull Duration fullSyncInterval;
+    private final int pageSize;
+    private final @NonNull Clock clock;
+
+    private volatile Map<String, Entry> byUsername = Map.of();
+
+    /**
+     * Role and organization memberships, only accessed while synchronizing
+     */
+    private Memberships roles = new Memberships();
+    private Memberships orgs = new Memberships();
+
+    private volatile Instant lastFullSync;
+
+    private volatile Instant lastSync;
+
+    /**
+     * Highest {@literal modifyTimestamp} seen so far, in LDAP generalized time
+     * format, or {@code null} if unknown
+     */
+    private String watermark;
+
+    LdapDirectorySnapshot(@NonNull ExtendedLdapConfig config, @NonNull UsersApi users, ContextSource contextSource,
+            @NonNull Clock clock) {
+        DirectorySnapshot snapshot = config.getSnapshot() == null ? new DirectorySnapshot() : config.getSnapshot();
+        this.name = config.getName();
+        this.users = users;
+        this.contextSource = contextSource;
+        this.usersRdn = config.getUsersRdn();
+        this.usersFilter = config.getUsersSearchFilter().replace("{0}", "*");
+        this.rolesRdn = config.getRolesRdn();
+        this.orgsRdn = config.getOrgsRdn();
+        this.syncInterval = snapshot.getSyncInterval();
+        this.fullSyncInterval = snapshot.getFullSyncInterval();
+        this.pageSize = snapshot.getPageSize();
+        this.clock = clock;
+    }
+
+    /**
+     * @return whether the initial full load has completed
+     */
+    public boolean isLoaded() {
+        return lastFullSync != null;
+    }
+
+    /**
+     * @return a copy of the snapshot's user with the given user name, or
+     *         {@link Optional#empty() empty} if it's not in the snapshot
+     */
+    public Optional<GeorchestraUser> findByUsername(@NonNull String username) {
+        Entry entry = byUsername.get(username);
+        return entry == null ? Optional.empty() : Optional.of(deserialize(entry.getUser()));
+    }
+
+    public int size() {
+        return byUsername.size();
+    }
+
+    /**
+     * @return the number of seconds since the last full load, or {@code NaN} if
+     *         not loaded yet
+     */
+    public double ageSeconds() {
+        return secondsSince(lastFullSync);
+    }
+
+    /**
+     * @return the number of seconds since the last successful synchronization, or
+     *         {@code NaN} if not loaded yet
+     */
+    public double lagSeconds() {
+        return secondsSince(lastSync);
+    }
+
+    private double secondsSince(Instant instant) {
+        return instant == null ? Double.NaN : Duration.between(instant, clock.instant()).toMillis() / 1000d;
+    }
+
+    /**
+     * Synchronizes the snapshot, logging instead of propagating any error, the
+     * current snapshot is then kept as is until the next synchronization
+     */
+    public void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            log.warn("Error synchronizing LDAP {} users snapshot, {} seconds behind", name, lagSeconds(), e);
+        }
+    }
+
+    /**
+     * Performs a full load if the snapshot is not loaded or
+     * {@link DirectorySnapshot#getFullSyncInterval() fullSyncInterval} has elapsed
+     * since the last one, or an incremental synchronization otherwise
+     */
+    public synchronized void sync() {
+        final Instant now = clock.instant();
+        if (lastFullSync == null || !now.isBefore(lastFullSync.plus(fullSyncInterval))) {
+            fullSync();
+            lastFullSync = now;
+        } else {
+            incrementalSync();
+        }
+        lastSync = now;
+    }
+
+    private void fullSync() {
+        final long start = System.nanoTime();
+        // changes made while loading have a higher modifyTimestamp than the entries
+        // loaded before them, and are picked up again by the next incremental sync
+        final Watermark next = new Watermark(null);
+        final Memberships loadedRoles = new Memberships();
+        final Memberships loadedOrgs = new Memberships();
+        final Map<String, String> modified = new HashMap<>();
+
+        search(rolesRdn, ALL_ENTRIES, GROUP_ATTRIBUTES, attributes -> {
+            Optional<String> cn = stringValue(attributes, "cn");
+            if (cn.isPresent()) {
+                loadedRoles.set(cn.get(), memberUids(attributes));
+            }
+            return next.update(attributes);
+        });
+        search(orgsRdn, ALL_ENTRIES, GROUP_ATTRIBUTES, attributes -> {
+            Optional<String> cn = stringValue(attributes, "cn");
+            if (cn.isPresent()) {
+                loadedOrgs.set(cn.get(), memberUids(attributes));
+            }
+            return next.update(attributes);
+        });
+        search(usersRdn, usersFilter, USER_ATTRIBUTES, attributes -> {
+            Optional<String> uid = stringValue(attributes, "uid");
+            if (uid.isPresent()) {
+                modified.put(uid.get(), stringValue(attributes, MODIFY_TIMESTAMP).orElse(""));
+            }
+            return next.update(attributes);
+        });
+
+        final Map<String, Entry> current = this.byUsername;
+        final Map<String, Entry> loaded = new ConcurrentHashMap<>(modified.size());
+        int fetched = 0;
+        for (Map.Entry<String, String> user : modified.entrySet()) {
+            final String username = user.getKey();
+            Entry known = current.get(username);
+            if (known != null && known.getModified().equals(user.getValue())
+                    && roles.of(username).equals(loadedRoles.of(username))
+                    && orgs.of(username).equals(loadedOrgs.of(username))) {
+                loaded.put(username, known);
+            } else {
+                users.findByUsername(username)
+                        .ifPresent(found -> loaded.put(username, new Entry(user.getValue(), serialize(found))));
+                fetched++;
+            }
+        }
+        this.roles = loadedRoles;
+        this.orgs = loadedOrgs;
+        this.byUsername = loaded;
+        this.watermark = next.getValue();
+        log.info("Loaded {} users from LDAP {}, fetched {} of them, in {}ms", loaded.size(), name, fetched,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void incrementalSync() {
+        if (watermark == null) {
+            log.debug("No {} found on LDAP {}, waiting for the next full sync", MODIFY_TIMESTAMP, name);
+            return;
+        }
+        final String filter = "(" + MODIFY_TIMESTAMP + ">=" + watermark + ")";
+        final Watermark next = new Watermark(watermark);
+        final Map<String, String> modified = new HashMap<>();
+        final Map<String, Set<String>> modifiedRoles = new HashMap<>();
+        final Map<String, Set<String>> modifiedOrgs = new HashMap<>();
+
+        search(usersRdn, "(&" + usersFilter + filter + ")", USER_ATTRIBUTES, attributes -> {
+            Optional<String> uid = stringValue(attributes, "uid");
+            if (uid.isPresent()) {
+                modified.put(uid.get(), stringValue(attributes, MODIFY_TIMESTAMP).orElse(""));
+            }
+            return next.update(attributes);
+        });
+        search(rolesRdn, filter, GROUP_ATTRIBUTES, attributes -> {
+            Optional<String> cn = stringValue(attributes, "cn");
+            if (cn.isPresent()) {
+                modifiedRoles.put(cn.get(), memberUids(attributes));
+            }
+            return next.update(attributes);
+        });
+        search(orgsRdn, filter, GROUP_ATTRIBUTES, attributes -> {
+            Optional<String> cn = stringValue(attributes, "cn");
+            if (cn.isPresent()) {
+                modifiedOrgs.put(cn.get(), memberUids(attributes));
+            }
+            return next.update(attributes);
+        });
+
+        // the modified users, and the current and former members of the modified
+        // roles and organizations
+        final Set<String> affected = new HashSet<>(modified.keySet());
+        modifiedRoles.forEach((cn, members) -> {
+            affected.addAll(members);
+            affected.addAll(roles.members(cn));
+        });
+        modifiedOrgs.forEach((cn, members) -> {
+            affected.addAll(members);
+            affected.addAll(orgs.members(cn));
+        });
+
+        // fetch all of them before applying any change, so that a failure leaves the
+        // snapshot and memberships untouched, to be retried by the next sync
+        final Map<String, Entry> current = this.byUsername;
+        final Map<String, Optional<Entry>> fetched = new HashMap<>();
+        for (String username : affected) {
+            Entry known = current.get(username);
+            String timestamp = modified.getOrDefault(username, known == null ? "" : known.getModified());
+            fetched.put(username, users.findByUsername(username).map(user -> new Entry(timestamp, serialize(user))));
+        }
+
+        modifiedRoles.forEach(roles::set);
+        modifiedOrgs.forEach(orgs::set);
+        fetched.forEach((username, entry) -> {
+            if (entry.isPresent()) {
+                current.put(username, entry.get());
+            } else {
+                current.remove(username);
+            }
+        });
+        this.watermark = next.getValue();
+        if (!fetched.isEmpty()) {
+            log.debug("Synchronized {} users from LDAP {}", fetched.size(), name);
+        }
+    }
+
+    /**
+     * Performs a paged subtree search relative to the context source's base DN.
+     * Missing search bases are ignored.
+     */
+    @VisibleForTesting
+    void search(String base, String filter, String[] attributes, AttributesMapper<?> mapper) {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        controls.setReturningAttributes(attributes);
+        try {
+            SingleContextSource.doWithSingleContext(contextSource, operations -> {
+                PagedResultsDirContextProcessor processor = new PagedResultsDirContextProcessor(pageSize);
+                do {
+                    operations.search(base, filter, controls, mapper, processor);
+                } while (processor.hasMore());
+                return null;
+            });
+        } catch (NameNotFoundException e) {
+            log.debug("Search base {} not found on LDAP {}", base, name);
+        }
+    }
+
+    private static Set<String> memberUids(Attributes attributes) throws NamingException {
+        Attribute member = attributes.get("member");
+        if (member == null) {
+            return Set.of();
+        }
+        Set<String> uids = new HashSet<>();
+        NamingEnumeration<?> values = member.getAll();
+        while (values.hasMore()) {
+            Object dn = values.next();
+            try {
+                for (Rdn rdn : new LdapName(String.valueOf(dn)).getRdns()) {
+                    if ("uid".equalsIgnoreCase(rdn.getType())) {
+                        uids.add(String.valueOf(rdn.getValue()));
+                    }
+                }
+            } catch (NamingException | IllegalArgumentException e) {
+                log.debug("Ignoring invalid member DN {}", dn);
+            }
+        }
+        return uids;
+    }
+
+    private static Optional<String> stringValue(Attributes attributes, String id) throws NamingException {
+        Attribute attribute = attributes.get(id);
+        Object value = attribute == null ? null : attribute.get();
+        return Optional.ofNullable(value).map(String::valueOf);
+    }
+
+    static byte[] serialize(GeorchestraUser user) {
+        try {
+            return WRITER.writeValueAsBytes(user);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static GeorchestraUser deserialize(byte[] user) {
+        try {
+            return READER.readValue(user);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Keeps track of the highest {@literal modifyTimestamp}. Generalized time
+     * values with the same precision and time zone compare lexicographically.
+     */
+    private static class Watermark {
+        private @Getter String value;
+
+        Watermark(String value) {
+            this.value = value;
+        }
+
+        Boolean update(Attributes attributes) throws NamingException {
+            Optional<String> timestamp = stringValue(attributes, MODIFY_TIMESTAMP);
+            timestamp.filter(t -> value == null || t.compareTo(value) > 0).ifPresent(t -> this.value = t);
+            return Boolean.TRUE;
+        }
+    }
+
+    /**
+     * The members of each role or organization, and the roles or organizations of
+     * each member, by {@literal cn} and {@literal uid}
+     */
+    private static class Memberships {
+        private final Map<String, Set<String>> membersByGroup = new HashMap<>();
+        private final Map<String, SortedSet<String>> groupsByMember = new HashMap<>();
+
+        /**
+         * Replaces the members of a group
+         */
+        void set(String group, Set<String> members) {
+            Set<String> former = membersByGroup.put(group, members);
+            if (former != null) {
+                for (String uid : former) {
+                    SortedSet<String> groups = groupsByMember.get(uid);
+                    if (groups != null) {
+                        groups.remove(group);
+                    }
+                }
+            }
+            for (String uid : members) {
+                groupsByMember.computeIfAbsent(uid, u -> new TreeSet<>()).add(group);
+            }
+        }
+
+        /**
+         * @return the current members of a group
+         */
+        Set<String> members(String group) {
+            return membersByGroup.getOrDefault(group, Set.of());
+        }
+
+        /**
+         * @return the groups of a member, sorted by name
+         */
+        SortedSet<String> of(String uid) {
+            SortedSet<String> groups = groupsByMember.get(uid);
+            return groups == null ? new TreeSet<>() : groups;
+        }
+    }
+}
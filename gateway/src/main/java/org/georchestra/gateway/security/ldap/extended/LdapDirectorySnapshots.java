@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.security.api.UsersApi;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.ldap.core.ContextSource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Creates and keeps in sync the {@link LdapDirectorySnapshot users snapshots}
+ * of the extended LDAP configs that have them enabled.
+ * <p>
+ * Snapshots are first loaded once the application is ready, and then
+ * synchronized periodically on a dedicated {@link Scheduler}. Until loaded,
+ * users are resolved directly from the LDAP service.
+ * <p>
+ * As a {@link MeterBinder}, publishes the
+ * {@literal georchestra.ldap.snapshot.size},
+ * {@literal georchestra.ldap.snapshot.age}, and
+ * {@literal georchestra.ldap.snapshot.lag} gauges for each snapshot, tagged by
+ * LDAP config name.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
+class LdapDirectorySnapshots implements MeterBinder, DisposableBean {
+
+    public static final String SCHEDULER_NAME = "ldap-snapshot";
+
+    private final Map<String, LdapDirectorySnapshot> snapshots = new ConcurrentHashMap<>();
+
+    private final List<Disposable> tasks = new CopyOnWriteArrayList<>();
+
+    private Scheduler scheduler;
+
+    private boolean started;
+
+    private MeterRegistry registry;
+
+    /**
+     * Creates a snapshot for the LDAP config, scheduling its synchronization right
+     * away if the application is already ready, as when the users api is
+     * initialized lazily
+     */
+    public synchronized LdapDirectorySnapshot snapshot(@NonNull ExtendedLdapConfig config, @NonNull UsersApi users,
+            @NonNull ContextSource contextSource) {
+        LdapDirectorySnapshot snapshot = new LdapDirectorySnapshot(config, users, contextSource, Clock.systemUTC());
+        log.info("Keeping an in-memory snapshot of LDAP {} users, synchronized every {}", config.getName(),
+                snapshot.getSyncInterval());
+        snapshots.put(config.getName(), snapshot);
+        if (registry != null) {
+            bindTo(registry, snapshot);
+        }
+        if (started) {
+            schedule(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Loads the snapshots and schedules their periodic synchronization
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        snapshots.values().forEach(this::schedule);
+    }
+
+    private void schedule(LdapDirectorySnapshot snapshot) {
+        if (scheduler == null) {
+            scheduler = Schedulers.newSingle(SCHEDULER_NAME);
+        }
+        long interval = snapshot.getSyncInterval().toMillis();
+        tasks.add(scheduler.schedulePeriodically(snapshot::syncQuietly, 0, interval, TimeUnit.MILLISECONDS));
+    }
+
+    public @Override void bindTo(@NonNull MeterRegistry registry) {
+        this.registry = registry;
+        snapshots.values().forEach(snapshot -> bindTo(registry, snapshot));
+    }
+
+    private void bindTo(MeterRegistry registry, LdapDirectorySnapshot snapshot) {
+        Gauge.builder("georchestra.ldap.snapshot.size", snapshot, LdapDirectorySnapshot::size)//
+                .tag("ldap", snapshot.getName())//
+                .description("Number of users in the LDAP users snapshot")//
+                .register(registry);
+        Gauge.builder("georchestra.ldap.snapshot.age", snapshot, LdapDirectorySnapshot::ageSeconds)//
+                .tag("ldap", snapshot.getName())//
+                .baseUnit("seconds")//
+                .description("Time since the LDAP users snapshot was last fully loaded")//
+                .register(registry);
+        Gauge.builder("georchestra.ldap.snapshot.lag", snapshot, LdapDirectorySnapshot::lagSeconds)//
+                .tag("ldap", snapshot.getName())//
+                .baseUnit("seconds")//
+                .description("Time since the LDAP users snapshot was last synchronized")//
+                .register(registry);
+    }
+
+    public @Override synchronized void destroy() {
+        started = false;
+        tasks.forEach(Disposable::dispose);
+        tasks.clear();
+        if (scheduler != null) {
+            scheduler.dispose();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.ldap.extended;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health.Builder;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+import lombok.NonNull;
+
+/**
+ * {@link HealthIndicator} reporting whether the extended LDAP configs users
+ * apis, initialized in the background when
+ * {@literal georchestra.gateway.security.ldap-initialization.lazy=true}, are
+ * ready. Meant to be included in the readiness health group, so that a new
+ * instance doesn't get traffic before it can resolve users.
+ */
+class LdapInitializationHealthIndicator extends AbstractHealthIndicator {
+
+    private final @NonNull DemultiplexingUsersApi users;
+
+    LdapInitializationHealthIndicator(@NonNull DemultiplexingUsersApi users) {
+        super("LDAP users api initialization check failed");
+        this.users = users;
+    }
+
+    protected @Override void doHealthCheck(Builder builder) {
+        if (users.isInitialized()) {
+            builder.up();
+        } else if (users.getFailedTargetNames().isEmpty()) {
+            builder.outOfService().withDetail("initializing", users.getTargetNames());
+        } else {
+            builder.down().withDetail("failed", users.getFailedTargetNames());
+        }
+    }
+}
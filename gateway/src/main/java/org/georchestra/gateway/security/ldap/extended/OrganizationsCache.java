@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.gateway.model.EncodedPayload;
+import org.georchestra.security.api.OrganizationsApi;
+import org.georchestra.security.model.Organization;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded, time-based cache of {@link Organization}s, keyed by
+ * {@link Organization#getShortName() short name}, shared by all users.
+ * <p>
+ * Organizations are looked up in each configured LDAP database's
+ * {@link OrganizationsApi} in configuration order, the first match wins.
+ * Organizations that are not found are cached too, so that users whose
+ * organization is not in the LDAP directory (e.g. OpenID Connect users) don't
+ * incur a lookup on each request. Each cached organization comes with its own
+ * {@link EncodedPayload}, so the {@literal sec-organization} header payload is
+ * encoded once per cached organization.
+ * <p>
+ * {@link #warmUp()} loads all the organizations in bulk, since a large number
+ * of users usually share a comparatively small number of organizations.
+ *
+ * @see OrganizationsCacheConfigProperties
+ * @see ResolveGeorchestraOrganizationGlobalFilter
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
+public class OrganizationsCache {
+
+    public static final String CACHE_NAME = "georchestra.organizations";
+
+    private final Map<String, OrganizationsApi> targets;
+
+    /**
+     * The result of looking up an organization, and its encoded payload
+     */
+    @Value
+    public static class Resolved {
+        private final @NonNull Optional<Organization> organization;
+        private final @NonNull EncodedPayload payload = new EncodedPayload();
+    }
+
+    private final LoadingCache<String, Resolved> byShortName;
+
+    /**
+     * @param targets          the {@link OrganizationsApi} for each LDAP config
+     *                         name, in configuration order
+     * @param maximumSize      the maximum number of organizations to cache, zero
+     *                         disables caching
+     * @param expireAfterWrite time to live of the cached organizations
+     */
+    public OrganizationsCache(@NonNull Map<String, OrganizationsApi> targets, long maximumSize,
+            @NonNull Duration expireAfterWrite) {
+        this.targets = new LinkedHashMap<>(targets);
+        this.byShortName = CacheBuilder.newBuilder()//
+                .maximumSize(maximumSize)//
+                .expireAfterWrite(expireAfterWrite.toMillis(), TimeUnit.MILLISECONDS)//
+                .recordStats()//
+                .build(CacheLoader.from(this::load));
+    }
+
+    /**
+     * Publishes the cache size, hit, miss, and eviction metrics to the given
+     * registry under the {@link #CACHE_NAME} cache name
+     */
+    public OrganizationsCache bindTo(@NonNull MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, byShortName, CACHE_NAME);
+        return this;
+    }
+
+    /**
+     * @return the organization with the given short name, from the cache or the
+     *         first LDAP database that has it
+     */
+    public Optional<Organization> findByShortName(@NonNull String shortName) {
+        return resolve(shortName).getOrganization();
+    }
+
+    /**
+     * Same as {@link #findByShortName}, also returning the organization's encoded
+     * payload, which is reused as long as the cached organization is
+     */
+    public Resolved resolve(@NonNull String shortName) {
+        return byShortName.getUnchecked(shortName);
+    }
+
+    /**
+     * @return the cached result of looking up the organization with the given
+     *         short name, or {@code null} if not cached, never querying LDAP
+     */
+    public Resolved getIfPresent(@NonNull String shortName) {
+        return byShortName.getIfPresent(shortName);
+    }
+
+    /**
+     * Loads all the organizations of all the LDAP databases in bulk. Failures are
+     * logged and ignored, the organizations will then be loaded one at a time as
+     * they're requested.
+     * <p>
+     * Called upon {@link ApplicationReadyEvent} if
+     * {@link OrganizationsCacheConfigProperties#isWarmUp() enabled}
+     */
+    public void warmUp() {
+        Map<String, Resolved> all = new HashMap<>();
+        targets.forEach((configName, api) -> {
+            try {
+                List<Organization> orgs = api.findAll();
+                log.info("Loaded {} organizations from LDAP config {}", orgs.size(), configName);
+                // first config in order wins
+                orgs.stream().filter(org -> org.getShortName() != null)
+                        .forEach(org -> all.putIfAbsent(org.getShortName(), new Resolved(Optional.of(org))));
+            } catch (RuntimeException e) {
+                log.warn("Error loading organizations from LDAP config {}, they'll be loaded on demand", configName,
+                        e);
+            }
+        });
+        byShortName.putAll(all);
+    }
+
+    private Resolved load(String shortName) {
+        for (Map.Entry<String, OrganizationsApi> target : targets.entrySet()) {
+            Optional<Organization> org = target.getValue().findByShortName(shortName);
+            if (org.isPresent()) {
+                log.debug("Loaded organization {} from LDAP config {}", shortName, target.getKey());
+                return new Resolved(org);
+            }
+        }
+        log.debug("Organization {} not found", shortName);
+        return new Resolved(Optional.empty());
+    }
+
+    @VisibleForTesting
+    long size() {
+        byShortName.cleanUp();
+        return byShortName.size();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.time.Duration;
+
+import org.georchestra.security.model.Organization;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Configuration properties for the {@link OrganizationsCache cache} of
+ * {@link Organization}s shared by all users, used by
+ * {@link ResolveGeorchestraOrganizationGlobalFilter} to avoid hitting the
+ * LDAP directory for the user's organization on every request.
+ */
+@ConfigurationProperties(prefix = "georchestra.gateway.security.organizations-cache")
+public @Data class OrganizationsCacheConfigProperties {
+
+    /**
+     * Whether to cache organizations, if disabled the organization is looked up on
+     * each request
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum number of organizations to keep in the cache
+     */
+    private long maximumSize = 1_000;
+
+    /**
+     * Time to live of a cached organization, after which it's fetched again from
+     * the LDAP directory
+     */
+    private Duration expireAfterWrite = Duration.ofMinutes(10);
+
+    /**
+     * Whether to load all the organizations in bulk once the application is ready,
+     * instead of one at a time as they're first requested
+     */
+    private boolean warmUp = true;
+}
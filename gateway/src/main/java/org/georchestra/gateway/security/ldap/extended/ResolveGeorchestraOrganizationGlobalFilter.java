@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.util.Optional;
+
+import org.georchestra.gateway.model.GeorchestraOrganizations;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.gateway.security.ResolveGeorchestraUserGlobalFilter;
+import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * A {@link GlobalFilter} that resolves the {@link Organization} of the
+ * request's {@link GeorchestraUsers#resolve resolved user} so it can be
+ * {@link GeorchestraOrganizations#resolve retrieved} down the road during a
+ * server web exchange filter chain execution, for example to append the
+ * {@literal sec-org*} headers to proxied http requests.
+ * <p>
+ * Organizations are looked up by the user's {@link GeorchestraUser#getOrganization()
+ * organization short name} through the shared {@link OrganizationsCache}.
+ * Cache misses query LDAP, so they're performed on the bounded elastic
+ * scheduler instead of the event loop.
+ */
+@RequiredArgsConstructor
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
+public class ResolveGeorchestraOrganizationGlobalFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = ResolveGeorchestraUserGlobalFilter.ORDER + 1;
+
+    private final @NonNull OrganizationsCache organizations;
+
+    /**
+     * @return a lower precedence than {@link ResolveGeorchestraUserGlobalFilter}'s,
+     *         in order to make sure the {@link GeorchestraUser} has been resolved
+     *         when {@link #filter} is called.
+     */
+    public @Override int getOrder() {
+        return ORDER;
+    }
+
+    public @Override Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Optional<String> shortName = GeorchestraUsers.resolve(exchange)//
+                .map(GeorchestraUser::getOrganization)//
+                .filter(StringUtils::hasText);
+        if (shortName.isEmpty()) {
+            return chain.filter(exchange);
+        }
+        final OrganizationsCache.Resolved cached = organizations.getIfPresent(shortName.get());
+        final Mono<OrganizationsCache.Resolved> lookup = cached != null ? Mono.just(cached)
+                : Mono.fromSupplier(() -> organizations.resolve(shortName.get()))
+                        .subscribeOn(Schedulers.boundedElastic());
+        return lookup//
+                .doOnNext(resolved -> {
+                    Optional<Organization> org = resolved.getOrganization();
+                    if (org.isPresent()) {
+                        GeorchestraOrganizations.store(exchange, org.get(), resolved.getPayload());
+                    } else {
+                        log.debug("Organization {} not found", shortName.get());
+                    }
+                })//
+                .then(Mono.defer(() -> chain.filter(exchange)));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.directory.SearchControls;
+
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.SingleSearch;
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.UserLookup;
+import org.georchestra.security.api.UsersApi;
+import org.georchestra.security.model.GeorchestraUser;
+import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.DirContextOperations;
+import org.springframework.ldap.core.LdapOperations;
+import org.springframework.ldap.support.LdapEncoder;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resolves an authenticated user with a single search of its LDAP entry, as
+ * configured through {@link UserLookup#SINGLE_SEARCH}, instead of the several
+ * queries the {@link UsersApi} performs to fetch the user, its roles, and its
+ * organization.
+ * <p>
+ * The search only returns the entry's {@literal modifyTimestamp} and
+ * {@literal memberOf} attributes, which tell whether the user changed since it
+ * was last resolved. The user details themselves come from the
+ * {@link UsersApi}, and are reused until the entry changes or for at most
+ * {@link SingleSearch#getMaxAge() maxAge}, so that the resolved users are the
+ * same as with {@link UserLookup#USERS_API}, roles included. The roles granted
+ * at authentication time only tell whether the user's memberships changed,
+ * since a role membership change doesn't always modify the user entry.
+ * <p>
+ * Only the steady state takes a single round trip: the first lookup of a user,
+ * and the first one after its entry changed or its cached details expired, also
+ * fetch the user through the {@link UsersApi}, with as many round trips as it
+ * takes.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.ldap.extended")
+class SingleSearchUserLookup {
+
+    static final String MODIFY_TIMESTAMP = "modifyTimestamp";
+
+    static final String MEMBER_OF = "memberOf";
+
+    @VisibleForTesting
+    static final String[] ATTRIBUTES = { MODIFY_TIMESTAMP, MEMBER_OF };
+
+    private final @NonNull String name;
+    private final @NonNull LdapOperations ldap;
+    private final @NonNull UsersApi users;
+    private final @NonNull String usersRdn;
+    private final @NonNull String usersSearchFilter;
+
+    private final Cache<String, Resolved> byUsername;
+
+    SingleSearchUserLookup(@NonNull ExtendedLdapConfig config, @NonNull LdapOperations ldap,
+            @NonNull UsersApi users) {
+        final SingleSearch settings = Optional.ofNullable(config.getSingleSearch()).orElseGet(SingleSearch::new);
+        this.name = config.getName();
+        this.ldap = ldap;
+        this.users = users;
+        this.usersRdn = config.getUsersRdn();
+        this.usersSearchFilter = config.getUsersSearchFilter();
+        this.byUsername = CacheBuilder.newBuilder()//
+                .maximumSize(settings.getMaximumSize())//
+                .expireAfterWrite(settings.getMaxAge().toMillis(), TimeUnit.MILLISECONDS)//
+                .build();
+    }
+
+    /**
+     * @param username the user name to look up
+     * @param roles    the role names granted to the user at authentication time,
+     *                 the user is fetched again when they change
+     * @return the user, or {@link Optional#empty() empty} if not found
+     */
+    public Optional<GeorchestraUser> findByUsername(@NonNull String username, @NonNull Collection<String> roles) {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        controls.setReturningAttributes(ATTRIBUTES);
+        // two are enough to tell an ambiguous user name
+        controls.setCountLimit(2);
+
+        final String filter = usersSearchFilter.replace("{0}", LdapEncoder.filterEncode(username));
+        ContextMapper<String> mapper = ctx -> version((DirContextOperations) ctx);
+        List<String> found = ldap.search(usersRdn, filter, controls, mapper);
+        if (found.size() != 1) {
+            if (found.size() > 1) {
+                log.warn("Found {} users named {} in LDAP {}, ignoring them", found.size(), username, name);
+            }
+            byUsername.invalidate(username);
+            return Optional.empty();
+        }
+        final String version = found.get(0);
+        final Set<String> grantedRoles = Set.copyOf(roles);
+        Resolved resolved = byUsername.getIfPresent(username);
+        if (resolved == null || !resolved.getVersion().equals(version)
+                || !resolved.getGrantedRoles().equals(grantedRoles)) {
+            Optional<GeorchestraUser> user = users.findByUsername(username);
+            if (user.isEmpty()) {
+                byUsername.invalidate(username);
+                return Optional.empty();
+            }
+            resolved = new Resolved(version, grantedRoles, LdapDirectorySnapshot.serialize(user.get()));
+            byUsername.put(username, resolved);
+        }
+        // a fresh copy each time, callers may modify it
+        return Optional.of(LdapDirectorySnapshot.deserialize(resolved.getUser()));
+    }
+
+    /**
+     * @return a value that changes whenever the user entry or its group
+     *         memberships do, as far as the directory tells
+     */
+    private static String version(DirContextOperations entry) {
+        String modified = String.valueOf(entry.getStringAttribute(MODIFY_TIMESTAMP));
+        String[] memberOf = entry.getStringAttributes(MEMBER_OF);
+        if (memberOf == null) {
+            return modified;
+        }
+        String[] groups = memberOf.clone();
+        Arrays.sort(groups);
+        return modified + "|" + String.join("|", groups);
+    }
+
+    private static @Value class Resolved {
+        String version;
+        Set<String> grantedRoles;
+        byte[] user;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.oauth2;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.georchestra.gateway.security.oauth2.OAuth2ClientConfigProperties.JwkSet;
+import org.springframework.security.oauth2.client.oidc.authentication.ReactiveOidcIdTokenDecoderFactory;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoderFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ID token {@link ReactiveJwtDecoderFactory} creating a single decoder per
+ * client registration, instead of one per login.
+ * <p>
+ * Registrations with a JWK set URI get a decoder backed by a {@link JwkSetCache}
+ * fetching the keys through the given {@link WebClient}, which can be set up to
+ * go through an HTTP proxy. Others get an {@link MacAlgorithm#HS256 HS256}
+ * decoder using the client secret.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.oauth2")
+@RequiredArgsConstructor
+public class CachingIdTokenDecoderFactory implements ReactiveJwtDecoderFactory<ClientRegistration> {
+
+    private final @NonNull WebClient webClient;
+
+    private final @NonNull JwkSet jwkSetConfig;
+
+    private final Map<String, ReactiveJwtDecoder> decoders = new ConcurrentHashMap<>();
+
+    public @Override ReactiveJwtDecoder createDecoder(ClientRegistration clientRegistration) {
+        return decoders.computeIfAbsent(clientRegistration.getRegistrationId(), id -> create(clientRegistration));
+    }
+
+    private ReactiveJwtDecoder create(ClientRegistration clientRegistration) {
+        String jwkSetUri = clientRegistration.getProviderDetails().getJwkSetUri();
+        if ((jwkSetUri != null) && (!jwkSetUri.isEmpty())) {
+            log.info("Creating ID token decoder for {} using JWK set {}", clientRegistration.getRegistrationId(),
+                    jwkSetUri);
+            JwkSetCache jwkSet = new JwkSetCache(jwkSetUri, webClient, jwkSetConfig.getRefreshInterval(),
+                    jwkSetConfig.getMinRefreshInterval());
+            return NimbusReactiveJwtDecoder.withJwkSource(jwkSet::select).build();
+        }
+        ReactiveOidcIdTokenDecoderFactory idTokenDecoderFactory = new ReactiveOidcIdTokenDecoderFactory();
+        idTokenDecoderFactory.setJwsAlgorithmResolver(clientRegistration2 -> MacAlgorithm.HS256);
+        return idTokenDecoderFactory.createDecoder(clientRegistration);
+    }
+}
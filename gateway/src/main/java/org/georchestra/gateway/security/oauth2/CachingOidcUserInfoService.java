@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.oauth2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.client.userinfo.DefaultReactiveOAuth2UserService;
+import org.springframework.security.oauth2.client.userinfo.ReactiveOAuth2UserService;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2UserAuthority;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.NonNull;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link ReactiveOAuth2UserService} decorator reusing, for a short time, the
+ * userinfo response obtained for an OpenID Connect user, keyed by client
+ * registration and ID token subject, so that repeated logins of the same user
+ * don't call the identity provider's userinfo endpoint each time.
+ * <p>
+ * Only the userinfo claims are cached, the user is rebuilt from them with the
+ * authorities of the current request, as {@link DefaultReactiveOAuth2UserService}
+ * does, so that they reflect the scopes granted to that request's access token.
+ * <p>
+ * Plain OAuth2 requests, which carry no ID token, are always delegated.
+ */
+public class CachingOidcUserInfoService
+        implements ReactiveOAuth2UserService<OAuth2UserRequest, OAuth2User>, MeterBinder {
+
+    public static final String CACHE_NAME = "georchestra.oidc.userinfo";
+
+    private final @NonNull ReactiveOAuth2UserService<OAuth2UserRequest, OAuth2User> delegate;
+
+    private final Cache<String, Map<String, Object>> bySubject;
+
+    public CachingOidcUserInfoService(@NonNull ReactiveOAuth2UserService<OAuth2UserRequest, OAuth2User> delegate,
+            long maximumSize, @NonNull Duration expireAfterWrite) {
+        this.delegate = delegate;
+        this.bySubject = CacheBuilder.newBuilder()//
+                .maximumSize(maximumSize)//
+                .expireAfterWrite(expireAfterWrite.toMillis(), TimeUnit.MILLISECONDS)//
+                .recordStats()//
+                .build();
+    }
+
+    public @Override Mono<OAuth2User> loadUser(OAuth2UserRequest userRequest) {
+        if (!(userRequest instanceof OidcUserRequest)) {
+            return delegate.loadUser(userRequest);
+        }
+        final String key = key((OidcUserRequest) userRequest);
+        Map<String, Object> claims = bySubject.getIfPresent(key);
+        if (claims != null) {
+            return Mono.just(user(userRequest, claims));
+        }
+        return delegate.loadUser(userRequest).doOnNext(user -> bySubject.put(key, user.getAttributes()));
+    }
+
+    private OAuth2User user(OAuth2UserRequest request, Map<String, Object> claims) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        authorities.add(new OAuth2UserAuthority(claims));
+        for (String scope : request.getAccessToken().getScopes()) {
+            authorities.add(new SimpleGrantedAuthority("SCOPE_" + scope));
+        }
+        String nameAttributeKey = request.getClientRegistration().getProviderDetails().getUserInfoEndpoint()
+                .getUserNameAttributeName();
+        return new DefaultOAuth2User(authorities, claims, nameAttributeKey);
+    }
+
+    private String key(OidcUserRequest request) {
+        return request.getClientRegistration().getRegistrationId() + ":" + request.getIdToken().getSubject();
+    }
+
+    /**
+     * Publishes the cache size, hit, miss, and eviction metrics to the given
+     * registry under the {@link #CACHE_NAME} cache name
+     */
+    public @Override void bindTo(@NonNull MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, bySubject, CACHE_NAME);
+    }
+
+    @VisibleForTesting
+    long size() {
+        bySubject.cleanUp();
+        return bySubject.size();
+    }
+}
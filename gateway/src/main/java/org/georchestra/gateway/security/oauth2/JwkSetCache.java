@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.oauth2;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Cached JWK set of an identity provider, used as the key source of its ID
+ * token decoder.
+ * <p>
+ * The JWK set is fetched once and shared by all logins. When it gets older than
+ * {@code refreshInterval} it's refreshed in the background while the current
+ * one is still served. If a token is signed with a key the cached set doesn't
+ * contain, the identity provider likely rotated its keys, and the set is
+ * fetched again right away, provided it's older than
+ * {@code minRefreshInterval} so that tokens with bogus key ids can't make the
+ * gateway hammer the identity provider. Concurrent fetches are coalesced, and
+ * fetches, failed ones included, are at least {@code minRefreshInterval}
+ * apart, so an unavailable identity provider isn't called on every login.
+ */
+@Slf4j(topic = "org.georchestra.gateway.security.oauth2")
+public class JwkSetCache {
+
+    @Value
+    private static class Snapshot {
+        private final @NonNull JWKSet jwkSet;
+        private final long fetchedAt;
+
+        Duration age() {
+            return Duration.ofNanos(System.nanoTime() - fetchedAt);
+        }
+    }
+
+    private final @NonNull String jwkSetUri;
+
+    private final @NonNull WebClient webClient;
+
+    private final @NonNull Duration refreshInterval;
+
+    private final @NonNull Duration minRefreshInterval;
+
+    private volatile Snapshot current;
+
+    private final AtomicReference<Mono<Snapshot>> inFlight = new AtomicReference<>();
+
+    /**
+     * {@link System#nanoTime()} of the last fetch, {@code null} before the first
+     * one
+     */
+    private volatile Long lastAttempt;
+
+    private volatile Throwable lastError;
+
+    public JwkSetCache(@NonNull String jwkSetUri, @NonNull WebClient webClient, @NonNull Duration refreshInterval,
+            @NonNull Duration minRefreshInterval) {
+        this.jwkSetUri = jwkSetUri;
+        this.webClient = webClient;
+        this.refreshInterval = refreshInterval;
+        this.minRefreshInterval = minRefreshInterval;
+    }
+
+    /**
+     * @return the keys matching the {@code jwt}'s header, suitable as the
+     *         {@link org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder#withJwkSource
+     *         JWK source} of a JWT decoder
+     */
+    public Flux<JWK> select(SignedJWT jwt) {
+        final JWKSelector selector = new JWKSelector(JWKMatcher.forJWSHeader(jwt.getHeader()));
+        return get().flatMapMany(snapshot -> {
+            List<JWK> keys = selector.select(snapshot.getJwkSet());
+            if (keys.isEmpty() && snapshot.age().compareTo(minRefreshInterval) >= 0) {
+                log.debug("No key matching {} in {}, fetching it again", jwt.getHeader().getKeyID(), jwkSetUri);
+                return refresh().flatMapIterable(refreshed -> selector.select(refreshed.getJwkSet()));
+            }
+            return Flux.fromIterable(keys);
+        });
+    }
+
+    private Mono<Snapshot> get() {
+        final Snapshot snapshot = current;
+        if (snapshot == null) {
+            return refresh();
+        }
+        if (snapshot.age().compareTo(refreshInterval) >= 0 && canAttempt()) {
+            refresh().subscribe(refreshed -> log.debug("Refreshed JWK set {}", jwkSetUri),
+                    error -> log.warn("Error refreshing JWK set {}, keeping the current one", jwkSetUri, error));
+        }
+        return Mono.just(snapshot);
+    }
+
+    Mono<Snapshot> refresh() {
+        Mono<Snapshot> pending = inFlight.get();
+        if (pending != null) {
+            return pending;
+        }
+        if (!canAttempt()) {
+            final Snapshot snapshot = current;
+            return snapshot != null ? Mono.just(snapshot)
+                    : Mono.error(new IllegalStateException(String.format(
+                            "JWK set %s unavailable, not fetching it again within %s", jwkSetUri, minRefreshInterval),
+                            lastError));
+        }
+        Mono<Snapshot> fetch = webClient.get()//
+                .uri(jwkSetUri)//
+                .accept(MediaType.APPLICATION_JSON)//
+                .retrieve()//
+                .bodyToMono(String.class)//
+                .map(this::parse)//
+                .doOnNext(fetched -> {
+                    this.current = fetched;
+                    this.lastError = null;
+                })//
+                .doOnError(error -> this.lastError = error)//
+                .doFinally(signal -> inFlight.set(null))//
+                .cache();
+        if (inFlight.compareAndSet(null, fetch)) {
+            lastAttempt = System.nanoTime();
+            return fetch;
+        }
+        pending = inFlight.get();
+        return pending == null ? fetch : pending;
+    }
+
+    private boolean canAttempt() {
+        final Long last = lastAttempt;
+        return last == null || Duration.ofNanos(System.nanoTime() - last).compareTo(minRefreshInterval) >= 0;
+    }
+
+    private Snapshot parse(String body) {
+        try {
+            return new Snapshot(JWKSet.parse(body), System.nanoTime());
+        } catch (ParseException e) {
+            throw new IllegalStateException("Invalid JWK set returned by " + jwkSetUri, e);
+        }
+    }
+}
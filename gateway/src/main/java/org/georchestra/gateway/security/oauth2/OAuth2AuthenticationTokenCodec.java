@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.oauth2;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.georchestra.gateway.session.AuthenticationCodec;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.IdTokenClaimNames;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2UserAuthority;
+
+/**
+ * {@link AuthenticationCodec} for the {@link OAuth2AuthenticationToken}s of
+ * {@link DefaultOidcUser OpenID Connect} and {@link DefaultOAuth2User OAuth2}
+ * users.
+ * <p>
+ * The id token, user info, and attributes are written once, instead of once
+ * per authority as with Java serialization, and claim values are written in a
+ * compact typed form. Tokens with claim values other than strings, numbers,
+ * booleans, instants, URLs, and lists and maps of them are not handled, so
+ * decoding never involves Java deserialization.
+ */
+public class OAuth2AuthenticationTokenCodec implements AuthenticationCodec {
+
+    private static final byte OIDC_USER = 1;
+    private static final byte OAUTH2_USER = 2;
+
+    private static final byte SIMPLE_AUTHORITY = 1;
+    private static final byte OIDC_USER_AUTHORITY = 2;
+    private static final byte OAUTH2_USER_AUTHORITY = 3;
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_STRING = 1;
+    private static final byte VALUE_BOOLEAN = 2;
+    private static final byte VALUE_INTEGER = 3;
+    private static final byte VALUE_LONG = 4;
+    private static final byte VALUE_DOUBLE = 5;
+    private static final byte VALUE_INSTANT = 6;
+    private static final byte VALUE_URL = 7;
+    private static final byte VALUE_LIST = 8;
+    private static final byte VALUE_MAP = 9;
+
+    /**
+     * Maximum nesting of the decoded claim values, claims are shallow but a
+     * corrupt input could nest them until a stack overflow
+     */
+    private static final int MAX_DEPTH = 32;
+
+    public @Override String getName() {
+        return "oauth2";
+    }
+
+    public @Override boolean canEncode(Authentication authentication) {
+        if (!(authentication instanceof OAuth2AuthenticationToken) || authentication.getDetails() != null) {
+            return false;
+        }
+        OAuth2User principal = ((OAuth2AuthenticationToken) authentication).getPrincipal();
+        if (principal.getClass() != DefaultOidcUser.class && principal.getClass() != DefaultOAuth2User.class) {
+            return false;
+        }
+        if (!hasEncodableClaims(principal)) {
+            return false;
+        }
+        return authentication.getAuthorities().stream().allMatch(a -> authorityKind(principal, a) != 0);
+    }
+
+    private boolean hasEncodableClaims(OAuth2User principal) {
+        if (principal instanceof DefaultOidcUser) {
+            DefaultOidcUser oidcUser = (DefaultOidcUser) principal;
+            return isEncodable(oidcUser.getIdToken().getClaims())
+                    && (oidcUser.getUserInfo() == null || isEncodable(oidcUser.getUserInfo().getClaims()));
+        }
+        return isEncodable(principal.getAttributes());
+    }
+
+    /**
+     * @return whether the claim value only holds JSON like values, other values
+     *         are left to the session codec's Java serialization fallback
+     */
+    private static boolean isEncodable(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Integer
+                || value instanceof Long || value instanceof Double || value instanceof Instant
+                || value instanceof URL) {
+            return true;
+        }
+        if (value instanceof List) {
+            return ((List<?>) value).stream().allMatch(OAuth2AuthenticationTokenCodec::isEncodable);
+        }
+        if (value instanceof Map) {
+            return ((Map<?, ?>) value).values().stream().allMatch(OAuth2AuthenticationTokenCodec::isEncodable);
+        }
+        return false;
+    }
+
+    /**
+     * @return the kind of authority, {@code 0} if it's not supported
+     */
+    private byte authorityKind(OAuth2User principal, GrantedAuthority authority) {
+        if (authority.getClass() == SimpleGrantedAuthority.class) {
+            return SIMPLE_AUTHORITY;
+        }
+        // user authorities are rebuilt from the principal, so they must match it
+        if (authority.getClass() == OidcUserAuthority.class && principal instanceof DefaultOidcUser) {
+            OidcUserAuthority oidcAuthority = (OidcUserAuthority) authority;
+            DefaultOidcUser oidcUser = (DefaultOidcUser) principal;
+            boolean matches = Objects.equals(oidcAuthority.getIdToken(), oidcUser.getIdToken())
+                    && Objects.equals(oidcAuthority.getUserInfo(), oidcUser.getUserInfo());
+            return matches ? OIDC_USER_AUTHORITY : 0;
+        }
+        if (authority.getClass() == OAuth2UserAuthority.class && principal.getClass() == DefaultOAuth2User.class) {
+            boolean matches = Objects.equals(((OAuth2UserAuthority) authority).getAttributes(),
+                    principal.getAttributes());
+            return matches ? OAUTH2_USER_AUTHORITY : 0;
+        }
+        return 0;
+    }
+
+    public @Override void encode(Authentication authentication, DataOutput out) throws IOException {
+        OAuth2AuthenticationToken token = (OAuth2AuthenticationToken) authentication;
+        OAuth2User principal = token.getPrincipal();
+        out.writeUTF(token.getAuthorizedClientRegistrationId());
+        writeString(principal.getName(), out);
+        if (principal instanceof DefaultOidcUser) {
+            DefaultOidcUser oidcUser = (DefaultOidcUser) principal;
+            out.writeByte(OIDC_USER);
+            OidcIdToken idToken = oidcUser.getIdToken();
+            writeString(idToken.getTokenValue(), out);
+            writeValue(idToken.getIssuedAt(), out);
+            writeValue(idToken.getExpiresAt(), out);
+            writeValue(idToken.getClaims(), out);
+            writeValue(oidcUser.getUserInfo() == null ? null : oidcUser.getUserInfo().getClaims(), out);
+        } else {
+            out.writeByte(OAUTH2_USER);
+            writeValue(principal.getAttributes(), out);
+        }
+        Collection<? extends GrantedAuthority> authorities = token.getAuthorities();
+        out.writeInt(authorities.size());
+        for (GrantedAuthority authority : authorities) {
+            out.writeByte(authorityKind(principal, authority));
+            out.writeUTF(authority.getAuthority());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public @Override Authentication decode(DataInput in) throws IOException {
+        final String registrationId = in.readUTF();
+        final String name = readString(in);
+        final byte userType = in.readByte();
+
+        OidcIdToken idToken = null;
+        OidcUserInfo userInfo = null;
+        Map<String, Object> attributes;
+        if (userType == OIDC_USER) {
+            String tokenValue = readString(in);
+            Instant issuedAt = (Instant) readValue(in, 0);
+            Instant expiresAt = (Instant) readValue(in, 0);
+            Map<String, Object> claims = (Map<String, Object>) readValue(in, 0);
+            Map<String, Object> userInfoClaims = (Map<String, Object>) readValue(in, 0);
+            idToken = new OidcIdToken(tokenValue, issuedAt, expiresAt, claims);
+            userInfo = userInfoClaims == null ? null : new OidcUserInfo(userInfoClaims);
+            // same precedence as DefaultOidcUser's attributes
+            attributes = new LinkedHashMap<>();
+            if (userInfoClaims != null) {
+                attributes.putAll(userInfoClaims);
+            }
+            attributes.putAll(claims);
+        } else if (userType == OAUTH2_USER) {
+            attributes = (Map<String, Object>) readValue(in, 0);
+        } else {
+            throw new IOException("Unknown OAuth2 user type " + userType);
+        }
+
+        final int count = AuthenticationCodec.readSize(in);
+        List<GrantedAuthority> authorities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final byte kind = in.readByte();
+            final String authority = in.readUTF();
+            if (kind == SIMPLE_AUTHORITY) {
+                authorities.add(new SimpleGrantedAuthority(authority));
+            } else if (kind == OIDC_USER_AUTHORITY) {
+                authorities.add(new OidcUserAuthority(authority, idToken, userInfo));
+            } else if (kind == OAUTH2_USER_AUTHORITY) {
+                authorities.add(new OAuth2UserAuthority(authority, attributes));
+            } else {
+                throw new IOException("Unknown authority kind " + kind);
+            }
+        }
+
+        final String nameAttributeKey = nameAttributeKey(attributes, name);
+        OAuth2User principal = userType == OIDC_USER
+                ? new DefaultOidcUser(authorities, idToken, userInfo, nameAttributeKey)
+                : new DefaultOAuth2User(authorities, attributes, nameAttributeKey);
+        return new OAuth2AuthenticationToken(principal, authorities, registrationId);
+    }
+
+    /**
+     * The name attribute key is not exposed by the user objects, find it back
+     * from the user name, preferring the standard {@literal sub} claim
+     */
+    private String nameAttributeKey(Map<String, Object> attributes, String name) {
+        if (name.equals(String.valueOf(attributes.get(IdTokenClaimNames.SUB)))) {
+            return IdTokenClaimNames.SUB;
+        }
+        return attributes.entrySet().stream()//
+                .filter(e -> name.equals(String.valueOf(e.getValue())))//
+                .map(Map.Entry::getKey)//
+                .findFirst()//
+                .orElse(IdTokenClaimNames.SUB);
+    }
+
+    private static void writeString(String value, DataOutput out) throws IOException {
+        // not writeUTF(), limited to 64KB
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[AuthenticationCodec.readSize(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeValue(Object value, DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeByte(VALUE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(VALUE_STRING);
+            writeString((String) value, out);
+        } else if (value instanceof Boolean) {
+            out.writeByte(VALUE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(VALUE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(VALUE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(VALUE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Instant) {
+            out.writeByte(VALUE_INSTANT);
+            out.writeLong(((Instant) value).getEpochSecond());
+            out.writeInt(((Instant) value).getNano());
+        } else if (value instanceof URL) {
+            out.writeByte(VALUE_URL);
+            writeString(((URL) value).toExternalForm(), out);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(VALUE_LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(item, out);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(VALUE_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                writeString(String.valueOf(e.getKey()), out);
+                writeValue(e.getValue(), out);
+            }
+        } else {
+            throw new IOException("Unsupported claim value type " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInput in, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("Claim values nested deeper than " + MAX_DEPTH);
+        }
+        final byte type = in.readByte();
+        switch (type) {
+        case VALUE_NULL:
+            return null;
+        case VALUE_STRING:
+            return readString(in);
+        case VALUE_BOOLEAN:
+            return in.readBoolean();
+        case VALUE_INTEGER:
+            return in.readInt();
+        case VALUE_LONG:
+            return in.readLong();
+        case VALUE_DOUBLE:
+            return in.readDouble();
+        case VALUE_INSTANT:
+            return Instant.ofEpochSecond(in.readLong(), in.readInt());
+        case VALUE_URL:
+            return new URL(readString(in));
+        case VALUE_LIST: {
+            final int size = AuthenticationCodec.readSize(in);
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readValue(in, depth + 1));
+            }
+            return list;
+        }
+        case VALUE_MAP: {
+            final int size = AuthenticationCodec.readSize(in);
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                map.put(readString(in), readValue(in, depth + 1));
+            }
+            return map;
+        }
+        default:
+            throw new IOException("Unknown claim value type " + type);
+        }
+    }
+}
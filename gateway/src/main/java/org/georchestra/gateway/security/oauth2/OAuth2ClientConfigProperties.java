@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.oauth2;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Configuration properties for the HTTP traffic between the gateway and the
+ * OAuth2/OpenID Connect identity providers (token, JWK set, and userinfo
+ * requests)
+ */
+@ConfigurationProperties(prefix = "georchestra.gateway.security.oauth2.client")
+public @Data class OAuth2ClientConfigProperties {
+
+    /**
+     * Connection pool dedicated to the identity providers
+     */
+    private Pool pool = new Pool();
+
+    /**
+     * Caching of the identity providers signing keys
+     */
+    private JwkSet jwkSet = new JwkSet();
+
+    /**
+     * Caching of the OpenID Connect userinfo responses
+     */
+    private UserInfoCache userInfoCache = new UserInfoCache();
+
+    @Generated
+    public static @Data @Accessors(chain = true) class Pool {
+
+        /**
+         * Maximum number of connections to the identity providers
+         */
+        private int maxConnections = 50;
+
+        /**
+         * Maximum number of requests waiting for a connection, further requests
+         * fail right away
+         */
+        private int pendingAcquireMaxCount = 500;
+
+        /**
+         * Maximum time a request waits for a connection
+         */
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Time after which an idle connection is closed
+         */
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        /**
+         * Maximum time to wait for an identity provider's response
+         */
+        private Duration responseTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Whether to publish the connection pool and HTTP client metrics
+         */
+        private boolean metrics = true;
+    }
+
+    @Generated
+    public static @Data @Accessors(chain = true) class JwkSet {
+
+        /**
+         * Age after which a JWK set is refreshed in the background, while still
+         * serving the current one
+         */
+        private Duration refreshInterval = Duration.ofMinutes(5);
+
+        /**
+         * Minimum age of a JWK set before it's fetched again to look for a signing
+         * key it doesn't contain, in case the identity provider rotated its keys
+         */
+        private Duration minRefreshInterval = Duration.ofSeconds(30);
+    }
+
+    @Generated
+    public static @Data @Accessors(chain = true) class UserInfoCache {
+
+        /**
+         * Whether to reuse the userinfo response obtained for the same user and
+         * client registration on subsequent logins
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of userinfo responses to cache
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * Time after which a cached userinfo response is requested again
+         */
+        private Duration expireAfterWrite = Duration.ofMinutes(1);
+    }
+}
@@ -18,7 +18,12 @@
  */
 package org.georchestra.gateway.security.oauth2;
 
+import java.util.function.Function;
+
 import org.georchestra.gateway.security.ServerHttpSecurityCustomizer;
+import org.georchestra.gateway.security.oauth2.OAuth2ClientConfigProperties.Pool;
+import org.georchestra.gateway.security.oauth2.OAuth2ClientConfigProperties.UserInfoCache;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -30,22 +35,21 @@ import org.springframework.security.config.web.server.ServerHttpSecurity.OAuth2L
 import org.springframework.security.oauth2.client.endpoint.OAuth2AuthorizationCodeGrantRequest;
 import org.springframework.security.oauth2.client.endpoint.ReactiveOAuth2AccessTokenResponseClient;
 import org.springframework.security.oauth2.client.endpoint.WebClientReactiveAuthorizationCodeTokenResponseClient;
-import org.springframework.security.oauth2.client.oidc.authentication.ReactiveOidcIdTokenDecoderFactory;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcReactiveOAuth2UserService;
 import org.springframework.security.oauth2.client.registration.ClientRegistration;
-import org.springframework.security.oauth2.client.registration.ClientRegistration.ProviderDetails;
 import org.springframework.security.oauth2.client.userinfo.DefaultReactiveOAuth2UserService;
-import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
-import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
 import org.springframework.security.oauth2.jwt.ReactiveJwtDecoderFactory;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 import reactor.netty.transport.ProxyProvider;
 
 @Configuration(proxyBeanMethods = false)
-@EnableConfigurationProperties({ OAuth2ProxyConfigProperties.class, OpenIdConnectCustomClaimsConfigProperties.class })
+@EnableConfigurationProperties({ OAuth2ProxyConfigProperties.class, OAuth2ClientConfigProperties.class,
+        OpenIdConnectCustomClaimsConfigProperties.class })
 @Slf4j(topic = "org.georchestra.gateway.security.oauth2")
 public class OAuth2Configuration {
 
@@ -67,6 +71,15 @@ public class OAuth2Configuration {
         return new OAuth2UserMapper();
     }
 
+    /**
+     * Compact storage of the OAuth2 authentication tokens by the persistent web
+     * session stores
+     */
+    @Bean
+    OAuth2AuthenticationTokenCodec oauth2AuthenticationTokenCodec() {
+        return new OAuth2AuthenticationTokenCodec();
+    }
+
     @Bean
     OpenIdConnectUserMapper openIdConnectGeorchestraUserUserMapper(
             OpenIdConnectCustomClaimsConfigProperties nonStandardClaimsConfig) {
@@ -98,22 +111,13 @@ public class OAuth2Configuration {
 
     /**
      * Custom JWT decoder factory to use the web client that can be set up to go
-     * through an HTTP proxy
+     * through an HTTP proxy, creating a single decoder per client registration,
+     * with a cached JWK set
      */
     @Bean
     public ReactiveJwtDecoderFactory<ClientRegistration> idTokenDecoderFactory(
-            @Qualifier("oauth2WebClient") WebClient oauth2WebClient) {
-        return (clientRegistration) -> {
-            ProviderDetails providerDetails = clientRegistration.getProviderDetails();
-            String jwkSetUri = providerDetails.getJwkSetUri();
-            if ((jwkSetUri != null) && (!jwkSetUri.isEmpty())) {
-                return NimbusReactiveJwtDecoder.withJwkSetUri(jwkSetUri).webClient(oauth2WebClient).build();
-            } else {
-                ReactiveOidcIdTokenDecoderFactory idTokenDecoderFactory = new ReactiveOidcIdTokenDecoderFactory();
-                idTokenDecoderFactory.setJwsAlgorithmResolver(clientRegistration2 -> MacAlgorithm.HS256);
-                return idTokenDecoderFactory.createDecoder(clientRegistration);
-            }
-        };
+            @Qualifier("oauth2WebClient") WebClient oauth2WebClient, OAuth2ClientConfigProperties clientConfig) {
+        return new CachingIdTokenDecoderFactory(oauth2WebClient, clientConfig.getJwkSet());
     }
 
     @Bean
@@ -125,14 +129,48 @@ public class OAuth2Configuration {
         return service;
     };
 
+    /**
+     * OpenID Connect user service, reusing the userinfo responses for a short time
+     * if enabled through
+     * {@literal georchestra.gateway.security.oauth2.client.user-info-cache.enabled=true}
+     */
     @Bean
-    public OidcReactiveOAuth2UserService oidcReactiveOAuth2UserService(
-            DefaultReactiveOAuth2UserService oauth2Delegate) {
+    public OidcReactiveOAuth2UserService oidcReactiveOAuth2UserService(DefaultReactiveOAuth2UserService oauth2Delegate,
+            OAuth2ClientConfigProperties clientConfig, ObjectProvider<MeterRegistry> meterRegistry) {
         OidcReactiveOAuth2UserService oidUserService = new OidcReactiveOAuth2UserService();
-        oidUserService.setOauth2UserService(oauth2Delegate);
+        UserInfoCache cacheConfig = clientConfig.getUserInfoCache();
+        if (cacheConfig.isEnabled()) {
+            log.info("Caching OpenID Connect userinfo responses, maximum size: {}, expire after write: {}",
+                    cacheConfig.getMaximumSize(), cacheConfig.getExpireAfterWrite());
+            CachingOidcUserInfoService cachingDelegate = new CachingOidcUserInfoService(oauth2Delegate,
+                    cacheConfig.getMaximumSize(), cacheConfig.getExpireAfterWrite());
+            meterRegistry.ifAvailable(cachingDelegate::bindTo);
+            oidUserService.setOauth2UserService(cachingDelegate);
+        } else {
+            oidUserService.setOauth2UserService(oauth2Delegate);
+        }
         return oidUserService;
     };
 
+    /**
+     * Connection pool dedicated to the identity providers, so that logins neither
+     * compete for connections with, nor are starved by, the proxied traffic
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider oauth2ConnectionProvider(OAuth2ClientConfigProperties clientConfig) {
+        Pool pool = clientConfig.getPool();
+        log.info("OAuth2 client connection pool max connections: {}, max pending: {}", pool.getMaxConnections(),
+                pool.getPendingAcquireMaxCount());
+        return ConnectionProvider.builder("oauth2")//
+                .maxConnections(pool.getMaxConnections())//
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())//
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())//
+                .maxIdleTime(pool.getMaxIdleTime())//
+                .evictInBackground(pool.getMaxIdleTime())//
+                .metrics(pool.isMetrics())//
+                .build();
+    }
+
     /**
      * {@link WebClient} to use when performing HTTP POST requests to the OAuth2
      * service providers, that can be configured to use an HTTP proxy through the
@@ -144,15 +182,23 @@ public class OAuth2Configuration {
      *                    the {@code WebClient} will use the proxy configured
      *                    through System properties ({@literal http(s).proxyHost}
      *                    and {@literal http(s).proxyPort}), if any.
+     * @param clientConfig     defines the response timeout and whether to publish
+     *                         metrics
+     * @param oauth2ConnectionProvider the connection pool dedicated to the OAuth2
+     *                                 service providers
      */
     @Bean("oauth2WebClient")
-    public WebClient oauth2WebClient(OAuth2ProxyConfigProperties proxyConfig) {
+    public WebClient oauth2WebClient(OAuth2ProxyConfigProperties proxyConfig, OAuth2ClientConfigProperties clientConfig,
+            ConnectionProvider oauth2ConnectionProvider) {
         final String proxyHost = proxyConfig.getHost();
         final Integer proxyPort = proxyConfig.getPort();
         final String proxyUser = proxyConfig.getUsername();
         final String proxyPassword = proxyConfig.getPassword();
 
-        HttpClient httpClient = HttpClient.create();
+        Pool pool = clientConfig.getPool();
+        HttpClient httpClient = HttpClient.create(oauth2ConnectionProvider)//
+                .responseTimeout(pool.getResponseTimeout())//
+                .metrics(pool.isMetrics(), Function.identity());
         if (proxyConfig.isEnabled()) {
             if (proxyHost == null || proxyPort == null) {
                 throw new IllegalStateException("OAuth2 client HTTP proxy is enabled, but host and port not provided");
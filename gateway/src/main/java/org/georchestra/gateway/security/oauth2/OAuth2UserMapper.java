@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -59,6 +60,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j(topic = "org.georchestra.gateway.security.oauth2")
 public class OAuth2UserMapper implements GeorchestraUserMapperExtension {
 
+    @Override
+    public Set<Class<? extends Authentication>> getAuthenticationTypes() {
+        return Set.of(OAuth2AuthenticationToken.class);
+    }
+
     @Override
     public Optional<GeorchestraUser> resolve(Authentication authToken) {
         return Optional.ofNullable(authToken)//
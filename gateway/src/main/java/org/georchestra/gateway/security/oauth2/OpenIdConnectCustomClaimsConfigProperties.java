@@ -23,10 +23,8 @@ import java.text.Normalizer.Form;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import org.georchestra.security.model.GeorchestraUser;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -35,8 +33,13 @@ import org.springframework.util.StringUtils;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
 
@@ -86,6 +89,14 @@ public @Data class OpenIdConnectCustomClaimsConfigProperties {
         }
 
         public void apply(Map<String, Object> claims, GeorchestraUser target) {
+            apply(JsonPath.parse(claims), target);
+        }
+
+        /**
+         * @param claims the OIDC claims document, parsed once and shared by all
+         *               extractors
+         */
+        public void apply(DocumentContext claims, GeorchestraUser target) {
 
             json().ifPresent(json -> {
                 List<String> rawValues = json.extract(claims);
@@ -159,43 +170,76 @@ public @Data class OpenIdConnectCustomClaimsConfigProperties {
         private List<String> path = new ArrayList<>();
 
         /**
-         * @param claims
-         * @return
+         * The compiled {@link #path} expressions, recompiled if {@link #path} has been
+         * changed or modified since
          */
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        @ToString.Exclude
+        @EqualsAndHashCode.Exclude
+        private transient CompiledPaths compiled;
+
+        public void setPath(List<String> path) {
+            this.path = path;
+            this.compiled = path == null ? null : CompiledPaths.compile(path);
+        }
+
+        private CompiledPaths compiled() {
+            CompiledPaths current = this.compiled;
+            if (current == null || !current.isCompiledFrom(this.path)) {
+                current = CompiledPaths.compile(this.path == null ? List.of() : this.path);
+                this.compiled = current;
+            }
+            return current;
+        }
+
         public @NonNull List<String> extract(@NonNull Map<String, Object> claims) {
-            return this.path.stream()//
-                    .map(jsonPathExpression -> this.extract(jsonPathExpression, claims))//
-                    .flatMap(List::stream)//
-                    .collect(Collectors.toList());
+            return extract(JsonPath.parse(claims));
         }
 
-        private List<String> extract(final String jsonPathExpression, Map<String, Object> claims) {
-            if (!StringUtils.hasText(jsonPathExpression)) {
+        /**
+         * @param claims the OIDC claims document, parsed once and shared by all
+         *               extractors
+         * @return the String values matched by all the {@link #path} expressions, in
+         *         order
+         */
+        public @NonNull List<String> extract(@NonNull DocumentContext claims) {
+            final CompiledPaths paths = compiled();
+            if (paths.expressions.length == 0) {
                 return List.of();
             }
-            // if we call claims.get(key) and the result is a JSON object,
-            // the json api used is a shaded version of org.json at package
-            // com.nimbusds.jose.shaded.json, we don't want to use that
-            // since it's obviously internal to com.nimbusds.jose
-            // JsonPath works fine with it though, as it's designed
-            // to work on POJOS, JSONObject is a Map and JSONArray is a List so it's ok
-            DocumentContext context = JsonPath.parse(claims);
+            List<String> values = new ArrayList<>();
+            for (JsonPath expression : paths.expressions) {
+                extract(expression, claims, values);
+            }
+            return values;
+        }
+
+        // if we call claims.get(key) and the result is a JSON object,
+        // the json api used is a shaded version of org.json at package
+        // com.nimbusds.jose.shaded.json, we don't want to use that
+        // since it's obviously internal to com.nimbusds.jose
+        // JsonPath works fine with it though, as it's designed
+        // to work on POJOS, JSONObject is a Map and JSONArray is a List so it's ok
+        private void extract(final JsonPath jsonPathExpression, DocumentContext context, List<String> target) {
             Object matched = context.read(jsonPathExpression);
 
             if (null == matched) {
-                log.warn("The JSONPath expession {} evaluates to null", jsonPathExpression);
-                return List.of();
+                log.warn("The JSONPath expession {} evaluates to null", jsonPathExpression.getPath());
+                return;
             }
 
-            final List<?> list = (matched instanceof List) ? (List<?>) matched : List.of(matched);
-
-            List<String> values = IntStream.range(0, list.size())//
-                    .mapToObj(list::get)//
-                    .filter(Objects::nonNull)//
-                    .map(value -> validateValueIsString(jsonPathExpression, value))//
-                    .collect(Collectors.toList());
-
-            return values;
+            if (matched instanceof List) {
+                final List<?> list = (List<?>) matched;
+                for (int i = 0; i < list.size(); i++) {
+                    Object value = list.get(i);
+                    if (value != null) {
+                        target.add(validateValueIsString(jsonPathExpression.getPath(), value));
+                    }
+                }
+            } else {
+                target.add(validateValueIsString(jsonPathExpression.getPath(), matched));
+            }
         }
 
         private String validateValueIsString(final String jsonPathExpression, @NonNull Object v) {
@@ -208,4 +252,30 @@ public @Data class OpenIdConnectCustomClaimsConfigProperties {
 
         }
     }
+
+    /**
+     * Immutable snapshot of a list of JsonPath expressions and their compiled form
+     */
+    private static final class CompiledPaths {
+        private final List<String> source;
+        private final JsonPath[] expressions;
+
+        private CompiledPaths(List<String> source, JsonPath[] expressions) {
+            this.source = source;
+            this.expressions = expressions;
+        }
+
+        static CompiledPaths compile(@NonNull List<String> paths) {
+            List<String> source = new ArrayList<>(paths);
+            JsonPath[] expressions = source.stream()//
+                    .filter(StringUtils::hasText)//
+                    .map(JsonPath::compile)//
+                    .toArray(JsonPath[]::new);
+            return new CompiledPaths(source, expressions);
+        }
+
+        boolean isCompiledFrom(List<String> paths) {
+            return paths == null ? source.isEmpty() : source.equals(paths);
+        }
+    }
 }
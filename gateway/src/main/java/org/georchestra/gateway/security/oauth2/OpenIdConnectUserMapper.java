@@ -38,6 +38,8 @@ import org.springframework.security.oauth2.core.oidc.StandardClaimAccessor;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
 
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -165,14 +167,16 @@ public class OpenIdConnectUserMapper extends OAuth2UserMapper {
      */
     @VisibleForTesting
     void applyNonStandardClaims(Map<String, Object> claims, GeorchestraUser target) {
+        // parse once, evaluate all the configured JsonPath expressions against it
+        final DocumentContext document = JsonPath.parse(claims);
 
-        nonStandardClaimsConfig.id().map(jsonEvaluator -> jsonEvaluator.extract(claims))//
+        nonStandardClaimsConfig.id().map(jsonEvaluator -> jsonEvaluator.extract(document))//
                 .map(List::stream)//
                 .flatMap(Stream::findFirst)//
                 .ifPresent(target::setId);
 
-        nonStandardClaimsConfig.roles().ifPresent(rolesMapper -> rolesMapper.apply(claims, target));
-        nonStandardClaimsConfig.organization().map(jsonEvaluator -> jsonEvaluator.extract(claims))//
+        nonStandardClaimsConfig.roles().ifPresent(rolesMapper -> rolesMapper.apply(document, target));
+        nonStandardClaimsConfig.organization().map(jsonEvaluator -> jsonEvaluator.extract(document))//
                 .map(List::stream)//
                 .flatMap(Stream::findFirst)//
                 .ifPresent(target::setOrganization);
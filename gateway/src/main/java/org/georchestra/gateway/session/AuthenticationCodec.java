@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+
+/**
+ * Extension point to store the {@link Authentication} of the web sessions'
+ * {@link SecurityContext} in a compact form, instead of Java serializing the
+ * whole object graph.
+ * <p>
+ * Contributed as beans, the codecs are used by the persistent session stores.
+ * A token no codec {@link #canEncode can encode} is Java serialized.
+ */
+public interface AuthenticationCodec {
+
+    /**
+     * Identifies the encoding, written before each encoded token to find the
+     * codec that decodes it. Must not change across versions unless the
+     * encoding does.
+     */
+    String getName();
+
+    boolean canEncode(Authentication authentication);
+
+    void encode(Authentication authentication, DataOutput out) throws IOException;
+
+    Authentication decode(DataInput in) throws IOException;
+
+    /**
+     * Upper bound of the sizes {@link #readSize} accepts, well above those of
+     * any authentication token
+     */
+    int MAX_SIZE = 1 << 20;
+
+    /**
+     * Reads a collection size or byte length written with
+     * {@link DataOutput#writeInt}, failing on the negative or unreasonably large
+     * values of a corrupt input instead of allocating them
+     */
+    static int readSize(DataInput in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IOException("Invalid size " + size);
+        }
+        return size;
+    }
+
+    /**
+     * Writes authorities that are all {@link SimpleGrantedAuthority}, see
+     * {@link #isSimple(Collection)}
+     */
+    static void writeAuthorities(Collection<? extends GrantedAuthority> authorities, DataOutput out)
+            throws IOException {
+        out.writeInt(authorities.size());
+        for (GrantedAuthority authority : authorities) {
+            out.writeUTF(authority.getAuthority());
+        }
+    }
+
+    static List<GrantedAuthority> readAuthorities(DataInput in) throws IOException {
+        final int size = readSize(in);
+        List<GrantedAuthority> authorities = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            authorities.add(new SimpleGrantedAuthority(in.readUTF()));
+        }
+        return authorities;
+    }
+
+    static boolean isSimple(Collection<? extends GrantedAuthority> authorities) {
+        return authorities.stream().allMatch(a -> a.getClass() == SimpleGrantedAuthority.class);
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.gateway.session.SessionCodec.Record;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import org.springframework.web.server.session.WebSessionStore;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * {@link WebSessionStore} persisting the web sessions to a local file, so that
+ * users stay logged in across restarts of the gateway.
+ * <p>
+ * Recently used sessions are kept in memory, like with
+ * {@link InMemoryWebSessionStore}, and served without any I/O. Only a small
+ * index entry per stored session is kept in memory otherwise, and the session
+ * is read from disk the first time it's requested, e.g. after a restart.
+ * Requests with an unknown session id are answered without reading the file.
+ * <p>
+ * Writes are performed in the background by a single thread, in order, and
+ * don't delay the responses. Last access time updates are only written once
+ * they're older than the {@link SessionStoreConfigProperties.FileStore#getAccessTimeResolution()
+ * access time resolution}, so a session may expire up to that much earlier
+ * than expected after a restart. Writes are not flushed to disk one by one, a
+ * crash of the host may lose the most recent ones.
+ */
+@Slf4j(topic = "org.georchestra.gateway.session")
+public class FileWebSessionStore implements WebSessionStore, StoredWebSession.Owner, MeterBinder, DisposableBean {
+
+    private static final String METRIC_PREFIX = "georchestra.session.store";
+
+    private final SessionLog sessionLog;
+
+    private final SessionCodec codec;
+
+    private final Duration maxIdleTime;
+
+    private final Duration accessTimeResolution;
+
+    private final double compactionThreshold;
+
+    private final Clock clock;
+
+    private final Cache<String, StoredWebSession> hot;
+
+    /**
+     * Sessions with a write scheduled, so they're not lost if evicted from
+     * {@link #hot} before being written
+     */
+    private final Map<String, StoredWebSession> pending = new ConcurrentHashMap<>();
+
+    private final Scheduler writer;
+
+    private final Disposable compaction;
+
+    private Counter loads;
+
+    private Counter compactions;
+
+    public FileWebSessionStore(@NonNull Path file, @NonNull Duration maxIdleTime,
+            @NonNull SessionStoreConfigProperties.FileStore config) throws IOException {
+        this(file, maxIdleTime, config, new SessionCodec(), Clock.systemUTC());
+    }
+
+    FileWebSessionStore(@NonNull Path file, @NonNull Duration maxIdleTime,
+            @NonNull SessionStoreConfigProperties.FileStore config, @NonNull SessionCodec codec, @NonNull Clock clock)
+            throws IOException {
+        this.sessionLog = new SessionLog(file);
+        this.codec = codec;
+        this.maxIdleTime = maxIdleTime;
+        this.accessTimeResolution = config.getAccessTimeResolution();
+        this.compactionThreshold = config.getCompactionThreshold();
+        this.clock = clock;
+        this.hot = CacheBuilder.newBuilder()//
+                .maximumSize(config.getHotMaximumSize())//
+                .expireAfterAccess(config.getHotIdleTime().toMillis(), TimeUnit.MILLISECONDS)//
+                .removalListener(this::onEviction)//
+                .build();
+        this.writer = Schedulers.newSingle("session-store", true);
+        final long interval = config.getCompactionInterval().toMillis();
+        this.compaction = writer.schedulePeriodically(this::compact, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Storing web sessions in {}", file.toAbsolutePath());
+    }
+
+    public @Override Mono<WebSession> createWebSession() {
+        return Mono.fromSupplier(() -> new StoredWebSession(this, maxIdleTime));
+    }
+
+    public @Override Mono<WebSession> retrieveSession(String id) {
+        StoredWebSession session = hot.getIfPresent(id);
+        if (session == null) {
+            session = pending.get(id);
+        }
+        if (session != null) {
+            return Mono.justOrEmpty(checkExpired(session));
+        }
+        if (!sessionLog.contains(id)) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> load(id)).subscribeOn(Schedulers.boundedElastic()).cast(WebSession.class);
+    }
+
+    public @Override Mono<Void> removeSession(String id) {
+        return remove(id);
+    }
+
+    public @Override Mono<WebSession> updateLastAccessTime(WebSession webSession) {
+        return Mono.fromSupplier(() -> {
+            ((StoredWebSession) webSession).updateLastAccessTime(now());
+            return webSession;
+        });
+    }
+
+    public @Override Instant now() {
+        return clock.instant();
+    }
+
+    public @Override Mono<Void> save(StoredWebSession session) {
+        final String id = session.getId();
+        hot.put(id, session);
+        if (session.needsPersisting(accessTimeResolution)) {
+            schedulePersist(session);
+        }
+        return Mono.empty();
+    }
+
+    public @Override Mono<Void> changeSessionId(String oldId, StoredWebSession session) {
+        hot.invalidate(oldId);
+        pending.remove(oldId);
+        scheduleRemove(oldId);
+        if (session.isStarted()) {
+            return save(session);
+        }
+        return Mono.empty();
+    }
+
+    public @Override Mono<Void> remove(String id) {
+        hot.invalidate(id);
+        pending.remove(id);
+        scheduleRemove(id);
+        return Mono.empty();
+    }
+
+    private StoredWebSession checkExpired(StoredWebSession session) {
+        if (session.isExpired(now())) {
+            remove(session.getId());
+            return null;
+        }
+        return session;
+    }
+
+    private StoredWebSession load(String id) throws IOException {
+        byte[] payload = sessionLog.read(id);
+        if (payload == null) {
+            return null;
+        }
+        Record record;
+        try {
+            record = codec.read(payload, 0, payload.length);
+        } catch (IOException | RuntimeException e) {
+            // treated as a missing session rather than failing each request using it
+            log.warn("Dropping undecodable web session {}: {}", id, e.getMessage());
+            remove(id);
+            return null;
+        }
+        if (loads != null) {
+            loads.increment();
+        }
+        StoredWebSession loaded = new StoredWebSession(this, record);
+        if (checkExpired(loaded) == null) {
+            return null;
+        }
+        // another request for the same session may have loaded it concurrently
+        StoredWebSession current = hot.asMap().putIfAbsent(id, loaded);
+        return current == null ? loaded : current;
+    }
+
+    private void onEviction(RemovalNotification<String, StoredWebSession> notification) {
+        StoredWebSession session = notification.getValue();
+        RemovalCause cause = notification.getCause();
+        boolean evicted = cause == RemovalCause.SIZE || cause == RemovalCause.EXPIRED;
+        if (evicted && session != null && !session.isInvalidated() && session.hasPendingChanges()) {
+            schedulePersist(session);
+        }
+    }
+
+    private void schedulePersist(StoredWebSession session) {
+        pending.put(session.getId(), session);
+        writer.schedule(() -> persist(session));
+    }
+
+    private void scheduleRemove(String id) {
+        writer.schedule(() -> {
+            try {
+                sessionLog.append(SessionCodec.remove(id));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Error removing web session {} from disk", id, e);
+            }
+        });
+    }
+
+    private void persist(StoredWebSession session) {
+        final String id = session.getId();
+        try {
+            if (!session.isInvalidated() && session.hasPendingChanges()) {
+                final Instant lastAccessTime = session.getLastAccessTime();
+                final long changes = session.changes();
+                sessionLog.append(session.encode(codec, lastAccessTime));
+                session.written(changes, lastAccessTime);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error writing web session {} to disk", id, e);
+        } finally {
+            pending.remove(id, session);
+        }
+    }
+
+    void compact() {
+        try {
+            // index entries may lag behind the actual last access time by up to the
+            // access time resolution
+            final long cutOff = now().minus(accessTimeResolution).toEpochMilli();
+            if (sessionLog.compact(cutOff, compactionThreshold) && compactions != null) {
+                compactions.increment();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error compacting the web sessions file", e);
+        }
+    }
+
+    /**
+     * Writes all pending changes and waits for them to complete
+     */
+    void flush() {
+        hot.asMap().values().stream()//
+                .filter(s -> !s.isInvalidated() && s.hasPendingChanges())//
+                .forEach(this::schedulePersist);
+        Mono.fromRunnable(() -> {
+        }).subscribeOn(writer).block();
+    }
+
+    int hotSize() {
+        return (int) hot.size();
+    }
+
+    int storedSize() {
+        return sessionLog.size();
+    }
+
+    public @Override void bindTo(MeterRegistry registry) {
+        Gauge.builder(METRIC_PREFIX + ".hot", hot, Cache::size)//
+                .description("Number of web sessions held in memory")//
+                .register(registry);
+        Gauge.builder(METRIC_PREFIX + ".stored", sessionLog, SessionLog::size)//
+                .description("Number of web sessions stored on disk")//
+                .register(registry);
+        Gauge.builder(METRIC_PREFIX + ".file.size", sessionLog, SessionLog::fileSize)//
+                .description("Size of the web sessions file")//
+                .baseUnit("bytes")//
+                .register(registry);
+        this.loads = Counter.builder(METRIC_PREFIX + ".loads")//
+                .description("Number of web sessions read from disk")//
+                .register(registry);
+        this.compactions = Counter.builder(METRIC_PREFIX + ".compactions")//
+                .description("Number of rewrites of the web sessions file")//
+                .register(registry);
+    }
+
+    public @Override void destroy() throws IOException {
+        compaction.dispose();
+        try {
+            flush();
+        } finally {
+            writer.dispose();
+            sessionLog.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.NonNull;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reference, in-memory, {@link SharedSessionRepository}.
+ * <p>
+ * Only shared by the {@link SharedWebSessionStore}s of the same JVM, it's
+ * meant for tests and single instance deployments.
+ */
+public class LocalSharedSessionRepository implements SharedSessionRepository {
+
+    private static class Stored {
+        final byte[] payload;
+        final long version;
+        final Duration maxIdleTime;
+        volatile Instant lastAccessTime;
+
+        Stored(byte[] payload, long version, Instant lastAccessTime, Duration maxIdleTime) {
+            this.payload = payload;
+            this.version = version;
+            this.lastAccessTime = lastAccessTime;
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        boolean isExpired(Instant now) {
+            return !maxIdleTime.isNegative() && now.isAfter(lastAccessTime.plus(maxIdleTime));
+        }
+
+        Revision revision() {
+            return new Revision(version, lastAccessTime);
+        }
+    }
+
+    private static final Duration PURGE_INTERVAL = Duration.ofMinutes(1);
+
+    private final Map<String, Stored> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong versions = new AtomicLong();
+
+    private final Clock clock;
+
+    private volatile Instant lastPurge = Instant.EPOCH;
+
+    public LocalSharedSessionRepository() {
+        this(Clock.systemUTC());
+    }
+
+    public LocalSharedSessionRepository(@NonNull Clock clock) {
+        this.clock = clock;
+    }
+
+    public @Override Mono<Revision> getRevision(@NonNull String id) {
+        return Mono.fromSupplier(() -> get(id)).map(Stored::revision);
+    }
+
+    public @Override Mono<Entry> load(@NonNull String id) {
+        return Mono.fromSupplier(() -> get(id)).map(s -> new Entry(s.payload, s.revision()));
+    }
+
+    public @Override Mono<Revision> save(@NonNull String id, @NonNull byte[] payload, @NonNull Instant lastAccessTime,
+            @NonNull Duration maxIdleTime) {
+        return Mono.fromSupplier(() -> {
+            purgeExpired();
+            Stored stored = new Stored(payload, versions.incrementAndGet(), lastAccessTime, maxIdleTime);
+            sessions.put(id, stored);
+            return stored.revision();
+        });
+    }
+
+    public @Override Mono<Void> touch(@NonNull Map<String, Instant> lastAccessTimes) {
+        return Mono.fromRunnable(() -> lastAccessTimes.forEach((id, lastAccessTime) -> {
+            Stored stored = sessions.get(id);
+            if (stored != null && lastAccessTime.isAfter(stored.lastAccessTime)) {
+                stored.lastAccessTime = lastAccessTime;
+            }
+        }));
+    }
+
+    public @Override Mono<Void> delete(@NonNull String id) {
+        return Mono.fromRunnable(() -> sessions.remove(id));
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    private Stored get(String id) {
+        Stored stored = sessions.get(id);
+        if (stored != null && stored.isExpired(clock.instant())) {
+            sessions.remove(id, stored);
+            return null;
+        }
+        return stored;
+    }
+
+    private void purgeExpired() {
+        final Instant now = clock.instant();
+        if (now.isAfter(lastPurge.plus(PURGE_INTERVAL))) {
+            lastPurge = now;
+            sessions.values().removeIf(s -> s.isExpired(now));
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.util.ClassUtils;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Binary encoding of the web session records.
+ * <p>
+ * A {@link #PUT} record holds the session id, creation time, last access time,
+ * and max idle time, followed by each attribute name and Java serialized value.
+ * Attributes are serialized one by one so that a non serializable attribute is
+ * skipped instead of failing the whole session. A {@link #REMOVE} record holds
+ * the session id only.
+ * <p>
+ * {@link SecurityContext} attributes whose authentication token is supported
+ * by an {@link AuthenticationCodec} are stored in that codec's compact form,
+ * other values are Java serialized. Only the {@link #DESERIALIZATION_FILTER
+ * expected types} are deserialized back, since the records come from a file or
+ * a store shared with other nodes.
+ */
+@Slf4j(topic = "org.georchestra.gateway.session")
+final class SessionCodec {
+
+    static final byte PUT = 1;
+
+    static final byte REMOVE = 2;
+
+    /**
+     * First byte of a compact {@link SecurityContext} value, Java serialized
+     * values start with {@code 0xAC}
+     */
+    private static final byte COMPACT_SECURITY_CONTEXT = 1;
+
+    /**
+     * Allow-list of the classes session attributes are made of: security
+     * contexts, authentication tokens, and authorization requests, geOrchestra
+     * users, and core JDK value types and collections
+     */
+    static final ObjectInputFilter DESERIALIZATION_FILTER = ObjectInputFilter.Config
+            .createFilter("maxdepth=32;maxrefs=100000;maxbytes=4194304;maxarray=100000;"//
+                    + "java.lang.*;java.util.*;java.time.*;java.math.*;java.net.URL;java.net.URI;"//
+                    + "org.springframework.security.**;org.springframework.util.*;org.georchestra.**;"//
+                    + "net.minidev.json.*;!*");
+
+    private final List<AuthenticationCodec> authenticationCodecs;
+
+    SessionCodec() {
+        this(List.of());
+    }
+
+    SessionCodec(@NonNull List<AuthenticationCodec> authenticationCodecs) {
+        this.authenticationCodecs = List.copyOf(authenticationCodecs);
+    }
+
+    @Value
+    static class Header {
+        private final byte type;
+        private final @NonNull String id;
+        private final long creationTime;
+        private final long lastAccessTime;
+        private final long maxIdleTime;
+
+        /**
+         * @return epoch millis after which the session is expired,
+         *         {@link Long#MAX_VALUE} if it never expires
+         */
+        long expiresAt() {
+            if (maxIdleTime < 0 || maxIdleTime > Long.MAX_VALUE - lastAccessTime) {
+                return Long.MAX_VALUE;
+            }
+            return lastAccessTime + maxIdleTime;
+        }
+    }
+
+    @Value
+    static class Record {
+        private final @NonNull Header header;
+        private final @NonNull Map<String, Object> attributes;
+    }
+
+    /**
+     * @param maxIdleTime max idle time in milliseconds, negative for sessions that
+     *                    never expire
+     */
+    byte[] put(@NonNull String id, long creationTime, long lastAccessTime, long maxIdleTime,
+            @NonNull Map<String, Object> attributes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(PUT);
+            out.writeUTF(id);
+            out.writeLong(creationTime);
+            out.writeLong(lastAccessTime);
+            out.writeLong(maxIdleTime);
+            Map<String, byte[]> serialized = new LinkedHashMap<>();
+            attributes.forEach((name, value) -> {
+                byte[] valueBytes = serialize(id, name, value);
+                if (valueBytes != null) {
+                    serialized.put(name, valueBytes);
+                }
+            });
+            out.writeInt(serialized.size());
+            for (Map.Entry<String, byte[]> attribute : serialized.entrySet()) {
+                out.writeUTF(attribute.getKey());
+                out.writeInt(attribute.getValue().length);
+                out.write(attribute.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] remove(@NonNull String id) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(REMOVE);
+            out.writeUTF(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the record header only, the attributes may be missing from
+     * {@code payload}
+     */
+    static Header readHeader(byte[] payload, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, offset, length));
+        return readHeader(in);
+    }
+
+    private static Header readHeader(DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        final String id = in.readUTF();
+        if (type == REMOVE) {
+            return new Header(type, id, 0, 0, 0);
+        }
+        if (type != PUT) {
+            throw new IOException("Unknown session record type " + type);
+        }
+        return new Header(type, id, in.readLong(), in.readLong(), in.readLong());
+    }
+
+    Record read(byte[] payload, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, offset, length));
+        Header header = readHeader(in);
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        if (header.getType() == PUT) {
+            final int count = readSize(in);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                byte[] value = new byte[readSize(in)];
+                in.readFully(value);
+                Object deserialized = deserialize(header.getId(), name, value);
+                if (deserialized != null) {
+                    attributes.put(name, deserialized);
+                }
+            }
+        }
+        return new Record(header, attributes);
+    }
+
+    /**
+     * Reads an attribute count or length, which can't exceed the remaining input
+     * unless the record is corrupt
+     */
+    private static int readSize(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0 || size > in.available()) {
+            throw new IOException("Invalid session record size " + size);
+        }
+        return size;
+    }
+
+    private byte[] serialize(String id, String name, Object value) {
+        byte[] compact = encodeSecurityContext(value);
+        if (compact != null) {
+            return compact;
+        }
+        if (!(value instanceof Serializable)) {
+            log.debug("Not storing non serializable attribute {} of session {}", name, id);
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            log.debug("Not storing attribute {} of session {}: {}", name, id, e.getMessage());
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private Object deserialize(String id, String name, byte[] value) {
+        if (value.length > 0 && value[0] == COMPACT_SECURITY_CONTEXT) {
+            return decodeSecurityContext(id, name, value);
+        }
+        try (ObjectInputStream in = new ConfigurableObjectInputStream(new ByteArrayInputStream(value),
+                ClassUtils.getDefaultClassLoader())) {
+            in.setObjectInputFilter(DESERIALIZATION_FILTER);
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            // e.g. a class changed across versions, the user will log in again if need be
+            log.debug("Dropping attribute {} of session {}: {}", name, id, e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] encodeSecurityContext(Object value) {
+        if (value == null || value.getClass() != SecurityContextImpl.class) {
+            return null;
+        }
+        final Authentication authentication = ((SecurityContext) value).getAuthentication();
+        Optional<AuthenticationCodec> codec = authenticationCodecs.stream()
+                .filter(c -> authentication != null && c.canEncode(authentication)).findFirst();
+        if (codec.isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(COMPACT_SECURITY_CONTEXT);
+            out.writeUTF(codec.get().getName());
+            codec.get().encode(authentication, out);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Unable to encode {} with {}, falling back to Java serialization: {}",
+                    authentication.getClass().getName(), codec.get().getName(), e.getMessage());
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private Object decodeSecurityContext(String id, String name, byte[] value) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value, 1, value.length - 1))) {
+            final String codecName = in.readUTF();
+            Optional<AuthenticationCodec> codec = authenticationCodecs.stream()
+                    .filter(c -> codecName.equals(c.getName())).findFirst();
+            if (codec.isEmpty()) {
+                log.debug("Dropping attribute {} of session {}: no {} authentication codec", name, id, codecName);
+                return null;
+            }
+            return new SecurityContextImpl(codec.get().decode(in));
+        } catch (IOException | RuntimeException e) {
+            log.debug("Dropping attribute {} of session {}: {}", name, id, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.georchestra.gateway.session.SessionCodec.Header;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only file of {@link SessionCodec session records}, each prefixed by
+ * its length.
+ * <p>
+ * Only an index of the live records' position and expiration time is kept in
+ * memory, the sessions themselves are read from the file on demand. Updating
+ * or removing a session appends a new record, leaving the previous one as
+ * garbage, until {@link #compact} rewrites the live records to a new file and
+ * replaces the current one.
+ * <p>
+ * Appends and compaction are expected to be called from a single thread, while
+ * {@link #read} can be called concurrently.
+ */
+@Slf4j(topic = "org.georchestra.gateway.session")
+class SessionLog implements Closeable {
+
+    private static final int MAGIC = 0x47534553;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    /** Sessions hold authentication tokens, only the owner can read the files */
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    /**
+     * Bytes read from each record to rebuild the index, enough for the record
+     * header
+     */
+    private static final int INDEX_READ_SIZE = 512;
+
+    @Value
+    private static class Entry {
+        private final long offset;
+        private final int length;
+        private final long expiresAt;
+    }
+
+    private final @NonNull Path path;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    private FileChannel channel;
+
+    private volatile long end;
+
+    private long liveBytes;
+
+    SessionLog(@NonNull Path path) throws IOException {
+        this.path = path;
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        boolean exists = Files.exists(path);
+        this.channel = open(path);
+        if (!exists || channel.size() == 0) {
+            writeHeader(channel);
+            this.end = HEADER_SIZE;
+        } else {
+            load();
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                ownerOnly(path));
+        try {
+            // in case the file already existed
+            Files.setPosixFilePermissions(path, OWNER_ONLY);
+        } catch (UnsupportedOperationException | IOException e) {
+            log.debug("Unable to restrict permissions of {}: {}", path, e.getMessage());
+        }
+        return channel;
+    }
+
+    /**
+     * @return the attributes to create a file only its owner can read, so that it
+     *         is never readable by others, even before it is fully written
+     */
+    private static FileAttribute<?>[] ownerOnly(Path path) {
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(OWNER_ONLY) };
+        }
+        return new FileAttribute<?>[0];
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        writeFully(channel, header, 0);
+    }
+
+    private void load() throws IOException {
+        final long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (size >= HEADER_SIZE) {
+            readFully(channel, header, 0);
+        }
+        header.flip();
+        if (size < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException(path + " is not a sessions file");
+        }
+        long position = HEADER_SIZE;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        ByteBuffer headerBuffer = ByteBuffer.allocate(INDEX_READ_SIZE);
+        int skipped = 0;
+        while (position + 4 <= size) {
+            lengthBuffer.clear();
+            readFully(channel, lengthBuffer, position);
+            final int length = lengthBuffer.getInt(0);
+            if (length <= 0 || position + 4 + length > size) {
+                if (length <= 0 && !isZeroFilled(position, size)) {
+                    // the next records can't be located, leave the file as is for inspection
+                    throw new IOException(String.format(
+                            "Invalid session record length %d at %d in %s, repair or remove the file", length,
+                            position, path));
+                }
+                // an incomplete last record, or the zeroed blocks a crash may leave
+                break;
+            }
+            headerBuffer.clear().limit(Math.min(length, INDEX_READ_SIZE));
+            readFully(channel, headerBuffer, position + 4);
+            try {
+                Header recordHeader = SessionCodec.readHeader(headerBuffer.array(), 0, headerBuffer.limit());
+                index(recordHeader, position, 4 + length);
+            } catch (IOException e) {
+                // the length prefix is intact, go on with the next record. The corrupt one
+                // is garbage, and is dropped by the next compaction
+                log.warn("Skipping corrupt session record at {} in {}: {}", position, path, e.getMessage());
+                skipped++;
+            }
+            position += 4 + length;
+        }
+        if (position < size) {
+            log.warn("Truncating incomplete session record at {} in {}", position, path);
+            channel.truncate(position);
+        }
+        if (skipped > 0) {
+            log.warn("Skipped {} corrupt session records in {}", skipped, path);
+        }
+        this.end = position;
+        log.info("Loaded {} sessions index from {}", index.size(), path);
+    }
+
+    /**
+     * @return whether the file only has zeroes from {@code position} on
+     */
+    private boolean isZeroFilled(long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (long pos = position; pos < size; pos += buffer.capacity()) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), size - pos));
+            readFully(channel, buffer, pos);
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void index(Header header, long offset, int length) {
+        Entry previous;
+        if (header.getType() == SessionCodec.REMOVE) {
+            previous = index.remove(header.getId());
+        } else {
+            previous = index.put(header.getId(), new Entry(offset, length, header.expiresAt()));
+            liveBytes += length;
+        }
+        if (previous != null) {
+            liveBytes -= previous.getLength();
+        }
+    }
+
+    public boolean contains(@NonNull String id) {
+        return index.containsKey(id);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public long fileSize() {
+        return end;
+    }
+
+    /**
+     * Appends a record as returned by {@link SessionCodec#put} or
+     * {@link SessionCodec#remove}
+     */
+    public void append(byte[] payload) throws IOException {
+        Header header = SessionCodec.readHeader(payload, 0, payload.length);
+        if (header.getType() == SessionCodec.REMOVE && !index.containsKey(header.getId())) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(4 + payload.length).putInt(payload.length).put(payload);
+        record.flip();
+        lock.writeLock().lock();
+        try {
+            final long offset = end;
+            writeFully(channel, record, offset);
+            end = offset + record.capacity();
+            index(header, offset, record.capacity());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the session record payload, as given to {@link #append}, or
+     *         {@code null} if there's none for the id
+     */
+    public byte[] read(@NonNull String id) throws IOException {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(id);
+            if (entry == null) {
+                return null;
+            }
+            ByteBuffer record = ByteBuffer.allocate(entry.getLength());
+            readFully(channel, record, entry.getOffset());
+            byte[] payload = Arrays.copyOfRange(record.array(), 4, entry.getLength());
+            if (!id.equals(SessionCodec.readHeader(payload, 0, payload.length).getId())) {
+                throw new IOException("Session index out of sync with " + path);
+            }
+            return payload;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the sessions expired at {@code now} from the index, and rewrites the
+     * file with the live records only if at least {@code garbageThreshold} of it
+     * is garbage
+     *
+     * @return whether the file was rewritten
+     */
+    public boolean compact(long now, double garbageThreshold) throws IOException {
+        lock.writeLock().lock();
+        try {
+            index.entrySet().removeIf(e -> {
+                boolean expired = e.getValue().getExpiresAt() < now;
+                if (expired) {
+                    liveBytes -= e.getValue().getLength();
+                }
+                return expired;
+            });
+            final long recordsSize = end - HEADER_SIZE;
+            final long garbage = recordsSize - liveBytes;
+            if (garbage <= 0 || garbage < garbageThreshold * recordsSize) {
+                return false;
+            }
+            Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+            Map<String, Entry> moved = new LinkedHashMap<>();
+            long position = HEADER_SIZE;
+            // a leftover from a failed compaction may have other permissions
+            Files.deleteIfExists(compacted);
+            try (FileChannel out = FileChannel.open(compacted,
+                    EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), ownerOnly(compacted))) {
+                writeHeader(out);
+                out.position(HEADER_SIZE);
+                for (Map.Entry<String, Entry> e : index.entrySet()) {
+                    Entry entry = e.getValue();
+                    long transferred = 0;
+                    while (transferred < entry.getLength()) {
+                        transferred += channel.transferTo(entry.getOffset() + transferred,
+                                entry.getLength() - transferred, out);
+                    }
+                    moved.put(e.getKey(), new Entry(position, entry.getLength(), entry.getExpiresAt()));
+                    position += entry.getLength();
+                }
+                out.force(true);
+            }
+            try {
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                // keep using the current file
+                Files.deleteIfExists(compacted);
+                throw e;
+            }
+            // the current channel still points to the replaced file until swapped
+            final FileChannel previous = channel;
+            channel = open(path);
+            try {
+                previous.close();
+            } catch (IOException e) {
+                log.debug("Error closing replaced {}: {}", path, e.getMessage());
+            }
+            // replace in place, concurrent contains() calls must keep seeing the sessions
+            index.putAll(moved);
+            log.debug("Compacted {} from {} to {} bytes", path, end, position);
+            end = position;
+            liveBytes = position - HEADER_SIZE;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public @Override void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.force(true);
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, pos);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            pos += read;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Configuration properties for the storage of the web sessions
+ */
+@ConfigurationProperties(prefix = "georchestra.gateway.session-store")
+public @Data class SessionStoreConfigProperties {
+
+    public static enum Type {
+        /**
+         * Spring's default in-memory store, sessions are lost on restart
+         */
+        MEMORY,
+        /**
+         * {@link FileWebSessionStore}, sessions survive restarts
+         */
+        FILE,
+        /**
+         * {@link SharedWebSessionStore}, sessions are shared by all the gateway
+         * instances
+         */
+        SHARED
+    }
+
+    /**
+     * Where to store the web sessions
+     */
+    private Type type = Type.MEMORY;
+
+    /**
+     * Time after which a web session that's not been used expires, defaults to
+     * {@literal server.reactive.session.timeout}, or 30 minutes if not set
+     */
+    private Duration maxIdleTime;
+
+    /**
+     * Configuration of the {@link Type#FILE file} store
+     */
+    private FileStore file = new FileStore();
+
+    /**
+     * Configuration of the {@link Type#SHARED shared} store
+     */
+    private SharedStore shared = new SharedStore();
+
+    @Generated
+    public static @Data @Accessors(chain = true) class FileStore {
+
+        /**
+         * Directory where to store the sessions file. Must not be shared with other
+         * gateway instances.
+         */
+        private Path directory;
+
+        /**
+         * Maximum number of recently used sessions held in memory
+         */
+        private long hotMaximumSize = 10_000;
+
+        /**
+         * Time after which an unused session is dropped from memory, it'll be read
+         * from disk on its next request
+         */
+        private Duration hotIdleTime = Duration.ofMinutes(5);
+
+        /**
+         * Minimum change of a session's last access time to be written to disk,
+         * trades writes for an expiration up to this much earlier after a restart
+         */
+        private Duration accessTimeResolution = Duration.ofMinutes(1);
+
+        /**
+         * How often to drop the expired sessions and rewrite the file if need be
+         */
+        private Duration compactionInterval = Duration.ofMinutes(10);
+
+        /**
+         * Ratio of the file taken up by outdated records required to rewrite it
+         */
+        private double compactionThreshold = 0.5;
+    }
+
+    @Generated
+    public static @Data @Accessors(chain = true) class SharedStore {
+
+        /**
+         * Maximum number of recently used sessions held in memory by each instance
+         */
+        private long nearMaximumSize = 10_000;
+
+        /**
+         * Time after which an unused session is dropped from memory
+         */
+        private Duration nearIdleTime = Duration.ofMinutes(5);
+
+        /**
+         * How long a session held in memory is used without checking whether
+         * another instance changed it. Also the maximum delay for a logout to
+         * take effect on the other instances.
+         */
+        private Duration revalidateInterval = Duration.ofSeconds(2);
+
+        /**
+         * Minimum change of a session's last access time to be written to the
+         * shared repository
+         */
+        private Duration accessTimeResolution = Duration.ofMinutes(1);
+
+        /**
+         * How often to write the last access time updates to the shared repository,
+         * in batch
+         */
+        private Duration accessTimeFlushInterval = Duration.ofSeconds(10);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.WebSessionIdResolver;
+import org.springframework.web.server.session.WebSessionManager;
+import org.springframework.web.server.session.WebSessionStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Replaces Spring's in-memory web session store by a {@link FileWebSessionStore}
+ * when {@literal georchestra.gateway.session-store.type=file}, or by a
+ * {@link SharedWebSessionStore} when
+ * {@literal georchestra.gateway.session-store.type=shared}.
+ * 
+ * @see SessionStoreConfigProperties
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties({ SessionStoreConfigProperties.class, ServerProperties.class })
+@Import({ SessionStoreConfiguration.FileStoreConfiguration.class,
+        SessionStoreConfiguration.SharedStoreConfiguration.class })
+@Slf4j(topic = "org.georchestra.gateway.session")
+public class SessionStoreConfiguration {
+
+    static final String TYPE_PROP = "georchestra.gateway.session-store.type";
+
+    static final String SESSIONS_FILE = "sessions.dat";
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(name = TYPE_PROP, havingValue = "file")
+    static class FileStoreConfiguration {
+
+        public @Bean FileWebSessionStore fileWebSessionStore(SessionStoreConfigProperties config,
+                ServerProperties serverProperties, Environment environment,
+                ObjectProvider<AuthenticationCodec> authenticationCodecs, ObjectProvider<MeterRegistry> meterRegistry)
+                throws IOException {
+
+            Path directory = resolveDirectory(config.getFile().getDirectory(), environment);
+            FileWebSessionStore store = new FileWebSessionStore(directory.resolve(SESSIONS_FILE),
+                    maxIdleTime(config, serverProperties), config.getFile(), sessionCodec(authenticationCodecs),
+                    Clock.systemUTC());
+            meterRegistry.ifAvailable(store::bindTo);
+            return store;
+        }
+
+        @Bean(name = WebHttpHandlerBuilder.WEB_SESSION_MANAGER_BEAN_NAME)
+        public WebSessionManager webSessionManager(FileWebSessionStore store,
+                ObjectProvider<WebSessionIdResolver> webSessionIdResolver) {
+            return sessionManager(store, webSessionIdResolver);
+        }
+
+        private Path resolveDirectory(Path configured, Environment environment) {
+            if (configured != null) {
+                return configured;
+            }
+            String datadir = environment.getProperty("georchestra.datadir");
+            if (datadir == null) {
+                throw new IllegalStateException("georchestra.gateway.session-store.file.directory "
+                        + "is required when georchestra.datadir is not set");
+            }
+            return Paths.get(datadir, "gateway", "sessions");
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(name = TYPE_PROP, havingValue = "shared")
+    static class SharedStoreConfiguration {
+
+        /**
+         * Reference repository used unless a distributed one is contributed, only
+         * suitable for a single gateway instance
+         */
+        @Bean
+        @ConditionalOnMissingBean
+        public SharedSessionRepository localSharedSessionRepository() {
+            log.warn("No SharedSessionRepository provided, web sessions are only shared within this instance");
+            return new LocalSharedSessionRepository();
+        }
+
+        public @Bean SharedWebSessionStore sharedWebSessionStore(SessionStoreConfigProperties config,
+                ServerProperties serverProperties, SharedSessionRepository repository,
+                ObjectProvider<AuthenticationCodec> authenticationCodecs, ObjectProvider<MeterRegistry> meterRegistry) {
+
+            SharedWebSessionStore store = new SharedWebSessionStore(repository, maxIdleTime(config, serverProperties),
+                    config.getShared(), sessionCodec(authenticationCodecs), Clock.systemUTC());
+            meterRegistry.ifAvailable(store::bindTo);
+            return store;
+        }
+
+        @Bean(name = WebHttpHandlerBuilder.WEB_SESSION_MANAGER_BEAN_NAME)
+        public WebSessionManager webSessionManager(SharedWebSessionStore store,
+                ObjectProvider<WebSessionIdResolver> webSessionIdResolver) {
+            return sessionManager(store, webSessionIdResolver);
+        }
+    }
+
+    static Duration maxIdleTime(SessionStoreConfigProperties config, ServerProperties serverProperties) {
+        Duration maxIdleTime = config.getMaxIdleTime();
+        return maxIdleTime == null ? serverProperties.getReactive().getSession().getTimeout() : maxIdleTime;
+    }
+
+    static SessionCodec sessionCodec(ObjectProvider<AuthenticationCodec> authenticationCodecs) {
+        return new SessionCodec(authenticationCodecs.orderedStream().collect(Collectors.toList()));
+    }
+
+    /**
+     * Takes over WebFluxAutoConfiguration's {@link WebSessionManager}, keeping its
+     * {@link WebSessionIdResolver} (i.e. the
+     * {@literal server.reactive.session.cookie.*} settings)
+     */
+    static WebSessionManager sessionManager(WebSessionStore store,
+            ObjectProvider<WebSessionIdResolver> webSessionIdResolver) {
+        DefaultWebSessionManager manager = new DefaultWebSessionManager();
+        manager.setSessionStore(store);
+        webSessionIdResolver.ifAvailable(manager::setSessionIdResolver);
+        return manager;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import lombok.NonNull;
+import lombok.Value;
+import reactor.core.publisher.Mono;
+
+/**
+ * Storage backend of a {@link SharedWebSessionStore}, shared by all the gateway
+ * instances.
+ * <p>
+ * Sessions are opaque payloads with a version the repository increments on
+ * each {@link #save}, so that the instances can tell whether their cached copy
+ * of a session is up to date by {@link #getRevision fetching} the version
+ * only. Last access time updates ({@link #touch}) don't change the version.
+ * <p>
+ * The repository is responsible for expiring the sessions not accessed for
+ * longer than their max idle time. Contribute a bean implementing this
+ * interface to plug in a distributed store, {@link LocalSharedSessionRepository}
+ * is used otherwise.
+ */
+public interface SharedSessionRepository {
+
+    @Value
+    class Revision {
+        private final long version;
+        private final @NonNull Instant lastAccessTime;
+    }
+
+    @Value
+    class Entry {
+        private final @NonNull byte[] payload;
+        private final @NonNull Revision revision;
+    }
+
+    /**
+     * @return the session's current revision, or empty if it doesn't exist or
+     *         expired
+     */
+    Mono<Revision> getRevision(@NonNull String id);
+
+    /**
+     * @return the session, or empty if it doesn't exist or expired
+     */
+    Mono<Entry> load(@NonNull String id);
+
+    /**
+     * Creates or replaces a session
+     * 
+     * @param maxIdleTime time after {@code lastAccessTime} the session expires,
+     *                    negative for sessions that never expire
+     * @return the session's new revision
+     */
+    Mono<Revision> save(@NonNull String id, @NonNull byte[] payload, @NonNull Instant lastAccessTime,
+            @NonNull Duration maxIdleTime);
+
+    /**
+     * Updates the last access time of existing sessions, keeping their version
+     */
+    Mono<Void> touch(@NonNull Map<String, Instant> lastAccessTimes);
+
+    Mono<Void> delete(@NonNull String id);
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.gateway.session.SessionCodec.Record;
+import org.georchestra.gateway.session.SharedSessionRepository.Entry;
+import org.georchestra.gateway.session.SharedSessionRepository.Revision;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionStore;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link WebSessionStore} sharing the web sessions amongst gateway instances
+ * through a {@link SharedSessionRepository}, so that a load balancer can send
+ * any request to any instance.
+ * <p>
+ * Each instance keeps a near-cache of the sessions it recently served. A cached
+ * session is served as is for {@link SessionStoreConfigProperties.SharedStore#getRevalidateInterval()
+ * revalidate-interval} after it was last validated, then its version is checked
+ * against the repository's, and it's only reloaded if it was changed by another
+ * instance. Hence a session invalidated on an instance (e.g. on logout) may
+ * still be served by the others for up to that interval.
+ * <p>
+ * Attribute changes are written through before the response is committed. Last
+ * access time updates are batched and written behind every
+ * {@link SessionStoreConfigProperties.SharedStore#getAccessTimeFlushInterval()
+ * access-time-flush-interval}, without changing the session version, and only
+ * once they changed by
+ * {@link SessionStoreConfigProperties.SharedStore#getAccessTimeResolution()
+ * access-time-resolution}.
+ */
+@Slf4j(topic = "org.georchestra.gateway.session")
+public class SharedWebSessionStore implements WebSessionStore, StoredWebSession.Owner, MeterBinder, DisposableBean {
+
+    private static final String METRIC_PREFIX = "georchestra.session.shared";
+
+    private static class Cached {
+        final StoredWebSession session;
+        final long version;
+        volatile Instant validatedAt;
+
+        Cached(StoredWebSession session, long version, Instant validatedAt) {
+            this.session = session;
+            this.version = version;
+            this.validatedAt = validatedAt;
+        }
+    }
+
+    private final SharedSessionRepository repository;
+
+    private final SessionCodec codec;
+
+    private final Duration maxIdleTime;
+
+    private final Duration revalidateInterval;
+
+    private final Duration accessTimeResolution;
+
+    private final Clock clock;
+
+    private final Cache<String, Cached> nearCache;
+
+    private final Map<String, Instant> pendingTouches = new ConcurrentHashMap<>();
+
+    private final Disposable touchesFlusher;
+
+    private Counter nearHits;
+
+    private Counter revalidations;
+
+    private Counter loads;
+
+    public SharedWebSessionStore(@NonNull SharedSessionRepository repository, @NonNull Duration maxIdleTime,
+            @NonNull SessionStoreConfigProperties.SharedStore config) {
+        this(repository, maxIdleTime, config, new SessionCodec(), Clock.systemUTC());
+    }
+
+    SharedWebSessionStore(@NonNull SharedSessionRepository repository, @NonNull Duration maxIdleTime,
+            @NonNull SessionStoreConfigProperties.SharedStore config, @NonNull SessionCodec codec,
+            @NonNull Clock clock) {
+        this.repository = repository;
+        this.codec = codec;
+        this.maxIdleTime = maxIdleTime;
+        this.revalidateInterval = config.getRevalidateInterval();
+        this.accessTimeResolution = config.getAccessTimeResolution();
+        this.clock = clock;
+        this.nearCache = CacheBuilder.newBuilder()//
+                .maximumSize(config.getNearMaximumSize())//
+                .expireAfterAccess(config.getNearIdleTime().toMillis(), TimeUnit.MILLISECONDS)//
+                .build();
+        final Duration flushInterval = config.getAccessTimeFlushInterval();
+        this.touchesFlusher = Flux.interval(flushInterval, flushInterval)//
+                .onBackpressureDrop()//
+                .concatMap(i -> flushTouches())//
+                .subscribe();
+        log.info("Sharing web sessions through {}", repository.getClass().getSimpleName());
+    }
+
+    public @Override Mono<WebSession> createWebSession() {
+        return Mono.fromSupplier(() -> new StoredWebSession(this, maxIdleTime));
+    }
+
+    public @Override Mono<WebSession> retrieveSession(String id) {
+        final Instant now = now();
+        final Cached cached = nearCache.getIfPresent(id);
+        if (cached == null) {
+            return load(id, now);
+        }
+        // an expired looking session may have been used on another instance, let
+        // the repository decide
+        if (cached.validatedAt.plus(revalidateInterval).isAfter(now) && !cached.session.isExpired(now)) {
+            increment(nearHits);
+            return Mono.just(cached.session);
+        }
+        return repository.getRevision(id)//
+                .flatMap(revision -> revision.getVersion() == cached.version ? revalidated(cached, revision, now)
+                        : load(id, now))//
+                .switchIfEmpty(Mono.fromRunnable(() -> evict(id)));
+    }
+
+    private Mono<WebSession> revalidated(Cached cached, Revision revision, Instant now) {
+        increment(revalidations);
+        cached.validatedAt = now;
+        cached.session.mergeLastAccessTime(revision.getLastAccessTime());
+        // the repository may expire sessions lazily, the web session manager doesn't
+        // check expiration
+        if (cached.session.isExpired(now)) {
+            return remove(cached.session.getId()).then(Mono.empty());
+        }
+        return Mono.just(cached.session);
+    }
+
+    private Mono<WebSession> load(String id, Instant now) {
+        return repository.load(id)//
+                .flatMap(entry -> decode(id, entry, now));
+    }
+
+    private Mono<WebSession> decode(String id, Entry entry, Instant now) {
+        increment(loads);
+        Record record;
+        try {
+            record = codec.read(entry.getPayload(), 0, entry.getPayload().length);
+        } catch (Exception e) {
+            // treated as a missing session rather than failing each request using it
+            log.warn("Dropping undecodable web session {}: {}", id, e.getMessage());
+            return remove(id).onErrorResume(error -> {
+                log.debug("Error removing undecodable web session {}", id, error);
+                return Mono.empty();
+            }).then(Mono.empty());
+        }
+        StoredWebSession session = new StoredWebSession(this, record);
+        session.mergeLastAccessTime(entry.getRevision().getLastAccessTime());
+        nearCache.put(id, new Cached(session, entry.getRevision().getVersion(), now));
+        return Mono.just(session);
+    }
+
+    public @Override Mono<Void> removeSession(String id) {
+        return remove(id);
+    }
+
+    public @Override Mono<WebSession> updateLastAccessTime(WebSession webSession) {
+        return Mono.fromSupplier(() -> {
+            ((StoredWebSession) webSession).updateLastAccessTime(now());
+            return webSession;
+        });
+    }
+
+    public @Override Instant now() {
+        return clock.instant();
+    }
+
+    public @Override Mono<Void> save(StoredWebSession session) {
+        final String id = session.getId();
+        if (session.isDirty()) {
+            pendingTouches.remove(id);
+            final Instant lastAccessTime = session.getLastAccessTime();
+            final long changes = session.changes();
+            final byte[] payload = session.encode(codec, lastAccessTime);
+            // the changes stay pending, to be written by the next save, unless stored
+            return repository.save(id, payload, lastAccessTime, session.getMaxIdleTime())//
+                    .doOnNext(revision -> {
+                        session.written(changes, lastAccessTime);
+                        nearCache.put(id, new Cached(session, revision.getVersion(), now()));
+                    })//
+                    .then();
+        }
+        if (session.needsPersisting(accessTimeResolution)) {
+            final Instant lastAccessTime = session.getLastAccessTime();
+            pendingTouches.put(id, lastAccessTime);
+            session.accessTimePersisted(lastAccessTime);
+        }
+        return Mono.empty();
+    }
+
+    public @Override Mono<Void> changeSessionId(String oldId, StoredWebSession session) {
+        evict(oldId);
+        return repository.delete(oldId).then(Mono.defer(() -> session.isStarted() ? save(session) : Mono.empty()));
+    }
+
+    public @Override Mono<Void> remove(String id) {
+        evict(id);
+        return repository.delete(id);
+    }
+
+    private void evict(String id) {
+        nearCache.invalidate(id);
+        pendingTouches.remove(id);
+    }
+
+    Mono<Void> flushTouches() {
+        if (pendingTouches.isEmpty()) {
+            return Mono.empty();
+        }
+        Map<String, Instant> batch = new HashMap<>();
+        for (String id : new ArrayList<>(pendingTouches.keySet())) {
+            Instant lastAccessTime = pendingTouches.remove(id);
+            if (lastAccessTime != null) {
+                batch.put(id, lastAccessTime);
+            }
+        }
+        return repository.touch(batch)//
+                .onErrorResume(e -> {
+                    log.warn("Error updating the last access time of {} web sessions", batch.size(), e);
+                    return Mono.empty();
+                });
+    }
+
+    long nearCacheSize() {
+        return nearCache.size();
+    }
+
+    private void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    public @Override void bindTo(MeterRegistry registry) {
+        Gauge.builder(METRIC_PREFIX + ".near", nearCache, Cache::size)//
+                .description("Number of web sessions in the near-cache")//
+                .register(registry);
+        Gauge.builder(METRIC_PREFIX + ".touches.pending", pendingTouches, Map::size)//
+                .description("Number of last access time updates waiting to be written")//
+                .register(registry);
+        this.nearHits = reads(registry, "near");
+        this.revalidations = reads(registry, "revalidated");
+        this.loads = reads(registry, "loaded");
+    }
+
+    private Counter reads(MeterRegistry registry, String result) {
+        return Counter.builder(METRIC_PREFIX + ".reads")//
+                .description("Number of web session reads, by how they were resolved")//
+                .tag("result", result)//
+                .register(registry);
+    }
+
+    public @Override void destroy() {
+        touchesFlusher.dispose();
+        try {
+            flushTouches().block(Duration.ofSeconds(10));
+        } catch (RuntimeException e) {
+            log.warn("Error writing the pending last access times of the web sessions", e);
+        }
+    }
+}
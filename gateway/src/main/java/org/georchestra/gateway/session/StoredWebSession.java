@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.georchestra.gateway.session.SessionCodec.Header;
+import org.georchestra.gateway.session.SessionCodec.Record;
+import org.springframework.util.IdGenerator;
+import org.springframework.util.JdkIdGenerator;
+import org.springframework.web.server.WebSession;
+
+import lombok.NonNull;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link WebSession} of a {@link FileWebSessionStore}, keeping track of the
+ * changes not yet written to disk.
+ * <p>
+ * Like Spring's in-memory sessions, a session is only stored once
+ * {@link #start() started} or holding attributes.
+ */
+class StoredWebSession implements WebSession {
+
+    private static final IdGenerator ID_GENERATOR = new JdkIdGenerator();
+
+    /**
+     * Callbacks to the store that created or loaded the session
+     */
+    interface Owner {
+
+        Mono<Void> save(StoredWebSession session);
+
+        Mono<Void> changeSessionId(String oldId, StoredWebSession session);
+
+        Mono<Void> remove(String id);
+
+        Instant now();
+    }
+
+    private final Owner owner;
+
+    private final AtomicReference<String> id;
+
+    private final Instant creationTime;
+
+    private final AttributesMap attributes;
+
+    private volatile Instant lastAccessTime;
+
+    private volatile Duration maxIdleTime;
+
+    private volatile boolean started;
+
+    private volatile boolean invalidated;
+
+    /**
+     * Number of changes to the attributes, max idle time, or id so far
+     */
+    private final AtomicLong changes = new AtomicLong();
+
+    /**
+     * Value of {@link #changes} as of the last successful write
+     */
+    private volatile long writtenChanges;
+
+    /**
+     * Last access time as of the last write, {@code null} if the session was never
+     * written
+     */
+    private volatile Instant persistedAccessTime;
+
+    /**
+     * Creates a new session
+     */
+    StoredWebSession(@NonNull Owner owner, @NonNull Duration maxIdleTime) {
+        this.owner = owner;
+        // assigned on first use, most new sessions are never started
+        this.id = new AtomicReference<>();
+        this.creationTime = owner.now();
+        this.lastAccessTime = creationTime;
+        this.maxIdleTime = maxIdleTime;
+        this.attributes = new AttributesMap();
+    }
+
+    /**
+     * Creates a session out of its stored record
+     */
+    StoredWebSession(@NonNull Owner owner, @NonNull Record record) {
+        final Header header = record.getHeader();
+        this.owner = owner;
+        this.id = new AtomicReference<>(header.getId());
+        this.creationTime = Instant.ofEpochMilli(header.getCreationTime());
+        this.lastAccessTime = Instant.ofEpochMilli(header.getLastAccessTime());
+        this.maxIdleTime = Duration.ofMillis(header.getMaxIdleTime());
+        this.attributes = new AttributesMap(record.getAttributes());
+        this.started = true;
+        this.persistedAccessTime = lastAccessTime;
+    }
+
+    private static String newId() {
+        return ID_GENERATOR.generateId().toString();
+    }
+
+    public @Override String getId() {
+        String current = id.get();
+        if (current == null) {
+            id.compareAndSet(null, newId());
+            current = id.get();
+        }
+        return current;
+    }
+
+    public @Override Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public @Override Instant getCreationTime() {
+        return creationTime;
+    }
+
+    public @Override Instant getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    public @Override void setMaxIdleTime(Duration maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+        changed();
+    }
+
+    public @Override Duration getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public @Override void start() {
+        this.started = true;
+    }
+
+    public @Override boolean isStarted() {
+        return started || !attributes.isEmpty();
+    }
+
+    public @Override Mono<Void> changeSessionId() {
+        // the new id is assigned on first use
+        String oldId = id.getAndSet(null);
+        changed();
+        return oldId == null ? Mono.empty() : owner.changeSessionId(oldId, this);
+    }
+
+    public @Override Mono<Void> invalidate() {
+        invalidated = true;
+        attributes.clear();
+        String assignedId = id.get();
+        return assignedId == null ? Mono.empty() : owner.remove(assignedId);
+    }
+
+    public @Override Mono<Void> save() {
+        if (invalidated) {
+            return Mono.empty();
+        }
+        if (!attributes.isEmpty()) {
+            started = true;
+        }
+        if (isStarted()) {
+            return owner.save(this);
+        }
+        String assignedId = id.get();
+        return assignedId == null ? Mono.empty() : owner.remove(assignedId);
+    }
+
+    public @Override boolean isExpired() {
+        return isExpired(owner.now());
+    }
+
+    boolean isExpired(Instant now) {
+        if (invalidated) {
+            return true;
+        }
+        if (!isStarted() || maxIdleTime.isNegative()) {
+            return false;
+        }
+        return now.isAfter(lastAccessTime.plus(maxIdleTime));
+    }
+
+    boolean isInvalidated() {
+        return invalidated;
+    }
+
+    void updateLastAccessTime(Instant now) {
+        this.lastAccessTime = now;
+    }
+
+    /**
+     * @return whether the session has changes to be written, ignoring last access
+     *         time updates more recent than {@code accessTimeResolution}
+     */
+    boolean needsPersisting(Duration accessTimeResolution) {
+        if (isDirty()) {
+            return true;
+        }
+        return Duration.between(persistedAccessTime, lastAccessTime).compareTo(accessTimeResolution) >= 0;
+    }
+
+    /**
+     * @return whether the session has any change not written yet
+     */
+    boolean hasPendingChanges() {
+        return isDirty() || !lastAccessTime.equals(persistedAccessTime);
+    }
+
+    /**
+     * @return whether the session has changes other than its last access time
+     *         not written yet
+     */
+    boolean isDirty() {
+        return changes.get() != writtenChanges || persistedAccessTime == null;
+    }
+
+    private void changed() {
+        changes.incrementAndGet();
+    }
+
+    /**
+     * @return the number of changes so far, to be given to {@link #written} once
+     *         the session encoded after calling this method is stored
+     */
+    long changes() {
+        return changes.get();
+    }
+
+    /**
+     * Encodes the session as of {@code accessTime}, its pending changes are kept
+     * until {@link #written}
+     */
+    byte[] encode(SessionCodec codec, Instant accessTime) {
+        return codec.put(getId(), creationTime.toEpochMilli(), accessTime.toEpochMilli(), maxIdleTime.toMillis(),
+                attributes);
+    }
+
+    /**
+     * Clears the pending changes once the session has been stored, as of the given
+     * number of {@link #changes()} and last access time. Later changes remain
+     * pending.
+     */
+    void written(long changes, Instant accessTime) {
+        this.writtenChanges = changes;
+        this.persistedAccessTime = accessTime;
+    }
+
+    /**
+     * Records the last access time has been written as of {@code accessTime}
+     */
+    void accessTimePersisted(Instant accessTime) {
+        this.persistedAccessTime = accessTime;
+    }
+
+    /**
+     * Updates the last access time with the one stored by another node, if more
+     * recent
+     */
+    void mergeLastAccessTime(Instant storedAccessTime) {
+        if (storedAccessTime.isAfter(lastAccessTime)) {
+            this.lastAccessTime = storedAccessTime;
+            this.persistedAccessTime = storedAccessTime;
+        }
+    }
+
+    /**
+     * Attributes map flagging the session as dirty on changes
+     */
+    @SuppressWarnings("serial")
+    private class AttributesMap extends ConcurrentHashMap<String, Object> {
+
+        AttributesMap() {
+            super();
+        }
+
+        AttributesMap(Map<String, Object> initial) {
+            super(initial);
+        }
+
+        public @Override Object put(String key, Object value) {
+            changed();
+            return super.put(key, value);
+        }
+
+        public @Override Object putIfAbsent(String key, Object value) {
+            Object previous = super.putIfAbsent(key, value);
+            if (previous == null) {
+                changed();
+            }
+            return previous;
+        }
+
+        public @Override void putAll(Map<? extends String, ? extends Object> m) {
+            changed();
+            super.putAll(m);
+        }
+
+        public @Override Object remove(Object key) {
+            Object removed = super.remove(key);
+            if (removed != null) {
+                changed();
+            }
+            return removed;
+        }
+
+        public @Override void clear() {
+            changed();
+            super.clear();
+        }
+
+        public @Override Object compute(String key, BiFunction<? super String, ? super Object, ? extends Object> f) {
+            changed();
+            return super.compute(key, f);
+        }
+
+        public @Override Object computeIfAbsent(String key, Function<? super String, ? extends Object> f) {
+            Object current = super.get(key);
+            if (current != null) {
+                return current;
+            }
+            changed();
+            return super.computeIfAbsent(key, f);
+        }
+
+        public @Override Object merge(String key, Object value,
+                BiFunction<? super Object, ? super Object, ? extends Object> f) {
+            changed();
+            return super.merge(key, value, f);
+        }
+    }
+}
@@ -28,11 +28,16 @@ import org.georchestra.gateway.filter.headers.RemoveSecurityHeadersGatewayFilter
 import org.georchestra.gateway.filter.headers.providers.GeorchestraOrganizationHeadersContributor;
 import org.georchestra.gateway.filter.headers.providers.GeorchestraUserHeadersContributor;
 import org.georchestra.gateway.filter.headers.providers.SecProxyHeaderContributor;
+import org.georchestra.gateway.filter.metrics.FilterMetrics;
 import org.georchestra.gateway.model.GatewayConfigProperties;
 import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.boot.autoconfigure.AutoConfigurations;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 /**
  * Verify context contributions for {@link FiltersAutoConfiguration}
  */
@@ -56,4 +61,34 @@ class FiltersAutoConfigurationTest {
         });
     }
 
+    @Test
+    void testFilterMetricsDisabledByDefault() {
+        runner.withBean(MeterRegistry.class, SimpleMeterRegistry::new).run(context -> {
+            assertThat(context).doesNotHaveBean(FilterMetrics.class);
+            assertThat(AopUtils.isAopProxy(context.getBean(ResolveTargetGlobalFilter.class))).isFalse();
+        });
+    }
+
+    @Test
+    void testFilterMetricsEnabled() {
+        runner.withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+                .withPropertyValues("georchestra.gateway.filter-metrics.enabled=true").run(context -> {
+                    assertThat(context).hasSingleBean(FilterMetrics.class);
+                    assertThat(context).hasSingleBean(ResolveTargetGlobalFilter.class);
+                    assertThat(context).hasSingleBean(AddSecHeadersGatewayFilterFactory.class);
+                    assertThat(AopUtils.isAopProxy(context.getBean(ResolveTargetGlobalFilter.class))).isTrue();
+                    assertThat(AopUtils.isAopProxy(context.getBean(AddSecHeadersGatewayFilterFactory.class)))
+                            .isTrue();
+                    assertThat(context.getBean(AddSecHeadersGatewayFilterFactory.class).name())
+                            .isEqualTo("AddSecHeaders");
+                });
+    }
+
+    @Test
+    void testFilterMetricsEnabledWithoutMeterRegistry() {
+        runner.withPropertyValues("georchestra.gateway.filter-metrics.enabled=true").run(context -> {
+            assertThat(context).hasNotFailed();
+            assertThat(AopUtils.isAopProxy(context.getBean(ResolveTargetGlobalFilter.class))).isFalse();
+        });
+    }
 }
@@ -21,6 +21,7 @@ package org.georchestra.gateway.autoconfigure.security;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import org.georchestra.gateway.security.ldap.CredentialsCachingAuthenticationManager;
 import org.georchestra.gateway.security.ldap.LdapConfigProperties;
 import org.georchestra.gateway.security.ldap.LdapSecurityConfiguration;
 import org.georchestra.gateway.security.ldap.LdapSecurityConfiguration.LDAPAuthenticationCustomizer;
@@ -102,6 +103,33 @@ class LdapSecurityAutoConfigurationTest {
         testEnabled(runner);
     }
 
+    @Test
+    void testRaceAuthenticationMode() {
+        runner = runner.withPropertyValues(""//
+                , "georchestra.gateway.security.ldap-authentication-mode: race" //
+                , "georchestra.gateway.security.ldap.ldap1.enabled: true" //
+                , "georchestra.gateway.security.ldap.ldap1.url: ldap://ldap1.test.com:839" //
+                , "georchestra.gateway.security.ldap.ldap1.baseDn: dc=georchestra,dc=org" //
+                , "georchestra.gateway.security.ldap.ldap1.users.rdn: ou=users,dc=georchestra,dc=org" //
+                , "georchestra.gateway.security.ldap.ldap1.users.searchFilter: (uid={0})" //
+                , "georchestra.gateway.security.ldap.ldap1.roles.rdn: ou=roles" //
+                , "georchestra.gateway.security.ldap.ldap1.roles.searchFilter: (member={0})" //
+                , "georchestra.gateway.security.ldap.ldap2.enabled: true" //
+                , "georchestra.gateway.security.ldap.ldap2.url: ldap://ldap2.test.com:839" //
+                , "georchestra.gateway.security.ldap.ldap2.baseDn: dc=georchestra,dc=org" //
+                , "georchestra.gateway.security.ldap.ldap2.users.rdn: ou=users,dc=georchestra,dc=org" //
+                , "georchestra.gateway.security.ldap.ldap2.users.searchFilter: (uid={0})" //
+                , "georchestra.gateway.security.ldap.ldap2.roles.rdn: ou=roles" //
+                , "georchestra.gateway.security.ldap.ldap2.roles.searchFilter: (member={0})" //
+        );
+
+        runner.run(context -> {
+            assertThat(context).hasSingleBean(AuthenticationWebFilter.class);
+            assertThat(context.getBean("ldapAuthenticationManager").getClass().getSimpleName())
+                    .isEqualTo("RaceAuthenticationManager");
+        });
+    }
+
     private void testEnabled(ApplicationContextRunner runner) {
         runner.run(context -> {
             assertThat(context).hasSingleBean(LdapConfigProperties.class);
@@ -109,8 +137,30 @@ class LdapSecurityAutoConfigurationTest {
             assertThat(context).hasSingleBean(AuthenticationWebFilter.class);
 
             assertThat(context).hasBean("ldapAuthenticationManager");
+            // the credentials cache is opt-in
             assertThat(context.getBean("ldapAuthenticationManager"))
                     .isInstanceOf(ReactiveAuthenticationManagerAdapter.class);
         });
     }
+
+    @Test
+    void testCredentialsCacheEnabled() {
+        runner = runner.withPropertyValues(""//
+                , "georchestra.gateway.security.ldap-credentials-cache.enabled: true" //
+                , "georchestra.gateway.security.ldap.ldap1.enabled: true" //
+                , "georchestra.gateway.security.ldap.ldap1.url: ldap://ldap1.test.com:839" //
+                , "georchestra.gateway.security.ldap.ldap1.baseDn: dc=georchestra,dc=org" //
+                , "georchestra.gateway.security.ldap.ldap1.users.rdn: ou=users,dc=georchestra,dc=org" //
+                , "georchestra.gateway.security.ldap.ldap1.users.searchFilter: (uid={0})" //
+                , "georchestra.gateway.security.ldap.ldap1.roles.rdn: ou=roles" //
+                , "georchestra.gateway.security.ldap.ldap1.roles.searchFilter: (member={0})" //
+        );
+
+        runner.run(context -> {
+            assertThat(context.getBean("ldapAuthenticationManager"))
+                    .isInstanceOf(CredentialsCachingAuthenticationManager.class);
+            assertThat(context.getBean("ldapAuthenticationManager", CredentialsCachingAuthenticationManager.class)
+                    .getDelegate()).isInstanceOf(ReactiveAuthenticationManagerAdapter.class);
+        });
+    }
 }
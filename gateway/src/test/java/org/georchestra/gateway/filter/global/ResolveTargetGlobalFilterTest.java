@@ -135,6 +135,35 @@ class ResolveTargetGlobalFilterTest {
         assertSame(serviceHeaders, target.headers());
     }
 
+    @Test
+    void resolveTarget_returns_shared_instance() {
+        Service service1 = service(matchedURI, new HeaderMappings());
+        config.setServices(Map.of("service1", service1));
+
+        GeorchestraTargetConfig target = filter.resolveTarget(matchedRoute);
+        assertSame(target, filter.resolveTarget(matchedRoute));
+
+        Route sameURIRoute = mock(Route.class);
+        when(sameURIRoute.getId()).thenReturn("another-route");
+        when(sameURIRoute.getUri()).thenReturn(matchedURI);
+        assertSame(target, filter.resolveTarget(sameURIRoute));
+    }
+
+    @Test
+    void resolveTarget_index_rebuilt_on_refresh_routes_event() {
+        when(matchedRoute.getId()).thenReturn("route1");
+        GeorchestraTargetConfig target = filter.resolveTarget(matchedRoute);
+        assertSame(defaultHeaders, target.headers());
+
+        HeaderMappings serviceHeaders = new HeaderMappings();
+        config.setServices(Map.of("service1", service(matchedURI, serviceHeaders)));
+        // index not rebuilt until routes are refreshed
+        assertSame(defaultHeaders, filter.resolveTarget(matchedRoute).headers());
+
+        filter.invalidateIndex();
+        assertSame(serviceHeaders, filter.resolveTarget(matchedRoute).headers());
+    }
+
     private Service service(URI targetURI) {
         return service(targetURI, null);
     }
@@ -23,6 +23,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -67,8 +68,9 @@ class AddSecHeadersGatewayFilterFactoryTest {
         MockServerHttpRequest request = MockServerHttpRequest.get("/test").build();
         MockServerWebExchange exchange = MockServerWebExchange.from(request);
 
-        HeaderContributor extension1 = mock(HeaderContributor.class);
-        HeaderContributor extension2 = mock(HeaderContributor.class);
+        // calling the default contribute method, which delegates to prepare
+        HeaderContributor extension1 = mock(HeaderContributor.class, CALLS_REAL_METHODS);
+        HeaderContributor extension2 = mock(HeaderContributor.class, CALLS_REAL_METHODS);
         Consumer<HttpHeaders> consumer1 = headers -> headers.add("header-from-extension1", "true");
         Consumer<HttpHeaders> consumer2 = headers -> headers.add("header-from-extension2", "true");
         when(extension1.prepare(any())).thenReturn(consumer1);
@@ -82,6 +84,8 @@ class AddSecHeadersGatewayFilterFactoryTest {
 
         ArgumentCaptor<ServerWebExchange> mutatedExchangeCaptor = ArgumentCaptor.forClass(ServerWebExchange.class);
         verify(mockChain, times(1)).filter(mutatedExchangeCaptor.capture());
+        verify(extension1, times(1)).contribute(same(exchange), any());
+        verify(extension2, times(1)).contribute(same(exchange), any());
         verify(extension1, times(1)).prepare(same(exchange));
         verify(extension2, times(1)).prepare(same(exchange));
 
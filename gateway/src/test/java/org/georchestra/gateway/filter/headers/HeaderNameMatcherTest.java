@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.headers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link HeaderNameMatcher}
+ */
+class HeaderNameMatcherTest {
+
+    private static final List<String> HEADER_NAMES = List.of("sec-user", "SEC-USER", "Sec-Org", "sec-", "sec",
+            "secure", "Authorization", "authorization", "AUTHORIZATION", "Authorization2", "Author", "Host",
+            "x-forwarded-for", "X-Forwarded-Host", "x-forwarded", "", "ETag", "étag");
+
+    @Test
+    void compiles_literals_and_prefixes_to_trie() {
+        assertTrie("(?i)(sec-.*|Authorization)");
+        assertTrie("(sec-.*|Authorization)");
+        assertTrie("(?:sec-.*|Authorization)");
+        assertTrie("sec-.*|Authorization");
+        assertTrie("(?i)x-forwarded-.*");
+        assertTrie("Host");
+        assertTrie(".*");
+    }
+
+    @Test
+    void falls_back_to_regex() {
+        assertRegEx("(?i)(sec-[a-z]+|Authorization)");
+        assertRegEx("(sec-.*)|(Authorization)");
+        assertRegEx("sec.user");
+        assertRegEx("sec-.+");
+        assertRegEx("(?i)(sec-.*|)");
+        assertRegEx("");
+    }
+
+    @Test
+    void invalid_expression() {
+        assertThrows(PatternSyntaxException.class, () -> HeaderNameMatcher.compile("(sec-.*"));
+    }
+
+    private void assertTrie(String regEx) {
+        HeaderNameMatcher matcher = HeaderNameMatcher.compile(regEx);
+        assertTrue(matcher instanceof HeaderNameMatcher.Trie, () -> regEx + " -> " + matcher);
+        assertEquivalent(regEx, matcher);
+    }
+
+    private void assertRegEx(String regEx) {
+        HeaderNameMatcher matcher = HeaderNameMatcher.compile(regEx);
+        assertFalse(matcher instanceof HeaderNameMatcher.Trie, () -> regEx + " -> " + matcher);
+        assertEquivalent(regEx, matcher);
+    }
+
+    private void assertEquivalent(String regEx, HeaderNameMatcher matcher) {
+        Pattern pattern = Pattern.compile(regEx);
+        for (String name : HEADER_NAMES) {
+            assertEquals(pattern.matcher(name).matches(), matcher.matches(name),
+                    () -> String.format("%s: '%s'", regEx, name));
+        }
+    }
+}
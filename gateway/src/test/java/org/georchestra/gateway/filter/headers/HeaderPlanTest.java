@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.filter.headers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.georchestra.gateway.filter.headers.HeaderPlan.Header;
+import org.georchestra.gateway.model.HeaderMappings;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Test suite for {@link HeaderPlan}
+ */
+class HeaderPlanTest {
+
+    private static final List<Header<GeorchestraUser>> HEADERS = List.of(//
+            Header.of("sec-username", HeaderMappings::getUsername, GeorchestraUser::getUsername), //
+            Header.of("sec-email", HeaderMappings::getEmail, GeorchestraUser::getEmail));
+
+    private HeaderMappings mappings;
+    private GeorchestraUser user;
+
+    @BeforeEach
+    void setUp() {
+        mappings = new HeaderMappings();
+        user = new GeorchestraUser();
+        user.setUsername("testuser");
+        user.setEmail("testuser@example.com");
+    }
+
+    @Test
+    void compile_only_enabled_headers() {
+        mappings.setUsername(Optional.of(true));
+        mappings.setEmail(Optional.of(false));
+
+        HttpHeaders target = new HttpHeaders();
+        HeaderPlan.compile(mappings, HEADERS).apply(user, target);
+        assertEquals(List.of("testuser"), target.get("sec-username"));
+        assertNull(target.get("sec-email"));
+    }
+
+    @Test
+    void compile_none_enabled() {
+        HeaderPlan<GeorchestraUser> plan = HeaderPlan.compile(mappings, HEADERS);
+        assertTrue(plan.isEmpty());
+
+        HttpHeaders target = new HttpHeaders();
+        plan.apply(user, target);
+        assertTrue(target.isEmpty());
+    }
+
+    @Test
+    void apply_skips_null_values_and_source() {
+        mappings.enableAll();
+        user.setEmail(null);
+        HeaderPlan<GeorchestraUser> plan = HeaderPlan.compile(mappings, HEADERS);
+        assertFalse(plan.isEmpty());
+
+        HttpHeaders target = new HttpHeaders();
+        plan.apply(user, target);
+        assertEquals(List.of("testuser"), target.get("sec-username"));
+        assertNull(target.get("sec-email"));
+
+        target = new HttpHeaders();
+        plan.apply(null, target);
+        assertTrue(target.isEmpty());
+    }
+
+    @Test
+    void compiler_caches_plans_by_identity() {
+        HeaderPlan.Compiler<GeorchestraUser> compiler = new HeaderPlan.Compiler<>(HEADERS);
+        HeaderPlan<GeorchestraUser> plan = compiler.plan(mappings);
+        assertSame(plan, compiler.plan(mappings));
+
+        HeaderMappings equal = new HeaderMappings();
+        assertEquals(mappings, equal);
+        assertNotSame(plan, compiler.plan(equal));
+    }
+
+    @Test
+    void compiler_invalidateAll() {
+        HeaderPlan.Compiler<GeorchestraUser> compiler = new HeaderPlan.Compiler<>(HEADERS);
+        assertTrue(compiler.plan(mappings).isEmpty());
+
+        mappings.enableAll();
+        assertTrue(compiler.plan(mappings).isEmpty());
+
+        compiler.invalidateAll();
+        assertFalse(compiler.plan(mappings).isEmpty());
+    }
+}
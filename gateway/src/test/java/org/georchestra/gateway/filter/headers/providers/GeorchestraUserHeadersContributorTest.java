@@ -128,4 +128,16 @@ class GeorchestraUserHeadersContributorTest {
         String roles = user.getRoles().stream().collect(Collectors.joining(";"));
         assertEquals(List.of(roles), target.get("sec-roles"));
     }
+
+    @Test
+    void testContributeWithoutPrepare() {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername("testuser");
+        GeorchestraUsers.store(exchange, user);
+        matchedRouteHeadersConfig.enableAll();
+
+        HttpHeaders target = new HttpHeaders();
+        headerContributor.contribute(exchange, target);
+        assertEquals(List.of("testuser"), target.get("sec-username"));
+    }
 }
@@ -20,7 +20,9 @@
 package org.georchestra.gateway.filter.headers.providers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -32,6 +34,7 @@ import java.util.function.Consumer;
 
 import org.georchestra.commons.security.SecurityHeaders;
 import org.georchestra.gateway.filter.headers.HeaderContributor;
+import org.georchestra.gateway.model.EncodedPayload;
 import org.georchestra.gateway.model.GeorchestraOrganizations;
 import org.georchestra.gateway.model.GeorchestraTargetConfig;
 import org.georchestra.gateway.model.GeorchestraUsers;
@@ -114,6 +117,45 @@ class JsonPayloadHeadersContributorTest {
         testContributesJsonHeader(org, "sec-organization");
     }
 
+    @Test
+    void testEncodedValueMemoizedPerResolvedUser() throws Exception {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername("testuser");
+        EncodedPayload payload = new EncodedPayload();
+        GeorchestraUsers.store(exchange, user, payload);
+
+        String encoded = encoded("sec-user");
+        assertSame(encoded, encoded("sec-user"));
+
+        // the same resolved user, e.g. on the next request of the session
+        exchange.getAttributes().clear();
+        GeorchestraTargetConfig.setTarget(exchange, new GeorchestraTargetConfig().headers(matchedRouteHeadersConfig));
+        GeorchestraUsers.store(exchange, user, payload);
+        assertSame(encoded, encoded("sec-user"));
+
+        // a re-resolved user comes with a new payload
+        user.setEmail("testuser@example.com");
+        GeorchestraUsers.store(exchange, user);
+        assertNotEquals(encoded, encoded("sec-user"));
+        testContributesJsonHeader(user, "sec-user");
+    }
+
+    @Test
+    void testEncodedValueMemoizedPerResolvedOrganization() {
+        Organization org = new Organization();
+        org.setShortName("PSC");
+        GeorchestraOrganizations.store(exchange, org);
+
+        String encoded = encoded("sec-organization");
+        assertSame(encoded, encoded("sec-organization"));
+    }
+
+    private String encoded(String headerName) {
+        HttpHeaders target = new HttpHeaders();
+        headerContributor.prepare(exchange).accept(target);
+        return target.getFirst(headerName);
+    }
+
     private void testContributesJsonHeader(Object object, String headerName)
             throws JsonProcessingException, JsonMappingException {
         Consumer<HttpHeaders> contributor = headerContributor.prepare(exchange);
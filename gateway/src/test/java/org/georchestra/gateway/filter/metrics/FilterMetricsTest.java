@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.filter.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+import org.georchestra.gateway.filter.metrics.FilterMetrics.Outcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link FilterMetrics}
+ */
+class FilterMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private FilterMetricsConfigProperties config;
+    private FilterMetrics metrics;
+
+    private MockServerWebExchange exchange;
+    private GatewayFilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        config = new FilterMetricsConfigProperties();
+        config.setEnabled(true);
+        metrics = new FilterMetrics(registry, config);
+
+        exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/test").build());
+        Route route = mock(Route.class);
+        when(route.getId()).thenReturn("testRoute");
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route);
+
+        chain = mock(GatewayFilterChain.class);
+        when(chain.filter(any())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void filter_proceed() {
+        metrics.filter("TestFilter", exchange, chain, (e, c) -> c.filter(e)).block();
+
+        Timer timer = registry.find(FilterMetrics.TIMER_NAME)//
+                .tag("filter", "TestFilter").tag("route", "testRoute").tag("outcome", "proceed").timer();
+        assertThat(timer).isNotNull();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(registry.find(FilterMetrics.TIMER_NAME).tag("outcome", "complete").timer()).isNull();
+    }
+
+    @Test
+    void filter_complete_without_calling_the_chain() {
+        metrics.filter("TestFilter", exchange, chain, (e, c) -> Mono.empty()).block();
+        assertThat(metrics.timer("TestFilter", "testRoute", Outcome.COMPLETE).count()).isEqualTo(1);
+        assertThat(registry.find(FilterMetrics.TIMER_NAME).tag("outcome", "proceed").timer()).isNull();
+    }
+
+    @Test
+    void filter_error() {
+        Mono<Void> failing = metrics.filter("TestFilter", exchange, chain,
+                (e, c) -> Mono.error(new IllegalStateException()));
+        assertThrows(IllegalStateException.class, failing::block);
+        assertThat(metrics.timer("TestFilter", "testRoute", Outcome.ERROR).count()).isEqualTo(1);
+
+        Mono<Void> throwing = metrics.filter("TestFilter", exchange, chain, (e, c) -> {
+            throw new IllegalArgumentException();
+        });
+        assertThrows(IllegalArgumentException.class, throwing::block);
+        assertThat(metrics.timer("TestFilter", "testRoute", Outcome.ERROR).count()).isEqualTo(2);
+    }
+
+    @Test
+    void filter_downstream_error_is_not_accounted_for() {
+        when(chain.filter(any())).thenReturn(Mono.error(new IllegalStateException()));
+        Mono<Void> result = metrics.filter("TestFilter", exchange, chain, (e, c) -> c.filter(e));
+        assertThrows(IllegalStateException.class, result::block);
+
+        assertThat(metrics.timer("TestFilter", "testRoute", Outcome.PROCEED).count()).isEqualTo(1);
+        assertThat(registry.find(FilterMetrics.TIMER_NAME).tag("outcome", "error").timer()).isNull();
+    }
+
+    @Test
+    void filter_unknown_route() {
+        exchange.getAttributes().remove(GATEWAY_ROUTE_ATTR);
+        metrics.filter("TestFilter", exchange, chain, (e, c) -> c.filter(e)).block();
+        assertThat(metrics.timer("TestFilter", FilterMetrics.UNKNOWN_ROUTE, Outcome.PROCEED).count()).isEqualTo(1);
+    }
+
+    @Test
+    void filter_samples_allocation() {
+        config.getAllocation().setEnabled(true);
+        config.getAllocation().setSampleRate(1);
+        metrics = new FilterMetrics(registry, config);
+
+        metrics.filter("TestFilter", exchange, chain, (e, c) -> {
+            byte[] garbage = new byte[1024 * 1024];
+            e.getAttributes().put("garbage", garbage);
+            return c.filter(e);
+        }).block();
+
+        double allocated = metrics.allocated("TestFilter", "testRoute").totalAmount();
+        assertThat(allocated).isGreaterThanOrEqualTo(1024 * 1024);
+    }
+
+    @Test
+    void instrumentedGatewayFilter_preserves_order() {
+        GatewayFilter unordered = (e, c) -> c.filter(e);
+        GatewayFilter ordered = new OrderedGatewayFilter(unordered, 42);
+
+        GatewayFilter instrumentedUnordered = InstrumentedGatewayFilter.of("Test", unordered, metrics);
+        GatewayFilter instrumentedOrdered = InstrumentedGatewayFilter.of("Test", ordered, metrics);
+
+        assertThat(instrumentedUnordered).isNotInstanceOf(Ordered.class);
+        assertThat(instrumentedOrdered).isInstanceOf(Ordered.class);
+        assertThat(((Ordered) instrumentedOrdered).getOrder()).isEqualTo(42);
+        assertThat(InstrumentedGatewayFilter.of("Test", instrumentedOrdered, metrics)).isSameAs(instrumentedOrdered);
+
+        instrumentedOrdered.filter(exchange, chain).block();
+        assertThat(metrics.timer("Test", "testRoute", Outcome.PROCEED).count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.model.RoleBasedAccessRule;
+import org.georchestra.gateway.security.accessrules.CompiledAccessRulesAuthorizationManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest.BaseBuilder;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.CookieWebSessionIdResolver;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link AnonymousFastPathWebFilter}
+ */
+class AnonymousFastPathWebFilterTest {
+
+    private AnonymousFastPathWebFilter filter;
+
+    private final AtomicReference<ServerWebExchange> filtered = new AtomicReference<>();
+
+    private final WebFilterChain chain = exchange -> {
+        filtered.set(exchange);
+        return Mono.empty();
+    };
+
+    @BeforeEach
+    void setUp() {
+        GatewayConfigProperties config = new GatewayConfigProperties();
+        config.setGlobalAccessRules(List.of(//
+                new RoleBasedAccessRule().setInterceptUrl(List.of("/geoserver/rest/**"))
+                        .setAllowedRoles(List.of("ADMINISTRATOR")), //
+                new RoleBasedAccessRule().setInterceptUrl(List.of("/**")).setAnonymous(true)));
+        CompiledAccessRulesAuthorizationManager rules = CompiledAccessRulesAuthorizationManager.compile(config, 100);
+        filter = new AnonymousFastPathWebFilter(rules, new CookieWebSessionIdResolver(),
+                List.of("/login/**", "/logout", "/oauth2/**"));
+    }
+
+    private ServerWebExchange filter(BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        filter.filter(exchange, chain).block();
+        return filtered.get();
+    }
+
+    @Test
+    void anonymousRequestToPublicPath() {
+        ServerWebExchange exchange = filter(MockServerHttpRequest.get("/geoserver/wms"));
+        assertThat(AnonymousFastPathWebFilter.isSessionless(exchange)).isTrue();
+
+        WebSession session = exchange.getSession().block();
+        assertThat(session.isStarted()).isFalse();
+        session.getAttributes().put("key", "value");
+        session.start();
+        assertThat(session.isStarted()).isFalse();
+        assertThat(exchange.getSession().block()).isSameAs(session);
+    }
+
+    @Test
+    void headRequest() {
+        assertThat(AnonymousFastPathWebFilter.isSessionless(filter(MockServerHttpRequest.head("/geoserver/wms"))))
+                .isTrue();
+    }
+
+    @Test
+    void requestWithSessionCookie() {
+        ServerWebExchange exchange = filter(
+                MockServerHttpRequest.get("/geoserver/wms").cookie(new HttpCookie("SESSION", "1234")));
+        assertThat(AnonymousFastPathWebFilter.isSessionless(exchange)).isFalse();
+    }
+
+    @Test
+    void requestWithCredentials() {
+        ServerWebExchange exchange = filter(
+                MockServerHttpRequest.get("/geoserver/wms").header(HttpHeaders.AUTHORIZATION, "Basic dGVzdDp0ZXN0"));
+        assertThat(AnonymousFastPathWebFilter.isSessionless(exchange)).isFalse();
+    }
+
+    @Test
+    void nonPublicPath() {
+        ServerWebExchange exchange = filter(MockServerHttpRequest.get("/geoserver/rest/workspaces"));
+        assertThat(AnonymousFastPathWebFilter.isSessionless(exchange)).isFalse();
+    }
+
+    @Test
+    void excludedPaths() {
+        assertThat(AnonymousFastPathWebFilter.isSessionless(filter(MockServerHttpRequest.get("/login")))).isFalse();
+        assertThat(AnonymousFastPathWebFilter
+                .isSessionless(filter(MockServerHttpRequest.get("/oauth2/authorization/google")))).isFalse();
+    }
+
+    @Test
+    void nonReadRequest() {
+        ServerWebExchange exchange = filter(MockServerHttpRequest.post("/geoserver/wfs"));
+        assertThat(AnonymousFastPathWebFilter.isSessionless(exchange)).isFalse();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.georchestra.gateway.model.EncodedPayload;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.server.WebSession;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link GeorchestraUserCache}
+ */
+class GeorchestraUserCacheTest {
+
+    private GeorchestraUserCache cache;
+    private AtomicInteger resolveCount;
+    private Function<Authentication, Optional<GeorchestraUser>> resolver;
+
+    @BeforeEach
+    void setUp() {
+        cache = new GeorchestraUserCache(100, Duration.ofMinutes(1));
+        resolveCount = new AtomicInteger();
+        resolver = auth -> {
+            resolveCount.incrementAndGet();
+            GeorchestraUser user = new GeorchestraUser();
+            user.setUsername(auth.getName());
+            return Optional.of(user);
+        };
+    }
+
+    private WebSession session(String id, boolean started) {
+        WebSession session = mock(WebSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isStarted()).thenReturn(started);
+        return session;
+    }
+
+    @Test
+    void resolvesOncePerSession() {
+        WebSession session = session("s1", true);
+        Authentication auth = new TestingAuthenticationToken("user1", null);
+
+        GeorchestraUser user = cache.get(session, auth, resolver).orElseThrow();
+        assertSame(user, cache.get(session, auth, resolver).orElseThrow());
+        assertEquals(1, resolveCount.get());
+
+        cache.get(session("s2", true), auth, resolver);
+        assertEquals(2, resolveCount.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void doesNotCacheUnstartedSessions() {
+        WebSession session = session("s1", false);
+        Authentication auth = new TestingAuthenticationToken("user1", null);
+
+        cache.get(session, auth, resolver);
+        cache.get(session, auth, resolver);
+        assertEquals(2, resolveCount.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void reResolvesIfAuthenticationIdentityChanges() {
+        WebSession session = session("s1", true);
+
+        cache.get(session, new TestingAuthenticationToken("user1", null), resolver);
+        GeorchestraUser user2 = cache.get(session, new TestingAuthenticationToken("user2", null), resolver)
+                .orElseThrow();
+        assertEquals("user2", user2.getUsername());
+        assertEquals(2, resolveCount.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void encodedPayloadReusedUntilReResolved() {
+        WebSession session = session("s1", true);
+        Authentication auth = new TestingAuthenticationToken("user1", null);
+
+        EncodedPayload payload = cache.resolve(session, auth, resolver).getPayload();
+        assertSame(payload, cache.resolve(session, auth, resolver).getPayload());
+
+        cache.invalidate("s1");
+        assertNotSame(payload, cache.resolve(session, auth, resolver).getPayload());
+    }
+
+    @Test
+    void cachesEmptyResults() {
+        WebSession session = session("s1", true);
+        Authentication auth = new TestingAuthenticationToken("user1", null);
+        Function<Authentication, Optional<GeorchestraUser>> emptyResolver = a -> {
+            resolveCount.incrementAndGet();
+            return Optional.empty();
+        };
+        assertTrue(cache.get(session, auth, emptyResolver).isEmpty());
+        assertTrue(cache.get(session, auth, emptyResolver).isEmpty());
+        assertEquals(1, resolveCount.get());
+    }
+
+    @Test
+    void invalidate() {
+        WebSession session = session("s1", true);
+        Authentication auth = new TestingAuthenticationToken("user1", null);
+        cache.get(session, auth, resolver);
+        assertTrue(cache.getIfPresent("s1").isPresent());
+
+        cache.invalidate("s1");
+        assertTrue(cache.getIfPresent("s1").isEmpty());
+        cache.get(session, auth, resolver);
+        assertEquals(2, resolveCount.get());
+    }
+
+    @Test
+    void metrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        WebSession session = session("s1", true);
+        Authentication auth = new TestingAuthenticationToken("user1", null);
+        cache.get(session, auth, resolver);
+        cache.get(session, auth, resolver);
+        cache.get(session, auth, resolver);
+
+        double hits = registry.get("cache.gets").tag("cache", GeorchestraUserCache.CACHE_NAME).tag("result", "hit")
+                .functionCounter().count();
+        double misses = registry.get("cache.gets").tag("cache", GeorchestraUserCache.CACHE_NAME)
+                .tag("result", "miss").functionCounter().count();
+        assertEquals(2d, hits);
+        assertEquals(1d, misses);
+    }
+}
@@ -27,13 +27,19 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import org.georchestra.security.model.GeorchestraUser;
 import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 
 /**
@@ -120,4 +126,38 @@ class GeorchestraUserMapperTest {
         assertEquals("customizer1", resolved.get().getUsername());
         assertEquals(List.of("ROLE_1", "ROLE_2"), resolved.get().getRoles());
     }
+
+    @Test
+    void testResolve_dispatchesByAuthenticationType() {
+        Authentication auth = new UsernamePasswordAuthenticationToken("user", "secret");
+
+        GeorchestraUserMapperExtension other = mock(GeorchestraUserMapperExtension.class);
+        when(other.getAuthenticationTypes()).thenReturn(Set.of(TestingAuthenticationToken.class));
+
+        GeorchestraUser user = new GeorchestraUser();
+        GeorchestraUserMapperExtension supertype = mock(GeorchestraUserMapperExtension.class);
+        when(supertype.getAuthenticationTypes()).thenReturn(Set.of(AbstractAuthenticationToken.class));
+        when(supertype.resolve(same(auth))).thenReturn(Optional.of(user));
+
+        GeorchestraUserMapper mapper = new GeorchestraUserMapper(List.of(other, supertype));
+        assertSame(user, mapper.resolve(auth).orElseThrow());
+        assertSame(user, mapper.resolve(auth).orElseThrow());
+        verify(other, never()).resolve(any());
+    }
+
+    @Test
+    void testResolve_undeclaredAuthenticationTypes() {
+        Authentication auth = new TestingAuthenticationToken("user", "secret");
+
+        GeorchestraUserMapperExtension typed = mock(GeorchestraUserMapperExtension.class);
+        when(typed.getAuthenticationTypes()).thenReturn(Set.of(UsernamePasswordAuthenticationToken.class));
+
+        GeorchestraUser user = new GeorchestraUser();
+        GeorchestraUserMapperExtension untyped = mock(GeorchestraUserMapperExtension.class);
+        when(untyped.resolve(same(auth))).thenReturn(Optional.of(user));
+
+        GeorchestraUserMapper mapper = new GeorchestraUserMapper(List.of(typed, untyped));
+        assertSame(user, mapper.resolve(auth).orElseThrow());
+        verify(typed, never()).resolve(any());
+    }
 }
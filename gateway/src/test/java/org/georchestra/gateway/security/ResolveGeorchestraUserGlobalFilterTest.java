@@ -121,4 +121,15 @@ class ResolveGeorchestraUserGlobalFilterTest {
         Optional<GeorchestraUser> resolved = GeorchestraUsers.resolve(exchange);
         assertSame(user1, resolved.orElseThrow());
     }
+
+    @Test
+    void testFilter_SessionlessExchange() {
+        ServerWebExchange exchange = this.exchange.mutate().principal(Mono.just(mock(Authentication.class))).build();
+        exchange.getAttributes().put(AnonymousFastPathWebFilter.SESSIONLESS_ATTRIBUTE, Boolean.TRUE);
+
+        filter.filter(exchange, mockChain).block();
+
+        verify(mockChain, times(1)).filter(same(exchange));
+        verify(mockMapper, never()).resolve(any());
+    }
 }
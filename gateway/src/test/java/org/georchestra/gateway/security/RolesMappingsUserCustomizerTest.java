@@ -34,6 +34,8 @@ import org.georchestra.security.model.GeorchestraUser;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 /**
  * Test suite for {@link RolesMappingsUserCustomizer}
  */
@@ -123,4 +125,60 @@ class RolesMappingsUserCustomizerTest {
         assertEquals(Set.of("ROLE.TEST.ADMIN", "ROLE.GDI.USER", "ROLE_GN_ADMIN", "ROLE_ADMINISTRATOR", "ROLE_USER",
                 "ROLE_GUEST"), Set.copyOf(customized.getRoles()));
     }
+
+    @Test
+    void matchesPrefixAndSuffixMappings() {
+        addConfig("GN_*", "ROLE_GN");
+        addConfig("*_ADMIN", "ROLE_ADMINISTRATOR");
+        addConfig("GN_EDITOR", "ROLE_EDITOR");
+
+        RolesMappingsUserCustomizer customizer = new RolesMappingsUserCustomizer(config);
+        GeorchestraUser customized;
+
+        user.setRoles(List.of("GN_EDITOR"));
+        customized = customizer.apply(user);
+        assertEquals(Set.of("GN_EDITOR", "ROLE_GN", "ROLE_EDITOR"), Set.copyOf(customized.getRoles()));
+
+        user.setRoles(List.of("GN_ADMIN"));
+        customized = customizer.apply(user);
+        assertEquals(Set.of("GN_ADMIN", "ROLE_GN", "ROLE_ADMINISTRATOR"), Set.copyOf(customized.getRoles()));
+
+        user.setRoles(List.of("ORG_ADMIN", "GN_"));
+        customized = customizer.apply(user);
+        assertEquals(Set.of("ORG_ADMIN", "GN_", "ROLE_GN", "ROLE_ADMINISTRATOR"), Set.copyOf(customized.getRoles()));
+
+        user.setRoles(List.of("GN", "ADMIN"));
+        customized = customizer.apply(user);
+        assertEquals(List.of("GN", "ADMIN"), customized.getRoles());
+    }
+
+    @Test
+    void matchesWildcardMapping() {
+        addConfig("*", "ROLE_ANY");
+        RolesMappingsUserCustomizer customizer = new RolesMappingsUserCustomizer(config);
+
+        user.setRoles(List.of("ROLE_USER"));
+        assertEquals(List.of("ROLE_USER", "ROLE_ANY"), customizer.apply(user).getRoles());
+    }
+
+    @Test
+    void memoizesExpansionPerRoleList() {
+        addConfig("GN_*", "ROLE_GN");
+        RolesMappingsUserCustomizer customizer = new RolesMappingsUserCustomizer(config);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        customizer.bindTo(registry);
+
+        for (int i = 0; i < 3; i++) {
+            user.setRoles(List.of("GN_EDITOR", "ROLE_USER"));
+            assertEquals(List.of("GN_EDITOR", "ROLE_USER", "ROLE_GN"), customizer.apply(user).getRoles());
+        }
+        assertEquals(2d, gets(registry, RolesMappingsUserCustomizer.BY_ROLES_CACHE_NAME, "hit"));
+        assertEquals(1d, gets(registry, RolesMappingsUserCustomizer.BY_ROLES_CACHE_NAME, "miss"));
+        // each role computed once, on the role list cache miss
+        assertEquals(2d, gets(registry, RolesMappingsUserCustomizer.BY_ROLE_CACHE_NAME, "miss"));
+    }
+
+    private double gets(SimpleMeterRegistry registry, String cacheName, String result) {
+        return registry.get("cache.gets").tag("cache", cacheName).tag("result", result).functionCounter().count();
+    }
 }
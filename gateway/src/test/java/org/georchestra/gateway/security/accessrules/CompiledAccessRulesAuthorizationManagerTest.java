@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.accessrules;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.georchestra.gateway.model.GatewayConfigProperties;
+import org.georchestra.gateway.model.RoleBasedAccessRule;
+import org.georchestra.gateway.model.Service;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.PathContainer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authorization.AuthenticatedReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorityReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import org.springframework.security.web.server.authorization.DelegatingReactiveAuthorizationManager;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcherEntry;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import org.springframework.web.server.ServerWebExchange;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link CompiledAccessRulesAuthorizationManager}, verifying it
+ * makes the same decisions as the chain of Spring Security path matchers
+ * {@link AccessRulesCustomizer} registers otherwise
+ */
+class CompiledAccessRulesAuthorizationManagerTest {
+
+    private static final List<String> PATHS = List.of("/", "/index.html", "/header", "/header/", "/header/img/logo.png",
+            "/geoserver", "/geoserver/", "/geoserver/web/", "/geoserver/wms", "/geoserver/ows/", "/geoserver/rest",
+            "/geoserver/rest/workspaces.json", "/geoserver/gwc/rest/seed", "/geonetwork", "/geonetwork/srv/eng/catalog",
+            "/geonetwork/srv/api/records", "/console", "/console/manager", "/console/manager/", "/console/private/users",
+            "/console/account/new", "/console/public/orgs", "/analytics", "/analytics/ws/stats", "/mapstore/",
+            "/mapstore/rest/config", "/datahub/", "/a/b", "/a/b/", "/a/b/c", "/A/b", "//a/b", "/a;x=1/b", "/a%20b/c",
+            "/x/private", "/x/private/y", "/y/admin/z", "/service/admin/", "/foo.txt", "/foo.json", "/import/x/y",
+            "/unknown", "/unknown/path/");
+
+    private static List<Authentication> authentications() {
+        TestingAuthenticationToken unauthenticated = new TestingAuthenticationToken("user", "pwd",
+                "ROLE_ADMINISTRATOR");
+        unauthenticated.setAuthenticated(false);
+        List<Authentication> auths = new ArrayList<>();
+        auths.add(null);
+        auths.add(new AnonymousAuthenticationToken("key", "anonymousUser",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")));
+        auths.add(new TestingAuthenticationToken("user", "pwd", List.of()));
+        auths.add(new TestingAuthenticationToken("user", "pwd", "ROLE_USER"));
+        auths.add(new TestingAuthenticationToken("admin", "pwd", "ROLE_USER", "ROLE_ADMINISTRATOR"));
+        auths.add(new TestingAuthenticationToken("gn", "pwd", "ROLE_GN_ADMIN"));
+        auths.add(new TestingAuthenticationToken("sa", "pwd", "ROLE_SUPERUSER", "ROLE_IMPORT"));
+        auths.add(unauthenticated);
+        return auths;
+    }
+
+    private static GatewayConfigProperties sampleConfig() {
+        GatewayConfigProperties config = new GatewayConfigProperties();
+        Map<String, Service> services = new LinkedHashMap<>();
+        services.put("geoserver", service(//
+                rule("/geoserver/rest/**", "/geoserver/gwc/rest/**").setAllowedRoles(List.of("ADMINISTRATOR")), //
+                rule("/geoserver/web/**").setAllowedRoles(List.of("ROLE_ADMINISTRATOR", "GN_ADMIN")), //
+                rule("/geoserver/**").setAnonymous(true)));
+        services.put("console", service(//
+                rule("/console/account/new", "/console/public/**").setAnonymous(true), //
+                rule("/console/private/**").setAllowedRoles(List.of("SUPERUSER", "ORGADMIN")), //
+                rule("/console/manager/**").setAllowedRoles(List.of("SUPERUSER")), //
+                rule("/console/**")));
+        services.put("analytics", service(rule("/analytics/**").setAllowedRoles(List.of("SUPERUSER"))));
+        services.put("import", service(rule("/import/**").setAllowedRoles(List.of("IMPORT"))));
+        services.put("noRules", new Service());
+        services.put("tricky", service(//
+                rule("/a/b").setAllowedRoles(List.of("USER")), //
+                rule("/*/private/**").setForbidden(true), //
+                rule("/{service}/admin/**").setAllowedRoles(List.of("ADMINISTRATOR")), //
+                rule("/*.json").setForbidden(true), //
+                rule("/a/**").setAnonymous(true)));
+        config.setServices(services);
+        config.setGlobalAccessRules(List.of(//
+                rule("/header/**", "/", "/index.html").setAnonymous(true), //
+                rule("/geonetwork/srv/api/**").setForbidden(true), //
+                rule("/geonetwork/**", "/mapstore/**").setAnonymous(true), //
+                rule("/**").setAnonymous(false)));
+        return config;
+    }
+
+    @Test
+    void sameDecisionsAsPathMatchers() {
+        GatewayConfigProperties config = sampleConfig();
+        assertSameDecisions(config);
+    }
+
+    @Test
+    void sameDecisionsAsPathMatchers_noCatchAllRule() {
+        GatewayConfigProperties config = sampleConfig();
+        config.setGlobalAccessRules(config.getGlobalAccessRules().subList(0, 3));
+        assertSameDecisions(config);
+    }
+
+    @Test
+    void sameDecisionsAsPathMatchers_noRules() {
+        GatewayConfigProperties config = new GatewayConfigProperties();
+        assertSameDecisions(config);
+        CompiledAccessRulesAuthorizationManager compiled = CompiledAccessRulesAuthorizationManager.compile(config, 100);
+        assertThat(decide(compiled, "/", new TestingAuthenticationToken("admin", "pwd", "ROLE_ADMINISTRATOR")))
+                .isFalse();
+    }
+
+    @Test
+    void firstMatchWins() {
+        CompiledAccessRulesAuthorizationManager compiled = CompiledAccessRulesAuthorizationManager.compile(List.of(//
+                rule("/**").setForbidden(true), //
+                rule("/a/b/c").setAnonymous(true)), 100);
+        assertEquals(0, compiled.ruleIndex(PathContainer.parsePath("/a/b/c")));
+        assertThat(decide(compiled, "/a/b/c", null)).isFalse();
+
+        compiled = CompiledAccessRulesAuthorizationManager.compile(List.of(//
+                rule("/a/b/c").setAnonymous(true), //
+                rule("/**").setForbidden(true)), 100);
+        assertEquals(0, compiled.ruleIndex(PathContainer.parsePath("/a/b/c")));
+        assertEquals(1, compiled.ruleIndex(PathContainer.parsePath("/a/b")));
+        assertEquals(-1, CompiledAccessRulesAuthorizationManager
+                .compile(List.of(rule("/a/b/c").setAnonymous(true)), 100).ruleIndex(PathContainer.parsePath("/a")));
+    }
+
+    @Test
+    void emptyInterceptUrls() {
+        List<RoleBasedAccessRule> rules = List.of(rule().setAnonymous(true));
+        assertThrows(IllegalArgumentException.class, () -> CompiledAccessRulesAuthorizationManager.compile(rules, 100));
+    }
+
+    @Test
+    void cachesMatchedRules() {
+        CompiledAccessRulesAuthorizationManager compiled = CompiledAccessRulesAuthorizationManager
+                .compile(sampleConfig(), 100);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        compiled.bindTo(registry);
+
+        Authentication admin = new TestingAuthenticationToken("admin", "pwd", "ROLE_ADMINISTRATOR");
+        for (int i = 0; i < 3; i++) {
+            assertThat(decide(compiled, "/geoserver/rest/workspaces.json", admin)).isTrue();
+        }
+        assertThat(registry.get("cache.gets").tag("cache", CompiledAccessRulesAuthorizationManager.PATHS_CACHE_NAME)
+                .tag("result", "hit").functionCounter().count()).isEqualTo(2d);
+    }
+
+    private void assertSameDecisions(GatewayConfigProperties config) {
+        ReactiveAuthorizationManager<ServerWebExchange> expected = pathMatchers(config);
+        CompiledAccessRulesAuthorizationManager compiled = CompiledAccessRulesAuthorizationManager.compile(config, 100);
+        // twice, to verify cached rule matches too
+        for (int i = 0; i < 2; i++) {
+            for (String path : PATHS) {
+                for (Authentication auth : authentications()) {
+                    boolean expectedDecision = decide(expected, path, auth);
+                    boolean actual = decide(compiled, path, auth);
+                    assertEquals(expectedDecision, actual,
+                            () -> String.format("decision mismatch for %s and %s", path, auth));
+                }
+            }
+        }
+    }
+
+    private boolean decide(ReactiveAuthorizationManager<ServerWebExchange> manager, String path, Authentication auth) {
+        ServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path).build());
+        return manager.check(Mono.justOrEmpty(auth), exchange).map(AuthorizationDecision::isGranted).block();
+    }
+
+    private boolean decide(CompiledAccessRulesAuthorizationManager manager, String path, Authentication auth) {
+        ServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path).build());
+        return manager.check(Mono.justOrEmpty(auth), new AuthorizationContext(exchange))
+                .map(AuthorizationDecision::isGranted).block();
+    }
+
+    /**
+     * Builds the same authorization manager {@link AccessRulesCustomizer}
+     * configures through {@code authorizeExchange().pathMatchers(...)}
+     */
+    private ReactiveAuthorizationManager<ServerWebExchange> pathMatchers(GatewayConfigProperties config) {
+        DelegatingReactiveAuthorizationManager.Builder builder = DelegatingReactiveAuthorizationManager.builder();
+        List<RoleBasedAccessRule> rules = new ArrayList<>();
+        config.getServices().values().stream().filter(s -> s.getAccessRules() != null)
+                .forEach(s -> rules.addAll(s.getAccessRules()));
+        if (config.getGlobalAccessRules() != null) {
+            rules.addAll(config.getGlobalAccessRules());
+        }
+        for (RoleBasedAccessRule rule : rules) {
+            ReactiveAuthorizationManager<AuthorizationContext> manager;
+            if (rule.isForbidden()) {
+                manager = (a, c) -> Mono.just(new AuthorizationDecision(false));
+            } else if (rule.isAnonymous()) {
+                manager = (a, c) -> Mono.just(new AuthorizationDecision(true));
+            } else if (rule.getAllowedRoles().isEmpty()) {
+                manager = AuthenticatedReactiveAuthorizationManager.authenticated();
+            } else {
+                manager = AuthorityReactiveAuthorizationManager.hasAnyAuthority(rule.getAllowedRoles().stream()
+                        .map(r -> r.startsWith("ROLE_") ? r : "ROLE_" + r).toArray(String[]::new));
+            }
+            builder.add(new ServerWebExchangeMatcherEntry<>(
+                    ServerWebExchangeMatchers.pathMatchers(rule.getInterceptUrl().toArray(String[]::new)), manager));
+        }
+        return builder.build();
+    }
+
+    private static Service service(RoleBasedAccessRule... rules) {
+        Service service = new Service();
+        service.setAccessRules(List.of(rules));
+        return service;
+    }
+
+    private static RoleBasedAccessRule rule(String... interceptUrls) {
+        RoleBasedAccessRule rule = new RoleBasedAccessRule();
+        rule.setInterceptUrl(List.of(interceptUrls));
+        return rule;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.admission;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.georchestra.gateway.security.admission.LoginAdmissionController.AdmissionRejectedException;
+import org.georchestra.gateway.security.admission.LoginAdmissionController.Permit;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+
+/**
+ * Test suite for {@link LoginAdmissionController}
+ */
+class LoginAdmissionControllerTest {
+
+    @Test
+    void acquireWithinLimit() {
+        LoginAdmissionController controller = new LoginAdmissionController(2, 0, Duration.ofSeconds(1));
+        Permit p1 = controller.acquire().block();
+        Permit p2 = controller.acquire().block();
+        assertThat(controller.getActive()).isEqualTo(2);
+
+        p1.release();
+        p1.release();
+        assertThat(controller.getActive()).isEqualTo(1);
+        p2.release();
+        assertThat(controller.getActive()).isZero();
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        LoginAdmissionController controller = new LoginAdmissionController(1, 0, Duration.ofSeconds(1));
+        controller.acquire().block();
+
+        assertThatThrownBy(() -> controller.acquire().block()).isInstanceOf(AdmissionRejectedException.class)
+                .extracting("reason").isEqualTo(LoginAdmissionController.REJECTED_QUEUE_FULL);
+        assertThat(controller.getRejected(LoginAdmissionController.REJECTED_QUEUE_FULL)).isEqualTo(1);
+    }
+
+    @Test
+    void queuedRequestGetsReleasedPermit() throws Exception {
+        LoginAdmissionController controller = new LoginAdmissionController(1, 1, Duration.ofSeconds(10));
+        Permit first = controller.acquire().block();
+
+        AtomicReference<Permit> queued = new AtomicReference<>();
+        Disposable subscription = controller.acquire().subscribe(queued::set);
+        assertThat(controller.getQueued()).isEqualTo(1);
+        assertThat(queued.get()).isNull();
+
+        first.release();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (queued.get() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(queued.get()).isNotNull();
+        assertThat(controller.getQueued()).isZero();
+        assertThat(controller.getActive()).isEqualTo(1);
+
+        queued.get().release();
+        assertThat(controller.getActive()).isZero();
+        subscription.dispose();
+    }
+
+    @Test
+    void rejectsAfterMaxWait() {
+        LoginAdmissionController controller = new LoginAdmissionController(1, 1, Duration.ofMillis(50));
+        controller.acquire().block();
+
+        assertThatThrownBy(() -> controller.acquire().block()).isInstanceOf(AdmissionRejectedException.class)
+                .extracting("reason").isEqualTo(LoginAdmissionController.REJECTED_TIMEOUT);
+        assertThat(controller.getQueued()).isZero();
+        assertThat(controller.getRejected(LoginAdmissionController.REJECTED_TIMEOUT)).isEqualTo(1);
+    }
+
+    @Test
+    void cancelledWaiterDoesNotLeakPermit() {
+        LoginAdmissionController controller = new LoginAdmissionController(1, 1, Duration.ofSeconds(10));
+        Permit first = controller.acquire().block();
+
+        Disposable subscription = controller.acquire().subscribe();
+        assertThat(controller.getQueued()).isEqualTo(1);
+        subscription.dispose();
+        assertThat(controller.getQueued()).isZero();
+
+        first.release();
+        assertThat(controller.getActive()).isZero();
+    }
+
+    @Test
+    void metrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LoginAdmissionController controller = new LoginAdmissionController(1, 0, Duration.ofSeconds(1));
+        controller.bindTo(registry);
+
+        controller.acquire().block();
+        assertThatThrownBy(() -> controller.acquire().block()).isInstanceOf(AdmissionRejectedException.class);
+
+        assertThat(registry.get("georchestra.login.admission.active").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("georchestra.login.admission.queued").gauge().value()).isZero();
+        assertThat(registry.get("georchestra.login.admission.rejected").tag("reason", "queue-full").functionCounter()
+                .count()).isEqualTo(1);
+        assertThat(registry.get("georchestra.login.admission.wait").timer()).isNotNull();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.admission;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link LoginAdmissionWebFilter}
+ */
+class LoginAdmissionWebFilterTest {
+
+    private final AtomicInteger chainCalls = new AtomicInteger();
+
+    private final WebFilterChain chain = exchange -> {
+        chainCalls.incrementAndGet();
+        return Mono.empty();
+    };
+
+    @Test
+    void isAuthenticationRequest() {
+        LoginAdmissionController controller = new LoginAdmissionController(1, 0, Duration.ofSeconds(1));
+        LoginAdmissionWebFilter filter = new LoginAdmissionWebFilter(controller, null, Duration.ofSeconds(5));
+
+        assertThat(filter.isAuthenticationRequest(MockServerHttpRequest.post("/login").build())).isTrue();
+        assertThat(filter.isAuthenticationRequest(MockServerHttpRequest.get("/login").build())).isFalse();
+        assertThat(filter.isAuthenticationRequest(MockServerHttpRequest.get("/auth/login").build())).isTrue();
+        assertThat(filter
+                .isAuthenticationRequest(MockServerHttpRequest.get("/login/oauth2/code/google?code=x").build()))
+                .isTrue();
+        assertThat(filter.isAuthenticationRequest(MockServerHttpRequest.get("/geoserver/wms")
+                .header(HttpHeaders.AUTHORIZATION, "Basic dGVzdDp0ZXN0").build())).isTrue();
+        assertThat(filter.isAuthenticationRequest(MockServerHttpRequest.get("/geoserver/wms")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer token").build())).isFalse();
+        assertThat(filter.isAuthenticationRequest(MockServerHttpRequest.get("/geoserver/wms").build())).isFalse();
+    }
+
+    @Test
+    void isAuthenticationRequest_verifiedBasicCredentials() {
+        LoginAdmissionController controller = new LoginAdmissionController(1, 0, Duration.ofSeconds(1));
+        VerifiedCredentials verified = (username, password) -> "test".equals(username) && "test".equals(password);
+        LoginAdmissionWebFilter filter = new LoginAdmissionWebFilter(controller, null, Duration.ofSeconds(5),
+                verified);
+
+        // test:test
+        assertThat(filter.isAuthenticationRequest(MockServerHttpRequest.get("/geoserver/wms")
+                .header(HttpHeaders.AUTHORIZATION, "Basic dGVzdDp0ZXN0").build())).isFalse();
+        // test:wrong
+        assertThat(filter.isAuthenticationRequest(MockServerHttpRequest.get("/geoserver/wms")
+                .header(HttpHeaders.AUTHORIZATION, "Basic dGVzdDp3cm9uZw==").build())).isTrue();
+        assertThat(filter.isAuthenticationRequest(MockServerHttpRequest.get("/geoserver/wms")
+                .header(HttpHeaders.AUTHORIZATION, "Basic not-base64!").build())).isTrue();
+        assertThat(filter.isAuthenticationRequest(MockServerHttpRequest.post("/login").build())).isTrue();
+    }
+
+    @Test
+    void nonAuthenticationRequestsBypassAdmission() {
+        LoginAdmissionController controller = new LoginAdmissionController(1, 0, Duration.ofSeconds(1));
+        controller.acquire().block();
+        LoginAdmissionWebFilter filter = new LoginAdmissionWebFilter(controller, null, Duration.ofSeconds(5));
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/geoserver/wms"));
+        filter.filter(exchange, chain).block();
+        assertThat(chainCalls.get()).isEqualTo(1);
+        assertThat(exchange.getResponse().getStatusCode()).isNull();
+    }
+
+    @Test
+    void releasesPermitAfterAuthenticationRequest() {
+        LoginAdmissionController controller = new LoginAdmissionController(1, 0, Duration.ofSeconds(1));
+        LoginAdmissionWebFilter filter = new LoginAdmissionWebFilter(controller, null, Duration.ofSeconds(5));
+
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.post("/login")), chain).block();
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.post("/login")), chain).block();
+        assertThat(chainCalls.get()).isEqualTo(2);
+        assertThat(controller.getActive()).isZero();
+    }
+
+    @Test
+    void releasePermitFilter() {
+        LoginAdmissionController controller = new LoginAdmissionController(1, 0, Duration.ofSeconds(1));
+        LoginAdmissionWebFilter filter = new LoginAdmissionWebFilter(controller, null, Duration.ofSeconds(5));
+
+        AtomicInteger activeDownstream = new AtomicInteger(-1);
+        WebFilterChain releasingChain = exchange -> LoginAdmissionWebFilter.releasePermitFilter().filter(exchange,
+                e -> {
+                    activeDownstream.set(controller.getActive());
+                    return Mono.empty();
+                });
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/geoserver/wms")
+                .header(HttpHeaders.AUTHORIZATION, "Basic dGVzdDp0ZXN0")), releasingChain).block();
+        assertThat(activeDownstream.get()).isZero();
+    }
+
+    @Test
+    void overloadedRespondsServiceUnavailable() {
+        LoginAdmissionController controller = new LoginAdmissionController(1, 0, Duration.ofSeconds(1));
+        controller.acquire().block();
+        LoginAdmissionWebFilter filter = new LoginAdmissionWebFilter(controller, null, Duration.ofSeconds(7));
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/login"));
+        filter.filter(exchange, chain).block();
+        assertThat(chainCalls.get()).isZero();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("7");
+    }
+
+    @Test
+    void rateLimitedRespondsTooManyRequests() {
+        LoginAdmissionController controller = new LoginAdmissionController(10, 0, Duration.ofSeconds(1));
+        ClientRateLimiter rateLimiter = new ClientRateLimiter(1, 0.5, 100);
+        LoginAdmissionWebFilter filter = new LoginAdmissionWebFilter(controller, rateLimiter, Duration.ofSeconds(5));
+
+        InetSocketAddress client = new InetSocketAddress("192.168.1.10", 40000);
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.post("/login").remoteAddress(client)), chain)
+                .block();
+        MockServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.post("/login").remoteAddress(client));
+        filter.filter(exchange, chain).block();
+
+        assertThat(chainCalls.get()).isEqualTo(1);
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.AuthenticationLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link ConcurrencyLimitedAuthenticationProvider}
+ */
+class ConcurrencyLimitedAuthenticationProviderTest {
+
+    private CountDownLatch running;
+    private CountDownLatch release;
+    private AuthenticationProvider blocking;
+
+    @BeforeEach
+    void setUp() {
+        running = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        blocking = new AuthenticationProvider() {
+            public @Override Authentication authenticate(Authentication authentication) {
+                running.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return authentication;
+            }
+
+            public @Override boolean supports(Class<?> authentication) {
+                return true;
+            }
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+    }
+
+    private ConcurrencyLimitedAuthenticationProvider provider(int maxConcurrent, int maxQueued, Duration maxWait) {
+        AuthenticationLimits limits = new AuthenticationLimits().setMaxConcurrent(maxConcurrent)
+                .setMaxQueued(maxQueued).setMaxWait(maxWait);
+        return new ConcurrencyLimitedAuthenticationProvider("ldap1", blocking, limits);
+    }
+
+    private CompletableFuture<Authentication> authenticateAsync(ConcurrencyLimitedAuthenticationProvider provider)
+            throws InterruptedException {
+        CompletableFuture<Authentication> future = CompletableFuture
+                .supplyAsync(() -> provider.authenticate(new TestingAuthenticationToken("user1", "pwd")));
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+        return future;
+    }
+
+    @Test
+    void authenticate_rejects_when_queue_is_full() throws Exception {
+        ConcurrencyLimitedAuthenticationProvider provider = provider(1, 0, Duration.ofSeconds(5));
+        CompletableFuture<Authentication> first = authenticateAsync(provider);
+        assertThat(provider.getActive()).isEqualTo(1);
+
+        TestingAuthenticationToken token = new TestingAuthenticationToken("user2", "pwd");
+        assertThrows(AuthenticationServiceException.class, () -> provider.authenticate(token));
+        assertThat(provider.getRejected()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS).getName()).isEqualTo("user1");
+        assertThat(provider.getActive()).isZero();
+    }
+
+    @Test
+    void authenticate_rejects_after_max_wait() throws Exception {
+        ConcurrencyLimitedAuthenticationProvider provider = provider(1, 1, Duration.ofMillis(50));
+        authenticateAsync(provider);
+
+        TestingAuthenticationToken token = new TestingAuthenticationToken("user2", "pwd");
+        assertThrows(AuthenticationServiceException.class, () -> provider.authenticate(token));
+        assertThat(provider.getQueued()).isZero();
+        assertThat(provider.getRejected()).isEqualTo(1);
+    }
+
+    @Test
+    void authenticate_releases_slot() {
+        release.countDown();
+        ConcurrencyLimitedAuthenticationProvider provider = provider(1, 0, Duration.ZERO);
+        TestingAuthenticationToken token = new TestingAuthenticationToken("user1", "pwd");
+        assertSame(token, provider.authenticate(token));
+        assertSame(token, provider.authenticate(token));
+        assertThat(provider.getActive()).isZero();
+        assertThat(provider.getRejected()).isZero();
+    }
+
+    @Test
+    void bindTo_registers_meters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        provider(2, 4, Duration.ZERO).bindTo(registry);
+        assertThat(registry.get("georchestra.ldap.authentication.active").tag("ldap", "ldap1").gauge().value())
+                .isZero();
+        assertThat(registry.get("georchestra.ldap.authentication.queued").tag("ldap", "ldap1").gauge().value())
+                .isZero();
+        assertThat(registry.get("georchestra.ldap.authentication.rejected").tag("ldap", "ldap1").functionCounter()
+                .count()).isZero();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.ldap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link CredentialsCachingAuthenticationManager}
+ */
+class CredentialsCachingAuthenticationManagerTest {
+
+    private AtomicInteger delegateCalls;
+    private String validPassword;
+    private boolean ldapDown;
+    private CredentialsCachingAuthenticationManager manager;
+
+    @BeforeEach
+    void setUp() {
+        delegateCalls = new AtomicInteger();
+        validPassword = "secret";
+        ldapDown = false;
+        ReactiveAuthenticationManager delegate = auth -> Mono.defer(() -> {
+            delegateCalls.incrementAndGet();
+            if (ldapDown) {
+                return Mono.error(new AuthenticationServiceException("LDAP is down"));
+            }
+            if (validPassword.equals(auth.getCredentials())) {
+                return Mono.just(new UsernamePasswordAuthenticationToken(auth.getName(), null,
+                        List.of(new SimpleGrantedAuthority("ROLE_USER"))));
+            }
+            return Mono.error(new BadCredentialsException("bad credentials"));
+        });
+        manager = new CredentialsCachingAuthenticationManager(delegate, 100, Duration.ofMinutes(1));
+    }
+
+    private Authentication login(String username, String password) {
+        return manager.authenticate(new UsernamePasswordAuthenticationToken(username, password)).block();
+    }
+
+    @Test
+    void cachesVerifiedCredentials() {
+        Authentication first = login("user", "secret");
+        Authentication second = login("user", "secret");
+        assertThat(second).isSameAs(first);
+        assertThat(delegateCalls.get()).isEqualTo(1);
+        assertThat(manager.size()).isEqualTo(1);
+    }
+
+    @Test
+    void isVerified() {
+        assertThat(manager.isVerified("user", "secret")).isFalse();
+        login("user", "secret");
+        assertThat(manager.isVerified("user", "secret")).isTrue();
+        assertThat(manager.isVerified("user", "wrong")).isFalse();
+        assertThat(manager.isVerified("other", "secret")).isFalse();
+        assertThat(delegateCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void differentPasswordIsVerified() {
+        login("user", "secret");
+        assertThrows(BadCredentialsException.class, () -> login("user", "wrong"));
+        assertThat(delegateCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void failedAuthenticationEvictsCachedCredentials() {
+        login("user", "secret");
+        validPassword = "changed";
+        assertThrows(BadCredentialsException.class, () -> login("user", "wrong"));
+        assertThat(manager.size()).isZero();
+
+        assertThrows(BadCredentialsException.class, () -> login("user", "secret"));
+        assertThat(delegateCalls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void serviceErrorsKeepCachedCredentials() {
+        login("user", "secret");
+        ldapDown = true;
+        assertThrows(AuthenticationServiceException.class, () -> login("user", "other"));
+        assertThat(login("user", "secret")).isNotNull();
+        assertThat(delegateCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void otherAuthenticationTypesAreNotCached() {
+        manager.authenticate(new TestingAuthenticationToken("user", "secret")).block();
+        manager.authenticate(new TestingAuthenticationToken("user", "secret")).block();
+        assertThat(delegateCalls.get()).isEqualTo(2);
+        assertThat(manager.size()).isZero();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Optional;
+
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.ldap.core.support.LdapContextSource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link LdapConnectionPools}
+ */
+class LdapConnectionPoolsTest {
+
+    private LdapConnectionPools pools;
+
+    @BeforeEach
+    void setUp() {
+        pools = new LdapConnectionPools();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pools.destroy();
+    }
+
+    @Test
+    void contextSource_not_pooled_by_default() {
+        BaseLdapPathContextSource source = pools.contextSource("default", "users", "ldap://localhost:389",
+                "dc=georchestra,dc=org", Optional.empty(), Optional.empty(), null, new ConnectionPool());
+        assertThat(source).isInstanceOf(LdapContextSource.class);
+
+        source = pools.contextSource("default", "users", "ldap://localhost:389", "dc=georchestra,dc=org",
+                Optional.empty(), Optional.empty(), null, null);
+        assertThat(source).isInstanceOf(LdapContextSource.class);
+    }
+
+    @Test
+    void contextSource_pooled_when_enabled() {
+        ConnectionPool poolConfig = new ConnectionPool().setEnabled(true);
+        BaseLdapPathContextSource source = pools.contextSource("default", "users", "ldap://localhost:389",
+                "dc=georchestra,dc=org", Optional.empty(), Optional.empty(), null, poolConfig);
+        assertThat(source).isInstanceOf(PooledLdapContextSource.class);
+        assertThat(source.getBaseLdapPathAsString()).isEqualTo("dc=georchestra,dc=org");
+    }
+
+    @Test
+    void bindTo_registers_pool_gauges() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        pools.contextSource("ldap1", "users", "ldap://localhost:389", "dc=georchestra,dc=org", Optional.empty(),
+                Optional.empty(), null, new ConnectionPool().setEnabled(true));
+        pools.bindTo(registry);
+        pools.contextSource("ldap2", "authentication", "ldap://localhost:389", "dc=georchestra,dc=org",
+                Optional.empty(), Optional.empty(), null, new ConnectionPool().setEnabled(true));
+
+        assertThat(registry.get("georchestra.ldap.pool.active").tag("ldap", "ldap1").gauge().value()).isZero();
+        assertThat(registry.get("georchestra.ldap.pool.idle").tag("ldap", "ldap1").gauge().value()).isZero();
+        assertThat(registry.get("georchestra.ldap.pool.active").tag("ldap", "ldap2").tag("usage", "authentication")
+                .gauge().value()).isZero();
+    }
+}
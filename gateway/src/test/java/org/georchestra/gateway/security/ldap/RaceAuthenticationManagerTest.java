@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.DisabledException;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Test suite for {@link RaceAuthenticationManager}
+ */
+class RaceAuthenticationManagerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private Scheduler scheduler;
+    private CountDownLatch neverReleased;
+    private TestingAuthenticationToken request;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Schedulers.newBoundedElastic(4, 100, "test");
+        neverReleased = new CountDownLatch(1);
+        request = new TestingAuthenticationToken("user", "pwd");
+    }
+
+    @AfterEach
+    void tearDown() {
+        neverReleased.countDown();
+        scheduler.dispose();
+    }
+
+    private AuthenticationProvider provider(String name, long delayMillis, Supplier<RuntimeException> error) {
+        return new AuthenticationProvider() {
+            public @Override Authentication authenticate(Authentication authentication) {
+                sleep(delayMillis);
+                if (error != null) {
+                    throw error.get();
+                }
+                return new TestingAuthenticationToken(name, null);
+            }
+
+            public @Override boolean supports(Class<?> authentication) {
+                return true;
+            }
+        };
+    }
+
+    private AuthenticationProvider blocked() {
+        return new AuthenticationProvider() {
+            public @Override Authentication authenticate(Authentication authentication) {
+                try {
+                    neverReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new BadCredentialsException("blocked");
+            }
+
+            public @Override boolean supports(Class<?> authentication) {
+                return true;
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Authentication authenticate(AuthenticationProvider... providers) {
+        return new RaceAuthenticationManager(List.of(providers), scheduler).authenticate(request).block(TIMEOUT);
+    }
+
+    @Test
+    void higher_priority_success_wins() {
+        Authentication auth = authenticate(provider("ldap1", 200, null), provider("ldap2", 0, null));
+        assertThat(auth.getName()).isEqualTo("ldap1");
+    }
+
+    @Test
+    void lower_priority_success_when_higher_fails() {
+        Authentication auth = authenticate(provider("ldap1", 50, () -> new BadCredentialsException("bad")),
+                provider("ldap2", 0, null));
+        assertThat(auth.getName()).isEqualTo("ldap2");
+    }
+
+    @Test
+    void does_not_wait_for_lower_priority_providers() {
+        Authentication auth = authenticate(provider("ldap1", 0, null), blocked());
+        assertThat(auth.getName()).isEqualTo("ldap1");
+    }
+
+    @Test
+    void account_status_error_aborts_lower_priority_providers() {
+        AuthenticationProvider disabled = provider("ldap1", 0, () -> new DisabledException("disabled"));
+        AuthenticationProvider blocked = blocked();
+        assertThrows(DisabledException.class, () -> authenticate(disabled, blocked));
+    }
+
+    @Test
+    void all_failed() {
+        AuthenticationProvider ldap1 = provider("ldap1", 0, () -> new BadCredentialsException("ldap1"));
+        AuthenticationProvider ldap2 = provider("ldap2", 10, () -> new BadCredentialsException("ldap2"));
+        BadCredentialsException error = assertThrows(BadCredentialsException.class, () -> authenticate(ldap1, ldap2));
+        assertThat(error.getMessage()).isEqualTo("ldap2");
+    }
+
+    @Test
+    void lower_priority_runtime_error_does_not_discard_success() {
+        Authentication auth = authenticate(provider("ldap1", 200, null),
+                provider("ldap2", 0, () -> new IllegalStateException("ldap2 unreachable")));
+        assertThat(auth.getName()).isEqualTo("ldap1");
+    }
+
+    @Test
+    void higher_priority_runtime_error_is_not_conclusive() {
+        Authentication auth = authenticate(provider("ldap1", 0, () -> new IllegalStateException("ldap1 unreachable")),
+                provider("ldap2", 50, null));
+        assertThat(auth.getName()).isEqualTo("ldap2");
+    }
+
+    @Test
+    void runtime_error_fails_as_authentication_error() {
+        AuthenticationProvider ldap1 = provider("ldap1", 0, () -> new BadCredentialsException("ldap1"));
+        AuthenticationProvider ldap2 = provider("ldap2", 10, () -> new IllegalStateException("ldap2 unreachable"));
+        assertThrows(AuthenticationServiceException.class, () -> authenticate(ldap1, ldap2));
+    }
+}
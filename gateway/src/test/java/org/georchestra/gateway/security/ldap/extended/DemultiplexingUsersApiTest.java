@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.georchestra.security.api.UsersApi;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test suite for {@link DemultiplexingUsersApi}
+ */
+class DemultiplexingUsersApiTest {
+
+    private UsersApi usersApi;
+    private List<CompletableFuture<UsersApi>> initializations;
+
+    @BeforeEach
+    void setUp() {
+        usersApi = mock(UsersApi.class);
+        when(usersApi.findByUsername("testuser")).thenReturn(Optional.of(new GeorchestraUser()));
+        initializations = new ArrayList<>();
+    }
+
+    private DemultiplexingUsersApi lazy(Duration retryInterval) {
+        return DemultiplexingUsersApi.lazy(Map.of("ldap1", () -> {
+            CompletableFuture<UsersApi> initialization = new CompletableFuture<>();
+            initializations.add(initialization);
+            return initialization;
+        }), Map.of(), Map.of(), retryInterval);
+    }
+
+    @Test
+    void lazy_failsFastWhileInitializing() {
+        DemultiplexingUsersApi users = lazy(Duration.ZERO);
+        assertThat(users.isInitialized()).isFalse();
+        assertThatThrownBy(() -> users.findByUsername("ldap1", "testuser")).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("still being initialized");
+
+        initializations.get(0).complete(usersApi);
+        assertThat(users.isInitialized()).isTrue();
+        assertThat(users.findByUsername("ldap1", "testuser")).isPresent();
+    }
+
+    @Test
+    void lazy_retriesFailedInitialization() {
+        DemultiplexingUsersApi users = lazy(Duration.ZERO);
+        initializations.get(0).completeExceptionally(new IllegalStateException("ldap down"));
+        assertThat(users.getFailedTargetNames()).isEqualTo(Set.of("ldap1"));
+
+        assertThatThrownBy(() -> users.findByUsername("ldap1", "testuser")).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Error initializing");
+        assertThat(initializations).hasSize(2);
+        assertThat(users.getFailedTargetNames()).isEmpty();
+
+        initializations.get(1).complete(usersApi);
+        assertThat(users.findByUsername("ldap1", "testuser")).isPresent();
+    }
+
+    @Test
+    void lazy_waitsRetryIntervalBeforeRetrying() {
+        DemultiplexingUsersApi users = lazy(Duration.ofHours(1));
+        initializations.get(0).completeExceptionally(new IllegalStateException("ldap down"));
+
+        assertThatThrownBy(() -> users.findByUsername("ldap1", "testuser")).isInstanceOf(IllegalStateException.class);
+        assertThat(initializations).hasSize(1);
+        assertThat(users.getFailedTargetNames()).isEqualTo(Set.of("ldap1"));
+    }
+}
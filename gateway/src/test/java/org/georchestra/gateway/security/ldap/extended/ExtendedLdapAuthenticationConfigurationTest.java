@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.boot.context.annotation.UserConfigurations;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 import org.springframework.context.ApplicationContext;
@@ -50,6 +51,9 @@ class ExtendedLdapAuthenticationConfigurationTest {
 
             assertThat(context.getBean(DemultiplexingUsersApi.class)).hasFieldOrPropertyWithValue("targetNames",
                     Set.of());
+
+            assertThat(context.getBean("resolveGeorchestraOrganizationGlobalFilter").getClass().getName())
+                    .isEqualTo("org.springframework.beans.factory.support.NullBean");
         });
     }
 
@@ -78,9 +82,44 @@ class ExtendedLdapAuthenticationConfigurationTest {
 
             assertThat(context.getBean(DemultiplexingUsersApi.class)).hasFieldOrPropertyWithValue("targetNames",
                     Set.of("ldap1"));
+
+            assertThat(context).hasSingleBean(OrganizationsCache.class);
+            assertThat(context).hasSingleBean(ResolveGeorchestraOrganizationGlobalFilter.class);
+        });
+    }
+
+    public @Test void contextContributions_lazy_initialization() {
+        runner.withPropertyValues(""//
+                , "georchestra.gateway.security.ldap-initialization.lazy: true" //
+                , "georchestra.gateway.security.ldap.ldap1.enabled: true" //
+                , "georchestra.gateway.security.ldap.ldap1.extended: true" //
+                , "georchestra.gateway.security.ldap.ldap1.url: ldap://ldap1.test.com:839" //
+                , "georchestra.gateway.security.ldap.ldap1.baseDn: dc=georchestra,dc=org" //
+                , "georchestra.gateway.security.ldap.ldap1.users.rdn: ou=users,dc=georchestra,dc=org" //
+                , "georchestra.gateway.security.ldap.ldap1.users.searchFilter: (uid={0})" //
+                , "georchestra.gateway.security.ldap.ldap1.roles.rdn: ou=roles" //
+                , "georchestra.gateway.security.ldap.ldap1.roles.searchFilter: (member={0})" //
+                , "georchestra.gateway.security.ldap.ldap1.orgs.rdn: ou=orgs" //
+        ).run(context -> {
+            assertThat(context).hasNotFailed();
+            DemultiplexingUsersApi users = context.getBean(DemultiplexingUsersApi.class);
+            assertThat(users.getTargetNames()).isEqualTo(Set.of("ldap1"));
+            assertThat(context).hasSingleBean(LdapInitializationHealthIndicator.class);
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!users.isInitialized() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(users.isInitialized()).isTrue();
+            assertThat(context.getBean(LdapInitializationHealthIndicator.class).health().getStatus())
+                    .isEqualTo(Status.UP);
         });
     }
 
+    public @Test void contextContributions_eager_initialization_has_no_health_indicator() {
+        runner.run(context -> assertThat(context).doesNotHaveBean(LdapInitializationHealthIndicator.class));
+    }
+
     @SuppressWarnings("unchecked")
     public @Test void contextContributions_multiple_configs() {
         runner.withPropertyValues(""//
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.ldap.userdetails.LdapUserDetailsImpl;
+
+/**
+ * Test suite for {@link LdapAuthenticationTokenCodec}
+ */
+class LdapAuthenticationTokenCodecTest {
+
+    private final LdapAuthenticationTokenCodec codec = new LdapAuthenticationTokenCodec();
+
+    private UsernamePasswordAuthenticationToken ldapToken() {
+        List<GrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("ROLE_USER"),
+                new SimpleGrantedAuthority("ROLE_ADMINISTRATOR"));
+        LdapUserDetailsImpl.Essence essence = new LdapUserDetailsImpl.Essence();
+        essence.setDn("uid=testuser,ou=users,dc=georchestra,dc=org");
+        essence.setUsername("testuser");
+        essence.setPassword("secret");
+        essence.setAuthorities(authorities);
+        return new UsernamePasswordAuthenticationToken(essence.createUserDetails(), "secret", authorities);
+    }
+
+    private Authentication roundTrip(Authentication token) throws IOException {
+        assertThat(codec.canEncode(token)).isTrue();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            codec.encode(token, out);
+        }
+        return codec.decode(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    void georchestraToken() throws IOException {
+        UsernamePasswordAuthenticationToken orig = ldapToken();
+        Authentication decoded = roundTrip(new GeorchestraUserNamePasswordAuthenticationToken("default", orig));
+
+        assertThat(decoded).isInstanceOf(GeorchestraUserNamePasswordAuthenticationToken.class);
+        assertThat(((GeorchestraUserNamePasswordAuthenticationToken) decoded).getConfigName()).isEqualTo("default");
+        assertThat(decoded.getName()).isEqualTo("testuser");
+        assertThat(decoded.isAuthenticated()).isTrue();
+        assertThat(decoded.getAuthorities()).isEqualTo(orig.getAuthorities());
+
+        LdapUserDetailsImpl principal = (LdapUserDetailsImpl) decoded.getPrincipal();
+        assertThat(principal.getDn()).isEqualTo("uid=testuser,ou=users,dc=georchestra,dc=org");
+        assertThat(principal.getAuthorities()).isEqualTo(((LdapUserDetailsImpl) orig.getPrincipal()).getAuthorities());
+    }
+
+    @Test
+    void credentialsNotStored() throws IOException {
+        Authentication decoded = roundTrip(ldapToken());
+        assertThat(decoded).isExactlyInstanceOf(UsernamePasswordAuthenticationToken.class);
+        assertThat(decoded.getCredentials()).isNull();
+        assertThat(((LdapUserDetailsImpl) decoded.getPrincipal()).getPassword()).isNull();
+    }
+
+    @Test
+    void nonLdapPrincipal() {
+        User principal = new User("testuser", "secret", List.of());
+        UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(principal, null,
+                List.of());
+        assertThat(codec.canEncode(token)).isFalse();
+    }
+}
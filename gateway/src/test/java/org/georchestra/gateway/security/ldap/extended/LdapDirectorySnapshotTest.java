@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.DirectorySnapshot;
+import org.georchestra.security.api.UsersApi;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.core.AttributesMapper;
+
+/**
+ * Test suite for {@link LdapDirectorySnapshot}
+ */
+class LdapDirectorySnapshotTest {
+
+    private static final Pattern SINCE = Pattern.compile("modifyTimestamp>=([^)]+)");
+
+    private UsersApi users;
+    private Map<String, List<Attributes>> entries;
+    private List<String> searches;
+    private Instant now;
+    private LdapDirectorySnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        users = mock(UsersApi.class);
+        when(users.findByUsername(anyString())).thenReturn(Optional.empty());
+        entries = new HashMap<>();
+        searches = new ArrayList<>();
+        now = Instant.parse("2023-04-13T12:00:00Z");
+
+        ExtendedLdapConfig config = ExtendedLdapConfig.builder()//
+                .name("ldap1").url("ldap://localhost:389").baseDn("dc=georchestra,dc=org")//
+                .usersRdn("ou=users").usersSearchFilter("(uid={0})")//
+                .rolesRdn("ou=roles").rolesSearchFilter("(member={0})")//
+                .orgsRdn("ou=orgs")//
+                .adminDn(Optional.empty()).adminPassword(Optional.empty())//
+                .snapshot(new DirectorySnapshot().setEnabled(true).setFullSyncInterval(Duration.ofHours(1)))//
+                .build();
+
+        Clock clock = new Clock() {
+            public @Override ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            public @Override Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            public @Override Instant instant() {
+                return now;
+            }
+        };
+        snapshot = new LdapDirectorySnapshot(config, users, null, clock) {
+            /**
+             * Returns the fixture entries under {@code base}, filtering by
+             * modifyTimestamp on incremental searches
+             */
+            @Override
+            void search(String base, String filter, String[] attributes, AttributesMapper<?> mapper) {
+                searches.add(base + filter);
+                Matcher matcher = SINCE.matcher(filter);
+                String since = matcher.find() ? matcher.group(1) : null;
+                for (Attributes entry : entries.getOrDefault(base, List.of())) {
+                    String timestamp = (String) value(entry, "modifyTimestamp");
+                    if (since == null || timestamp.compareTo(since) >= 0) {
+                        try {
+                            mapper.mapFromAttributes(entry);
+                        } catch (NamingException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Adds a user entry, and the user the users api returns for it
+     */
+    private GeorchestraUser user(String timestamp, String username, String org, String... roles) {
+        entry("ou=users", timestamp, "uid", username);
+        GeorchestraUser user = new GeorchestraUser();
+        user.setUsername(username);
+        user.setOrganization(org);
+        user.setRoles(new ArrayList<>(List.of(roles)));
+        user.setLastUpdated("users-api-" + timestamp);
+        when(users.findByUsername(username)).thenReturn(Optional.of(user));
+        return user;
+    }
+
+    private void entry(String base, String timestamp, String attribute, String value, String... members) {
+        // replaces the entry, if any
+        entries.computeIfAbsent(base, b -> new ArrayList<>()).removeIf(entry -> value.equals(value(entry, attribute)));
+        BasicAttributes attributes = new BasicAttributes(true);
+        attributes.put(attribute, value);
+        attributes.put("modifyTimestamp", timestamp);
+        if (members.length > 0) {
+            BasicAttribute member = new BasicAttribute("member");
+            for (String uid : members) {
+                member.add("uid=" + uid + ",ou=users,dc=georchestra,dc=org");
+            }
+            attributes.put(member);
+        }
+        entries.get(base).add(attributes);
+    }
+
+    private static Object value(Attributes entry, String attribute) {
+        try {
+            return entry.get(attribute).get();
+        } catch (NamingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private GeorchestraUser find(String username) {
+        return snapshot.findByUsername(username).orElseThrow();
+    }
+
+    @Test
+    void notLoaded() {
+        assertThat(snapshot.isLoaded()).isFalse();
+        assertThat(snapshot.findByUsername("testuser")).isEmpty();
+        assertThat(snapshot.ageSeconds()).isNaN();
+        assertThat(snapshot.lagSeconds()).isNaN();
+    }
+
+    @Test
+    void fullSync() {
+        GeorchestraUser testuser = user("20230413100000Z", "testuser", "PSC", "USER");
+        GeorchestraUser testadmin = user("20230413100000Z", "testadmin", "PSC", "USER", "ADMINISTRATOR");
+
+        snapshot.sync();
+
+        assertThat(searches).containsExactly("ou=roles(objectClass=*)", "ou=orgs(objectClass=*)", "ou=users(uid=*)");
+        assertThat(snapshot.isLoaded()).isTrue();
+        assertThat(snapshot.size()).isEqualTo(2);
+        // the users api users, including their lastUpdated
+        assertThat(find("testuser")).usingRecursiveComparison().isEqualTo(testuser);
+        assertThat(find("testadmin")).usingRecursiveComparison().isEqualTo(testadmin);
+        assertThat(snapshot.findByUsername("nobody")).isEmpty();
+
+        now = now.plusSeconds(30);
+        assertThat(snapshot.ageSeconds()).isEqualTo(30d);
+        assertThat(snapshot.lagSeconds()).isEqualTo(30d);
+    }
+
+    @Test
+    void fullSync_onlyFetchesChangedUsers() {
+        user("20230413100000Z", "testuser", "PSC", "USER");
+        user("20230413100000Z", "testadmin", "PSC", "ADMINISTRATOR");
+        user("20230413100000Z", "testeditor", "PSC");
+        entry("ou=roles", "20230413100000Z", "cn", "ADMINISTRATOR", "testadmin");
+        snapshot.sync();
+
+        // testuser modified, testeditor added to a role, testadmin unchanged
+        user("20230413110000Z", "testuser", "C2C", "USER");
+        entry("ou=roles", "20230413110000Z", "cn", "ADMINISTRATOR", "testadmin", "testeditor");
+        user("20230413100000Z", "testeditor", "PSC", "ADMINISTRATOR");
+        clearInvocations(users);
+
+        now = now.plus(Duration.ofHours(1));
+        snapshot.sync();
+
+        verify(users).findByUsername("testuser");
+        verify(users).findByUsername("testeditor");
+        verify(users, never()).findByUsername("testadmin");
+        assertThat(find("testuser").getOrganization()).isEqualTo("C2C");
+        assertThat(find("testeditor").getRoles()).containsExactly("ADMINISTRATOR");
+        assertThat(find("testadmin").getRoles()).containsExactly("ADMINISTRATOR");
+    }
+
+    @Test
+    void fullSync_dropsDeletedUsers() {
+        user("20230413100000Z", "testuser", "PSC", "USER");
+        snapshot.sync();
+        assertThat(snapshot.findByUsername("testuser")).isPresent();
+
+        entries.clear();
+        now = now.plus(Duration.ofHours(1));
+        snapshot.sync();
+        assertThat(snapshot.findByUsername("testuser")).isEmpty();
+    }
+
+    @Test
+    void findByUsername_returnsCopies() {
+        user("20230413100000Z", "testuser", "PSC", "USER");
+        snapshot.sync();
+
+        GeorchestraUser user = find("testuser");
+        user.getRoles().add("ROLE_ADMINISTRATOR");
+        user.setOrganization("C2C");
+
+        GeorchestraUser other = find("testuser");
+        assertThat(other).isNotSameAs(user);
+        assertThat(other.getRoles()).containsExactly("USER");
+        assertThat(other.getOrganization()).isEqualTo("PSC");
+    }
+
+    @Test
+    void incrementalSync_modifiedUser() {
+        user("20230413100000Z", "testuser", "PSC", "USER");
+        user("20230413090000Z", "testadmin", "PSC", "ADMINISTRATOR");
+        snapshot.sync();
+        clearInvocations(users);
+        searches.clear();
+
+        GeorchestraUser newuser = user("20230413110000Z", "newuser", "C2C", "USER");
+        user("20230413110000Z", "testuser", "PSC", "USER", "EDITOR");
+
+        now = now.plusSeconds(60);
+        snapshot.sync();
+
+        assertThat(searches).containsExactly("ou=users(&(uid=*)(modifyTimestamp>=20230413100000Z))",
+                "ou=roles(modifyTimestamp>=20230413100000Z)", "ou=orgs(modifyTimestamp>=20230413100000Z)");
+        verify(users, never()).findByUsername("testadmin");
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(find("newuser")).usingRecursiveComparison().isEqualTo(newuser);
+        assertThat(find("testuser").getRoles()).containsExactly("USER", "EDITOR");
+        assertThat(find("testuser").getLastUpdated()).isEqualTo("users-api-20230413110000Z");
+    }
+
+    @Test
+    void incrementalSync_modifiedRole_refreshesCurrentAndFormerMembers() {
+        user("20230413090000Z", "testuser", "PSC", "USER");
+        user("20230413090000Z", "testadmin", "PSC", "ADMIN");
+        user("20230413090000Z", "testeditor", "PSC", "EDITOR");
+        entry("ou=roles", "20230413100000Z", "cn", "ADMIN", "testadmin");
+        snapshot.sync();
+        clearInvocations(users);
+
+        // testadmin removed from ADMIN, testuser added
+        entry("ou=roles", "20230413110000Z", "cn", "ADMIN", "testuser");
+        GeorchestraUser testuser = find("testuser");
+        testuser.setRoles(new ArrayList<>(List.of("USER", "ADMIN")));
+        when(users.findByUsername("testuser")).thenReturn(Optional.of(testuser));
+        GeorchestraUser testadmin = find("testadmin");
+        testadmin.setRoles(new ArrayList<>());
+        when(users.findByUsername("testadmin")).thenReturn(Optional.of(testadmin));
+
+        now = now.plusSeconds(60);
+        snapshot.sync();
+
+        assertThat(find("testuser").getRoles()).containsExactly("USER", "ADMIN");
+        assertThat(find("testadmin").getRoles()).isEmpty();
+        verify(users, never()).findByUsername("testeditor");
+    }
+
+    @Test
+    void incrementalSync_dropsUsersRemovedFromTheirGroups() {
+        user("20230413090000Z", "testuser", "PSC", "USER");
+        entry("ou=orgs", "20230413100000Z", "cn", "PSC", "testuser");
+        snapshot.sync();
+
+        // deleting a user removes it from its organization and roles
+        entries.get("ou=users").clear();
+        entry("ou=orgs", "20230413110000Z", "cn", "PSC");
+        when(users.findByUsername("testuser")).thenReturn(Optional.empty());
+
+        now = now.plusSeconds(60);
+        snapshot.sync();
+        assertThat(snapshot.findByUsername("testuser")).isEmpty();
+    }
+
+    @Test
+    void fullSyncInterval() {
+        user("20230413100000Z", "testuser", "PSC", "USER");
+        snapshot.sync();
+        now = now.plus(Duration.ofMinutes(59));
+        snapshot.sync();
+        assertThat(searches).filteredOn(search -> search.endsWith("(objectClass=*)")).hasSize(2);
+
+        now = now.plus(Duration.ofMinutes(1));
+        snapshot.sync();
+        assertThat(searches).filteredOn(search -> search.endsWith("(objectClass=*)")).hasSize(4);
+    }
+
+    @Test
+    void syncFailure_keepsSnapshot() {
+        user("20230413090000Z", "testuser", "PSC", "USER");
+        user("20230413090000Z", "testadmin", "PSC", "ADMIN");
+        entry("ou=roles", "20230413100000Z", "cn", "ADMIN", "testadmin");
+        snapshot.sync();
+
+        entry("ou=roles", "20230413110000Z", "cn", "ADMIN");
+        when(users.findByUsername("testadmin")).thenThrow(new IllegalStateException("LDAP is down"));
+        now = now.plusSeconds(60);
+        assertThrows(IllegalStateException.class, snapshot::sync);
+        snapshot.syncQuietly();
+
+        assertThat(find("testadmin").getRoles()).containsExactly("ADMIN");
+        assertThat(snapshot.lagSeconds()).isEqualTo(60d);
+
+        // the former member is still refreshed once the LDAP is back
+        GeorchestraUser testadmin = find("testadmin");
+        testadmin.setRoles(new ArrayList<>());
+        doReturn(Optional.of(testadmin)).when(users).findByUsername("testadmin");
+        snapshot.sync();
+        assertThat(find("testadmin").getRoles()).isEmpty();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.georchestra.security.api.OrganizationsApi;
+import org.georchestra.security.model.Organization;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test suite for {@link OrganizationsCache}
+ */
+class OrganizationsCacheTest {
+
+    private OrganizationsApi ldap1;
+    private OrganizationsApi ldap2;
+    private OrganizationsCache cache;
+
+    @BeforeEach
+    void setUp() {
+        ldap1 = mock(OrganizationsApi.class);
+        ldap2 = mock(OrganizationsApi.class);
+        when(ldap1.findByShortName(anyString())).thenReturn(Optional.empty());
+        when(ldap2.findByShortName(anyString())).thenReturn(Optional.empty());
+        Map<String, OrganizationsApi> targets = new LinkedHashMap<>();
+        targets.put("ldap1", ldap1);
+        targets.put("ldap2", ldap2);
+        cache = new OrganizationsCache(targets, 100, Duration.ofMinutes(1));
+    }
+
+    private Organization org(String shortName, String name) {
+        Organization org = new Organization();
+        org.setShortName(shortName);
+        org.setName(name);
+        return org;
+    }
+
+    @Test
+    void findByShortName_fetchesOncePerOrganization() {
+        Organization psc = org("PSC", "geOrchestra PSC");
+        when(ldap1.findByShortName("PSC")).thenReturn(Optional.of(psc));
+
+        assertThat(cache.findByShortName("PSC")).containsSame(psc);
+        assertThat(cache.findByShortName("PSC")).containsSame(psc);
+        // so is its encoded payload
+        assertThat(cache.resolve("PSC").getPayload()).isSameAs(cache.resolve("PSC").getPayload());
+
+        verify(ldap1, times(1)).findByShortName("PSC");
+        verify(ldap2, never()).findByShortName("PSC");
+    }
+
+    @Test
+    void findByShortName_fallsBackToNextConfig() {
+        Organization c2c = org("C2C", "Camptocamp");
+        when(ldap2.findByShortName("C2C")).thenReturn(Optional.of(c2c));
+
+        assertThat(cache.findByShortName("C2C")).containsSame(c2c);
+        verify(ldap1, times(1)).findByShortName("C2C");
+        verify(ldap2, times(1)).findByShortName("C2C");
+    }
+
+    @Test
+    void findByShortName_cachesMisses() {
+        assertThat(cache.findByShortName("unknown")).isEmpty();
+        assertThat(cache.findByShortName("unknown")).isEmpty();
+        verify(ldap1, times(1)).findByShortName("unknown");
+        verify(ldap2, times(1)).findByShortName("unknown");
+    }
+
+    @Test
+    void warmUp_loadsAllInBulk_firstConfigWins() {
+        Organization psc1 = org("PSC", "geOrchestra PSC");
+        Organization psc2 = org("PSC", "duplicate");
+        Organization c2c = org("C2C", "Camptocamp");
+        when(ldap1.findAll()).thenReturn(List.of(psc1));
+        when(ldap2.findAll()).thenReturn(List.of(psc2, c2c));
+
+        cache.warmUp();
+        assertThat(cache.size()).isEqualTo(2);
+
+        assertThat(cache.findByShortName("PSC")).containsSame(psc1);
+        assertThat(cache.findByShortName("C2C")).containsSame(c2c);
+        verify(ldap1, never()).findByShortName(anyString());
+        verify(ldap2, never()).findByShortName(anyString());
+    }
+
+    @Test
+    void warmUp_ignoresFailures() {
+        Organization c2c = org("C2C", "Camptocamp");
+        when(ldap1.findAll()).thenThrow(new IllegalStateException("ldap1 is down"));
+        when(ldap2.findAll()).thenReturn(List.of(c2c));
+
+        cache.warmUp();
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.findByShortName("C2C")).containsSame(c2c);
+    }
+
+    @Test
+    void disabled_fetchesOnEachCall() {
+        cache = new OrganizationsCache(Map.of("ldap1", ldap1), 0, Duration.ofMinutes(1));
+        cache.findByShortName("PSC");
+        cache.findByShortName("PSC");
+        verify(ldap1, times(2)).findByShortName("PSC");
+    }
+
+    @Test
+    void bindTo() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        cache.findByShortName("PSC");
+        assertThat(registry.find("cache.gets").tag("cache", OrganizationsCache.CACHE_NAME).meters()).isNotEmpty();
+    }
+}
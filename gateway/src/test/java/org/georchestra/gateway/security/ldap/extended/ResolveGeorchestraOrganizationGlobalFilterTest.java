@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.georchestra.gateway.model.GeorchestraOrganizations;
+import org.georchestra.gateway.model.GeorchestraUsers;
+import org.georchestra.security.model.GeorchestraUser;
+import org.georchestra.security.model.Organization;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link ResolveGeorchestraOrganizationGlobalFilter}
+ */
+class ResolveGeorchestraOrganizationGlobalFilterTest {
+
+    private OrganizationsCache organizations;
+    private ResolveGeorchestraOrganizationGlobalFilter filter;
+    private GatewayFilterChain mockChain;
+    private MockServerWebExchange exchange;
+
+    @BeforeEach
+    void setUp() {
+        organizations = mock(OrganizationsCache.class);
+        when(organizations.resolve(anyString())).thenReturn(new OrganizationsCache.Resolved(Optional.empty()));
+        filter = new ResolveGeorchestraOrganizationGlobalFilter(organizations);
+        mockChain = mock(GatewayFilterChain.class);
+        when(mockChain.filter(any())).thenReturn(Mono.empty());
+        exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/test").build());
+    }
+
+    @Test
+    void testFilter_NoUser() {
+        filter.filter(exchange, mockChain).block();
+        verify(mockChain).filter(same(exchange));
+        verify(organizations, never()).resolve(anyString());
+        assertThat(GeorchestraOrganizations.resolve(exchange)).isEmpty();
+    }
+
+    @Test
+    void testFilter_UserWithoutOrganization() {
+        GeorchestraUsers.store(exchange, new GeorchestraUser());
+        filter.filter(exchange, mockChain).block();
+        verify(mockChain).filter(same(exchange));
+        verify(organizations, never()).resolve(anyString());
+    }
+
+    @Test
+    void testFilter_OrganizationNotFound() {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setOrganization("PSC");
+        GeorchestraUsers.store(exchange, user);
+
+        filter.filter(exchange, mockChain).block();
+        verify(mockChain).filter(same(exchange));
+        assertThat(GeorchestraOrganizations.resolve(exchange)).isEmpty();
+    }
+
+    @Test
+    void testFilter_OrganizationResolved() {
+        Organization org = new Organization();
+        org.setShortName("PSC");
+        OrganizationsCache.Resolved resolved = new OrganizationsCache.Resolved(Optional.of(org));
+        when(organizations.resolve("PSC")).thenReturn(resolved);
+        GeorchestraUser user = new GeorchestraUser();
+        user.setOrganization("PSC");
+        GeorchestraUsers.store(exchange, user);
+
+        filter.filter(exchange, mockChain).block();
+        verify(mockChain).filter(same(exchange));
+        assertThat(GeorchestraOrganizations.resolve(exchange)).containsSame(org);
+        assertThat(GeorchestraOrganizations.payload(exchange)).containsSame(resolved.getPayload());
+    }
+
+    @Test
+    void testFilter_OrganizationCached() {
+        Organization org = new Organization();
+        org.setShortName("PSC");
+        when(organizations.getIfPresent("PSC")).thenReturn(new OrganizationsCache.Resolved(Optional.of(org)));
+        GeorchestraUser user = new GeorchestraUser();
+        user.setOrganization("PSC");
+        GeorchestraUsers.store(exchange, user);
+
+        filter.filter(exchange, mockChain).block();
+        verify(organizations, never()).resolve(anyString());
+        assertThat(GeorchestraOrganizations.resolve(exchange)).containsSame(org);
+    }
+
+    @Test
+    void testFilter_CacheMissOffCallingThread() {
+        final Thread caller = Thread.currentThread();
+        AtomicReference<Thread> lookupThread = new AtomicReference<>();
+        when(organizations.resolve("PSC")).thenAnswer(invocation -> {
+            lookupThread.set(Thread.currentThread());
+            return new OrganizationsCache.Resolved(Optional.empty());
+        });
+        GeorchestraUser user = new GeorchestraUser();
+        user.setOrganization("PSC");
+        GeorchestraUsers.store(exchange, user);
+
+        filter.filter(exchange, mockChain).block();
+        assertThat(lookupThread.get()).isNotNull().isNotSameAs(caller);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.georchestra.gateway.security.ldap.extended;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+
+import org.georchestra.gateway.security.ldap.LdapConfigProperties.SingleSearch;
+import org.georchestra.security.api.UsersApi;
+import org.georchestra.security.model.GeorchestraUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.DirContextAdapter;
+import org.springframework.ldap.core.LdapOperations;
+import org.springframework.ldap.support.LdapUtils;
+
+/**
+ * Test suite for {@link SingleSearchUserLookup}
+ */
+class SingleSearchUserLookupTest {
+
+    private LdapOperations ldap;
+    private UsersApi users;
+    private List<BasicAttributes> entries;
+    private ExtendedLdapConfig config;
+    private SingleSearchUserLookup lookup;
+
+    @BeforeEach
+    void setUp() {
+        ldap = mock(LdapOperations.class);
+        users = mock(UsersApi.class);
+        entries = new ArrayList<>();
+        when(ldap.search(anyString(), anyString(), any(SearchControls.class), any(ContextMapper.class)))
+                .thenAnswer(invocation -> {
+                    ContextMapper<?> mapper = invocation.getArgument(3);
+                    List<Object> mapped = new ArrayList<>();
+                    for (BasicAttributes entry : entries) {
+                        mapped.add(mapper.mapFromContext(
+                                new DirContextAdapter(entry, LdapUtils.newLdapName("uid=testuser,ou=users"))));
+                    }
+                    return mapped;
+                });
+
+        config = config(new SingleSearch());
+        lookup = new SingleSearchUserLookup(config, ldap, users);
+    }
+
+    private ExtendedLdapConfig config(SingleSearch singleSearch) {
+        return ExtendedLdapConfig.builder()//
+                .name("ldap1").url("ldap://localhost:389").baseDn("dc=georchestra,dc=org")//
+                .usersRdn("ou=users").usersSearchFilter("(uid={0})")//
+                .rolesRdn("ou=roles").rolesSearchFilter("(member={0})")//
+                .orgsRdn("ou=orgs")//
+                .adminDn(Optional.empty()).adminPassword(Optional.empty())//
+                .singleSearch(singleSearch)//
+                .build();
+    }
+
+    private BasicAttributes entry(String modifyTimestamp, String... memberOf) {
+        BasicAttributes attributes = new BasicAttributes(true);
+        if (modifyTimestamp != null) {
+            attributes.put(SingleSearchUserLookup.MODIFY_TIMESTAMP, modifyTimestamp);
+        }
+        if (memberOf.length > 0) {
+            BasicAttribute attribute = new BasicAttribute(SingleSearchUserLookup.MEMBER_OF);
+            for (String dn : memberOf) {
+                attribute.add(dn);
+            }
+            attributes.put(attribute);
+        }
+        entries.add(attributes);
+        return attributes;
+    }
+
+    private GeorchestraUser user(String organization, String lastUpdated) {
+        GeorchestraUser user = new GeorchestraUser();
+        user.setId("ed0a4e9c-9e4f-4b8b-9d4c-1a2b3c4d5e6f");
+        user.setUsername("testuser");
+        user.setEmail("testuser@georchestra.org");
+        user.setOrganization(organization);
+        user.setLastUpdated(lastUpdated);
+        user.setRoles(List.of("USER"));
+        doReturn(Optional.of(user)).when(users).findByUsername("testuser");
+        return user;
+    }
+
+    @Test
+    void findByUsername_sameAsUsersApi() {
+        entry("20220101000000Z", "cn=PSC,ou=orgs,dc=georchestra,dc=org");
+        GeorchestraUser expected = user("PSC", "a1b2c3");
+
+        GeorchestraUser user = lookup.findByUsername("testuser", List.of("ROLE_USER")).orElseThrow();
+        assertThat(user.getId()).isEqualTo(expected.getId());
+        assertThat(user.getUsername()).isEqualTo("testuser");
+        assertThat(user.getEmail()).isEqualTo("testuser@georchestra.org");
+        assertThat(user.getOrganization()).isEqualTo("PSC");
+        assertThat(user.getLastUpdated()).isEqualTo("a1b2c3");
+        assertThat(user.getRoles()).containsExactly("USER");
+    }
+
+    @Test
+    void findByUsername_singleProjectedSearch() {
+        lookup.findByUsername("test*)(uid=admin", List.of());
+
+        ArgumentCaptor<SearchControls> controls = ArgumentCaptor.forClass(SearchControls.class);
+        verify(ldap).search(eq("ou=users"), eq("(uid=test\\2a\\29\\28uid=admin)"), controls.capture(),
+                any(ContextMapper.class));
+        assertThat(controls.getValue().getReturningAttributes()).containsExactly(SingleSearchUserLookup.ATTRIBUTES);
+        assertThat(controls.getValue().getSearchScope()).isEqualTo(SearchControls.SUBTREE_SCOPE);
+    }
+
+    @Test
+    void findByUsername_reusesUnchangedUser() {
+        entry("20220101000000Z", "cn=PSC,ou=orgs,dc=georchestra,dc=org");
+        user("PSC", "a1b2c3");
+
+        GeorchestraUser first = lookup.findByUsername("testuser", List.of("ROLE_USER")).orElseThrow();
+        first.setOrganization("modified by a customizer");
+        GeorchestraUser second = lookup.findByUsername("testuser", List.of("ROLE_USER")).orElseThrow();
+        assertThat(second.getOrganization()).isEqualTo("PSC");
+        verify(users, times(1)).findByUsername("testuser");
+    }
+
+    @Test
+    void findByUsername_refreshesChangedUser() {
+        BasicAttributes entry = entry("20220101000000Z", "cn=PSC,ou=orgs,dc=georchestra,dc=org");
+        user("PSC", "a1b2c3");
+        lookup.findByUsername("testuser", List.of("ROLE_USER"));
+
+        entry.put(SingleSearchUserLookup.MEMBER_OF, "cn=C2C,ou=orgs,dc=georchestra,dc=org");
+        user("C2C", "d4e5f6");
+        GeorchestraUser user = lookup.findByUsername("testuser", List.of("ROLE_USER")).orElseThrow();
+        assertThat(user.getOrganization()).isEqualTo("C2C");
+        assertThat(user.getLastUpdated()).isEqualTo("d4e5f6");
+        verify(users, times(2)).findByUsername("testuser");
+    }
+
+    @Test
+    void findByUsername_noModifyTimestampNorMemberOf() {
+        entry(null);
+        user("PSC", "a1b2c3");
+        lookup = new SingleSearchUserLookup(config(new SingleSearch().setMaxAge(Duration.ZERO)), ldap, users);
+
+        assertThat(lookup.findByUsername("testuser", List.of()).orElseThrow().getOrganization()).isEqualTo("PSC");
+        assertThat(lookup.findByUsername("testuser", List.of()).orElseThrow().getOrganization()).isEqualTo("PSC");
+        // without change tracking attributes, users are only reused up to the max age
+        verify(users, times(2)).findByUsername("testuser");
+    }
+
+    @Test
+    void findByUsername_notFound() {
+        user("PSC", "a1b2c3");
+        assertThat(lookup.findByUsername("testuser", List.of("ROLE_USER"))).isEmpty();
+    }
+
+    @Test
+    void findByUsername_ambiguous() {
+        entry("20220101000000Z");
+        entry("20220101000000Z");
+        user("PSC", "a1b2c3");
+        assertThat(lookup.findByUsername("testuser", List.of("ROLE_USER"))).isEmpty();
+    }
+
+    @Test
+    void demultiplexingUsersApi_prefersLookupWhenRolesAreKnown() {
+        entry("20220101000000Z", "cn=C2C,ou=orgs,dc=georchestra,dc=org");
+        user("C2C", "a1b2c3");
+        DemultiplexingUsersApi api = new DemultiplexingUsersApi(Map.of("ldap1", users), Map.of(),
+                Map.of("ldap1", lookup));
+
+        GeorchestraUser user = api.findByUsername("ldap1", "testuser", List.of("ROLE_USER")).orElseThrow();
+        assertThat(user.getOrganization()).isEqualTo("C2C");
+        assertThat(user.getRoles()).containsExactly("USER");
+
+        assertThat(api.findByUsername("ldap1", "testuser")).isPresent();
+        assertThat(api.findByUsername("ldap1", "testuser", List.of("ROLE_USER"))).isPresent();
+        verify(users, times(2)).findByUsername("testuser");
+    }
+
+    @Test
+    void findByUsername_refreshesUserWithChangedRoles() {
+        entry("20220101000000Z");
+        user("PSC", "a1b2c3");
+        lookup.findByUsername("testuser", List.of("ROLE_USER"));
+
+        // e.g. added to a role, which only modifies the role entry
+        GeorchestraUser updated = user("PSC", "a1b2c3");
+        updated.setRoles(List.of("USER", "ADMINISTRATOR"));
+        GeorchestraUser user = lookup.findByUsername("testuser", List.of("ROLE_USER", "ROLE_ADMINISTRATOR"))
+                .orElseThrow();
+        assertThat(user.getRoles()).containsExactly("USER", "ADMINISTRATOR");
+        verify(users, times(2)).findByUsername("testuser");
+    }
+
+    @Test
+    void demultiplexingUsersApi_sameUserWithOrWithoutLookup() {
+        entry("20220101000000Z", "cn=PSC,ou=orgs,dc=georchestra,dc=org");
+        GeorchestraUser expected = user("PSC", "a1b2c3");
+        expected.setRoles(List.of("USER", "myrole"));
+        final List<String> granted = List.of("ROLE_USER", "ROLE_MYROLE");
+
+        GeorchestraUser usersApi = new DemultiplexingUsersApi(Map.of("ldap1", users), Map.of(), Map.of())
+                .findByUsername("ldap1", "testuser", granted).orElseThrow();
+        GeorchestraUser singleSearch = new DemultiplexingUsersApi(Map.of("ldap1", users), Map.of(),
+                Map.of("ldap1", lookup)).findByUsername("ldap1", "testuser", granted).orElseThrow();
+
+        assertThat(singleSearch).isNotSameAs(usersApi).usingRecursiveComparison().isEqualTo(usersApi);
+        assertThat(singleSearch.getRoles()).isEqualTo(usersApi.getRoles());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.client.userinfo.ReactiveOAuth2UserService;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link CachingOidcUserInfoService}
+ */
+class CachingOidcUserInfoServiceTest {
+
+    private AtomicInteger calls;
+    private CachingOidcUserInfoService service;
+    private ClientRegistration registration;
+
+    @BeforeEach
+    void setUp() {
+        calls = new AtomicInteger();
+        ReactiveOAuth2UserService<OAuth2UserRequest, OAuth2User> delegate = request -> Mono.fromSupplier(() -> {
+            calls.incrementAndGet();
+            return new DefaultOAuth2User(List.of(new SimpleGrantedAuthority("ROLE_USER")),
+                    Map.of("sub", "user-" + calls.get()), "sub");
+        });
+        service = new CachingOidcUserInfoService(delegate, 100, Duration.ofMinutes(1));
+        registration = ClientRegistration.withRegistrationId("idp")//
+                .clientId("gateway")//
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)//
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")//
+                .authorizationUri("https://idp/authorize")//
+                .tokenUri("https://idp/token")//
+                .userInfoUri("https://idp/userinfo")//
+                .userNameAttributeName("sub")//
+                .build();
+    }
+
+    private OAuth2AccessToken accessToken(String... scopes) {
+        return new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "token-" + System.nanoTime(),
+                Instant.now(), Instant.now().plusSeconds(60), Set.of(scopes));
+    }
+
+    private OidcUserRequest oidcRequest(String subject, String... scopes) {
+        OidcIdToken idToken = OidcIdToken.withTokenValue("id-token").subject(subject).issuedAt(Instant.now())
+                .expiresAt(Instant.now().plusSeconds(60)).build();
+        return new OidcUserRequest(registration, accessToken(scopes), idToken);
+    }
+
+    @Test
+    void reusesUserInfoOfSameSubject() {
+        OAuth2User first = service.loadUser(oidcRequest("jdoe")).block();
+        OAuth2User second = service.loadUser(oidcRequest("jdoe")).block();
+        assertThat(second.getAttributes()).isEqualTo(first.getAttributes());
+        assertThat(second.getName()).isEqualTo(first.getName());
+        assertThat(calls.get()).isEqualTo(1);
+
+        service.loadUser(oidcRequest("other")).block();
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(service.size()).isEqualTo(2);
+    }
+
+    @Test
+    void plainOAuth2RequestsAreNotCached() {
+        service.loadUser(new OAuth2UserRequest(registration, accessToken())).block();
+        service.loadUser(new OAuth2UserRequest(registration, accessToken())).block();
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(service.size()).isZero();
+    }
+
+    @Test
+    void authoritiesReflectTheScopesOfEachRequest() {
+        service.loadUser(oidcRequest("jdoe", "openid", "profile")).block();
+        OAuth2User reused = service.loadUser(oidcRequest("jdoe", "openid")).block();
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(reused.getAuthorities()).extracting(GrantedAuthority::getAuthority)//
+                .contains("SCOPE_openid")//
+                .doesNotContain("SCOPE_profile");
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link JwkSetCache}
+ */
+class JwkSetCacheTest {
+
+    private AtomicInteger requests;
+    private AtomicReference<JWKSet> served;
+    private WebClient webClient;
+
+    @BeforeEach
+    void setUp() {
+        requests = new AtomicInteger();
+        served = new AtomicReference<>();
+        webClient = WebClient.builder().exchangeFunction(request -> {
+            requests.incrementAndGet();
+            if (served.get() == null) {
+                return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+            }
+            return Mono.just(ClientResponse.create(HttpStatus.OK)//
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)//
+                    .body(served.get().toString())//
+                    .build());
+        }).build();
+    }
+
+    private RSAKey key(String keyId) throws JOSEException {
+        return new RSAKeyGenerator(2048).keyID(keyId).generate().toPublicJWK();
+    }
+
+    private SignedJWT token(String keyId) {
+        return new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(keyId).build(),
+                new JWTClaimsSet.Builder().subject("user").build());
+    }
+
+    @Test
+    void fetchesJwkSetOnce() throws Exception {
+        served.set(new JWKSet(key("k1")));
+        JwkSetCache cache = new JwkSetCache("https://idp/jwks", webClient, Duration.ofMinutes(5),
+                Duration.ofSeconds(30));
+
+        for (int i = 0; i < 10; i++) {
+            List<JWK> keys = cache.select(token("k1")).collectList().block();
+            assertThat(keys).extracting(JWK::getKeyID).containsExactly("k1");
+        }
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    void fetchesAgainOnKeyRotation() throws Exception {
+        served.set(new JWKSet(key("k1")));
+        JwkSetCache cache = new JwkSetCache("https://idp/jwks", webClient, Duration.ofMinutes(5), Duration.ZERO);
+        cache.select(token("k1")).collectList().block();
+
+        served.set(new JWKSet(List.of(key("k1"), key("k2"))));
+        List<JWK> keys = cache.select(token("k2")).collectList().block();
+        assertThat(keys).extracting(JWK::getKeyID).containsExactly("k2");
+        assertThat(requests.get()).isEqualTo(2);
+
+        cache.select(token("k2")).collectList().block();
+        assertThat(requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    void unknownKeysDontFetchBeforeMinRefreshInterval() throws Exception {
+        served.set(new JWKSet(key("k1")));
+        JwkSetCache cache = new JwkSetCache("https://idp/jwks", webClient, Duration.ofMinutes(5),
+                Duration.ofMinutes(1));
+        cache.select(token("k1")).collectList().block();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.select(token("bogus")).collectList().block()).isEmpty();
+        }
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    void failedFetchesNotRetriedBeforeMinRefreshInterval() {
+        JwkSetCache cache = new JwkSetCache("https://idp/jwks", webClient, Duration.ofMinutes(5),
+                Duration.ofMinutes(1));
+
+        for (int i = 0; i < 10; i++) {
+            assertThrows(RuntimeException.class, () -> cache.select(token("k1")).collectList().block());
+        }
+        assertThat(requests.get()).isEqualTo(1);
+    }
+}
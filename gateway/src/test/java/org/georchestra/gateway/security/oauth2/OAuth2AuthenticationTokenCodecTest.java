@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2UserAuthority;
+
+/**
+ * Test suite for {@link OAuth2AuthenticationTokenCodec}
+ */
+class OAuth2AuthenticationTokenCodecTest {
+
+    private final OAuth2AuthenticationTokenCodec codec = new OAuth2AuthenticationTokenCodec();
+
+    private OAuth2AuthenticationToken oidcToken() throws IOException {
+        Instant issuedAt = Instant.parse("2022-01-01T00:00:00Z");
+        Instant expiresAt = issuedAt.plusSeconds(300);
+        Map<String, Object> claims = Map.of("sub", "2f1e", "iss", "https://idp.example.com", "aud",
+                List.of("gateway"), "iat", issuedAt, "exp", expiresAt, "email_verified", true, "groups",
+                Map.of("admins", List.of("a", "b")));
+        OidcIdToken idToken = new OidcIdToken("eyJ.token.value", issuedAt, expiresAt, claims);
+        OidcUserInfo userInfo = new OidcUserInfo(Map.of("sub", "2f1e", "preferred_username", "testuser"));
+        List<GrantedAuthority> authorities = List.of(new OidcUserAuthority(idToken, userInfo),
+                new SimpleGrantedAuthority("SCOPE_openid"));
+        DefaultOidcUser user = new DefaultOidcUser(authorities, idToken, userInfo, "preferred_username");
+        return new OAuth2AuthenticationToken(user, authorities, "idp");
+    }
+
+    private Authentication roundTrip(Authentication token) throws IOException {
+        assertThat(codec.canEncode(token)).isTrue();
+        return codec.decode(new DataInputStream(new ByteArrayInputStream(encode(token))));
+    }
+
+    private byte[] encode(Authentication token) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            codec.encode(token, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void oidcToken() throws IOException {
+        OAuth2AuthenticationToken token = oidcToken();
+        OAuth2AuthenticationToken decoded = (OAuth2AuthenticationToken) roundTrip(token);
+
+        assertThat(decoded.getAuthorizedClientRegistrationId()).isEqualTo("idp");
+        assertThat(decoded.getName()).isEqualTo("testuser");
+        assertThat(decoded.isAuthenticated()).isTrue();
+        assertThat(decoded.getAuthorities()).isEqualTo(token.getAuthorities());
+
+        DefaultOidcUser expected = (DefaultOidcUser) token.getPrincipal();
+        DefaultOidcUser user = (DefaultOidcUser) decoded.getPrincipal();
+        assertThat(user.getIdToken()).isEqualTo(expected.getIdToken());
+        assertThat(user.getUserInfo()).isEqualTo(expected.getUserInfo());
+        assertThat(user.getAttributes()).isEqualTo(expected.getAttributes());
+    }
+
+    @Test
+    void smallerThanJavaSerialization() throws IOException {
+        OAuth2AuthenticationToken token = oidcToken();
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(token);
+        }
+        assertThat(encode(token).length).isLessThan(serialized.size() / 2);
+    }
+
+    @Test
+    void oauth2Token() throws IOException {
+        Map<String, Object> attributes = Map.of("id", 1234, "login", "testuser");
+        Set<GrantedAuthority> authorities = Set.of(new OAuth2UserAuthority(attributes));
+        DefaultOAuth2User user = new DefaultOAuth2User(authorities, attributes, "login");
+        OAuth2AuthenticationToken token = new OAuth2AuthenticationToken(user, authorities, "github");
+
+        OAuth2AuthenticationToken decoded = (OAuth2AuthenticationToken) roundTrip(token);
+        assertThat(decoded.getAuthorizedClientRegistrationId()).isEqualTo("github");
+        assertThat(decoded.getName()).isEqualTo("testuser");
+        assertThat(decoded.getPrincipal().getAttributes()).isEqualTo(attributes);
+        assertThat(decoded.getAuthorities()).containsExactlyElementsOf(token.getAuthorities());
+    }
+
+    @Test
+    void unsupportedAuthority() throws IOException {
+        OAuth2AuthenticationToken token = oidcToken();
+        GrantedAuthority custom = () -> "ROLE_CUSTOM";
+        OAuth2AuthenticationToken withCustomAuthority = new OAuth2AuthenticationToken(token.getPrincipal(),
+                List.of(custom), "idp");
+        assertThat(codec.canEncode(withCustomAuthority)).isFalse();
+    }
+
+    @Test
+    void unsupportedClaimValue() {
+        Map<String, Object> attributes = Map.of("id", 1234, "login", "testuser", "score", new BigDecimal("1.5"));
+        Set<GrantedAuthority> authorities = Set.of(new SimpleGrantedAuthority("ROLE_USER"));
+        DefaultOAuth2User user = new DefaultOAuth2User(authorities, attributes, "login");
+        OAuth2AuthenticationToken token = new OAuth2AuthenticationToken(user, authorities, "github");
+        assertThat(codec.canEncode(token)).isFalse();
+    }
+
+    @Test
+    void corruptLengthFailsWithoutAllocating() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF("idp");
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        IOException error = assertThrows(IOException.class, () -> codec.decode(in));
+        assertThat(error.getMessage()).contains("Invalid size");
+    }
+}
@@ -24,6 +24,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -197,6 +198,26 @@ class OpenIdConnectUserMapperTest {
         assertEquals(icuid, target.getId());
     }
 
+    @Test
+    void applyNonStandardClaims_recompiles_modified_json_paths() throws Exception {
+        Map<String, Object> claims = sampleClaims();
+
+        nonStandardClaimsConfig.getOrganization().getPath().add("$.PartyOrganisationID");
+        GeorchestraUser target = new GeorchestraUser();
+        mapper.applyNonStandardClaims(claims, target);
+        assertEquals("6007280321", target.getOrganization());
+
+        nonStandardClaimsConfig.getOrganization().getPath().set(0, "$.azp");
+        target = new GeorchestraUser();
+        mapper.applyNonStandardClaims(claims, target);
+        assertEquals("gdi", target.getOrganization());
+
+        nonStandardClaimsConfig.getOrganization().setPath(new ArrayList<>(List.of("$.sid")));
+        target = new GeorchestraUser();
+        mapper.applyNonStandardClaims(claims, target);
+        assertEquals("f123a5b6-a326-4cbe-8af0-75e6f633f0b9", target.getOrganization());
+    }
+
     private Map<String, Object> sampleClaims() throws ParseException {
         String json = SAMPLE_CLAIMS;
         return sampleClaims(json);
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.server.WebSession;
+
+/**
+ * Test suite for {@link FileWebSessionStore}
+ */
+class FileWebSessionStoreTest {
+
+    private @TempDir Path directory;
+
+    private Path file;
+
+    private MutableClock clock;
+
+    private SessionStoreConfigProperties.FileStore config;
+
+    private FileWebSessionStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = directory.resolve("sessions.dat");
+        clock = new MutableClock(Instant.parse("2022-01-01T00:00:00Z"));
+        config = new SessionStoreConfigProperties.FileStore();
+        store = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.destroy();
+    }
+
+    private FileWebSessionStore open() throws IOException {
+        return new FileWebSessionStore(file, Duration.ofMinutes(30), config, new SessionCodec(), clock);
+    }
+
+    private FileWebSessionStore reopen() throws IOException {
+        store.destroy();
+        store = open();
+        return store;
+    }
+
+    private WebSession newSession(String attribute, String value) {
+        WebSession session = store.createWebSession().block();
+        session.getAttributes().put(attribute, value);
+        session.save().block();
+        return session;
+    }
+
+    @Test
+    void unknownSession() {
+        assertThat(store.retrieveSession("unknown").block()).isNull();
+    }
+
+    @Test
+    void sessionNotStoredUntilStarted() throws IOException {
+        WebSession session = store.createWebSession().block();
+        session.save().block();
+        assertThat(store.retrieveSession(session.getId()).block()).isNull();
+
+        reopen();
+        assertThat(store.storedSize()).isZero();
+    }
+
+    @Test
+    void sessionSurvivesRestart() throws IOException {
+        WebSession session = newSession("user", "testuser");
+        assertThat(store.retrieveSession(session.getId()).block()).isSameAs(session);
+
+        reopen();
+        assertThat(store.storedSize()).isOne();
+        assertThat(store.hotSize()).isZero();
+
+        WebSession loaded = store.retrieveSession(session.getId()).block();
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.getAttributes()).containsEntry("user", "testuser");
+        assertThat(loaded.getCreationTime()).isEqualTo(session.getCreationTime());
+        assertThat(loaded.getMaxIdleTime()).isEqualTo(session.getMaxIdleTime());
+        assertThat(store.hotSize()).isOne();
+    }
+
+    @Test
+    void nonSerializableAttributesAreSkipped() throws IOException {
+        WebSession session = newSession("user", "testuser");
+        session.getAttributes().put("transient", new Object());
+        session.save().block();
+
+        WebSession loaded = reopen().retrieveSession(session.getId()).block();
+        assertThat(loaded.getAttributes()).containsOnlyKeys("user");
+    }
+
+    @Test
+    void unexpectedAttributeTypesAreNotDeserialized() throws IOException {
+        WebSession session = newSession("user", "testuser");
+        session.getAttributes().put("counter", new AtomicInteger(1));
+        session.getAttributes().put("since", Instant.EPOCH);
+        session.save().block();
+
+        WebSession loaded = reopen().retrieveSession(session.getId()).block();
+        assertThat(loaded.getAttributes()).containsOnlyKeys("user", "since");
+    }
+
+    @Test
+    void invalidatedSessionIsRemoved() throws IOException {
+        WebSession session = newSession("user", "testuser");
+        session.invalidate().block();
+        assertThat(store.retrieveSession(session.getId()).block()).isNull();
+
+        assertThat(reopen().retrieveSession(session.getId()).block()).isNull();
+        assertThat(store.storedSize()).isZero();
+    }
+
+    @Test
+    void changeSessionId() throws IOException {
+        WebSession session = newSession("user", "testuser");
+        final String oldId = session.getId();
+        session.changeSessionId().block();
+        assertThat(session.getId()).isNotEqualTo(oldId);
+
+        reopen();
+        assertThat(store.retrieveSession(oldId).block()).isNull();
+        assertThat(store.retrieveSession(session.getId()).block().getAttributes()).containsEntry("user", "testuser");
+    }
+
+    @Test
+    void expiredSession() throws IOException {
+        WebSession session = newSession("user", "testuser");
+        clock.advance(Duration.ofMinutes(31));
+        assertThat(store.retrieveSession(session.getId()).block()).isNull();
+
+        session = newSession("user", "testuser");
+        reopen();
+        clock.advance(Duration.ofMinutes(31));
+        assertThat(store.retrieveSession(session.getId()).block()).isNull();
+    }
+
+    @Test
+    void lastAccessTimeWrittenBehind() throws IOException {
+        config.setAccessTimeResolution(Duration.ofMinutes(1));
+        WebSession session = newSession("user", "testuser");
+        store.flush();
+        final long initialSize = Files.size(file);
+
+        clock.advance(Duration.ofSeconds(30));
+        store.updateLastAccessTime(session).block();
+        session.save().block();
+        store.flush();
+        assertThat(Files.size(file)).as("access time change below resolution").isEqualTo(initialSize);
+
+        clock.advance(Duration.ofSeconds(30));
+        store.updateLastAccessTime(session).block();
+        session.save().block();
+        store.flush();
+        assertThat(Files.size(file)).isGreaterThan(initialSize);
+
+        // a pending access time update is written on shutdown
+        clock.advance(Duration.ofSeconds(10));
+        Instant lastAccess = store.updateLastAccessTime(session).block().getLastAccessTime();
+        session.save().block();
+        assertThat(reopen().retrieveSession(session.getId()).block().getLastAccessTime()).isEqualTo(lastAccess);
+    }
+
+    @Test
+    void compaction() throws IOException {
+        WebSession session = newSession("user", "testuser");
+        for (int i = 0; i < 100; i++) {
+            session.getAttributes().put("counter", i);
+            session.save().block();
+        }
+        WebSession expiring = newSession("user", "expiring");
+        store.flush();
+        final long size = Files.size(file);
+
+        clock.advance(Duration.ofMinutes(20));
+        store.updateLastAccessTime(session).block();
+        session.save().block();
+        clock.advance(Duration.ofMinutes(20));
+        store.flush();
+        store.compact();
+
+        assertThat(Files.size(file)).isLessThan(size / 10);
+        assertThat(store.storedSize()).isOne();
+        if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertThat(Files.getPosixFilePermissions(file)).isEqualTo(PosixFilePermissions.fromString("rw-------"));
+        }
+
+        reopen();
+        assertThat(store.retrieveSession(expiring.getId()).block()).isNull();
+        assertThat(store.retrieveSession(session.getId()).block().getAttributes()).containsEntry("counter", 99);
+    }
+
+    @Test
+    void truncatedFile() throws IOException {
+        WebSession session = newSession("user", "testuser");
+        WebSession torn = newSession("user", "torn");
+        store.destroy();
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), (int) Files.size(file) - 3));
+
+        store = open();
+        assertThat(store.retrieveSession(session.getId()).block()).isNotNull();
+        assertThat(store.retrieveSession(torn.getId()).block()).isNull();
+    }
+
+    @Test
+    void corruptRecordIsSkipped() throws IOException {
+        WebSession first = newSession("user", "first");
+        WebSession corrupt = newSession("user", "corrupt");
+        WebSession last = newSession("user", "last");
+        store.destroy();
+        byte[] bytes = Files.readAllBytes(file);
+        // unknown record type
+        bytes[recordOffset(bytes, 1) + 4] = 0x7F;
+        Files.write(file, bytes);
+
+        store = open();
+        assertThat(store.retrieveSession(first.getId()).block()).isNotNull();
+        assertThat(store.retrieveSession(corrupt.getId()).block()).isNull();
+        assertThat(store.retrieveSession(last.getId()).block()).isNotNull();
+        assertThat(Files.size(file)).isEqualTo(bytes.length);
+    }
+
+    @Test
+    void invalidRecordLengthFailsWithoutTruncating() throws IOException {
+        newSession("user", "first");
+        newSession("user", "second");
+        store.destroy();
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(recordOffset(bytes, 1), -1);
+        Files.write(file, bytes);
+
+        IOException error = assertThrows(IOException.class, this::open);
+        assertThat(error.getMessage()).contains("Invalid session record length");
+        assertThat(Files.readAllBytes(file)).isEqualTo(bytes);
+        // a new store for tearDown
+        Files.delete(file);
+        store = open();
+    }
+
+    @Test
+    void zeroFilledTailIsTruncated() throws IOException {
+        WebSession session = newSession("user", "testuser");
+        store.destroy();
+        final long size = Files.size(file);
+        Files.write(file, new byte[4096], StandardOpenOption.APPEND);
+
+        store = open();
+        assertThat(store.retrieveSession(session.getId()).block()).isNotNull();
+        assertThat(Files.size(file)).isEqualTo(size);
+    }
+
+    @Test
+    void undecodableSessionIsDropped() throws IOException {
+        WebSession session = newSession("user", "testuser");
+        store.destroy();
+        byte[] bytes = Files.readAllBytes(file);
+        // the attributes count, after the record type, id, and three timestamps
+        int count = recordOffset(bytes, 0) + 4 + 1 + 2 + session.getId().length() + 24;
+        ByteBuffer.wrap(bytes).putInt(count, 5);
+        Files.write(file, bytes);
+
+        store = open();
+        assertThat(store.retrieveSession(session.getId()).block()).isNull();
+        assertThat(store.retrieveSession(session.getId()).block()).isNull();
+    }
+
+    /**
+     * @return the offset of the length prefix of the {@code index}th record
+     */
+    private static int recordOffset(byte[] bytes, int index) {
+        int offset = 8;
+        for (int i = 0; i < index; i++) {
+            offset += 4 + ByteBuffer.wrap(bytes).getInt(offset);
+        }
+        return offset;
+    }
+}
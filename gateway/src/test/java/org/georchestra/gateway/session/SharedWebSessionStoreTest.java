@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.session;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.WebSession;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Test suite for {@link SharedWebSessionStore}, simulating two gateway
+ * instances sharing a {@link LocalSharedSessionRepository}
+ */
+class SharedWebSessionStoreTest {
+
+    private MutableClock clock;
+
+    private LocalSharedSessionRepository repository;
+
+    private SessionStoreConfigProperties.SharedStore config;
+
+    private SharedWebSessionStore node1;
+
+    private SharedWebSessionStore node2;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2022-01-01T00:00:00Z"));
+        repository = new LocalSharedSessionRepository(clock);
+        config = new SessionStoreConfigProperties.SharedStore()//
+                .setRevalidateInterval(Duration.ofSeconds(2))//
+                .setAccessTimeResolution(Duration.ofMinutes(1))//
+                .setAccessTimeFlushInterval(Duration.ofHours(1));
+        node1 = new SharedWebSessionStore(repository, Duration.ofMinutes(30), config, new SessionCodec(), clock);
+        node2 = new SharedWebSessionStore(repository, Duration.ofMinutes(30), config, new SessionCodec(), clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        node1.destroy();
+        node2.destroy();
+    }
+
+    private WebSession newSession(SharedWebSessionStore node, String attribute, String value) {
+        WebSession session = node.createWebSession().block();
+        session.getAttributes().put(attribute, value);
+        session.save().block();
+        return session;
+    }
+
+    @Test
+    void unknownSession() {
+        assertThat(node1.retrieveSession("unknown").block()).isNull();
+    }
+
+    @Test
+    void sessionNotStoredUntilStarted() {
+        WebSession session = node1.createWebSession().block();
+        session.save().block();
+        assertThat(repository.size()).isZero();
+        assertThat(node2.retrieveSession(session.getId()).block()).isNull();
+    }
+
+    @Test
+    void sessionSharedAcrossNodes() {
+        WebSession session = newSession(node1, "user", "testuser");
+        assertThat(node1.retrieveSession(session.getId()).block()).isSameAs(session);
+
+        WebSession loaded = node2.retrieveSession(session.getId()).block();
+        assertThat(loaded).isNotNull().isNotSameAs(session);
+        assertThat(loaded.getAttributes()).containsEntry("user", "testuser");
+        assertThat(node2.nearCacheSize()).isOne();
+        assertThat(node2.retrieveSession(session.getId()).block()).isSameAs(loaded);
+    }
+
+    @Test
+    void changesSeenAfterRevalidateInterval() {
+        WebSession session = newSession(node1, "user", "testuser");
+        WebSession onNode2 = node2.retrieveSession(session.getId()).block();
+
+        session.getAttributes().put("user", "changed");
+        session.save().block();
+
+        // served from the near-cache
+        assertThat(node2.retrieveSession(session.getId()).block()).isSameAs(onNode2);
+        assertThat(onNode2.getAttributes()).containsEntry("user", "testuser");
+
+        clock.advance(Duration.ofSeconds(3));
+        WebSession reloaded = node2.retrieveSession(session.getId()).block();
+        assertThat(reloaded).isNotSameAs(onNode2);
+        assertThat(reloaded.getAttributes()).containsEntry("user", "changed");
+    }
+
+    @Test
+    void unchangedSessionRevalidated() {
+        WebSession session = newSession(node1, "user", "testuser");
+        WebSession onNode2 = node2.retrieveSession(session.getId()).block();
+
+        clock.advance(Duration.ofSeconds(3));
+        assertThat(node2.retrieveSession(session.getId()).block()).isSameAs(onNode2);
+    }
+
+    @Test
+    void invalidatedSession() {
+        WebSession session = newSession(node1, "user", "testuser");
+        node2.retrieveSession(session.getId()).block();
+
+        session.invalidate().block();
+        assertThat(node1.retrieveSession(session.getId()).block()).isNull();
+
+        clock.advance(Duration.ofSeconds(3));
+        assertThat(node2.retrieveSession(session.getId()).block()).isNull();
+        assertThat(node2.nearCacheSize()).isZero();
+    }
+
+    @Test
+    void changeSessionId() {
+        WebSession session = newSession(node1, "user", "testuser");
+        final String oldId = session.getId();
+        session.changeSessionId().block();
+
+        assertThat(node2.retrieveSession(oldId).block()).isNull();
+        assertThat(node2.retrieveSession(session.getId()).block().getAttributes()).containsEntry("user", "testuser");
+    }
+
+    @Test
+    void lastAccessTimeWrittenBehind() {
+        WebSession session = newSession(node1, "user", "testuser");
+        final Instant created = session.getLastAccessTime();
+
+        clock.advance(Duration.ofMinutes(20));
+        node1.updateLastAccessTime(session).block();
+        session.save().block();
+        assertThat(repository.getRevision(session.getId()).block().getLastAccessTime()).isEqualTo(created);
+
+        node1.flushTouches().block();
+        assertThat(repository.getRevision(session.getId()).block().getLastAccessTime())
+                .isEqualTo(session.getLastAccessTime());
+
+        // the session is still alive when reaching its max idle time since creation
+        clock.advance(Duration.ofMinutes(20));
+        WebSession onNode2 = node2.retrieveSession(session.getId()).block();
+        assertThat(onNode2).isNotNull();
+        assertThat(onNode2.getLastAccessTime()).isEqualTo(session.getLastAccessTime());
+
+        clock.advance(Duration.ofMinutes(31));
+        assertThat(node2.retrieveSession(session.getId()).block()).isNull();
+    }
+
+    @Test
+    void lastAccessTimeUpdatesDoNotInvalidateOtherNodes() {
+        WebSession session = newSession(node1, "user", "testuser");
+        WebSession onNode2 = node2.retrieveSession(session.getId()).block();
+
+        clock.advance(Duration.ofMinutes(2));
+        node1.updateLastAccessTime(session).block();
+        session.save().block();
+        node1.flushTouches().block();
+
+        assertThat(node2.retrieveSession(session.getId()).block()).isSameAs(onNode2);
+        assertThat(onNode2.getLastAccessTime()).isEqualTo(session.getLastAccessTime());
+    }
+
+    @Test
+    void expiredSessionNotServedAfterRevalidation() {
+        // a repository that expires sessions lazily, as seen from the gateway
+        LocalSharedSessionRepository lazyRepository = new LocalSharedSessionRepository(
+                new MutableClock(clock.instant()));
+        SharedWebSessionStore node = new SharedWebSessionStore(lazyRepository, Duration.ofMinutes(30), config,
+                new SessionCodec(), clock);
+        try {
+            WebSession session = newSession(node, "user", "testuser");
+            assertThat(node.retrieveSession(session.getId()).block()).isSameAs(session);
+
+            clock.advance(Duration.ofMinutes(31));
+            assertThat(node.retrieveSession(session.getId()).block()).isNull();
+            assertThat(node.nearCacheSize()).isZero();
+            assertThat(lazyRepository.size()).isZero();
+        } finally {
+            node.destroy();
+        }
+    }
+
+    @Test
+    void undecodableSessionIsDropped() {
+        repository.save("broken", new byte[] { 1, 2, 3 }, clock.instant(), Duration.ofMinutes(30)).block();
+
+        assertThat(node1.retrieveSession("broken").block()).isNull();
+        assertThat(repository.size()).isZero();
+        assertThat(node1.nearCacheSize()).isZero();
+    }
+
+    @Test
+    void changesKeptWhenSaveFails() {
+        AtomicBoolean fail = new AtomicBoolean();
+        LocalSharedSessionRepository failingRepository = new LocalSharedSessionRepository(clock) {
+            public @Override Mono<Revision> save(String id, byte[] payload, Instant lastAccessTime,
+                    Duration maxIdleTime) {
+                if (fail.get()) {
+                    return Mono.error(new IllegalStateException("unavailable"));
+                }
+                return super.save(id, payload, lastAccessTime, maxIdleTime);
+            }
+        };
+        SharedWebSessionStore node = new SharedWebSessionStore(failingRepository, Duration.ofMinutes(30), config,
+                new SessionCodec(), clock);
+        SharedWebSessionStore other = new SharedWebSessionStore(failingRepository, Duration.ofMinutes(30), config,
+                new SessionCodec(), clock);
+        try {
+            WebSession session = newSession(node, "user", "testuser");
+
+            fail.set(true);
+            session.getAttributes().put("user", "changed");
+            assertThatThrownBy(() -> session.save().block()).hasMessageContaining("unavailable");
+
+            fail.set(false);
+            session.save().block();
+            assertThat(other.retrieveSession(session.getId()).block().getAttributes()).containsEntry("user",
+                    "changed");
+        } finally {
+            node.destroy();
+            other.destroy();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.loadtest;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Stand-in backend service, answering any HTTP request with a fixed size
+ * payload, and echoing back the messages sent to the {@literal /ws/echo}
+ * websocket endpoint.
+ * <p>
+ * Runs on Reactor Netty, with no per-request logic, so that its own latency is
+ * as low and stable as possible.
+ */
+@Slf4j(topic = "org.georchestra.gateway.loadtest")
+class EchoBackend implements AutoCloseable {
+
+    private final DisposableServer server;
+
+    EchoBackend(int payloadSize) {
+        final byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+
+        this.server = HttpServer.create()//
+                .host("localhost")//
+                .port(0)//
+                .route(routes -> routes//
+                        .ws("/ws/echo", (in, out) -> out.send(in.receive().retain()))//
+                        .route(request -> true, (request, response) -> request.receive().then(//
+                                Mono.defer(() -> response.header(HttpHeaderNames.CONTENT_TYPE, "text/plain")//
+                                        .sendByteArray(Mono.just(payload)).then()))))//
+                .bindNow();
+        log.info("Echo backend listening on port {}", server.port());
+    }
+
+    public int getPort() {
+        return server.port();
+    }
+
+    public URI baseUri() {
+        return URI.create("http://localhost:" + getPort());
+    }
+
+    public @Override void close() {
+        server.disposeNow();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Measures the latency the gateway adds to proxied requests.
+ * <p>
+ * Starts a {@link EchoBackend stand-in backend}, an {@link InMemoryLdap
+ * in-memory LDAP directory}, and the {@link GatewayUnderTest full gateway
+ * application} configured to proxy to the former and authenticate against the
+ * latter. Then drives the {@link LoadTestOptions configured} requests mix
+ * through the gateway and directly to the backend, and prints a
+ * {@link LatencyReport}.
+ * <p>
+ * All the processes share the same JVM and machine, so the figures are only
+ * comparable between runs on the same box, e.g. before and after an upgrade.
+ * 
+ * @see LoadTestOptions
+ */
+@Slf4j(topic = "org.georchestra.gateway.loadtest")
+public class GatewayLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        log.info("Running load test with {}", options);
+
+        try (EchoBackend backend = new EchoBackend(options.getPayloadSize());
+                InMemoryLdap ldap = new InMemoryLdap(options.getUsers());
+                GatewayUnderTest gateway = new GatewayUnderTest(args, backend, ldap)) {
+
+            LoadDriver driver = new LoadDriver(options, gateway.baseUri(), backend.baseUri());
+            log.info("Warming up for {}", options.getWarmup());
+            driver.run(options.getWarmup(), false);
+            log.info("Measuring for {}", options.getDuration());
+            driver.run(options.getDuration(), true);
+
+            new LatencyReport(driver, gateway.meterRegistry()).print(System.out);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.loadtest;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.georchestra.gateway.app.GeorchestraGatewayApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the full {@link GeorchestraGatewayApplication} with the
+ * {@literal loadtest} profile, proxying to the {@link EchoBackend} and
+ * authenticating against the {@link InMemoryLdap}.
+ * <p>
+ * The command line arguments take precedence over the
+ * {@literal application-loadtest.yml} configuration.
+ */
+@Slf4j(topic = "org.georchestra.gateway.loadtest")
+class GatewayUnderTest implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+
+    GatewayUnderTest(String[] args, EchoBackend backend, InMemoryLdap ldap) {
+        Map<String, Object> properties = new HashMap<>();
+        // no datadir, the optional config files it'd provide are not found
+        properties.put("georchestra.datadir", Path.of("target", "loadtest-datadir").toAbsolutePath().toString());
+        properties.put("loadtest.backend.port", backend.getPort());
+        properties.put("ldapScheme", "ldap");
+        properties.put("ldapHost", "localhost");
+        properties.put("ldapPort", ldap.getPort());
+        properties.put("ldapBaseDn", InMemoryLdap.BASE_DN);
+
+        this.context = new SpringApplicationBuilder(GeorchestraGatewayApplication.class)//
+                .profiles("loadtest")//
+                .properties(properties)//
+                .run(args);
+        log.info("Gateway listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    public URI baseUri() {
+        return URI.create("http://localhost:" + getPort());
+    }
+
+    public MeterRegistry meterRegistry() {
+        return context.getBean(MeterRegistry.class);
+    }
+
+    public @Override void close() {
+        context.close();
+    }
+}
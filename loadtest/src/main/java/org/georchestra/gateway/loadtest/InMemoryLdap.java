@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.loadtest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.InputStream;
+import java.util.UUID;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * UnboundID in-memory LDAP directory with geOrchestra's users, roles, and
+ * organizations layout, loaded from {@literal loadtest.ldif}, plus
+ * {@code users} generated users ({@literal user0}, {@literal user1}, ...), all
+ * of them with the {@literal USER} role, members of the {@literal PSC}
+ * organization, and {@link #PASSWORD} as password.
+ */
+@Slf4j(topic = "org.georchestra.gateway.loadtest")
+class InMemoryLdap implements AutoCloseable {
+
+    static final String BASE_DN = "dc=georchestra,dc=org";
+
+    static final String PASSWORD = "loadtest";
+
+    private final InMemoryDirectoryServer server;
+
+    InMemoryLdap(int users) throws LDAPException, LDIFException {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+        // no need to load the georchestra schema, entries are not validated
+        config.setSchema(null);
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        this.server = new InMemoryDirectoryServer(config);
+
+        InputStream ldif = getClass().getResourceAsStream("/loadtest.ldif");
+        server.importFromLDIF(true, new LDIFReader(ldif));
+        addUsers(users);
+        server.startListening();
+        log.info("In-memory LDAP listening on port {} with {} users", getPort(), users);
+    }
+
+    static String username(int index) {
+        return "user" + index;
+    }
+
+    public int getPort() {
+        return server.getListenPort();
+    }
+
+    private void addUsers(int count) throws LDAPException, LDIFException {
+        String[] members = new String[count];
+        for (int i = 0; i < count; i++) {
+            String uid = username(i);
+            String dn = String.format("uid=%s,ou=users,%s", uid, BASE_DN);
+            server.add("dn: " + dn, //
+                    "objectClass: top", //
+                    "objectClass: person", //
+                    "objectClass: organizationalPerson", //
+                    "objectClass: inetOrgPerson", //
+                    "objectClass: shadowAccount", //
+                    "objectClass: georchestraUser", //
+                    "uid: " + uid, //
+                    "cn: Load Test User " + i, //
+                    "sn: User " + i, //
+                    "givenName: Load Test", //
+                    "mail: " + uid + "@example.com", //
+                    "userPassword: " + PASSWORD, //
+                    "georchestraObjectIdentifier: " + UUID.nameUUIDFromBytes(uid.getBytes(UTF_8)));
+            members[i] = dn;
+        }
+        if (count > 0) {
+            server.modify("cn=USER,ou=roles," + BASE_DN, new Modification(ModificationType.ADD, "member", members));
+            server.modify("cn=psc,ou=orgs," + BASE_DN, new Modification(ModificationType.ADD, "member", members));
+        }
+    }
+
+    public @Override void close() {
+        server.shutDown(true);
+    }
+}
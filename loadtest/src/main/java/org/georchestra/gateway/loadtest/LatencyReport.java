@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.loadtest;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.HdrHistogram.Histogram;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Prints the {@link LoadDriver} results: per {@link Scenario} throughput,
+ * errors, and p50/p99/p999 latencies through the gateway, directly to the
+ * backend, and the difference between both (the gateway overhead).
+ * <p>
+ * Then prints the gateway's own timers per filter stage, as recorded in its
+ * {@link MeterRegistry}: the Spring Cloud Gateway route timers
+ * ({@literal spring.cloud.gateway.requests}) and, if the gateway filters
+ * instrumentation is enabled, the {@literal georchestra.gateway.filter} timers
+ * tagged by filter. Unlike the client side latencies, these include the
+ * warm-up requests.
+ */
+@RequiredArgsConstructor
+class LatencyReport {
+
+    static final String ROUTE_TIMER = "spring.cloud.gateway.requests";
+
+    static final String FILTER_TIMER = "georchestra.gateway.filter";
+
+    private static final double[] PERCENTILES = { 50, 99, 99.9 };
+
+    private final @NonNull LoadDriver driver;
+
+    private final @NonNull MeterRegistry registry;
+
+    public void print(PrintStream out) {
+        double seconds = driver.recordedDuration().toMillis() / 1000d;
+        out.printf("%nClient side latencies (ms) over %.1fs%n", seconds);
+        out.printf("%-10s %9s %8s %7s | %-26s | %-26s | %-26s%n", "scenario", "requests", "req/s", "errors",
+                "gateway p50/p99/p999", "direct p50/p99/p999", "overhead p50/p99/p999");
+        for (Scenario scenario : Scenario.values()) {
+            Histogram gateway = driver.gatewayLatency(scenario);
+            Histogram direct = driver.directLatency(scenario);
+            long errors = driver.errors(scenario);
+            if (gateway.getTotalCount() == 0 && errors == 0) {
+                continue;
+            }
+            double[] viaGateway = percentiles(gateway);
+            double[] viaDirect = percentiles(direct);
+            double[] overhead = new double[PERCENTILES.length];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                overhead[i] = viaGateway[i] - viaDirect[i];
+            }
+            out.printf("%-10s %9d %8.1f %7d | %-26s | %-26s | %-26s%n", scenario.toString().toLowerCase(),
+                    gateway.getTotalCount(), gateway.getTotalCount() / seconds, errors, format(viaGateway),
+                    format(viaDirect), format(overhead));
+        }
+        printTimers(out, ROUTE_TIMER, "routeId");
+        printTimers(out, FILTER_TIMER, "filter");
+    }
+
+    private void printTimers(PrintStream out, String name, String groupingTag) {
+        List<Timer> timers = registry.find(name).timers().stream()//
+                .sorted(Comparator.comparing(t -> String.valueOf(t.getId().getTag(groupingTag))))//
+                .collect(Collectors.toList());
+        if (timers.isEmpty()) {
+            return;
+        }
+        out.printf("%nGateway %s timers (ms)%n", name);
+        out.printf("%-60s %9s %9s | %-26s%n", groupingTag, "count", "mean", "p50/p99/p999");
+        for (Timer timer : timers) {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            out.printf("%-60s %9d %9.3f | %-26s%n", label(timer, groupingTag), snapshot.count(),
+                    snapshot.mean(TimeUnit.MILLISECONDS), format(snapshot.percentileValues()));
+        }
+    }
+
+    private String label(Timer timer, String groupingTag) {
+        String label = String.valueOf(timer.getId().getTag(groupingTag));
+        String others = timer.getId().getTags().stream()//
+                .filter(tag -> !groupingTag.equals(tag.getKey()))//
+                .map(tag -> tag.getKey() + "=" + tag.getValue())//
+                .collect(Collectors.joining(","));
+        return others.isEmpty() ? label : label + " [" + others + "]";
+    }
+
+    private double[] percentiles(Histogram histogram) {
+        double[] values = new double[PERCENTILES.length];
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            values[i] = histogram.getValueAtPercentile(PERCENTILES[i]) / 1000d;
+        }
+        return values;
+    }
+
+    private String format(double[] millis) {
+        return String.format("%7.3f %8.3f %8.3f", millis[0], millis[1], millis[2]);
+    }
+
+    private String format(ValueAtPercentile[] percentiles) {
+        if (percentiles.length == 0) {
+            return "n/a";
+        }
+        return Arrays.stream(percentiles)//
+                .map(p -> String.format("%.3f", p.value(TimeUnit.MILLISECONDS)))//
+                .collect(Collectors.joining(" "));
+    }
+}
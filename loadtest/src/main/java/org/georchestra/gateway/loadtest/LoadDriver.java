@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.loadtest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.cookie.Cookie;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Drives a closed-loop load of {@link LoadTestOptions#getConcurrency()}
+ * virtual users. Each one picks a {@link Scenario} at random, according to the
+ * {@link LoadTestOptions#getMix() requests mix}, and issues the scenario's
+ * request through the gateway and then directly to the backend, recording both
+ * latencies.
+ * <p>
+ * Failed requests (connection errors, timeouts, and non {@literal 2xx}
+ * responses) are counted as errors and their latencies discarded.
+ */
+@Slf4j(topic = "org.georchestra.gateway.loadtest")
+class LoadDriver {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private static final String PUBLIC_PATH = "/echo/public/data";
+
+    private static final String SECURED_PATH = "/echo/secured/data";
+
+    private static final String WEBSOCKET_PATH = "/ws/echo";
+
+    private final LoadTestOptions options;
+
+    private final URI gateway;
+
+    private final URI backend;
+
+    private final HttpClient client;
+
+    private final int[] cumulativeWeights;
+
+    private final Map<Scenario, Histogram> gatewayLatency = new EnumMap<>(Scenario.class);
+
+    private final Map<Scenario, Histogram> directLatency = new EnumMap<>(Scenario.class);
+
+    private final Map<Scenario, AtomicLong> errors = new EnumMap<>(Scenario.class);
+
+    private volatile boolean recording;
+
+    private long recordedNanos;
+
+    LoadDriver(@NonNull LoadTestOptions options, @NonNull URI gateway, @NonNull URI backend) {
+        this.options = options;
+        this.gateway = gateway;
+        this.backend = backend;
+
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")//
+                .maxConnections(2 * options.getConcurrency())//
+                .pendingAcquireMaxCount(-1)//
+                .build();
+        this.client = HttpClient.create(connections).responseTimeout(TIMEOUT);
+
+        Scenario[] scenarios = Scenario.values();
+        this.cumulativeWeights = new int[scenarios.length];
+        int total = 0;
+        for (Scenario scenario : scenarios) {
+            total += Math.max(0, options.getMix().weight(scenario));
+            cumulativeWeights[scenario.ordinal()] = total;
+            gatewayLatency.put(scenario, new ConcurrentHistogram(MAX_LATENCY_MICROS, 3));
+            directLatency.put(scenario, new ConcurrentHistogram(MAX_LATENCY_MICROS, 3));
+            errors.put(scenario, new AtomicLong());
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one scenario must have a positive weight in the requests mix");
+        }
+    }
+
+    /**
+     * Runs the load for the given duration, blocking until all virtual users are
+     * done
+     * 
+     * @param record whether to record the requests latencies, or discard them
+     *               (e.g. during warm-up)
+     */
+    public void run(@NonNull Duration duration, boolean record) {
+        this.recording = record;
+        final long start = System.nanoTime();
+        final long deadline = start + duration.toNanos();
+        Flux.range(0, options.getConcurrency())//
+                .map(VirtualUser::new)//
+                .flatMap(user -> Mono.defer(user::iteration)//
+                        .onErrorResume(IterationAborted.class, e -> Mono.empty())//
+                        .repeat(() -> System.nanoTime() < deadline), options.getConcurrency())//
+                .blockLast();
+        if (record) {
+            recordedNanos += System.nanoTime() - start;
+        }
+    }
+
+    public Histogram gatewayLatency(Scenario scenario) {
+        return gatewayLatency.get(scenario);
+    }
+
+    public Histogram directLatency(Scenario scenario) {
+        return directLatency.get(scenario);
+    }
+
+    public long errors(Scenario scenario) {
+        return errors.get(scenario).get();
+    }
+
+    public Duration recordedDuration() {
+        return Duration.ofNanos(recordedNanos);
+    }
+
+    @SuppressWarnings("serial")
+    private static class IterationAborted extends RuntimeException {
+        IterationAborted() {
+            super(null, null, false, false);
+        }
+    }
+
+    private class VirtualUser {
+
+        private final SplittableRandom random;
+
+        private final String username;
+
+        private final String basicAuth;
+
+        private String sessionCookie;
+
+        VirtualUser(int index) {
+            this.random = new SplittableRandom(index);
+            this.username = InMemoryLdap.username(index % Math.max(1, options.getUsers()));
+            String credentials = username + ":" + InMemoryLdap.PASSWORD;
+            this.basicAuth = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(UTF_8));
+        }
+
+        Mono<Void> iteration() {
+            final Scenario scenario = nextScenario();
+            // the login is not measured, only the requests within the session
+            Mono<?> prepare = scenario == Scenario.SESSION ? session() : Mono.empty();
+            return untimed(scenario, prepare)//
+                    .then(Mono.defer(() -> timed(scenario, gatewayLatency.get(scenario), request(scenario, gateway))))//
+                    .then(Mono.defer(() -> timed(scenario, directLatency.get(scenario), request(scenario, backend))));
+        }
+
+        private Scenario nextScenario() {
+            int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            Scenario[] scenarios = Scenario.values();
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (value < cumulativeWeights[i]) {
+                    return scenarios[i];
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        private Mono<?> request(Scenario scenario, URI target) {
+            switch (scenario) {
+            case ANONYMOUS:
+                return get(target, PUBLIC_PATH, null, null);
+            case BASIC:
+                return get(target, SECURED_PATH, basicAuth, null);
+            case SESSION:
+                return get(target, SECURED_PATH, null, sessionCookie);
+            case WEBSOCKET:
+                return websocket(target);
+            default:
+                throw new IllegalArgumentException(scenario.toString());
+            }
+        }
+
+        private Mono<Integer> get(URI target, String path, String authorization, String cookie) {
+            return client.headers(headers -> {
+                if (authorization != null)
+                    headers.set(HttpHeaderNames.AUTHORIZATION, authorization);
+                if (cookie != null)
+                    headers.set(HttpHeaderNames.COOKIE, "SESSION=" + cookie);
+            })//
+                    .get()//
+                    .uri(target.resolve(path))//
+                    .responseSingle((response, body) -> body.asByteArray()//
+                            .then(Mono.defer(() -> status(response))));
+        }
+
+        private Mono<String> session() {
+            if (sessionCookie != null) {
+                return Mono.just(sessionCookie);
+            }
+            return client.post()//
+                    .uri(gateway.resolve("/login"))//
+                    .sendForm((request, form) -> form.attr("username", username).attr("password",
+                            InMemoryLdap.PASSWORD))//
+                    .responseSingle((response, body) -> body.asByteArray().then(Mono.defer(() -> {
+                        String location = response.responseHeaders().get(HttpHeaderNames.LOCATION);
+                        Set<Cookie> cookies = response.cookies().get("SESSION");
+                        if ((location != null && location.contains("error")) || cookies == null
+                                || cookies.isEmpty()) {
+                            return Mono.error(new IllegalStateException("Login failed for " + username));
+                        }
+                        return Mono.just(cookies.iterator().next().value());
+                    })))//
+                    .doOnNext(cookie -> this.sessionCookie = cookie);
+        }
+
+        private Mono<String> websocket(URI target) {
+            URI uri = URI.create("ws://" + target.getAuthority() + WEBSOCKET_PATH);
+            return client.websocket()//
+                    .uri(uri)//
+                    .handle((in, out) -> out.sendString(Mono.just("ping"))//
+                            .then()//
+                            .then(in.receive().asString().next()))//
+                    .next();
+        }
+
+        private Mono<Integer> status(HttpClientResponse response) {
+            int code = response.status().code();
+            if (code >= 200 && code < 300) {
+                return Mono.just(code);
+            }
+            return Mono.error(new IllegalStateException(response.uri() + ": " + response.status()));
+        }
+
+        private Mono<Void> timed(Scenario scenario, Histogram histogram, Mono<?> request) {
+            return Mono.defer(() -> {
+                final long start = System.nanoTime();
+                return request.timeout(TIMEOUT)//
+                        .doOnSuccess(result -> {
+                            if (recording) {
+                                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                                histogram.recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+                            }
+                        })//
+                        .then();
+            }).onErrorResume(e -> failed(scenario, e));
+        }
+
+        private Mono<Void> untimed(Scenario scenario, Mono<?> request) {
+            return request.timeout(TIMEOUT).then().onErrorResume(e -> failed(scenario, e));
+        }
+
+        /**
+         * Counts the error and aborts the iteration
+         */
+        private Mono<Void> failed(Scenario scenario, Throwable error) {
+            if (recording) {
+                errors.get(scenario).incrementAndGet();
+            }
+            log.debug("{} request failed: {}", scenario, error.getMessage());
+            if (scenario == Scenario.SESSION) {
+                sessionCookie = null;
+            }
+            return Mono.error(new IterationAborted());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.loadtest;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import lombok.Data;
+import lombok.Generated;
+import lombok.experimental.Accessors;
+
+/**
+ * Load test options, bound from {@literal --loadtest.*} command line
+ * arguments, for example {@code --loadtest.duration=5m --loadtest.mix.session=50}.
+ * <p>
+ * Any other argument is passed on to the gateway application, so its
+ * configuration can be changed between runs (e.g.
+ * {@code --georchestra.gateway.security.users-cache.enabled=false}).
+ */
+@Data
+@Generated
+public class LoadTestOptions {
+
+    static final String PREFIX = "loadtest";
+
+    /**
+     * Duration of the measured run
+     */
+    private Duration duration = Duration.ofSeconds(60);
+
+    /**
+     * Duration of the warm-up run preceding the measured one, whose latencies are
+     * discarded
+     */
+    private Duration warmup = Duration.ofSeconds(15);
+
+    /**
+     * Number of virtual users issuing requests concurrently, each one waiting for
+     * the response to its previous request before sending the next one
+     */
+    private int concurrency = 64;
+
+    /**
+     * Number of users created in the in-memory LDAP directory, virtual users
+     * authenticate as one of them
+     */
+    private int users = 100;
+
+    /**
+     * Size in bytes of the backend responses
+     */
+    private int payloadSize = 1024;
+
+    /**
+     * Relative weights of the {@link Scenario scenarios} in the requests mix
+     */
+    private Mix mix = new Mix();
+
+    @Generated
+    public static @Data @Accessors(chain = true) class Mix {
+        private int anonymous = 70;
+        private int basic = 10;
+        private int session = 15;
+        private int websocket = 5;
+
+        public int weight(Scenario scenario) {
+            switch (scenario) {
+            case ANONYMOUS:
+                return anonymous;
+            case BASIC:
+                return basic;
+            case SESSION:
+                return session;
+            case WEBSOCKET:
+                return websocket;
+            default:
+                throw new IllegalArgumentException(scenario.toString());
+            }
+        }
+    }
+
+    public static LoadTestOptions parse(String... args) {
+        SimpleCommandLinePropertySource source = new SimpleCommandLinePropertySource(args);
+        Binder binder = new Binder(ConfigurationPropertySources.from(source));
+        return binder.bind(PREFIX, Bindable.ofInstance(new LoadTestOptions())).orElseGet(LoadTestOptions::new);
+    }
+}
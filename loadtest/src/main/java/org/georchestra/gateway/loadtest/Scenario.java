@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2022 by the geOrchestra PSC
+ *
+ * This file is part of geOrchestra.
+ *
+ * geOrchestra is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * geOrchestra is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * geOrchestra.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.georchestra.gateway.loadtest;
+
+/**
+ * The kinds of requests the load test issues, each one sent through the
+ * gateway and directly to the backend to compute the gateway overhead.
+ */
+public enum Scenario {
+    /** Unauthenticated HTTP request to a public path */
+    ANONYMOUS,
+    /** HTTP basic authenticated request to a path that requires a role */
+    BASIC,
+    /** Request to a path that requires a role, with a web session cookie */
+    SESSION,
+    /** Websocket connection, sending a message and waiting for its echo */
+    WEBSOCKET
+}